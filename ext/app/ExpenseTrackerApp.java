@@ -1,16 +1,23 @@
 package app;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.Predicate;
 
 import exceptions.InvalidTransactionException;
+import manager.FinancialSummary;
+import manager.TransactionCursor;
 import manager.TransactionManager;
 import model.Expense;
 import model.Income;
 import model.Transaction;
 import util.DateValidator;
+import util.Metrics;
 
 /**
  * Main application class for the Expense Tracker
@@ -21,16 +28,30 @@ public class ExpenseTrackerApp {
     private Scanner scanner;
     private boolean running;
     private DecimalFormat currencyFormat;
+    // Listings are written here and flushed once per page
+    private PrintWriter out;
     
     /**
      * Constructor
      */
     public ExpenseTrackerApp() {
-        // Initialize with the file path for storing transactions
-        transactionManager = new TransactionManager("transactions.txt");
+        this(TransactionManager.OBJECT_STORAGE);
+    }
+    
+    /**
+     * Constructor with where the transactions are kept
+     * 
+     * @param storage TransactionManager.OBJECT_STORAGE, COLUMN_STORAGE or OFF_HEAP_STORAGE
+     */
+    public ExpenseTrackerApp(int storage) {
+        // Initialize with the file path for storing transactions; every change
+        // is saved on a background thread so no menu action waits for the disk
+        transactionManager = new TransactionManager("transactions.txt", false,
+                                                    TransactionManager.DEFAULT_RECENT_CAPACITY, true, storage);
         scanner = new Scanner(System.in);
         running = false;
         currencyFormat = new DecimalFormat("$#,##0.00");
+        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
     }
     
     /**
@@ -42,7 +63,7 @@ public class ExpenseTrackerApp {
         
         while (running) {
             showMainMenu();
-            int choice = getMenuChoice(1, 9);
+            int choice = getMenuChoice(1, 10);
             
             try {
                 processMenuChoice(choice);
@@ -81,8 +102,9 @@ public class ExpenseTrackerApp {
         System.out.println("6. Edit Transaction");
         System.out.println("7. Delete Transaction");
         System.out.println("8. Save Transactions");
-        System.out.println("9. Exit");
-        System.out.print("Enter your choice (1-9): ");
+        System.out.println("9. View Metrics");
+        System.out.println("10. Exit");
+        System.out.print("Enter your choice (1-10): ");
     }
     
     /**
@@ -145,6 +167,9 @@ public class ExpenseTrackerApp {
                 saveTransactions();
                 break;
             case 9:
+                viewMetrics();
+                break;
+            case 10:
                 exit();
                 break;
         }
@@ -224,30 +249,105 @@ public class ExpenseTrackerApp {
         
         if (transactionManager.getAllTransactions().isEmpty()) {
             System.out.println("No transactions found.");
-        } else {
-            for (Transaction transaction : transactionManager.getAllTransactions()) {
-                transaction.printDetails();
+            System.out.println("\nPress Enter to continue...");
+            scanner.nextLine();
+            return;
+        }
+        
+        System.out.println("Sort by: 1. Date  2. Amount  3. ID");
+        System.out.print("Enter your choice (1-3): ");
+        int order;
+        switch (getMenuChoice(1, 3)) {
+            case 2:
+                order = TransactionCursor.BY_AMOUNT;
+                break;
+            case 3:
+                order = TransactionCursor.BY_ID;
+                break;
+            default:
+                order = TransactionCursor.BY_DATE;
+                break;
+        }
+        boolean descending = getBooleanInput("Newest, largest or highest ID first? (Y/N): ");
+        Predicate<Transaction> filter = getFilterInput();
+        
+        // Pages are read only when asked for, so a large ledger is never listed in one go
+        TransactionCursor cursor = transactionManager.openCursor(order, descending, filter,
+                                                                 TransactionCursor.DEFAULT_PAGE_SIZE);
+        List<Transaction> page = cursor.nextPage();
+        if (page.isEmpty()) {
+            System.out.println("No matching transactions found.");
+        }
+        while (!page.isEmpty()) {
+            out.println("\n--- Page " + cursor.getPageNumber() + " ---");
+            printTransactions(page);
+            if (!cursor.hasMore()) {
+                break;
             }
+            System.out.print("Press Enter for the next page or Q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("Q")) {
+                break;
+            }
+            page = cursor.nextPage();
         }
         
         System.out.println("\nPress Enter to continue...");
         scanner.nextLine();
     }
     
+    /**
+     * Ask which transactions to list
+     * 
+     * @return Filter for the listing, or null for all transactions
+     */
+    private Predicate<Transaction> getFilterInput() {
+        System.out.println("Show: 1. All  2. Expenses  3. Income  4. One Category  5. One Source  6. Description Search");
+        System.out.print("Enter your choice (1-6): ");
+        switch (getMenuChoice(1, 6)) {
+            case 2:
+                return transaction -> transaction instanceof Expense;
+            case 3:
+                return transaction -> transaction instanceof Income;
+            case 4:
+                String category = getStringInput("Enter category: ");
+                return transaction -> transaction instanceof Expense
+                        && ((Expense) transaction).getCategory().equalsIgnoreCase(category);
+            case 5:
+                String source = getStringInput("Enter source: ");
+                return transaction -> transaction instanceof Income
+                        && ((Income) transaction).getSource().equalsIgnoreCase(source);
+            case 6:
+                String text = getStringInput("Enter text to search for: ").toLowerCase();
+                return transaction -> transaction.getDescription().toLowerCase().contains(text);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Print transactions through the buffered writer, flushing once at the end
+     * 
+     * @param transactions Transactions to print
+     */
+    private void printTransactions(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            transaction.printDetails(out);
+        }
+        out.flush();
+    }
+    
     /**
      * View recent transactions
      */
     private void viewRecentTransactions() {
         System.out.println("\n===== RECENT TRANSACTIONS =====");
         
-        LinkedList<Transaction> recentTransactions = transactionManager.getRecentTransactions();
+        List<Transaction> recentTransactions = transactionManager.getRecentTransactions();
         
         if (recentTransactions.isEmpty()) {
             System.out.println("No transactions found.");
         } else {
-            for (Transaction transaction : recentTransactions) {
-                transaction.printDetails();
-            }
+            printTransactions(recentTransactions);
         }
         
         System.out.println("\nPress Enter to continue...");
@@ -259,18 +359,39 @@ public class ExpenseTrackerApp {
      */
     private void viewFinancialSummary() {
         System.out.println("\n===== FINANCIAL SUMMARY =====");
+        System.out.println("1. All Transactions");
+        System.out.println("2. Date Range");
+        System.out.println("3. Expense Category");
+        System.out.println("4. Income Source");
+        System.out.print("Enter your choice (1-4): ");
+        
+        // Every figure comes from one summary, read in a single pass
+        FinancialSummary summary;
+        switch (getMenuChoice(1, 4)) {
+            case 2:
+                Date from = getDateInput("Enter start date (YYYY-MM-DD) or press Enter for today: ");
+                Date to = getDateInput("Enter end date (YYYY-MM-DD) or press Enter for today: ");
+                summary = transactionManager.getSummary(from, to);
+                break;
+            case 3:
+                summary = transactionManager.getCategorySummary(getStringInput("Enter category: "));
+                break;
+            case 4:
+                summary = transactionManager.getSourceSummary(getStringInput("Enter source: "));
+                break;
+            default:
+                summary = transactionManager.getSummary();
+                break;
+        }
         
-        double totalIncome = transactionManager.calculateTotalIncome();
-        double totalExpenses = transactionManager.calculateTotalExpenses();
-        double balance = transactionManager.calculateBalance();
-        double taxDeductions = transactionManager.calculateTaxDeductions();
-        double incomeTax = transactionManager.calculateIncomeTax();
-        
-        System.out.println("Total Income: " + currencyFormat.format(totalIncome));
-        System.out.println("Total Expenses: " + currencyFormat.format(totalExpenses));
-        System.out.println("Current Balance: " + currencyFormat.format(balance));
-        System.out.println("Potential Tax Deductions: " + currencyFormat.format(taxDeductions));
-        System.out.println("Estimated Income Tax: " + currencyFormat.format(incomeTax));
+        System.out.println();
+        System.out.println("Total Income: " + currencyFormat.format(summary.getTotalIncome()));
+        System.out.println("Total Expenses: " + currencyFormat.format(summary.getTotalExpenses()));
+        System.out.println("Current Balance: " + currencyFormat.format(summary.getBalance()));
+        System.out.println("Potential Tax Deductions: " + currencyFormat.format(summary.getTaxDeductions()));
+        System.out.println("Estimated Income Tax: " + currencyFormat.format(summary.getIncomeTax()));
+        System.out.println("Transactions: " + summary.getCount() + " (" + summary.getIncomeCount()
+                           + " income, " + summary.getExpenseCount() + " expenses)");
         
         System.out.println("\nPress Enter to continue...");
         scanner.nextLine();
@@ -363,13 +484,24 @@ public class ExpenseTrackerApp {
     private void saveTransactions() {
         System.out.println("\n===== SAVE TRANSACTIONS =====");
         
-        boolean success = transactionManager.saveTransactions();
+        // Only a failure is reported later, the menu does not wait for the disk
+        transactionManager.saveTransactionsAsync().thenAccept(success -> {
+            if (!success) {
+                System.out.println("\nFailed to save transactions.");
+            }
+        });
+        System.out.println("Transactions are being saved in the background.");
         
-        if (success) {
-            System.out.println("Transactions saved successfully!");
-        } else {
-            System.out.println("Failed to save transactions.");
-        }
+        System.out.println("\nPress Enter to continue...");
+        scanner.nextLine();
+    }
+    
+    /**
+     * Print the call counts, latencies and counters recorded so far
+     */
+    private void viewMetrics() {
+        out.println("\n===== METRICS =====");
+        Metrics.dump(out);
         
         System.out.println("\nPress Enter to continue...");
         scanner.nextLine();
@@ -381,24 +513,23 @@ public class ExpenseTrackerApp {
     private void exit() {
         System.out.println("\n===== EXIT =====");
         
-        boolean saveChanges = getBooleanInput("Do you want to save changes before exiting? (Y/N): ");
+        // Changes are saved as they are made; wait for the last ones to reach the disk
+        System.out.println("Saving changes...");
+        boolean success = transactionManager.saveTransactions();
         
-        if (saveChanges) {
-            boolean success = transactionManager.saveTransactions();
+        if (success) {
+            System.out.println("Transactions saved successfully!");
+        } else {
+            System.out.println("Failed to save transactions.");
             
-            if (success) {
-                System.out.println("Transactions saved successfully!");
-            } else {
-                System.out.println("Failed to save transactions.");
-                
-                boolean continueExit = getBooleanInput("Continue with exit anyway? (Y/N): ");
-                
-                if (!continueExit) {
-                    return;
-                }
+            boolean continueExit = getBooleanInput("Continue with exit anyway? (Y/N): ");
+            
+            if (!continueExit) {
+                return;
             }
         }
         
+        transactionManager.close();
         running = false;
     }
     
@@ -616,10 +747,12 @@ public class ExpenseTrackerApp {
     /**
      * Main method
      * 
-     * @param args Command line arguments
+     * @param args Optional storage: objects, columns or off-heap
      */
     public static void main(String[] args) {
-        ExpenseTrackerApp app = new ExpenseTrackerApp();
+        int storage = args.length > 0 ? TransactionManager.storageNamed(args[0])
+                                      : TransactionManager.OBJECT_STORAGE;
+        ExpenseTrackerApp app = new ExpenseTrackerApp(storage);
         app.start();
     }
 }
\ No newline at end of file
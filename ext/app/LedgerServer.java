@@ -0,0 +1,506 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import exceptions.InvalidTransactionException;
+import manager.ConcurrentTransactionManager;
+import manager.FinancialSummary;
+import manager.TransactionCursor;
+import manager.TransactionManager;
+import model.Expense;
+import model.Income;
+import model.Transaction;
+import util.DateValidator;
+import util.Json;
+import util.Metrics;
+import util.Money;
+
+/**
+ * Serves a ledger over HTTP with JSON bodies, as a long-running
+ * alternative to the interactive menu:
+ *
+ *   POST   /transactions        add ({"type":"expense"|"income", "date", "amount",
+ *                                "description", "category"|"source",
+ *                                "taxDeductible"|"taxable"})
+ *   GET    /transactions        list a page (?order=date|amount|id, desc=true,
+ *                                page, size, type, category, source)
+ *   GET    /transactions/{id}   get one
+ *   PUT    /transactions/{id}   edit date, amount and description (missing fields are kept)
+ *   DELETE /transactions/{id}   delete one
+ *   GET    /summary             totals and counts (?from&to, category or source)
+ *
+ * Requests run on virtual threads when the JVM has them (Java 21 and
+ * later) and on a fixed pool otherwise. The ledger is a journaled
+ * ConcurrentTransactionManager, so every change is on disk without
+ * rewriting the file, and transactions are rendered under its read lock.
+ * It keeps the transactions as objects unless told to use column or
+ * off-heap storage.
+ *
+ * Usage: java app.LedgerServer [port [file [objects|columns|off-heap]]]
+ */
+public class LedgerServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final String DEFAULT_FILE = "transactions.txt";
+
+    // Largest page a list request may ask for
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Largest amount a request may carry. The running totals and rollups
+    // are longs in cents, so this keeps ~90 million maximal rows from
+    // overflowing them.
+    private static final double MAX_AMOUNT = 1_000_000_000;
+    private static final String TRANSACTIONS = "/transactions";
+
+    static {
+        // Send each response as soon as it is written. Otherwise the header
+        // and body writes meet Nagle's algorithm and the client's delayed
+        // ACK, and every request on a kept-alive connection waits ~40 ms.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final ConcurrentTransactionManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor. The server listens on localhost once started.
+     *
+     * @param manager The ledger to serve
+     * @param port Port to listen on, or 0 for any free port
+     * @throws IOException If the port cannot be bound
+     */
+    public LedgerServer(ConcurrentTransactionManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext(TRANSACTIONS, this::handleTransactions);
+        server.createContext("/summary", this::handleSummary);
+    }
+
+    /**
+     * Main method to run the service until the JVM is stopped
+     *
+     * @param args Optional port, transactions file and storage
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String filePath = args.length > 1 ? args[1] : DEFAULT_FILE;
+        int storage = args.length > 2 ? TransactionManager.storageNamed(args[2]) : TransactionManager.OBJECT_STORAGE;
+
+        Metrics.registerMBeans();
+        ConcurrentTransactionManager manager = new ConcurrentTransactionManager(
+                filePath, true, TransactionManager.DEFAULT_RECENT_CAPACITY, storage);
+        LedgerServer server = new LedgerServer(manager, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            manager.close();
+        }));
+        server.start();
+        System.out.println("Serving " + filePath + " on http://localhost:" + server.getPort()
+                           + " (" + (usesVirtualThreads() ? "virtual threads" : "thread pool") + ")");
+    }
+
+    /**
+     * Start accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and wait briefly for the running ones
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the port the server listens on
+     *
+     * @return Port number
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Check whether requests run on virtual threads
+     *
+     * @return true on Java 21 and later
+     */
+    public static boolean usesVirtualThreads() {
+        return virtualThreadFactory() != null;
+    }
+
+    /**
+     * Create the executor requests run on: one virtual thread per request
+     * when the JVM has them, otherwise a fixed pool sized for blocking on
+     * the lock and the journal. Looked up by reflection so the code still
+     * compiles and runs on Java 17.
+     */
+    private static ExecutorService newRequestExecutor() {
+        Method factory = virtualThreadFactory();
+        if (factory != null) {
+            try {
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to the pool
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4, runnable -> {
+            Thread thread = new Thread(runnable, "ledger-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method virtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private void handleTransactions(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals(TRANSACTIONS) || path.equals(TRANSACTIONS + "/")) {
+                if (method.equals("GET")) {
+                    listTransactions(exchange);
+                } else if (method.equals("POST")) {
+                    addTransaction(exchange);
+                } else {
+                    sendError(exchange, 405, "Method not allowed");
+                }
+                return;
+            }
+            if (!path.startsWith(TRANSACTIONS + "/")) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            int id = Integer.parseInt(path.substring(TRANSACTIONS.length() + 1));
+            if (method.equals("GET")) {
+                getTransaction(exchange, id);
+            } else if (method.equals("PUT")) {
+                editTransaction(exchange, id);
+            } else if (method.equals("DELETE")) {
+                deleteTransaction(exchange, id);
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+        } catch (InvalidTransactionException | IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "Internal error: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSummary(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange);
+            FinancialSummary summary;
+            if (query.containsKey("from") || query.containsKey("to")) {
+                summary = manager.getSummary(parseDate(query, "from"), parseDate(query, "to"));
+            } else if (query.containsKey("category")) {
+                summary = manager.getCategorySummary(query.get("category"));
+            } else if (query.containsKey("source")) {
+                summary = manager.getSourceSummary(query.get("source"));
+            } else {
+                summary = manager.getSummary();
+            }
+
+            StringBuilder json = new StringBuilder(256);
+            json.append("{\"count\":").append(summary.getCount());
+            json.append(",\"incomeCount\":").append(summary.getIncomeCount());
+            json.append(",\"expenseCount\":").append(summary.getExpenseCount());
+            appendAmount(json, "totalIncome", summary.getTotalIncomeCents());
+            appendAmount(json, "totalExpenses", summary.getTotalExpensesCents());
+            appendAmount(json, "balance", summary.getBalanceCents());
+            appendAmount(json, "taxDeductions", summary.getTaxDeductionsCents());
+            appendAmount(json, "incomeTax", summary.getIncomeTaxCents());
+            json.append('}');
+            send(exchange, 200, json);
+        } catch (InvalidTransactionException | IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "Internal error: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listTransactions(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange);
+        int order = parseOrder(query.getOrDefault("order", "date"));
+        boolean descending = Boolean.parseBoolean(query.get("desc"));
+        int page = Integer.parseInt(query.getOrDefault("page", "1"));
+        int size = Integer.parseInt(query.getOrDefault("size", String.valueOf(TransactionCursor.DEFAULT_PAGE_SIZE)));
+        if (page < 1 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("page must be at least 1 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        TransactionCursor cursor = manager.openCursor(order, descending, parseFilter(query), size);
+        StringBuilder json = manager.withReadLock(() -> {
+            // Earlier pages are read and dropped; the cursor resumes by key, so each is cheap
+            List<Transaction> transactions = cursor.nextPage();
+            for (int i = 1; i < page && !transactions.isEmpty(); i++) {
+                transactions = cursor.nextPage();
+            }
+            StringBuilder builder = new StringBuilder(64 + transactions.size() * 160);
+            builder.append("{\"page\":").append(page);
+            builder.append(",\"size\":").append(size);
+            builder.append(",\"hasMore\":").append(cursor.hasMore());
+            builder.append(",\"transactions\":[");
+            for (int i = 0; i < transactions.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                appendTransaction(builder, transactions.get(i));
+            }
+            return builder.append("]}");
+        });
+        send(exchange, 200, json);
+    }
+
+    private void getTransaction(HttpExchange exchange, int id) throws IOException {
+        StringBuilder json = manager.withReadLock(() -> {
+            Transaction transaction = manager.getTransactionById(id);
+            return transaction == null ? null : appendTransaction(new StringBuilder(160), transaction);
+        });
+        if (json == null) {
+            sendError(exchange, 404, "Transaction " + id + " not found");
+        } else {
+            send(exchange, 200, json);
+        }
+    }
+
+    private void addTransaction(HttpExchange exchange) throws IOException, InvalidTransactionException {
+        Map<String, String> body = readBody(exchange);
+        String type = require(body, "type");
+        Date date = DateValidator.validateAndParse(require(body, "date"));
+        double amount = parseAmount(require(body, "amount"));
+        String description = checkField("description", body.get("description"));
+
+        Transaction transaction;
+        if (type.equalsIgnoreCase("expense")) {
+            transaction = manager.addExpense(date, amount, description,
+                                             checkField("category", require(body, "category")),
+                                             Boolean.parseBoolean(body.get("taxDeductible")));
+        } else if (type.equalsIgnoreCase("income")) {
+            transaction = manager.addIncome(date, amount, description,
+                                            checkField("source", require(body, "source")),
+                                            Boolean.parseBoolean(body.get("taxable")));
+        } else {
+            throw new IllegalArgumentException("type must be expense or income");
+        }
+        send(exchange, 201, manager.withReadLock(() -> appendTransaction(new StringBuilder(160), transaction)));
+    }
+
+    private void editTransaction(HttpExchange exchange, int id) throws IOException, InvalidTransactionException {
+        Map<String, String> body = readBody(exchange);
+        Transaction transaction = manager.getTransactionById(id);
+        if (transaction == null) {
+            sendError(exchange, 404, "Transaction " + id + " not found");
+            return;
+        }
+        // Fields left out keep their current values
+        Date date = body.containsKey("date") ? DateValidator.validateAndParse(body.get("date"))
+                                             : transaction.getDate();
+        double amount = body.containsKey("amount") ? parseAmount(require(body, "amount"))
+                                                   : transaction.getAmount();
+        String description = body.containsKey("description") ? checkField("description", body.get("description"))
+                                                             : transaction.getDescription();
+        if (!manager.editTransaction(id, date, amount, description)) {
+            sendError(exchange, 404, "Transaction " + id + " not found");
+            return;
+        }
+        // Read it again, since row storage hands out copies the edit does not change
+        send(exchange, 200, manager.withReadLock(() -> {
+            Transaction edited = manager.getTransactionById(id);
+            return appendTransaction(new StringBuilder(160), edited != null ? edited : transaction);
+        }));
+    }
+
+    private void deleteTransaction(HttpExchange exchange, int id) throws IOException {
+        if (manager.deleteTransaction(id)) {
+            exchange.sendResponseHeaders(204, -1);
+        } else {
+            sendError(exchange, 404, "Transaction " + id + " not found");
+        }
+    }
+
+    private static StringBuilder appendTransaction(StringBuilder json, Transaction transaction) {
+        json.append("{\"id\":").append(transaction.getId());
+        json.append(",\"type\":");
+        Json.appendString(json, transaction.getTransactionType());
+        json.append(",\"date\":\"");
+        DateValidator.appendDate(json, transaction.getDate());
+        json.append('"');
+        appendAmount(json, "amount", transaction.getAmountCents());
+        json.append(",\"description\":");
+        Json.appendString(json, transaction.getDescription());
+        if (transaction instanceof Expense) {
+            Expense expense = (Expense) transaction;
+            json.append(",\"category\":");
+            Json.appendString(json, expense.getCategory());
+            json.append(",\"taxDeductible\":").append(expense.isTaxDeductible());
+        } else if (transaction instanceof Income) {
+            Income income = (Income) transaction;
+            json.append(",\"source\":");
+            Json.appendString(json, income.getSource());
+            json.append(",\"taxable\":").append(income.isTaxable());
+        }
+        return json.append('}');
+    }
+
+    private static void appendAmount(StringBuilder json, String name, long cents) {
+        json.append(",\"").append(name).append("\":");
+        Money.appendTo(json, cents);
+    }
+
+    private static int parseOrder(String order) {
+        switch (order) {
+            case "date":
+                return TransactionCursor.BY_DATE;
+            case "amount":
+                return TransactionCursor.BY_AMOUNT;
+            case "id":
+                return TransactionCursor.BY_ID;
+            default:
+                throw new IllegalArgumentException("order must be date, amount or id");
+        }
+    }
+
+    private static Predicate<Transaction> parseFilter(Map<String, String> query) {
+        Predicate<Transaction> filter = null;
+        String type = query.get("type");
+        if (type != null) {
+            if (type.equalsIgnoreCase("expense")) {
+                filter = transaction -> transaction instanceof Expense;
+            } else if (type.equalsIgnoreCase("income")) {
+                filter = transaction -> transaction instanceof Income;
+            } else {
+                throw new IllegalArgumentException("type must be expense or income");
+            }
+        }
+        String category = query.get("category");
+        if (category != null) {
+            Predicate<Transaction> byCategory = transaction -> transaction instanceof Expense
+                    && category.equalsIgnoreCase(((Expense) transaction).getCategory());
+            filter = filter == null ? byCategory : filter.and(byCategory);
+        }
+        String source = query.get("source");
+        if (source != null) {
+            Predicate<Transaction> bySource = transaction -> transaction instanceof Income
+                    && source.equalsIgnoreCase(((Income) transaction).getSource());
+            filter = filter == null ? bySource : filter.and(bySource);
+        }
+        return filter;
+    }
+
+    private static Date parseDate(Map<String, String> query, String name) throws InvalidTransactionException {
+        return DateValidator.validateAndParse(require(query, name));
+    }
+
+    private static double parseAmount(String text) {
+        // parseDouble also accepts Infinity, NaN and values too large for cents
+        double amount = Double.parseDouble(text);
+        if (!Double.isFinite(amount) || amount <= 0) {
+            throw new IllegalArgumentException("amount must be a positive number");
+        }
+        if (amount > MAX_AMOUNT) {
+            throw new IllegalArgumentException("amount must not be more than "
+                                               + Money.format(Money.toCents(MAX_AMOUNT)));
+        }
+        return amount;
+    }
+
+    // The text and journal formats separate fields with commas and rows with
+    // line breaks, so neither can be stored in a field
+    private static String checkField(String name, String value) {
+        if (value != null && (value.indexOf(',') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)) {
+            throw new IllegalArgumentException(name + " must not contain commas or line breaks");
+        }
+        return value;
+    }
+
+    private static String require(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                      URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream input = exchange.getRequestBody()) {
+            return Json.parseObject(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.appendString(json, message);
+        send(exchange, status, json.append('}'));
+    }
+
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package app;
 
+import manager.TransactionManager;
+import util.Metrics;
+
 /**
  * Main entry point class for the Expense Tracker application
  */
@@ -8,14 +11,21 @@ public class Main {
     /**
      * Main method to start the application
      * 
-     * @param args Command line arguments (not used)
+     * @param args Optional storage: objects, columns or off-heap
      */
     public static void main(String[] args) {
         System.out.println("Starting Personal Finance Expense Tracker...");
         
         try {
+            // Make the metrics readable from JMX tools such as jconsole
+            Metrics.registerMBeans();
+            
+            // Keep the transactions as objects unless another storage is named
+            int storage = args.length > 0 ? TransactionManager.storageNamed(args[0])
+                                          : TransactionManager.OBJECT_STORAGE;
+            
             // Create and start the expense tracker application
-            ExpenseTrackerApp app = new ExpenseTrackerApp();
+            ExpenseTrackerApp app = new ExpenseTrackerApp(storage);
             app.start();
         } catch (Exception e) {
             // Catch any uncaught exceptions
@@ -0,0 +1,206 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal benchmark harness: warms up a task, times several rounds and
+ * keeps the fastest one. Results are written as tab-separated lines
+ * (benchmark, size, ns/op, operations) that can be diffed between releases.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * A benchmarked task. Runs the given number of operations and returns
+     * a value derived from the work so the JIT cannot drop it.
+     */
+    public interface Task {
+        long run(int operations) throws Exception;
+    }
+
+    /**
+     * One benchmark measurement
+     */
+    public static class Result {
+        private String name;
+        private int size;
+        private double nsPerOp;
+        private int operations;
+
+        public Result(String name, int size, double nsPerOp, int operations) {
+            this.name = name;
+            this.size = size;
+            this.nsPerOp = nsPerOp;
+            this.operations = operations;
+        }
+
+        public String getKey() {
+            return name + "@" + size;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getNsPerOp() {
+            return nsPerOp;
+        }
+
+        public int getOperations() {
+            return operations;
+        }
+    }
+
+    private static final String HEADER = "benchmark\tsize\tns_per_op\toperations";
+
+    private int warmupRounds;
+    private int measuredRounds;
+    private List<Result> results;
+    private long sink;
+
+    /**
+     * Constructor
+     *
+     * @param warmupRounds Untimed rounds before measuring
+     * @param measuredRounds Timed rounds; the fastest is reported
+     */
+    public BenchmarkRunner(int warmupRounds, int measuredRounds) {
+        this.warmupRounds = warmupRounds;
+        this.measuredRounds = measuredRounds;
+        this.results = new ArrayList<>();
+    }
+
+    /**
+     * Measure a task and record the result
+     *
+     * @param name Benchmark name
+     * @param size Ledger size the task runs against
+     * @param operations Operations per round
+     * @param task The task
+     * @return The recorded result
+     */
+    public Result measure(String name, int size, int operations, Task task) throws Exception {
+        for (int i = 0; i < warmupRounds; i++) {
+            sink += task.run(operations);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < measuredRounds; i++) {
+            long start = System.nanoTime();
+            sink += task.run(operations);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        Result result = new Result(name, size, best / (double) operations, operations);
+        results.add(result);
+        System.out.printf(Locale.ROOT, "%-34s %10d %14.1f ns/op%n", name, size, result.getNsPerOp());
+        return result;
+    }
+
+    /**
+     * Measure a task whose setup cannot be repeated cheaply, such as building
+     * a ledger; it runs exactly once
+     *
+     * @param name Benchmark name
+     * @param size Ledger size the task runs against
+     * @param operations Operations the task performs
+     * @param task The task
+     * @return The recorded result
+     */
+    public Result measureOnce(String name, int size, int operations, Task task) throws Exception {
+        long start = System.nanoTime();
+        sink += task.run(operations);
+        long elapsed = System.nanoTime() - start;
+        Result result = new Result(name, size, elapsed / (double) operations, operations);
+        results.add(result);
+        System.out.printf(Locale.ROOT, "%-34s %10d %14.1f ns/op%n", name, size, result.getNsPerOp());
+        return result;
+    }
+
+    /**
+     * Write all results to a file
+     *
+     * @param path Output path
+     * @throws IOException If writing fails
+     */
+    public void write(String path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(path)) {
+            writer.println(HEADER);
+            for (Result result : results) {
+                writer.printf(Locale.ROOT, "%s\t%d\t%.1f\t%d%n", result.getName(), result.getSize(),
+                              result.getNsPerOp(), result.getOperations());
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Read results written by write()
+     *
+     * @param path Results file
+     * @return Results keyed by benchmark@size, in file order
+     * @throws IOException If reading fails
+     */
+    public static Map<String, Result> read(String path) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.equals(HEADER)) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                Result result = new Result(parts[0], Integer.parseInt(parts[1]),
+                                           Double.parseDouble(parts[2]), Integer.parseInt(parts[3]));
+                results.put(result.getKey(), result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Compare two results files and print the change of every benchmark
+     *
+     * @param baselinePath Results of the previous release
+     * @param currentPath Results of the current build
+     * @param thresholdPercent Slowdown above which a benchmark counts as a regression
+     * @return Number of regressions
+     * @throws IOException If reading fails
+     */
+    public static int compare(String baselinePath, String currentPath, double thresholdPercent)
+            throws IOException {
+        Map<String, Result> baseline = read(baselinePath);
+        Map<String, Result> current = read(currentPath);
+        int regressions = 0;
+
+        System.out.printf(Locale.ROOT, "%-40s %14s %14s %9s%n", "benchmark@size", "baseline", "current", "change");
+        for (Result result : current.values()) {
+            Result before = baseline.get(result.getKey());
+            if (before == null) {
+                System.out.printf(Locale.ROOT, "%-40s %14s %14.1f %9s%n", result.getKey(), "-",
+                                  result.getNsPerOp(), "new");
+                continue;
+            }
+            double change = (result.getNsPerOp() - before.getNsPerOp()) / before.getNsPerOp() * 100;
+            boolean regression = change > thresholdPercent;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-40s %14.1f %14.1f %+8.1f%%%s%n", result.getKey(),
+                              before.getNsPerOp(), result.getNsPerOp(), change,
+                              regression ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+}
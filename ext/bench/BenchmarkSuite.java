@@ -0,0 +1,300 @@
+package bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import manager.BatchEntry;
+import manager.TransactionManager;
+import model.Transaction;
+import util.DateValidator;
+import util.FileHandler;
+
+/**
+ * Benchmark suite for the TransactionManager, FileHandler and DateValidator
+ * hot paths, run over synthetic ledgers of increasing size.
+ *
+ * Usage:
+ *   java bench.BenchmarkSuite [--sizes 1000,10000,...] [--out results.tsv]
+ *   java bench.BenchmarkSuite --compare baseline.tsv current.tsv [threshold%]
+ *
+ * Ledgers of 10M rows need a large heap (e.g. -Xmx8g).
+ */
+public class BenchmarkSuite {
+
+    private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 1_000_000};
+    private static final String DEFAULT_OUTPUT = "bench_results.tsv";
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    private static final String[] CATEGORIES = {"Food", "Housing", "Transport", "Utilities", "Fun"};
+    private static final String[] SOURCES = {"Employer", "Bank", "Gift", "Freelance"};
+    // Synthetic ledgers are spread over about ten years
+    private static final int FIRST_DAY = 18000;
+    private static final int DAY_SPAN = 3650;
+
+    private BenchmarkRunner runner;
+    private Random random;
+
+    /**
+     * Main method to run the suite or compare two results files
+     *
+     * @param args Command line options
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("--compare")) {
+            double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD_PERCENT;
+            int regressions = BenchmarkRunner.compare(args[1], args[2], threshold);
+            System.out.println(regressions + " regression(s) above " + threshold + "%");
+            System.exit(regressions == 0 ? 0 : 1);
+        }
+
+        int[] sizes = DEFAULT_SIZES;
+        String output = DEFAULT_OUTPUT;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--sizes")) {
+                String[] parts = args[++i].split(",");
+                sizes = new int[parts.length];
+                for (int j = 0; j < parts.length; j++) {
+                    sizes[j] = Integer.parseInt(parts[j].trim());
+                }
+            } else if (args[i].equals("--out")) {
+                output = args[++i];
+            }
+        }
+
+        BenchmarkSuite suite = new BenchmarkSuite();
+        suite.benchmarkDateParsing();
+        for (int size : sizes) {
+            suite.benchmarkLedger(size);
+        }
+        suite.runner.write(output);
+        System.out.println("Results written to " + output);
+    }
+
+    private BenchmarkSuite() {
+        runner = new BenchmarkRunner(2, 5);
+        random = new Random(42);
+    }
+
+    /**
+     * DateValidator parsing does not depend on ledger size
+     */
+    private void benchmarkDateParsing() throws Exception {
+        String[] dates = new String[1024];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = DateValidator.formatEpochDay(FIRST_DAY + i);
+        }
+        runner.measure("date.parseEpochDay", 0, 1_000_000, ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += DateValidator.parseEpochDay(dates[i & 1023]);
+            }
+            return sum;
+        });
+        runner.measure("date.validateAndParse", 0, 1_000_000, ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += DateValidator.validateAndParse(dates[i & 1023]).getTime();
+            }
+            return sum;
+        });
+    }
+
+    /**
+     * Run every ledger benchmark against a ledger of the given size
+     */
+    private void benchmarkLedger(int size) throws Exception {
+        File file = File.createTempFile("bench-ledger", ".txt");
+        String path = file.getPath();
+        try {
+            TransactionManager manager = new TransactionManager(path);
+            int[] ids = new int[size];
+
+            runner.measureOnce("manager.add", size, size, ops -> {
+                for (int i = 0; i < ops; i++) {
+                    ids[i] = addRow(manager, i).getId();
+                }
+                return ids[ops - 1];
+            });
+
+            int[] sample = sampleIds(ids, 100_000);
+            runner.measure("manager.getTransactionById", size, sample.length, ops -> {
+                long sum = 0;
+                for (int i = 0; i < ops; i++) {
+                    sum += manager.getTransactionById(sample[i]).getId();
+                }
+                return sum;
+            });
+            runner.measure("manager.editTransaction", size, sample.length, ops -> {
+                long edited = 0;
+                for (int i = 0; i < ops; i++) {
+                    Transaction transaction = manager.getTransactionById(sample[i]);
+                    if (manager.editTransaction(sample[i], transaction.getDate(), 10 + i % 90, "Edited")) {
+                        edited++;
+                    }
+                }
+                return edited;
+            });
+
+            benchmarkBatchAdd(size);
+            benchmarkAggregates(manager, size);
+            benchmarkFiles(manager, path, size);
+            benchmarkDelete(path, ids, size);
+        } finally {
+            deleteStorageFiles(path);
+        }
+    }
+
+    /**
+     * Adds the same number of rows through addAll in batches of 1000
+     */
+    private void benchmarkBatchAdd(int size) throws Exception {
+        File file = File.createTempFile("bench-batch", ".txt");
+        try {
+            TransactionManager manager = new TransactionManager(file.getPath());
+            List<BatchEntry> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(entryFor(i));
+            }
+            runner.measureOnce("manager.addAll", size, size, ops -> {
+                long added = 0;
+                for (int from = 0; from < ops; from += 1000) {
+                    added += manager.addAll(entries.subList(from, Math.min(from + 1000, ops))).getAdded().size();
+                }
+                return added;
+            });
+        } finally {
+            deleteStorageFiles(file.getPath());
+        }
+    }
+
+    private void benchmarkAggregates(TransactionManager manager, int size) throws Exception {
+        runner.measure("manager.calculateTotalIncome", size, 1_000_000, ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += manager.calculateTotalIncomeCents();
+            }
+            return sum;
+        });
+        runner.measure("manager.calculateTotalExpenses", size, 1_000_000, ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += manager.calculateTotalExpensesCents();
+            }
+            return sum;
+        });
+        runner.measure("manager.calculateBalance", size, 1_000_000, ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += manager.calculateBalanceCents();
+            }
+            return sum;
+        });
+        runner.measure("manager.calculateTaxDeductions", size, 1_000_000, ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += manager.calculateTaxDeductionsCents();
+            }
+            return sum;
+        });
+        runner.measure("manager.calculateIncomeTax", size, 1_000_000, ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += manager.calculateIncomeTaxCents();
+            }
+            return sum;
+        });
+
+        // Full recomputation, measured per row
+        runner.measure("manager.verifyTotals", size, size, ops -> manager.verifyTotals() ? 1 : 0);
+
+        Date monthStart = DateValidator.fromEpochDay(FIRST_DAY + DAY_SPAN / 2);
+        Date monthEnd = DateValidator.fromEpochDay(FIRST_DAY + DAY_SPAN / 2 + 30);
+        runner.measure("manager.calculateBalance(month)", size, 1_000, ops -> {
+            double sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += manager.calculateBalance(monthStart, monthEnd);
+            }
+            return (long) sum;
+        });
+    }
+
+    private void benchmarkFiles(TransactionManager manager, String path, int size) throws Exception {
+        FileHandler fileHandler = new FileHandler(path);
+        List<Transaction> transactions = manager.getAllTransactions();
+
+        // Load and save are reported per row
+        runner.measure("fileHandler.saveTransactions", size, size,
+                       ops -> fileHandler.saveTransactions(transactions) ? 1 : 0);
+        runner.measure("fileHandler.loadTransactions", size, size,
+                       ops -> fileHandler.loadTransactions().size());
+    }
+
+    /**
+     * Deletes run against a journaled manager so each one costs a journal
+     * append rather than a full rewrite of the file
+     */
+    private void benchmarkDelete(String path, int[] ids, int size) throws Exception {
+        TransactionManager journaled = new TransactionManager(path, true);
+        int[] victims = sampleDistinctIds(ids, Math.min(size / 2, 10_000));
+        runner.measureOnce("manager.deleteTransaction", size, victims.length, ops -> {
+            long deleted = 0;
+            for (int i = 0; i < ops; i++) {
+                if (journaled.deleteTransaction(victims[i])) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        });
+        journaled.close();
+    }
+
+    private Transaction addRow(TransactionManager manager, int row) throws Exception {
+        Date date = DateValidator.fromEpochDay(FIRST_DAY + random.nextInt(DAY_SPAN));
+        double amount = 1 + random.nextInt(100_000) / 100.0;
+        if (row % 4 == 0) {
+            return manager.addIncome(date, amount, "Income " + row, SOURCES[row % SOURCES.length], row % 8 == 0);
+        }
+        return manager.addExpense(date, amount, "Expense " + row,
+                                  CATEGORIES[row % CATEGORIES.length], row % 3 == 0);
+    }
+
+    private BatchEntry entryFor(int row) {
+        Date date = DateValidator.fromEpochDay(FIRST_DAY + random.nextInt(DAY_SPAN));
+        double amount = 1 + random.nextInt(100_000) / 100.0;
+        if (row % 4 == 0) {
+            return BatchEntry.income(date, amount, "Income " + row, SOURCES[row % SOURCES.length], row % 8 == 0);
+        }
+        return BatchEntry.expense(date, amount, "Expense " + row, CATEGORIES[row % CATEGORIES.length], row % 3 == 0);
+    }
+
+    private int[] sampleIds(int[] ids, int count) {
+        int[] sample = new int[count];
+        for (int i = 0; i < count; i++) {
+            sample[i] = ids[random.nextInt(ids.length)];
+        }
+        return sample;
+    }
+
+    private int[] sampleDistinctIds(int[] ids, int count) {
+        // Partial Fisher-Yates shuffle of a copy
+        int[] pool = ids.clone();
+        int[] sample = new int[Math.max(count, 1)];
+        for (int i = 0; i < sample.length; i++) {
+            int pick = i + random.nextInt(pool.length - i);
+            int id = pool[pick];
+            pool[pick] = pool[i];
+            pool[i] = id;
+            sample[i] = id;
+        }
+        return sample;
+    }
+
+    private static void deleteStorageFiles(String path) {
+        new File(path).delete();
+        new File(path + ".journal").delete();
+        new File(path + ".journal.1").delete();
+    }
+}
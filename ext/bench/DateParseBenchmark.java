@@ -0,0 +1,98 @@
+package bench;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import exceptions.InvalidTransactionException;
+import util.DateValidator;
+
+/**
+ * Parses dates on several threads with DateValidator and, for comparison,
+ * with one SimpleDateFormat per thread (the old approach made thread-safe).
+ *
+ * Usage: java bench.DateParseBenchmark [total dates] [threads]
+ */
+public class DateParseBenchmark {
+
+    private static final int DEFAULT_DATES = 10_000_000;
+    private static final int DISTINCT_DATES = 4096;
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args Optional total number of dates and thread count
+     */
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DATES;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                       : Runtime.getRuntime().availableProcessors();
+
+        String[] dates = new String[DISTINCT_DATES];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = DateValidator.formatEpochDay(18000 + i);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // First round of each warms up the JIT
+            run(pool, threads, total / 10, dates, false);
+            run(pool, threads, total / 10, dates, true);
+
+            double validatorNs = run(pool, threads, total, dates, false);
+            double formatNs = run(pool, threads, total, dates, true);
+
+            System.out.printf("%d dates on %d threads%n", total, threads);
+            System.out.printf("DateValidator.parseEpochDay: %8.1f M dates/s%n", total / validatorNs * 1000);
+            System.out.printf("SimpleDateFormat per thread: %8.1f M dates/s%n", total / formatNs * 1000);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parse the dates on all threads and return the elapsed nanoseconds
+     */
+    private static double run(ExecutorService pool, int threads, int total, String[] dates,
+                              boolean useSimpleDateFormat) throws Exception {
+        int perThread = total / threads;
+        List<Future<Long>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> useSimpleDateFormat
+                    ? parseWithFormat(dates, perThread)
+                    : parseWithValidator(dates, perThread)));
+        }
+        long sink = 0;
+        for (Future<Long> result : results) {
+            sink += result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return elapsed;
+    }
+
+    private static long parseWithValidator(String[] dates, int count) throws InvalidTransactionException {
+        long sink = 0;
+        for (int i = 0; i < count; i++) {
+            sink += DateValidator.parseEpochDay(dates[i & (DISTINCT_DATES - 1)]);
+        }
+        return sink;
+    }
+
+    private static long parseWithFormat(String[] dates, int count) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setLenient(false);
+        long sink = 0;
+        for (int i = 0; i < count; i++) {
+            sink += format.parse(dates[i & (DISTINCT_DATES - 1)]).getTime();
+        }
+        return sink;
+    }
+}
@@ -0,0 +1,187 @@
+package bench;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import manager.BatchEntry;
+import manager.TransactionManager;
+import util.DateValidator;
+
+/**
+ * Compares garbage collection pauses and heap use of the three storages
+ * of TransactionManager: objects, on-heap columns and off-heap rows. The
+ * ledger grows in steps, printing the heap in use after each step, then a
+ * mix of adds, lookups, edits and reports runs. Every collection during
+ * both phases is timed.
+ *
+ * The ledger file is a plain text file, so adds and edits are only made in
+ * memory and the journal's own heap use does not blur the comparison.
+ * Deletes are left out because they rewrite the whole text file. Each mode
+ * runs in its own JVM, started with the same JVM options.
+ *
+ * Usage: java -Xmx4g bench.GcPauseBenchmark [rows [objects|columns|off-heap]]
+ */
+public class GcPauseBenchmark {
+
+    private static final int DEFAULT_ROWS = 2_000_000;
+    private static final int STEPS = 4;
+    private static final int BATCH_SIZE = 1000;
+    private static final int WORK_ROUNDS = 200;
+    private static final int CHANGES_PER_ROUND = 20;
+    private static final String[] MODES = {"objects", "columns", "off-heap"};
+    private static final String[] CATEGORIES = {"Food", "Housing", "Transport", "Utilities", "Fun"};
+    private static final String[] SOURCES = {"Employer", "Bank", "Gift", "Freelance"};
+    private static final int FIRST_DAY = 18000;
+    private static final int DAY_SPAN = 3650;
+
+    // Collection count, total pause and longest pause, filled in by the GC listener
+    private static long collections;
+    private static long totalPauseMs;
+    private static long maxPauseMs;
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args Optional number of rows and mode
+     */
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        if (args.length > 1) {
+            run(args[1], rows);
+            return;
+        }
+        for (String mode : MODES) {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(GcPauseBenchmark.class.getName());
+            command.add(String.valueOf(rows));
+            command.add(mode);
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exitCode != 0) {
+                System.exit(exitCode);
+            }
+        }
+    }
+
+    private static void run(String mode, int rows) throws Exception {
+        listenForCollections();
+        File file = File.createTempFile("bench-gc", ".txt");
+        try {
+            TransactionManager manager = new TransactionManager(file.getPath(), false,
+                    TransactionManager.DEFAULT_RECENT_CAPACITY, false, TransactionManager.storageNamed(mode));
+            Random random = new Random(42);
+            long baseHeap = usedHeap();
+            StringBuilder growth = new StringBuilder();
+            int added = 0;
+            for (int step = 1; step <= STEPS; step++) {
+                for (; added < (long) rows * step / STEPS; added += BATCH_SIZE) {
+                    manager.addAll(batch(random, added, BATCH_SIZE));
+                }
+                growth.append(String.format(" %6.1f", (usedHeap() - baseHeap) / 1e6));
+            }
+
+            long start = System.nanoTime();
+            long sink = work(manager, random, added);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-8s %,d rows  heap MB after each quarter:%s  workload %,d ms"
+                              + "  GC: %d collections, %d ms paused, longest %d ms%n",
+                              mode, rows, growth, elapsedMs, collections, totalPauseMs, maxPauseMs);
+            if (sink == 42) {
+                System.out.println();
+            }
+            manager.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Run the mixed workload: each round adds a batch, looks up and edits
+     * random transactions, lists a month, and runs a category report and a
+     * range balance
+     */
+    private static long work(TransactionManager manager, Random random, int rows) throws Exception {
+        long sink = 0;
+        for (int round = 0; round < WORK_ROUNDS; round++) {
+            manager.addAll(batch(random, rows + round * BATCH_SIZE, BATCH_SIZE));
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                sink += manager.getTransactionById(1 + random.nextInt(rows)) != null ? 1 : 0;
+            }
+            for (int i = 0; i < CHANGES_PER_ROUND; i++) {
+                int id = 1 + random.nextInt(rows);
+                manager.editTransaction(id, day(random), 10, "Edited " + id);
+            }
+            Date from = day(random);
+            Date to = DateValidator.fromEpochDay(DateValidator.toEpochDay(from) + 30);
+            sink += manager.getTransactionsBetween(from, to).size();
+            sink += manager.getSpendingByCategory().size();
+            sink += (long) manager.calculateBalance(day(random), day(random));
+        }
+        return sink;
+    }
+
+    private static List<BatchEntry> batch(Random random, int first, int count) {
+        List<BatchEntry> entries = new ArrayList<>(count);
+        for (int row = first; row < first + count; row++) {
+            double amount = 1 + random.nextInt(100_000) / 100.0;
+            if (row % 4 == 0) {
+                entries.add(BatchEntry.income(day(random), amount, "Income " + row,
+                                              SOURCES[row % SOURCES.length], row % 8 == 0));
+            } else {
+                entries.add(BatchEntry.expense(day(random), amount, "Expense " + row,
+                                               CATEGORIES[row % CATEGORIES.length], row % 3 == 0));
+            }
+        }
+        return entries;
+    }
+
+    private static Date day(Random random) {
+        return DateValidator.fromEpochDay(FIRST_DAY + random.nextInt(DAY_SPAN));
+    }
+
+    /**
+     * Time every collection from the notifications the collectors send when
+     * they finish, except those the benchmark asks for to measure the heap
+     */
+    private static void listenForCollections() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    if (info.getGcCause().equals("System.gc()")) {
+                        return;
+                    }
+                    long pauseMs = info.getGcInfo().getDuration();
+                    synchronized (GcPauseBenchmark.class) {
+                        collections++;
+                        totalPauseMs += pauseMs;
+                        maxPauseMs = Math.max(maxPauseMs, pauseMs);
+                    }
+                }
+            }, null, null);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,263 @@
+package bench;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import app.LedgerServer;
+import manager.BatchEntry;
+import manager.ConcurrentTransactionManager;
+import model.Transaction;
+import util.DateValidator;
+import util.Json;
+
+/**
+ * Load generator for LedgerServer. Client threads send a fixed mix of
+ * requests (gets by ID, list pages, summaries, adds and edits) as fast as
+ * the server answers, then the requests per second and the p50, p99 and
+ * longest latency of each kind are printed. The first seconds are a warm-up
+ * and are not counted.
+ *
+ * Without a URL the benchmark starts a server on localhost itself, over a
+ * temporary journaled ledger seeded with the given number of rows. With a
+ * URL it seeds a running server through POST requests instead.
+ *
+ * Usage: java bench.HttpLoadBenchmark [clients [seconds [rows [url]]]]
+ */
+public class HttpLoadBenchmark {
+
+    private static final int DEFAULT_CLIENTS = 16;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_ROWS = 100_000;
+    private static final int WARMUP_SECONDS = 3;
+    private static final int SEED_BATCH = 1000;
+    // Rows seeded through HTTP when the server is not started here
+    private static final int MAX_REMOTE_SEED = 2000;
+
+    // Request kinds and the percentage of the mix each takes
+    private static final String[] KINDS = {"get", "list", "summary", "add", "edit"};
+    private static final int[] MIX = {60, 15, 10, 10, 5};
+    private static final String[] CATEGORIES = {"Food", "Housing", "Transport", "Utilities", "Fun"};
+    private static final String[] ORDERS = {"date", "amount", "id"};
+    private static final int FIRST_DAY = 18000;
+    private static final int DAY_SPAN = 3650;
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args Optional clients, seconds, rows and server URL
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROWS;
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        if (args.length > 3) {
+            String baseUrl = args[3];
+            run(client, baseUrl, seedRemote(client, baseUrl, Math.min(rows, MAX_REMOTE_SEED)), clients, seconds);
+            return;
+        }
+
+        File file = File.createTempFile("bench-http", ".txt");
+        ConcurrentTransactionManager manager = new ConcurrentTransactionManager(file.getPath(), true);
+        LedgerServer server = new LedgerServer(manager, 0);
+        try {
+            int[] ids = seedLocal(manager, rows);
+            server.start();
+            System.out.printf("Server on %s, %,d rows, %d clients%n",
+                              LedgerServer.usesVirtualThreads() ? "virtual threads" : "thread pool", rows, clients);
+            run(client, "http://localhost:" + server.getPort(), ids, clients, seconds);
+        } finally {
+            server.stop();
+            manager.close();
+            file.delete();
+            new File(file.getPath() + ".journal").delete();
+        }
+    }
+
+    private static int[] seedLocal(ConcurrentTransactionManager manager, int rows) {
+        Random random = new Random(42);
+        int[] ids = new int[rows];
+        for (int start = 0; start < rows; start += SEED_BATCH) {
+            List<BatchEntry> batch = new ArrayList<>();
+            for (int i = start; i < Math.min(rows, start + SEED_BATCH); i++) {
+                batch.add(BatchEntry.expense(day(random), 1 + random.nextInt(50_000) / 100.0, "Seed " + i,
+                                             CATEGORIES[i % CATEGORIES.length], i % 3 == 0));
+            }
+            List<Transaction> added = manager.addAll(batch).getAdded();
+            for (int i = 0; i < added.size(); i++) {
+                ids[start + i] = added.get(i).getId();
+            }
+        }
+        return ids;
+    }
+
+    private static int[] seedRemote(HttpClient client, String baseUrl, int rows) throws Exception {
+        Random random = new Random(42);
+        int[] ids = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            HttpResponse<String> response = client.send(addRequest(baseUrl, random, i),
+                                                        HttpResponse.BodyHandlers.ofString());
+            ids[i] = Integer.parseInt(Json.parseObject(response.body()).get("id"));
+        }
+        return ids;
+    }
+
+    /**
+     * Run the clients through the warm-up and the measured seconds, then
+     * print the results
+     */
+    private static void run(HttpClient client, String baseUrl, int[] ids, int clients, int seconds)
+            throws Exception {
+        long measureFrom = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+        long measureTo = measureFrom + seconds * 1_000_000_000L;
+        List<long[][]> results = new CopyOnWriteArrayList<>();
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(clients);
+
+        for (int c = 0; c < clients; c++) {
+            Random random = new Random(c);
+            Thread thread = new Thread(() -> {
+                try {
+                    results.add(runClient(client, baseUrl, ids, random, measureFrom, measureTo));
+                } catch (Exception e) {
+                    failures.add(e);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+
+        long[] all = new long[0];
+        System.out.printf("%-8s %10s %10s %10s %10s%n", "request", "count", "p50 us", "p99 us", "max us");
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            long[] latencies = new long[0];
+            for (long[][] result : results) {
+                latencies = concat(latencies, result[kind]);
+            }
+            all = concat(all, latencies);
+            print(KINDS[kind], latencies);
+        }
+        print("all", all);
+        System.out.printf("%,.0f requests/s over %d s%n", all.length / (double) seconds, seconds);
+    }
+
+    /**
+     * Send requests until the end of the run
+     *
+     * @return Latencies in nanoseconds of the measured requests, one array per kind
+     */
+    private static long[][] runClient(HttpClient client, String baseUrl, int[] ids, Random random,
+                                      long measureFrom, long measureTo) throws Exception {
+        long[][] latencies = new long[KINDS.length][1024];
+        int[] counts = new int[KINDS.length];
+        int added = 0;
+        long now;
+        while ((now = System.nanoTime()) < measureTo) {
+            int kind = pickKind(random);
+            HttpRequest request = request(kind, baseUrl, ids, random, added++);
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            long end = System.nanoTime();
+            if (response.statusCode() >= 300) {
+                throw new IllegalStateException(KINDS[kind] + " returned " + response.statusCode()
+                                                + ": " + response.body());
+            }
+            if (now >= measureFrom) {
+                if (counts[kind] == latencies[kind].length) {
+                    latencies[kind] = Arrays.copyOf(latencies[kind], counts[kind] * 2);
+                }
+                latencies[kind][counts[kind]++] = end - now;
+            }
+        }
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            latencies[kind] = Arrays.copyOf(latencies[kind], counts[kind]);
+        }
+        return latencies;
+    }
+
+    private static int pickKind(Random random) {
+        int roll = random.nextInt(100);
+        for (int kind = 0; kind < MIX.length; kind++) {
+            roll -= MIX[kind];
+            if (roll < 0) {
+                return kind;
+            }
+        }
+        return 0;
+    }
+
+    private static HttpRequest request(int kind, String baseUrl, int[] ids, Random random, int sequence) {
+        int id = ids[random.nextInt(ids.length)];
+        switch (KINDS[kind]) {
+            case "get":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/transactions/" + id)).build();
+            case "list":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/transactions?order="
+                        + ORDERS[random.nextInt(ORDERS.length)] + "&desc=" + random.nextBoolean()
+                        + "&page=" + (1 + random.nextInt(5)) + "&size=20")).build();
+            case "summary":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/summary?category="
+                        + CATEGORIES[random.nextInt(CATEGORIES.length)])).build();
+            case "add":
+                return addRequest(baseUrl, random, sequence);
+            default:
+                String body = "{\"amount\":" + (1 + random.nextInt(50_000) / 100.0)
+                              + ",\"description\":\"Edited " + sequence + "\"}";
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/transactions/" + id))
+                                  .PUT(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+    }
+
+    private static HttpRequest addRequest(String baseUrl, Random random, int sequence) {
+        String body = "{\"type\":\"expense\",\"date\":\"" + DateValidator.formatDate(day(random))
+                      + "\",\"amount\":" + (1 + random.nextInt(50_000) / 100.0)
+                      + ",\"description\":\"Load " + sequence + "\",\"category\":\""
+                      + CATEGORIES[random.nextInt(CATEGORIES.length)] + "\",\"taxDeductible\":false}";
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/transactions"))
+                          .header("Content-Type", "application/json")
+                          .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private static void print(String name, long[] latencies) {
+        if (latencies.length == 0) {
+            System.out.printf("%-8s %10d%n", name, 0);
+            return;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-8s %,10d %10.0f %10.0f %10.0f%n", name, latencies.length,
+                          percentile(latencies, 50) / 1000.0, percentile(latencies, 99) / 1000.0,
+                          latencies[latencies.length - 1] / 1000.0);
+    }
+
+    // Nearest-rank percentile of sorted values
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+
+    private static Date day(Random random) {
+        return DateValidator.fromEpochDay(FIRST_DAY + random.nextInt(DAY_SPAN));
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+
+import exceptions.InvalidTransactionException;
+import manager.TransactionManager;
+
+/**
+ * Measures ID lookup and edit latency in TransactionManager for growing ledger sizes.
+ * Latency per operation should stay flat as the ledger grows.
+ *
+ * Usage: java bench.IdLookupBenchmark [size ...]
+ * (10M rows needs a large heap, e.g. -Xmx4g)
+ */
+public class IdLookupBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000, 10_000_000};
+    private static final int OPERATIONS = 1_000_000;
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args Optional ledger sizes to test
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%-12s %-16s %-16s%n", "size", "lookup ns/op", "edit ns/op");
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) throws IOException, InvalidTransactionException {
+        File file = File.createTempFile("id-bench", ".txt");
+        file.deleteOnExit();
+        TransactionManager manager = new TransactionManager(file.getPath());
+
+        Date date = new Date();
+        int firstId = -1;
+        for (int i = 0; i < size; i++) {
+            int id = manager.addExpense(date, 10.0 + (i % 100), "Row " + i, "Bench", i % 2 == 0).getId();
+            if (firstId < 0) {
+                firstId = id;
+            }
+        }
+
+        Random random = new Random(42);
+        int[] ids = new int[OPERATIONS];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = firstId + random.nextInt(size);
+        }
+
+        // Warm up both paths before measuring
+        long sink = 0;
+        for (int i = 0; i < ids.length; i++) {
+            sink += manager.getTransactionById(ids[i]).getId();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ids.length; i++) {
+            sink += manager.getTransactionById(ids[i]).getId();
+        }
+        double lookupNs = (System.nanoTime() - start) / (double) ids.length;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ids.length; i++) {
+            if (manager.editTransaction(ids[i], date, 20.0, "Edited")) {
+                sink++;
+            }
+        }
+        double editNs = (System.nanoTime() - start) / (double) ids.length;
+
+        System.out.printf("%-12d %-16.1f %-16.1f%n", size, lookupNs, editNs);
+        if (sink == 42) {
+            System.out.println();
+        }
+        file.delete();
+    }
+}
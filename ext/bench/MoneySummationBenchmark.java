@@ -0,0 +1,73 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * Compares summing amounts as long cents with the old double path.
+ * Reports throughput in millions of values summed per second.
+ *
+ * Usage: java bench.MoneySummationBenchmark [size]
+ */
+public class MoneySummationBenchmark {
+
+    private static final int DEFAULT_SIZE = 10_000_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args Optional number of amounts to sum
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+
+        Random random = new Random(42);
+        long[] cents = new long[size];
+        double[] amounts = new double[size];
+        for (int i = 0; i < size; i++) {
+            cents[i] = 1 + random.nextInt(1_000_000);
+            amounts[i] = cents[i] / 100.0;
+        }
+
+        long exact = 0;
+        double drifting = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            exact = sumCents(cents);
+            drifting = sumDoubles(amounts);
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            exact = sumCents(cents);
+        }
+        long centsNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            drifting = sumDoubles(amounts);
+        }
+        long doubleNs = System.nanoTime() - start;
+
+        double values = (double) size * MEASURED_ROUNDS;
+        System.out.printf("long cents:   %8.1f M values/s  total=%d cents%n", values / centsNs * 1000, exact);
+        System.out.printf("double:       %8.1f M values/s  total=%.6f%n", values / doubleNs * 1000, drifting);
+        System.out.printf("double drift: %.6f cents%n", drifting * 100 - exact);
+    }
+
+    private static long sumCents(long[] cents) {
+        long total = 0;
+        for (int i = 0; i < cents.length; i++) {
+            total += cents[i];
+        }
+        return total;
+    }
+
+    private static double sumDoubles(double[] amounts) {
+        double total = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            total += amounts[i];
+        }
+        return total;
+    }
+}
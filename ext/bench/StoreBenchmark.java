@@ -0,0 +1,119 @@
+package bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import manager.BatchEntry;
+import manager.TransactionManager;
+import util.DateValidator;
+
+/**
+ * Compares the storages of TransactionManager (one object per transaction,
+ * and columns on and off the heap): heap bytes per row and the time of
+ * full-ledger reports.
+ *
+ * Usage: java -Xmx4g bench.StoreBenchmark [rows]
+ */
+public class StoreBenchmark {
+
+    private static final int DEFAULT_ROWS = 1_000_000;
+    private static final int BATCH_SIZE = 1000;
+    private static final String[] CATEGORIES = {"Food", "Housing", "Transport", "Utilities", "Fun"};
+    private static final String[] SOURCES = {"Employer", "Bank", "Gift", "Freelance"};
+    private static final int FIRST_DAY = 18000;
+    private static final int DAY_SPAN = 3650;
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args Optional number of rows
+     */
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        Date from = DateValidator.fromEpochDay(FIRST_DAY + DAY_SPAN / 2);
+        Date to = DateValidator.fromEpochDay(FIRST_DAY + DAY_SPAN / 2 + 364);
+
+        // Each manager is built in its own method so it is unreachable afterwards
+        benchmark("Objects", TransactionManager.OBJECT_STORAGE, rows, from, to);
+        benchmark("Columns", TransactionManager.COLUMN_STORAGE, rows, from, to);
+        benchmark("Off-heap columns", TransactionManager.OFF_HEAP_STORAGE, rows, from, to);
+    }
+
+    private static void benchmark(String name, int storage, int rows, Date from, Date to) throws Exception {
+        File file = File.createTempFile("bench-store", ".txt");
+        try {
+            long before = usedHeap();
+            TransactionManager manager = new TransactionManager(
+                    file.getPath(), false, TransactionManager.DEFAULT_RECENT_CAPACITY, false, storage);
+            addRows(manager, rows);
+            double bytesPerRow = (usedHeap() - before) / (double) rows;
+            report(name, bytesPerRow,
+                   time(ops -> (long) manager.calculateBalance(from, to)),
+                   time(ops -> manager.verifyTotals() ? 1 : 0),
+                   time(ops -> manager.getSpendingByCategory().size()),
+                   time(ops -> manager.getTransactionsBetween(from, to).size()));
+            manager.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void addRows(TransactionManager manager, int rows) {
+        Random random = new Random(42);
+        for (int from = 0; from < rows; from += BATCH_SIZE) {
+            manager.addAll(batch(random, from, Math.min(from + BATCH_SIZE, rows)));
+        }
+    }
+
+    private static List<BatchEntry> batch(Random random, int from, int to) {
+        List<BatchEntry> entries = new ArrayList<>(to - from);
+        for (int row = from; row < to; row++) {
+            Date date = DateValidator.fromEpochDay(FIRST_DAY + random.nextInt(DAY_SPAN));
+            double amount = 1 + random.nextInt(100_000) / 100.0;
+            if (row % 4 == 0) {
+                entries.add(BatchEntry.income(date, amount, "Income " + row,
+                                              SOURCES[row % SOURCES.length], row % 8 == 0));
+            } else {
+                entries.add(BatchEntry.expense(date, amount, "Expense " + row,
+                                               CATEGORIES[row % CATEGORIES.length], row % 3 == 0));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Best time of several runs, in milliseconds
+     */
+    private static double time(BenchmarkRunner.Task task) throws Exception {
+        long best = Long.MAX_VALUE;
+        long sink = 0;
+        for (int i = 0; i < 30; i++) {
+            long start = System.nanoTime();
+            sink += task.run(1);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        return best / 1e6;
+    }
+
+    private static void report(String name, double bytesPerRow, double rangeMs, double verifyMs, double groupMs,
+                               double listMs) {
+        System.out.printf("%-37s %7.1f heap bytes/row  year balance %8.2f ms  full scan %8.2f ms"
+                          + "  by category %8.2f ms  year list %8.2f ms%n",
+                          name, bytesPerRow, rangeMs, verifyMs, groupMs, listMs);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
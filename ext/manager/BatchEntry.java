@@ -0,0 +1,85 @@
+package manager;
+
+import java.util.Date;
+
+/**
+ * Data for one transaction in a batch passed to TransactionManager.addAll
+ */
+public class BatchEntry {
+    private boolean income;
+    private Date date;
+    private double amount;
+    private String description;
+    private String group;
+    private boolean taxFlag;
+
+    private BatchEntry(boolean income, Date date, double amount, String description,
+                       String group, boolean taxFlag) {
+        this.income = income;
+        this.date = date;
+        this.amount = amount;
+        this.description = description;
+        this.group = group;
+        this.taxFlag = taxFlag;
+    }
+
+    /**
+     * Create an expense entry
+     *
+     * @param date Transaction date
+     * @param amount Transaction amount
+     * @param description Transaction description
+     * @param category Expense category
+     * @param isTaxDeductible Whether expense is tax deductible
+     * @return The entry
+     */
+    public static BatchEntry expense(Date date, double amount, String description,
+                                     String category, boolean isTaxDeductible) {
+        return new BatchEntry(false, date, amount, description, category, isTaxDeductible);
+    }
+
+    /**
+     * Create an income entry
+     *
+     * @param date Transaction date
+     * @param amount Transaction amount
+     * @param description Transaction description
+     * @param source Income source
+     * @param isTaxable Whether income is taxable
+     * @return The entry
+     */
+    public static BatchEntry income(Date date, double amount, String description,
+                                    String source, boolean isTaxable) {
+        return new BatchEntry(true, date, amount, description, source, isTaxable);
+    }
+
+    public boolean isIncome() {
+        return income;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Category of an expense or source of an income
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * Tax deductible flag of an expense or taxable flag of an income
+     */
+    public boolean getTaxFlag() {
+        return taxFlag;
+    }
+}
@@ -0,0 +1,56 @@
+package manager;
+
+import java.util.List;
+
+import exceptions.InvalidTransactionException;
+import model.Transaction;
+
+/**
+ * Outcome of TransactionManager.addAll: the transactions that were added
+ * and, for every rejected row, why it was rejected
+ */
+public class BatchResult {
+    private List<Transaction> added;
+    private InvalidTransactionException[] errors;
+    private int errorCount;
+
+    /**
+     * Constructor
+     *
+     * @param added Transactions that were added, in batch order
+     * @param errors Error per batch row, null for rows that were added
+     * @param errorCount Number of non-null errors
+     */
+    BatchResult(List<Transaction> added, InvalidTransactionException[] errors, int errorCount) {
+        this.added = added;
+        this.errors = errors;
+        this.errorCount = errorCount;
+    }
+
+    /**
+     * Get the transactions that were added
+     *
+     * @return Added transactions, in batch order
+     */
+    public List<Transaction> getAdded() {
+        return added;
+    }
+
+    /**
+     * Get the error for a batch row
+     *
+     * @param row Index of the row in the batch
+     * @return The error, or null if the row was added
+     */
+    public InvalidTransactionException getError(int row) {
+        return errors[row];
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+}
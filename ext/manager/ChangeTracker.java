@@ -0,0 +1,208 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.Transaction;
+
+/**
+ * Tracks which transactions changed since the ledger was loaded or last
+ * saved. A modification counter tells whether anything changed at all, and
+ * dirty sets of added, edited and deleted transactions hold the delta a
+ * save has to write.
+ *
+ * A transaction is in at most one set: editing an added one leaves it
+ * added, and deleting an added one forgets it. Once the delta grows past
+ * its limit the sets are dropped and only a full save can catch up, so a
+ * large batch never holds a second copy of the ledger in memory. Methods
+ * are synchronized so a save finishing on another thread can mark the
+ * changes saved.
+ */
+class ChangeTracker {
+    // Changed transactions kept before falling back to a full save
+    static final int DEFAULT_MAX_DELTA = 10_000;
+
+    private final boolean keepDelta;
+    private final int maxDelta;
+    private final Map<Integer, Transaction> added = new LinkedHashMap<>();
+    private final Map<Integer, Transaction> edited = new LinkedHashMap<>();
+    private final Set<Integer> deleted = new LinkedHashSet<>();
+    private long modCount;
+    private long savedModCount;
+    // True once the delta no longer describes every change
+    private boolean overflowed;
+
+    /**
+     * Constructor
+     *
+     * @param keepDelta true to keep the dirty sets, false to only count changes
+     *                  (when every change is already written as it is made)
+     * @param maxDelta Changed transactions kept before falling back to a full save
+     */
+    ChangeTracker(boolean keepDelta, int maxDelta) {
+        this.keepDelta = keepDelta;
+        this.maxDelta = maxDelta;
+    }
+
+    /**
+     * Record an added transaction
+     *
+     * @param transaction The added transaction
+     */
+    synchronized void added(Transaction transaction) {
+        modCount++;
+        if (tracking()) {
+            added.put(transaction.getId(), transaction);
+            checkSize();
+        }
+    }
+
+    /**
+     * Record a batch of added transactions
+     *
+     * @param batch The added transactions
+     */
+    synchronized void addedAll(List<Transaction> batch) {
+        modCount++;
+        if (tracking()) {
+            if (size() + batch.size() > maxDelta) {
+                overflow();
+                return;
+            }
+            for (Transaction transaction : batch) {
+                added.put(transaction.getId(), transaction);
+            }
+        }
+    }
+
+    /**
+     * Record an edited transaction
+     *
+     * @param transaction The transaction after the edit
+     */
+    synchronized void edited(Transaction transaction) {
+        modCount++;
+        // An unsaved add is written with its new values. The storage may
+        // hand out a copy, so the recorded object is replaced.
+        if (tracking() && added.replace(transaction.getId(), transaction) == null) {
+            edited.put(transaction.getId(), transaction);
+            checkSize();
+        }
+    }
+
+    /**
+     * Record a deleted transaction
+     *
+     * @param id ID of the deleted transaction
+     */
+    synchronized void deleted(int id) {
+        modCount++;
+        if (tracking() && added.remove(id) == null) {
+            edited.remove(id);
+            deleted.add(id);
+            checkSize();
+        }
+    }
+
+    /**
+     * Check whether anything changed since the last save
+     *
+     * @return true if there are unsaved changes
+     */
+    synchronized boolean isDirty() {
+        return modCount != savedModCount;
+    }
+
+    /**
+     * Check whether the dirty sets hold every unsaved change
+     *
+     * @return true if saving the delta is enough
+     */
+    synchronized boolean hasDelta() {
+        return keepDelta && !overflowed;
+    }
+
+    /**
+     * Get the number of changes made since the tracker was created
+     *
+     * @return Modification count
+     */
+    synchronized long getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Get the transactions added since the last save
+     *
+     * @return Added transactions, in the order they were added
+     */
+    synchronized List<Transaction> getAdded() {
+        return new ArrayList<>(added.values());
+    }
+
+    /**
+     * Get the transactions edited since the last save, not counting added ones
+     *
+     * @return Edited transactions, in the order they were first edited
+     */
+    synchronized List<Transaction> getEdited() {
+        return new ArrayList<>(edited.values());
+    }
+
+    /**
+     * Get the IDs deleted since the last save, not counting added ones
+     *
+     * @return Deleted IDs, in the order they were deleted
+     */
+    synchronized List<Integer> getDeleted() {
+        return new ArrayList<>(deleted);
+    }
+
+    /**
+     * Mark the changes up to a modification count as saved. Does nothing
+     * if more changes were made since, so they are saved next time.
+     *
+     * @param savedCount Modification count read before the save started
+     */
+    synchronized void markSaved(long savedCount) {
+        if (savedCount == modCount) {
+            clear();
+        }
+    }
+
+    /**
+     * Forget every change, after loading or saving everything
+     */
+    synchronized void clear() {
+        added.clear();
+        edited.clear();
+        deleted.clear();
+        overflowed = false;
+        savedModCount = modCount;
+    }
+
+    private boolean tracking() {
+        return keepDelta && !overflowed;
+    }
+
+    private int size() {
+        return added.size() + edited.size() + deleted.size();
+    }
+
+    private void checkSize() {
+        if (size() > maxDelta) {
+            overflow();
+        }
+    }
+
+    private void overflow() {
+        overflowed = true;
+        added.clear();
+        edited.clear();
+        deleted.clear();
+    }
+}
@@ -0,0 +1,341 @@
+package manager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import model.Expense;
+import model.Income;
+import util.IntIntHashMap;
+import util.Money;
+import util.StringDictionary;
+
+/**
+ * Structure-of-arrays storage for transactions: one primitive array per
+ * field instead of one object per transaction. Category and source names
+ * are dictionary coded, and descriptions are kept as UTF-8 bytes in one
+ * shared array. Deleted rows are only marked, and are squeezed out in
+ * bulk once they make up half of the rows.
+ */
+class ColumnStore implements TransactionStore {
+    // Flag bit of deleted rows, next to INCOME and TAX_FLAG
+    private static final byte DELETED = 4;
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Beyond any date DateValidator accepts (year 9999 is day 2932896)
+    private static final int MAX_EPOCH_DAY = 1 << 29;
+    // Garbage (deleted rows, replaced descriptions) is never squeezed out below this size
+    private static final int MIN_COMPACTION = 1024;
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private int[] groups = new int[INITIAL_CAPACITY];
+    // Descriptions are stored as a varint byte length followed by the UTF-8 bytes
+    private int[] textOffsets = new int[INITIAL_CAPACITY];
+    private byte[] text = new byte[INITIAL_CAPACITY * 16];
+    private int textSize;
+    private int deadTextBytes;
+
+    private int rowCount;
+    private int liveCount;
+    // While IDs arrive in ascending order rows are found by binary search;
+    // the hash map is only built once an ID arrives out of order
+    private boolean idsAscending = true;
+    private IntIntHashMap rowsById;
+    private StringDictionary groupNames = new StringDictionary();
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int size() {
+        return liveCount;
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return (flags[row] & DELETED) == 0;
+    }
+
+    @Override
+    public int rowOf(int id) {
+        if (!idsAscending) {
+            return rowsById.get(id);
+        }
+        int row = Arrays.binarySearch(ids, 0, rowCount, id);
+        return row >= 0 && isLive(row) ? row : IntIntHashMap.NOT_FOUND;
+    }
+
+    @Override
+    public int add(int id, int epochDay, long amountCents, byte rowFlags, String description, String group) {
+        ensureCapacity(rowCount + 1);
+        if (idsAscending && rowCount > 0 && id <= ids[rowCount - 1]) {
+            buildIdMap();
+        }
+        int row = rowCount++;
+        ids[row] = id;
+        days[row] = epochDay;
+        cents[row] = amountCents;
+        flags[row] = rowFlags;
+        groups[row] = groupNames.intern(group);
+        storeText(row, description);
+        liveCount++;
+        if (!idsAscending) {
+            rowsById.put(id, row);
+        }
+        return row;
+    }
+
+    @Override
+    public void ensureCapacity(int rows) {
+        if (rows <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(rows, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        days = Arrays.copyOf(days, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        groups = Arrays.copyOf(groups, capacity);
+        textOffsets = Arrays.copyOf(textOffsets, capacity);
+        if (!idsAscending) {
+            rowsById.ensureCapacity(capacity);
+        }
+    }
+
+    @Override
+    public boolean remove(int id) {
+        int row = rowOf(id);
+        if (row == IntIntHashMap.NOT_FOUND) {
+            return false;
+        }
+        if (!idsAscending) {
+            rowsById.remove(id);
+        }
+        flags[row] |= DELETED;
+        deadTextBytes += storedTextSize(row);
+        liveCount--;
+        maybeCompact();
+        return true;
+    }
+
+    @Override
+    public void setEpochDay(int row, int epochDay) {
+        days[row] = epochDay;
+    }
+
+    @Override
+    public void setAmountCents(int row, long amountCents) {
+        cents[row] = amountCents;
+    }
+
+    @Override
+    public void setDescription(int row, String description) {
+        deadTextBytes += storedTextSize(row);
+        storeText(row, description);
+        maybeCompact();
+    }
+
+    @Override
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        return days[row];
+    }
+
+    @Override
+    public long getAmountCents(int row) {
+        return cents[row];
+    }
+
+    @Override
+    public boolean isIncome(int row) {
+        return (flags[row] & INCOME) != 0;
+    }
+
+    @Override
+    public boolean hasTaxFlag(int row) {
+        return (flags[row] & TAX_FLAG) != 0;
+    }
+
+    @Override
+    public String getDescription(int row) {
+        int offset = textOffsets[row];
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = text[offset++];
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return new String(text, offset, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getGroupCode(int row) {
+        return groups[row];
+    }
+
+    @Override
+    public String groupName(int code) {
+        return groupNames.get(code);
+    }
+
+    @Override
+    public int groupCode(String name) {
+        return groupNames.lookup(name);
+    }
+
+    @Override
+    public int groupCount() {
+        return groupNames.size();
+    }
+
+    @Override
+    public long[] sumTotals(int fromDay, int toDay) {
+        // Clamped so the range checks below cannot overflow
+        fromDay = Math.max(fromDay, -MAX_EPOCH_DAY);
+        toDay = Math.min(toDay, MAX_EPOCH_DAY);
+        long income = 0;
+        long expenses = 0;
+        long taxDeductions = 0;
+        long incomeTax = 0;
+        // Rows are selected with bit masks instead of branches, because
+        // rows in and out of range are mixed and branches would mispredict
+        for (int row = 0; row < rowCount; row++) {
+            int day = days[row];
+            int rowFlags = flags[row];
+            long counted = ~((long) ((day - fromDay) | (toDay - day) | -(rowFlags & DELETED)) >> 63);
+            long isIncome = -(long) (rowFlags & INCOME);
+            long taxed = -(long) ((rowFlags & TAX_FLAG) >> 1);
+            long amount = cents[row] & counted;
+            income += amount & isIncome;
+            expenses += amount & ~isIncome;
+            int rate = (rowFlags & INCOME) != 0 ? Income.INCOME_TAX_RATE_PERCENT : Expense.TAX_RATE_PERCENT;
+            long tax = Money.percentOf(amount & taxed, rate);
+            incomeTax += tax & isIncome;
+            taxDeductions += tax & ~isIncome;
+        }
+        long[] totals = new long[4];
+        totals[TransactionManager.INCOME] = income;
+        totals[TransactionManager.EXPENSES] = expenses;
+        totals[TransactionManager.TAX_DEDUCTIONS] = taxDeductions;
+        totals[TransactionManager.INCOME_TAX] = incomeTax;
+        return totals;
+    }
+
+    @Override
+    public void sumGroups(boolean income, long[] sums, int[] counts) {
+        byte wanted = income ? INCOME : 0;
+        for (int row = 0; row < rowCount; row++) {
+            if ((flags[row] & (INCOME | DELETED)) == wanted) {
+                sums[groups[row]] += cents[row];
+                counts[groups[row]]++;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        rowCount = 0;
+        liveCount = 0;
+        textSize = 0;
+        deadTextBytes = 0;
+        idsAscending = true;
+        rowsById = null;
+        groupNames.clear();
+    }
+
+    private void storeText(int row, String description) {
+        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        int needed = textSize + 5 + bytes.length;
+        if (needed > text.length) {
+            long grown = Math.max((long) needed, (long) text.length + (text.length >> 1));
+            text = Arrays.copyOf(text, (int) Math.min(grown, Integer.MAX_VALUE - 8));
+        }
+        textOffsets[row] = textSize;
+        int length = bytes.length;
+        while (length >= 0x80) {
+            text[textSize++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        text[textSize++] = (byte) length;
+        System.arraycopy(bytes, 0, text, textSize, bytes.length);
+        textSize += bytes.length;
+    }
+
+    /**
+     * Get the bytes a row's description takes in the text array, length prefix included
+     */
+    private int storedTextSize(int row) {
+        int offset = textOffsets[row];
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = text[offset++];
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return offset - textOffsets[row] + length;
+    }
+
+    /**
+     * Switch from binary search to the hash map for finding rows by ID
+     */
+    private void buildIdMap() {
+        idsAscending = false;
+        rowsById = new IntIntHashMap(ids.length);
+        for (int row = 0; row < rowCount; row++) {
+            if (isLive(row)) {
+                rowsById.put(ids[row], row);
+            }
+        }
+    }
+
+    /**
+     * Squeeze out deleted rows and replaced descriptions once they take up
+     * as much room as the live data. Row numbers change, IDs do not.
+     */
+    private void maybeCompact() {
+        int deadRows = rowCount - liveCount;
+        boolean rowsWasted = deadRows >= MIN_COMPACTION && deadRows >= liveCount;
+        boolean textWasted = deadTextBytes >= MIN_COMPACTION * 16 && deadTextBytes >= textSize - deadTextBytes;
+        if (!rowsWasted && !textWasted) {
+            return;
+        }
+
+        byte[] liveText = new byte[Math.max(textSize - deadTextBytes, INITIAL_CAPACITY)];
+        int liveTextSize = 0;
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if ((flags[row] & DELETED) != 0) {
+                continue;
+            }
+            int stored = storedTextSize(row);
+            System.arraycopy(text, textOffsets[row], liveText, liveTextSize, stored);
+            ids[live] = ids[row];
+            days[live] = days[row];
+            cents[live] = cents[row];
+            flags[live] = flags[row];
+            groups[live] = groups[row];
+            textOffsets[live] = liveTextSize;
+            liveTextSize += stored;
+            if (!idsAscending) {
+                rowsById.put(ids[live], live);
+            }
+            live++;
+        }
+        rowCount = live;
+        text = liveText;
+        textSize = liveTextSize;
+        deadTextBytes = 0;
+    }
+}
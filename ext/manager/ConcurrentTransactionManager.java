@@ -0,0 +1,502 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import exceptions.InvalidTransactionException;
+import model.Transaction;
+
+/**
+ * Thread-safe variant of TransactionManager for callers that add and read
+ * transactions from several threads at once.
+ *
+ * Validation, object creation and ID allocation (an atomic counter in
+ * Transaction) run without holding any lock, so many threads can prepare
+ * transactions in parallel. Adds write their journal record without the
+ * write lock too, so readers never wait on journal I/O; only publishing to
+ * the storage, indexes and running totals is done under the write lock.
+ * Edits and deletes hold it throughout. Reads either take the read lock
+ * for O(1) aggregates or return a snapshot copy. Saves hold the read lock,
+ * so writers wait, plus a save lock so two saves never run at once.
+ */
+public class ConcurrentTransactionManager extends TransactionManager {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Adds hold the read side from their journal record until they are
+    // published, so loads and close, which take the write side, never see
+    // an add that is journaled but not in the ledger. Always taken first.
+    private final ReadWriteLock ingestLock = new ReentrantReadWriteLock();
+    // Saves share temporary files and the change tracker. Always taken
+    // after the read or write lock, never before.
+    private final ReentrantLock saveLock = new ReentrantLock();
+
+    /**
+     * Constructor
+     *
+     * @param filePath Path to the transactions file
+     */
+    public ConcurrentTransactionManager(String filePath) {
+        super(filePath);
+    }
+
+    /**
+     * Constructor with a storage mode
+     *
+     * @param filePath Path to the transactions file
+     * @param journaled true to append each change to a journal instead of
+     *                  rewriting the whole file
+     */
+    public ConcurrentTransactionManager(String filePath, boolean journaled) {
+        super(filePath, journaled);
+    }
+
+    /**
+     * Constructor with a storage mode and the number of recent transactions to keep
+     *
+     * @param filePath Path to the transactions file
+     * @param journaled true to append each change to a journal instead of
+     *                  rewriting the whole file
+     * @param recentCapacity Number of transactions returned by getRecentTransactions
+     */
+    public ConcurrentTransactionManager(String filePath, boolean journaled, int recentCapacity) {
+        super(filePath, journaled, recentCapacity);
+    }
+
+    /**
+     * Constructor with a storage mode, the number of recent transactions to
+     * keep and where the transactions are kept
+     *
+     * @param filePath Path to the transactions file
+     * @param journaled true to append each change to a journal instead of
+     *                  rewriting the whole file
+     * @param recentCapacity Number of transactions returned by getRecentTransactions
+     * @param storage OBJECT_STORAGE, COLUMN_STORAGE or OFF_HEAP_STORAGE
+     * @throws IllegalArgumentException If the storage is unknown
+     */
+    public ConcurrentTransactionManager(String filePath, boolean journaled, int recentCapacity, int storage) {
+        super(filePath, journaled, recentCapacity, false, storage);
+    }
+
+    @Override
+    public void loadTransactions() {
+        ingestLock.writeLock().lock();
+        lock.writeLock().lock();
+        try {
+            super.loadTransactions();
+        } finally {
+            lock.writeLock().unlock();
+            ingestLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean saveTransactions() {
+        // Writers wait while the list is written out; readers do not.
+        // Other saves wait for the save lock.
+        lock.readLock().lock();
+        saveLock.lock();
+        try {
+            return super.saveTransactions();
+        } finally {
+            saveLock.unlock();
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        ingestLock.writeLock().lock();
+        lock.writeLock().lock();
+        try {
+            super.close();
+        } finally {
+            lock.writeLock().unlock();
+            ingestLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the journal records under the ingest lock only; the file
+     * handler serializes them
+     */
+    @Override
+    protected void addTransactions(List<Transaction> batch) {
+        ingestLock.readLock().lock();
+        try {
+            super.addTransactions(batch);
+        } finally {
+            ingestLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void publishAll(List<Transaction> batch) {
+        lock.writeLock().lock();
+        try {
+            super.publishAll(batch);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Writes the journal record under the ingest lock only; the file
+     * handler serializes it
+     */
+    @Override
+    protected void addTransaction(Transaction transaction) {
+        ingestLock.readLock().lock();
+        try {
+            super.addTransaction(transaction);
+        } finally {
+            ingestLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void publish(Transaction transaction) {
+        lock.writeLock().lock();
+        try {
+            super.publish(transaction);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteTransaction(int id) {
+        lock.writeLock().lock();
+        try {
+            return super.deleteTransaction(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean editTransaction(int id, Date date, double amount, String description)
+            throws InvalidTransactionException {
+        lock.writeLock().lock();
+        try {
+            return super.editTransaction(id, date, amount, description);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Transaction getTransactionById(int id) {
+        lock.readLock().lock();
+        try {
+            return super.getTransactionById(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a snapshot of all transactions
+     *
+     * @return Copy of the transaction list, safe to iterate while others write
+     */
+    @Override
+    public ArrayList<Transaction> getAllTransactions() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(super.getAllTransactions());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return super.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> getTransactionsBetween(Date from, Date to) {
+        lock.readLock().lock();
+        try {
+            return super.getTransactionsBetween(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByCategory(String category) {
+        lock.readLock().lock();
+        try {
+            return super.getTransactionsByCategory(category);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> getTransactionsBySource(String source) {
+        lock.readLock().lock();
+        try {
+            return super.getTransactionsBySource(source);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GroupTotal> getSpendingByCategory() {
+        lock.readLock().lock();
+        try {
+            return super.getSpendingByCategory();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GroupTotal> getIncomeBySource() {
+        lock.readLock().lock();
+        try {
+            return super.getIncomeBySource();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a snapshot of the recent transactions
+     *
+     * @return Read-only copy of the recent transactions, newest first
+     */
+    @Override
+    public List<Transaction> getRecentTransactions() {
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(super.getRecentTransactions()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long calculateTotalIncomeCents() {
+        lock.readLock().lock();
+        try {
+            return super.calculateTotalIncomeCents();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long calculateTotalExpensesCents() {
+        lock.readLock().lock();
+        try {
+            return super.calculateTotalExpensesCents();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long calculateBalanceCents() {
+        // Hold the lock across both totals so the balance is consistent
+        lock.readLock().lock();
+        try {
+            return super.calculateBalanceCents();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long calculateTaxDeductionsCents() {
+        lock.readLock().lock();
+        try {
+            return super.calculateTaxDeductionsCents();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long calculateIncomeTaxCents() {
+        lock.readLock().lock();
+        try {
+            return super.calculateIncomeTaxCents();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TransactionCursor openCursor(int order, boolean descending, Predicate<Transaction> filter,
+                                        int pageSize) {
+        lock.readLock().lock();
+        try {
+            return super.openCursor(order, descending, filter, pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected List<Transaction> nextPage(TransactionCursor cursor) {
+        // Each page is read under the lock; writers can run between pages
+        lock.readLock().lock();
+        try {
+            return super.nextPage(cursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FinancialSummary getSummary() {
+        // One lock for every total, so the summary is a consistent snapshot
+        lock.readLock().lock();
+        try {
+            return super.getSummary();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FinancialSummary getSummary(Date from, Date to) {
+        lock.readLock().lock();
+        try {
+            return super.getSummary(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FinancialSummary getCategorySummary(String category) {
+        lock.readLock().lock();
+        try {
+            return super.getCategorySummary(category);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FinancialSummary getSourceSummary(String source) {
+        lock.readLock().lock();
+        try {
+            return super.getSourceSummary(source);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FinancialSummary getMonthlySummary(int year, int month) {
+        lock.readLock().lock();
+        try {
+            return super.getMonthlySummary(year, month);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FinancialSummary getYearlySummary(int year) {
+        lock.readLock().lock();
+        try {
+            return super.getYearlySummary(year);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GroupTotal> getSpendingByCategory(int year, int month) {
+        lock.readLock().lock();
+        try {
+            return super.getSpendingByCategory(year, month);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GroupTotal> getSpendingByCategory(int year) {
+        lock.readLock().lock();
+        try {
+            return super.getSpendingByCategory(year);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GroupTotal> getIncomeBySource(int year, int month) {
+        lock.readLock().lock();
+        try {
+            return super.getIncomeBySource(year, month);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GroupTotal> getIncomeBySource(int year) {
+        lock.readLock().lock();
+        try {
+            return super.getIncomeBySource(year);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected long[] calculateTotalsBetween(Date from, Date to) {
+        lock.readLock().lock();
+        try {
+            return super.calculateTotalsBetween(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean verifyTotals() {
+        lock.readLock().lock();
+        try {
+            return super.verifyTotals();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Run a read under the read lock, so the transactions it looks at are
+     * not edited halfway through (for example while they are rendered)
+     *
+     * @param reader The read to run
+     * @return What the read returned
+     */
+    public <R> R withReadLock(Supplier<R> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
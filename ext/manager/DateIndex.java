@@ -0,0 +1,96 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import model.Transaction;
+import util.DateValidator;
+
+/**
+ * Sorted index of transactions by epoch day, so date range queries only
+ * visit the days in range instead of scanning the whole ledger
+ */
+class DateIndex {
+    private NavigableMap<Integer, List<Transaction>> transactionsByDay = new TreeMap<>();
+
+    /**
+     * Add a transaction under its current date
+     *
+     * @param transaction The transaction
+     */
+    void add(Transaction transaction) {
+        transactionsByDay.computeIfAbsent(dayOf(transaction), day -> new ArrayList<>(2)).add(transaction);
+    }
+
+    /**
+     * Remove a transaction from the day it is indexed under
+     *
+     * @param transaction The transaction
+     * @param epochDay Day the transaction was indexed under
+     */
+    void remove(Transaction transaction, int epochDay) {
+        List<Transaction> day = transactionsByDay.get(epochDay);
+        if (day != null) {
+            day.remove(transaction);
+            if (day.isEmpty()) {
+                transactionsByDay.remove(epochDay);
+            }
+        }
+    }
+
+    /**
+     * Remove a transaction using its current date
+     *
+     * @param transaction The transaction
+     */
+    void remove(Transaction transaction) {
+        remove(transaction, dayOf(transaction));
+    }
+
+    /**
+     * Rebuild the index from a list of transactions
+     *
+     * @param transactions All transactions
+     */
+    void rebuild(Collection<Transaction> transactions) {
+        transactionsByDay.clear();
+        for (Transaction transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    /**
+     * Get the transactions on the days between two epoch days, inclusive
+     *
+     * @param fromDay First day
+     * @param toDay Last day
+     * @return Lists of transactions per day, in date order
+     */
+    Collection<List<Transaction>> between(int fromDay, int toDay) {
+        if (fromDay > toDay) {
+            return new ArrayList<>();
+        }
+        return transactionsByDay.subMap(fromDay, true, toDay, true).values();
+    }
+
+    /**
+     * Get the days from a day onwards, in either direction
+     *
+     * @param fromDay First day (inclusive)
+     * @param descending true to walk towards older days
+     * @return Transactions per day, starting at fromDay
+     */
+    NavigableMap<Integer, List<Transaction>> from(int fromDay, boolean descending) {
+        if (descending) {
+            return transactionsByDay.headMap(fromDay, true).descendingMap();
+        }
+        return transactionsByDay.tailMap(fromDay, true);
+    }
+
+    static int dayOf(Transaction transaction) {
+        return DateValidator.toEpochDay(transaction.getDate());
+    }
+}
@@ -0,0 +1,115 @@
+package manager;
+
+import model.Expense;
+import model.Income;
+import model.Transaction;
+import util.Money;
+
+/**
+ * Totals and counts of a set of transactions (the whole ledger, a date
+ * range, a category or a source), gathered together so a report reads them
+ * all from one pass or one consistent snapshot
+ */
+public class FinancialSummary {
+    private long totalIncomeCents;
+    private long totalExpensesCents;
+    private long taxDeductionsCents;
+    private long incomeTaxCents;
+    private int incomeCount;
+    private int expenseCount;
+
+    /**
+     * Constructor
+     *
+     * @param totalIncomeCents Sum of the income amounts in cents
+     * @param totalExpensesCents Sum of the expense amounts in cents
+     * @param taxDeductionsCents Tax deductions of the expenses in cents
+     * @param incomeTaxCents Tax on the income in cents
+     * @param incomeCount Number of income transactions
+     * @param expenseCount Number of expenses
+     */
+    public FinancialSummary(long totalIncomeCents, long totalExpensesCents, long taxDeductionsCents,
+                            long incomeTaxCents, int incomeCount, int expenseCount) {
+        this.totalIncomeCents = totalIncomeCents;
+        this.totalExpensesCents = totalExpensesCents;
+        this.taxDeductionsCents = taxDeductionsCents;
+        this.incomeTaxCents = incomeTaxCents;
+        this.incomeCount = incomeCount;
+        this.expenseCount = expenseCount;
+    }
+
+    /**
+     * Constructor for an empty summary that transactions are added to
+     */
+    FinancialSummary() {
+    }
+
+    /**
+     * Add a transaction while the summary is being gathered
+     *
+     * @param transaction The transaction
+     */
+    void add(Transaction transaction) {
+        if (transaction instanceof Income) {
+            totalIncomeCents += transaction.getAmountCents();
+            incomeTaxCents += transaction.calculateTaxCents();
+            incomeCount++;
+        } else if (transaction instanceof Expense) {
+            totalExpensesCents += transaction.getAmountCents();
+            taxDeductionsCents += transaction.calculateTaxCents();
+            expenseCount++;
+        }
+    }
+
+    public long getTotalIncomeCents() {
+        return totalIncomeCents;
+    }
+
+    public double getTotalIncome() {
+        return Money.toDouble(totalIncomeCents);
+    }
+
+    public long getTotalExpensesCents() {
+        return totalExpensesCents;
+    }
+
+    public double getTotalExpenses() {
+        return Money.toDouble(totalExpensesCents);
+    }
+
+    public long getBalanceCents() {
+        return totalIncomeCents - totalExpensesCents;
+    }
+
+    public double getBalance() {
+        return Money.toDouble(getBalanceCents());
+    }
+
+    public long getTaxDeductionsCents() {
+        return taxDeductionsCents;
+    }
+
+    public double getTaxDeductions() {
+        return Money.toDouble(taxDeductionsCents);
+    }
+
+    public long getIncomeTaxCents() {
+        return incomeTaxCents;
+    }
+
+    public double getIncomeTax() {
+        return Money.toDouble(incomeTaxCents);
+    }
+
+    public int getIncomeCount() {
+        return incomeCount;
+    }
+
+    public int getExpenseCount() {
+        return expenseCount;
+    }
+
+    public int getCount() {
+        return incomeCount + expenseCount;
+    }
+}
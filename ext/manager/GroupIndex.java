@@ -0,0 +1,125 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import model.Transaction;
+import util.StringDictionary;
+
+/**
+ * Secondary index from a dictionary-encoded group (expense category or
+ * income source) to its transactions, with a running sum and count per
+ * group. Reports over all groups cost O(number of groups).
+ */
+class GroupIndex {
+    private StringDictionary names = new StringDictionary();
+    private long[] sums = new long[16];
+    private int[] counts = new int[16];
+    private List<Set<Transaction>> members = new ArrayList<>();
+
+    /**
+     * Add a transaction to a group
+     *
+     * @param name Group name
+     * @param transaction The transaction
+     */
+    void add(String name, Transaction transaction) {
+        int id = names.intern(name);
+        if (id == members.size()) {
+            members.add(new LinkedHashSet<>());
+            if (id == sums.length) {
+                sums = Arrays.copyOf(sums, id * 2);
+                counts = Arrays.copyOf(counts, id * 2);
+            }
+        }
+        if (members.get(id).add(transaction)) {
+            sums[id] += transaction.getAmountCents();
+            counts[id]++;
+        }
+    }
+
+    /**
+     * Remove a transaction from a group
+     *
+     * @param name Group name
+     * @param transaction The transaction
+     */
+    void remove(String name, Transaction transaction) {
+        int id = names.lookup(name);
+        if (id != StringDictionary.NOT_FOUND && members.get(id).remove(transaction)) {
+            sums[id] -= transaction.getAmountCents();
+            counts[id]--;
+        }
+    }
+
+    /**
+     * Apply an amount change of a transaction that stays in its group
+     *
+     * @param name Group name
+     * @param deltaCents New amount minus old amount, in cents
+     */
+    void adjust(String name, long deltaCents) {
+        int id = names.lookup(name);
+        if (id != StringDictionary.NOT_FOUND) {
+            sums[id] += deltaCents;
+        }
+    }
+
+    /**
+     * Get the transactions in a group
+     *
+     * @param name Group name
+     * @return Transactions in insertion order (empty if the group is unknown)
+     */
+    List<Transaction> get(String name) {
+        int id = names.lookup(name);
+        if (id == StringDictionary.NOT_FOUND) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(members.get(id));
+    }
+
+    /**
+     * Get the transactions in a group without copying them
+     *
+     * @param name Group name
+     * @return Read-only view of the group, empty if there is no such group
+     */
+    Collection<Transaction> view(String name) {
+        int id = names.lookup(name);
+        if (id == StringDictionary.NOT_FOUND) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(members.get(id));
+    }
+
+    /**
+     * Get the total and count of every group that has transactions
+     *
+     * @return One entry per non-empty group
+     */
+    List<GroupTotal> totals() {
+        List<GroupTotal> totals = new ArrayList<>();
+        for (int id = 0; id < names.size(); id++) {
+            if (counts[id] > 0) {
+                totals.add(new GroupTotal(names.get(id), sums[id], counts[id]));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Remove every group and transaction
+     */
+    void clear() {
+        names.clear();
+        members.clear();
+        Arrays.fill(sums, 0);
+        Arrays.fill(counts, 0);
+    }
+}
@@ -0,0 +1,41 @@
+package manager;
+
+import util.Money;
+
+/**
+ * Total amount and number of transactions in one category or source
+ */
+public class GroupTotal {
+    private String name;
+    private long totalCents;
+    private int count;
+
+    /**
+     * Constructor
+     *
+     * @param name Category or source name
+     * @param totalCents Sum of the amounts in cents
+     * @param count Number of transactions
+     */
+    public GroupTotal(String name, long totalCents, int count) {
+        this.name = name;
+        this.totalCents = totalCents;
+        this.count = count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public double getTotal() {
+        return Money.toDouble(totalCents);
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,172 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import model.Transaction;
+import util.FileHandler;
+import util.LedgerArchive;
+import util.ParseErrorHandler;
+
+/**
+ * Runs totals, filters and exports straight off the transactions file, one
+ * transaction at a time, for ledgers too large to load into a TransactionManager.
+ * Every call makes a fresh pass over the file, except that totals over an
+ * archive are read from its block index.
+ */
+public class LedgerScanner {
+    private FileHandler fileHandler;
+    private ParseErrorHandler onError;
+
+    /**
+     * Constructor that prints malformed lines
+     *
+     * @param filePath Path to the transactions file
+     */
+    public LedgerScanner(String filePath) {
+        this(filePath, ParseErrorHandler.PRINT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param filePath Path to the transactions file
+     * @param onError Receives lines that could not be parsed
+     */
+    public LedgerScanner(String filePath, ParseErrorHandler onError) {
+        this.fileHandler = new FileHandler(filePath);
+        this.onError = onError;
+    }
+
+    /**
+     * Stream the transactions in the file. The stream must be closed.
+     *
+     * @return Lazy stream of transactions in file order
+     */
+    public Stream<Transaction> stream() {
+        return fileHandler.streamTransactions(onError);
+    }
+
+    /**
+     * Stream the transactions dated between two dates. The stream must be closed.
+     *
+     * @param from First date (inclusive), or null for no lower bound
+     * @param to Last date (inclusive), or null for no upper bound
+     * @return Lazy stream of transactions
+     */
+    public Stream<Transaction> streamBetween(Date from, Date to) {
+        return fileHandler.streamTransactions(from, to, onError);
+    }
+
+    /**
+     * Calculate total income
+     *
+     * @return Total income in cents
+     */
+    public long calculateTotalIncomeCents() {
+        return fileHandler.calculateTotals(null, null, onError)[LedgerArchive.INCOME];
+    }
+
+    /**
+     * Calculate total expenses
+     *
+     * @return Total expenses in cents
+     */
+    public long calculateTotalExpensesCents() {
+        return fileHandler.calculateTotals(null, null, onError)[LedgerArchive.EXPENSES];
+    }
+
+    /**
+     * Calculate balance (income - expenses) in a single pass
+     *
+     * @return Balance in cents
+     */
+    public long calculateBalanceCents() {
+        long[] totals = fileHandler.calculateTotals(null, null, onError);
+        return totals[LedgerArchive.INCOME] - totals[LedgerArchive.EXPENSES];
+    }
+
+    /**
+     * Calculate total tax deductions
+     *
+     * @return Total tax deductions in cents
+     */
+    public long calculateTaxDeductionsCents() {
+        return fileHandler.calculateTotals(null, null, onError)[LedgerArchive.TAX_DEDUCTIONS];
+    }
+
+    /**
+     * Calculate total income tax
+     *
+     * @return Total income tax in cents
+     */
+    public long calculateIncomeTaxCents() {
+        return fileHandler.calculateTotals(null, null, onError)[LedgerArchive.INCOME_TAX];
+    }
+
+    /**
+     * Gather every total and count in a single pass
+     *
+     * @return Summary of the whole file
+     */
+    public FinancialSummary getSummary() {
+        return getSummary(null, null);
+    }
+
+    /**
+     * Gather every total and count of the transactions between two dates
+     *
+     * @param from First date (inclusive), or null for no lower bound
+     * @param to Last date (inclusive), or null for no upper bound
+     * @return Summary of the range
+     */
+    public FinancialSummary getSummary(Date from, Date to) {
+        long[] totals = fileHandler.calculateTotals(from, to, onError);
+        return new FinancialSummary(totals[LedgerArchive.INCOME], totals[LedgerArchive.EXPENSES],
+                                    totals[LedgerArchive.TAX_DEDUCTIONS], totals[LedgerArchive.INCOME_TAX],
+                                    (int) totals[LedgerArchive.INCOME_COUNT],
+                                    (int) totals[LedgerArchive.EXPENSE_COUNT]);
+    }
+
+    /**
+     * Count the transactions that match a filter
+     *
+     * @param filter The filter
+     * @return Number of matching transactions
+     */
+    public long count(Predicate<Transaction> filter) {
+        try (Stream<Transaction> transactions = stream()) {
+            return transactions.filter(filter).count();
+        }
+    }
+
+    /**
+     * Collect the transactions that match a filter. Only the matches are kept in memory.
+     *
+     * @param filter The filter
+     * @return Matching transactions in file order
+     */
+    public List<Transaction> filter(Predicate<Transaction> filter) {
+        List<Transaction> result = new ArrayList<>();
+        try (Stream<Transaction> transactions = stream()) {
+            transactions.filter(filter).forEachOrdered(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Write the transactions that match a filter to a text file
+     *
+     * @param filter The filter
+     * @param textPath Path to the text file
+     * @return Number of transactions written, or -1 if writing failed
+     */
+    public long exportText(Predicate<Transaction> filter, String textPath) {
+        try (Stream<Transaction> transactions = stream()) {
+            return fileHandler.exportText(transactions.filter(filter), textPath);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import model.Expense;
+import model.Income;
+import model.Transaction;
+import util.FileHandler;
+
+/**
+ * Where a TransactionManager keeps its transactions, with the lookups,
+ * range and group queries and cursor pages it answers from them. The
+ * manager keeps the running totals, rollup, change tracking and journal
+ * on top, so every storage gets them.
+ *
+ * Transactions handed out by an ObjectStorage are the stored objects;
+ * those handed out by a RowStorage are copies. Either way they are changed
+ * through edit, never directly. Iteration is in insertion (file) order.
+ */
+interface LedgerStorage extends Iterable<Transaction> {
+
+    /**
+     * Replace every transaction with those in a file
+     *
+     * @param fileHandler The file
+     */
+    void load(FileHandler fileHandler);
+
+    /**
+     * Get the number of transactions
+     *
+     * @return Transaction count
+     */
+    int size();
+
+    /**
+     * Find a transaction
+     *
+     * @param id Transaction ID
+     * @return The transaction, or null if not found
+     */
+    Transaction get(int id);
+
+    /**
+     * Add a transaction after the others
+     *
+     * @param transaction The new transaction
+     */
+    void add(Transaction transaction);
+
+    /**
+     * Add transactions after the others, growing the storage once
+     *
+     * @param batch The new transactions
+     */
+    void addAll(List<Transaction> batch);
+
+    /**
+     * Remove a transaction
+     *
+     * @param transaction The transaction, as returned by get
+     */
+    void remove(Transaction transaction);
+
+    /**
+     * Change the date, amount and description of a stored transaction and
+     * of the given object
+     *
+     * @param transaction The transaction, as returned by get
+     * @param date New date
+     * @param amountCents New amount in cents
+     * @param description New description
+     */
+    void edit(Transaction transaction, Date date, long amountCents, String description);
+
+    /**
+     * Get all transactions
+     *
+     * @return Transactions in insertion order
+     */
+    ArrayList<Transaction> list();
+
+    /**
+     * Get the transactions dated between two days
+     *
+     * @param fromDay First day (inclusive)
+     * @param toDay Last day (inclusive)
+     * @return Transactions in range, in date order
+     */
+    List<Transaction> between(int fromDay, int toDay);
+
+    /**
+     * Visit the transactions dated between two days, in no particular order
+     *
+     * @param fromDay First day (inclusive)
+     * @param toDay Last day (inclusive)
+     * @param action Receives each transaction in range
+     */
+    void forEachBetween(int fromDay, int toDay, Consumer<Transaction> action);
+
+    /**
+     * Get the expenses in a category or the income from a source
+     *
+     * @param income true for a source of income, false for an expense category
+     * @param name Category or source
+     * @return Transactions in the group, oldest first
+     */
+    List<Transaction> group(boolean income, String name);
+
+    /**
+     * Visit the expenses in a category or the income from a source
+     *
+     * @param income true for a source of income, false for an expense category
+     * @param name Category or source
+     * @param action Receives each transaction in the group
+     */
+    void forEachInGroup(boolean income, String name, Consumer<Transaction> action);
+
+    /**
+     * Get the total and count of every category or every source
+     *
+     * @param income true for sources of income, false for expense categories
+     * @return One entry per non-empty group, in the order groups first appeared
+     */
+    List<GroupTotal> groupTotals(boolean income);
+
+    /**
+     * Get the most recently added transactions
+     *
+     * @return Recent transactions, newest first
+     */
+    List<Transaction> recent();
+
+    /**
+     * Read the next page of a cursor and move it past that page
+     *
+     * @param cursor The cursor
+     * @return Up to a page of transactions
+     */
+    List<Transaction> nextPage(TransactionCursor cursor);
+
+    /**
+     * Sum income, expenses, tax deductions and income tax over the days in range
+     *
+     * @param fromDay First day (inclusive)
+     * @param toDay Last day (inclusive)
+     * @return Totals in cents, indexed like TransactionManager.calculateTotalsBetween
+     */
+    default long[] sumBetween(int fromDay, int toDay) {
+        long[] totals = new long[4];
+        forEachBetween(fromDay, toDay, transaction -> {
+            if (transaction instanceof Income) {
+                totals[TransactionManager.INCOME] += transaction.getAmountCents();
+                totals[TransactionManager.INCOME_TAX] += transaction.calculateTaxCents();
+            } else if (transaction instanceof Expense) {
+                totals[TransactionManager.EXPENSES] += transaction.getAmountCents();
+                totals[TransactionManager.TAX_DEDUCTIONS] += transaction.calculateTaxCents();
+            }
+        });
+        return totals;
+    }
+
+    /**
+     * Sort the transactions by amount, then ID. Each key holds the amount
+     * in its high and the ID in its low 32 bits, so a primitive sort does
+     * the work; amounts too large for that are sorted with a comparator.
+     *
+     * @return Sorted keys, ID in the low 32 bits
+     */
+    default long[] sortedAmountKeys() {
+        long[] keys = new long[size()];
+        int count = 0;
+        for (Transaction transaction : this) {
+            if (transaction.getAmountCents() > Integer.MAX_VALUE) {
+                List<Transaction> copy = list();
+                copy.sort(Comparator.comparingLong(Transaction::getAmountCents)
+                                    .thenComparingInt(Transaction::getId));
+                for (int j = 0; j < keys.length; j++) {
+                    keys[j] = copy.get(j).getId();
+                }
+                return keys;
+            }
+            keys[count++] = transaction.getAmountCents() << 32 | transaction.getId();
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Sort the IDs
+     *
+     * @return Sorted IDs as keys
+     */
+    default long[] sortedIdKeys() {
+        long[] keys = new long[size()];
+        int count = 0;
+        for (Transaction transaction : this) {
+            keys[count++] = transaction.getId();
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Fill a page from a cursor's sorted keys, skipping transactions
+     * deleted since they were sorted
+     *
+     * @param cursor A cursor with sorted keys
+     * @return Up to a page of transactions
+     */
+    default List<Transaction> nextPageFromKeys(TransactionCursor cursor) {
+        List<Transaction> page = new ArrayList<>(cursor.pageSize);
+        long[] keys = cursor.sortedKeys;
+        while (cursor.position < keys.length && page.size() < cursor.pageSize) {
+            int index = cursor.descending ? keys.length - 1 - cursor.position : cursor.position;
+            cursor.position++;
+            Transaction transaction = get((int) keys[index]);
+            if (transaction != null && cursor.accepts(transaction)) {
+                page.add(transaction);
+            }
+        }
+        return page;
+    }
+}
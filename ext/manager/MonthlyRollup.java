@@ -0,0 +1,322 @@
+package manager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import model.Expense;
+import model.Income;
+import model.Transaction;
+import util.Counter;
+import util.DateValidator;
+import util.Metrics;
+
+/**
+ * Totals and counts per calendar month and per year, with the spending of
+ * every category and the income of every source in each, kept up to date
+ * on every add, edit and delete. A month or a year is one map lookup, so a
+ * twelve-month report costs twelve lookups whatever the size of the ledger.
+ *
+ * The rollup is saved next to the ledger so it does not have to be rebuilt
+ * when the ledger is opened. It carries a fingerprint of the transactions
+ * it was built from (a sum of per-transaction hashes, so it does not depend
+ * on order and is kept up to date with one addition per change). A saved
+ * rollup is only used if its fingerprint matches the loaded ledger.
+ *
+ * Nothing in an update can throw for a transaction the manager accepted,
+ * including one without a category or source, so the manager can update
+ * the rollup before anything else.
+ */
+class MonthlyRollup {
+    // Appended to the ledger path to name the saved rollup
+    static final String EXTENSION = ".rollup";
+
+    private static final int MAGIC = 0x4C44524D; // "LDRM"
+    private static final int VERSION = 2;
+
+    // Rollups built from the transactions rather than loaded
+    private static final Counter REBUILDS = Metrics.counter("rollup.rebuilds");
+
+    /**
+     * Totals of one month or year
+     */
+    private static final class Period {
+        long income;
+        long expenses;
+        long taxDeductions;
+        long incomeTax;
+        int incomeCount;
+        int expenseCount;
+        // Amount and count per expense category and per income source
+        Map<String, long[]> categories = new LinkedHashMap<>();
+        Map<String, long[]> sources = new LinkedHashMap<>();
+    }
+
+    private Map<Integer, Period> periods = new HashMap<>();
+    private long fingerprint;
+
+    /**
+     * Add (sign 1) or remove (sign -1) a transaction's contribution to its
+     * month and its year
+     *
+     * @param transaction The transaction
+     * @param sign 1 to add, -1 to remove
+     */
+    void update(Transaction transaction, int sign) {
+        LocalDate date = LocalDate.ofEpochDay(DateValidator.toEpochDay(transaction.getDate()));
+        update(periodFor(date.getYear(), date.getMonthValue()), transaction, sign);
+        update(periodFor(date.getYear(), 0), transaction, sign);
+        fingerprint += sign * fingerprintOf(transaction);
+    }
+
+    /**
+     * Rebuild the rollup from the transactions of a ledger
+     *
+     * @param transactions All transactions
+     */
+    void rebuild(Iterable<Transaction> transactions) {
+        clear();
+        for (Transaction transaction : transactions) {
+            update(transaction, 1);
+        }
+        REBUILDS.increment();
+    }
+
+    /**
+     * Remove every period
+     */
+    void clear() {
+        periods.clear();
+        fingerprint = 0;
+    }
+
+    /**
+     * Get the totals and counts of a month, or of a whole year
+     *
+     * @param year Calendar year
+     * @param month Month 1 to 12, or 0 for the whole year
+     * @return Summary of the period (all zero if it has no transactions)
+     */
+    FinancialSummary summary(int year, int month) {
+        Period period = periods.get(key(year, month));
+        if (period == null) {
+            return new FinancialSummary();
+        }
+        return new FinancialSummary(period.income, period.expenses, period.taxDeductions, period.incomeTax,
+                                    period.incomeCount, period.expenseCount);
+    }
+
+    /**
+     * Get the spending of every category in a month or year
+     *
+     * @param year Calendar year
+     * @param month Month 1 to 12, or 0 for the whole year
+     * @return One entry per category with expenses in the period
+     */
+    List<GroupTotal> categories(int year, int month) {
+        Period period = periods.get(key(year, month));
+        return period == null ? new ArrayList<>() : totals(period.categories);
+    }
+
+    /**
+     * Get the income of every source in a month or year
+     *
+     * @param year Calendar year
+     * @param month Month 1 to 12, or 0 for the whole year
+     * @return One entry per source with income in the period
+     */
+    List<GroupTotal> sources(int year, int month) {
+        Period period = periods.get(key(year, month));
+        return period == null ? new ArrayList<>() : totals(period.sources);
+    }
+
+    /**
+     * Get the fingerprint of a set of transactions, as a rollup built from
+     * them would have it
+     *
+     * @param transactions The transactions
+     * @return Their fingerprint
+     */
+    static long fingerprintOf(Iterable<Transaction> transactions) {
+        long sum = 0;
+        for (Transaction transaction : transactions) {
+            sum += fingerprintOf(transaction);
+        }
+        return sum;
+    }
+
+    /**
+     * Write the rollup to a file, replacing it in one rename
+     *
+     * @param path Path to the rollup file
+     * @throws IOException If writing fails
+     */
+    synchronized void save(String path) throws IOException {
+        File temp = new File(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(periods.size());
+            for (Map.Entry<Integer, Period> entry : periods.entrySet()) {
+                Period period = entry.getValue();
+                out.writeInt(entry.getKey());
+                out.writeLong(period.income);
+                out.writeLong(period.expenses);
+                out.writeLong(period.taxDeductions);
+                out.writeLong(period.incomeTax);
+                out.writeInt(period.incomeCount);
+                out.writeInt(period.expenseCount);
+                writeGroups(out, period.categories);
+                writeGroups(out, period.sources);
+            }
+        }
+        // Rebuilt from the ledger if it is ever lost, so no backup or sync
+        Files.move(temp.toPath(), new File(path).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replace the rollup with a saved one, if it was built from the same
+     * transactions
+     *
+     * @param path Path to the rollup file
+     * @param expectedFingerprint Fingerprint of the loaded transactions
+     * @return true if the saved rollup was loaded, false if it is missing,
+     *         damaged or out of date (the rollup is then unchanged)
+     */
+    boolean load(String path, long expectedFingerprint) {
+        File file = new File(path);
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != expectedFingerprint) {
+                return false;
+            }
+            int count = in.readInt();
+            Map<Integer, Period> loaded = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int key = in.readInt();
+                Period period = new Period();
+                period.income = in.readLong();
+                period.expenses = in.readLong();
+                period.taxDeductions = in.readLong();
+                period.incomeTax = in.readLong();
+                period.incomeCount = in.readInt();
+                period.expenseCount = in.readInt();
+                readGroups(in, period.categories);
+                readGroups(in, period.sources);
+                loaded.put(key, period);
+            }
+            if (in.read() != -1) {
+                return false;
+            }
+            periods = loaded;
+            fingerprint = expectedFingerprint;
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            System.out.println("Error reading rollup: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Months are 1 to 12 and the whole year is 0, so every period of a year
+    // gets a distinct key
+    private static int key(int year, int month) {
+        return year * 13 + month;
+    }
+
+    private Period periodFor(int year, int month) {
+        return periods.computeIfAbsent(key(year, month), key -> new Period());
+    }
+
+    private static void update(Period period, Transaction transaction, int sign) {
+        long cents = sign * transaction.getAmountCents();
+        if (transaction instanceof Income) {
+            period.income += cents;
+            period.incomeTax += sign * transaction.calculateTaxCents();
+            period.incomeCount += sign;
+            updateGroup(period.sources, ((Income) transaction).getSource(), cents, sign);
+        } else if (transaction instanceof Expense) {
+            period.expenses += cents;
+            period.taxDeductions += sign * transaction.calculateTaxCents();
+            period.expenseCount += sign;
+            updateGroup(period.categories, ((Expense) transaction).getCategory(), cents, sign);
+        }
+    }
+
+    private static void updateGroup(Map<String, long[]> groups, String name, long cents, int sign) {
+        long[] group = groups.computeIfAbsent(name, key -> new long[2]);
+        group[0] += cents;
+        group[1] += sign;
+    }
+
+    private static List<GroupTotal> totals(Map<String, long[]> groups) {
+        List<GroupTotal> totals = new ArrayList<>();
+        for (Map.Entry<String, long[]> group : groups.entrySet()) {
+            if (group.getValue()[1] > 0) {
+                totals.add(new GroupTotal(group.getKey(), group.getValue()[0], (int) group.getValue()[1]));
+            }
+        }
+        return totals;
+    }
+
+    // Mixes everything the rollup depends on (not the description) into 64 bits
+    private static long fingerprintOf(Transaction transaction) {
+        boolean income = transaction instanceof Income;
+        String group = income ? ((Income) transaction).getSource() : ((Expense) transaction).getCategory();
+        long taxCents = transaction.calculateTaxCents();
+        long hash = transaction.getId();
+        hash = mix(hash * 31 + DateValidator.toEpochDay(transaction.getDate()));
+        hash = mix(hash * 31 + transaction.getAmountCents());
+        hash = mix(hash * 31 + taxCents * 2 + (income ? 1 : 0));
+        return mix(hash * 31 + Objects.hashCode(group));
+    }
+
+    // Finalizer of SplitMix64
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static void writeGroups(DataOutputStream out, Map<String, long[]> groups) throws IOException {
+        out.writeInt(groups.size());
+        for (Map.Entry<String, long[]> group : groups.entrySet()) {
+            // A transaction without a category or source is kept under null
+            out.writeBoolean(group.getKey() != null);
+            if (group.getKey() != null) {
+                out.writeUTF(group.getKey());
+            }
+            out.writeLong(group.getValue()[0]);
+            out.writeLong(group.getValue()[1]);
+        }
+    }
+
+    private static void readGroups(DataInputStream in, Map<String, long[]> groups) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readBoolean() ? in.readUTF() : null;
+            groups.put(name, new long[] {in.readLong(), in.readLong()});
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import model.Expense;
+import model.Income;
+import model.Transaction;
+import util.FileHandler;
+import util.IntIntHashMap;
+
+/**
+ * Keeps one object per transaction, in a list in insertion order with an
+ * ID index, a date index and a category and source index next to it, so
+ * lookups, range queries and group reports only visit what they return.
+ * Deleted transactions stay in the list, marked, until they take up as
+ * much of it as the live ones, so a delete never shifts the list.
+ * Transactions handed out are the stored objects.
+ */
+class ObjectStorage implements LedgerStorage {
+    // Deleted transactions are never squeezed out below this many
+    private static final int MIN_COMPACTION = 1024;
+
+    private ArrayList<Transaction> transactions = new ArrayList<>();
+    // Positions in the list of deleted transactions not yet squeezed out
+    private BitSet deleted = new BitSet();
+    private int deletedCount;
+    private RecentTransactions recentTransactions;
+    // Position of each live transaction in the list by ID, for constant-time lookup
+    private IntIntHashMap positionsById = new IntIntHashMap();
+    // Index of transactions by date for range queries
+    private DateIndex dateIndex = new DateIndex();
+    // Indexes of expenses by category and income by source
+    private GroupIndex categoryIndex = new GroupIndex();
+    private GroupIndex sourceIndex = new GroupIndex();
+    // True while the list is sorted by ID, which holds unless the file was not
+    private boolean inIdOrder = true;
+
+    /**
+     * Constructor
+     *
+     * @param recentCapacity Number of transactions returned by recent
+     */
+    ObjectStorage(int recentCapacity) {
+        recentTransactions = new RecentTransactions(recentCapacity);
+    }
+
+    @Override
+    public void load(FileHandler fileHandler) {
+        List<Transaction> loadedTransactions = fileHandler.loadTransactions();
+        transactions.clear();
+        transactions.addAll(loadedTransactions);
+        deleted.clear();
+        deletedCount = 0;
+        rebuildIdIndex();
+        inIdOrder = true;
+        for (int i = 1; i < transactions.size() && inIdOrder; i++) {
+            inIdOrder = transactions.get(i - 1).getId() < transactions.get(i).getId();
+        }
+        dateIndex.rebuild(transactions);
+        rebuildGroupIndexes();
+
+        // Also rebuild the recent transactions buffer
+        rebuildRecentTransactions();
+    }
+
+    @Override
+    public int size() {
+        return transactions.size() - deletedCount;
+    }
+
+    @Override
+    public Transaction get(int id) {
+        int position = positionsById.get(id);
+        return position == IntIntHashMap.NOT_FOUND ? null : transactions.get(position);
+    }
+
+    @Override
+    public void add(Transaction transaction) {
+        checkIdOrder(transaction);
+        positionsById.put(transaction.getId(), transactions.size());
+        transactions.add(transaction);
+        dateIndex.add(transaction);
+        addToGroupIndex(transaction);
+        recentTransactions.add(transaction);
+    }
+
+    @Override
+    public void addAll(List<Transaction> batch) {
+        transactions.ensureCapacity(transactions.size() + batch.size());
+        positionsById.ensureCapacity(positionsById.size() + batch.size());
+        for (Transaction transaction : batch) {
+            checkIdOrder(transaction);
+            positionsById.put(transaction.getId(), transactions.size());
+            transactions.add(transaction);
+            dateIndex.add(transaction);
+            addToGroupIndex(transaction);
+        }
+        // Only the newest rows of the batch can end up in the recent buffer
+        for (int i = Math.max(0, batch.size() - recentTransactions.capacity()); i < batch.size(); i++) {
+            recentTransactions.add(batch.get(i));
+        }
+    }
+
+    @Override
+    public void remove(Transaction transaction) {
+        deleted.set(positionsById.remove(transaction.getId()));
+        deletedCount++;
+        dateIndex.remove(transaction);
+        removeFromGroupIndex(transaction);
+        removeFromRecentTransactions(transaction);
+        maybeCompact();
+    }
+
+    @Override
+    public void edit(Transaction transaction, Date date, long amountCents, String description) {
+        dateIndex.remove(transaction);
+        long oldAmountCents = transaction.getAmountCents();
+        transaction.setDate(date);
+        transaction.setAmountCents(amountCents);
+        dateIndex.add(transaction);
+        adjustGroupIndex(transaction, amountCents - oldAmountCents);
+        transaction.setDescription(description);
+    }
+
+    /**
+     * The stored list itself, or a copy of its live transactions while
+     * deleted ones are still in it
+     */
+    @Override
+    public ArrayList<Transaction> list() {
+        if (deletedCount == 0) {
+            return transactions;
+        }
+        ArrayList<Transaction> live = new ArrayList<>(size());
+        for (Transaction transaction : this) {
+            live.add(transaction);
+        }
+        return live;
+    }
+
+    /**
+     * Skips the deleted transactions still in the list
+     */
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<Transaction>() {
+            private int position = deleted.nextClearBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return position < transactions.size();
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Transaction transaction = transactions.get(position);
+                position = deleted.nextClearBit(position + 1);
+                return transaction;
+            }
+        };
+    }
+
+    @Override
+    public List<Transaction> between(int fromDay, int toDay) {
+        List<Transaction> result = new ArrayList<>();
+        for (List<Transaction> day : dateIndex.between(fromDay, toDay)) {
+            result.addAll(day);
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachBetween(int fromDay, int toDay, Consumer<Transaction> action) {
+        for (List<Transaction> day : dateIndex.between(fromDay, toDay)) {
+            for (Transaction transaction : day) {
+                action.accept(transaction);
+            }
+        }
+    }
+
+    @Override
+    public List<Transaction> group(boolean income, String name) {
+        return (income ? sourceIndex : categoryIndex).get(name);
+    }
+
+    @Override
+    public void forEachInGroup(boolean income, String name, Consumer<Transaction> action) {
+        for (Transaction transaction : (income ? sourceIndex : categoryIndex).view(name)) {
+            action.accept(transaction);
+        }
+    }
+
+    @Override
+    public List<GroupTotal> groupTotals(boolean income) {
+        return (income ? sourceIndex : categoryIndex).totals();
+    }
+
+    @Override
+    public List<Transaction> recent() {
+        return recentTransactions.view();
+    }
+
+    /**
+     * Date order walks the date index and ID order the ID-sorted list, each
+     * starting where the last page stopped, so a page costs the same however
+     * large the ledger is (plus any rows the filter skips). A list that is
+     * not in ID order is paged through sorted IDs instead.
+     */
+    @Override
+    public List<Transaction> nextPage(TransactionCursor cursor) {
+        if (cursor.order == TransactionCursor.BY_DATE) {
+            return nextPageByDate(cursor);
+        }
+        if (cursor.sortedKeys == null && !inIdOrder) {
+            cursor.sortedKeys = sortedIdKeys();
+        }
+        if (cursor.sortedKeys != null) {
+            return nextPageFromKeys(cursor);
+        }
+        return nextPageById(cursor);
+    }
+
+    /**
+     * Fill a page in date order, and by ID within a day, walking the days
+     * from the one the last page stopped on
+     */
+    private List<Transaction> nextPageByDate(TransactionCursor cursor) {
+        List<Transaction> page = new ArrayList<>(cursor.pageSize);
+        Comparator<Transaction> byId = Comparator.comparingInt(Transaction::getId);
+        for (Map.Entry<Integer, List<Transaction>> day : dateIndex.from(cursor.lastDay, cursor.descending).entrySet()) {
+            List<Transaction> sameDay = new ArrayList<>(day.getValue());
+            sameDay.sort(cursor.descending ? byId.reversed() : byId);
+            boolean lastDay = day.getKey() == cursor.lastDay;
+            for (Transaction transaction : sameDay) {
+                if (lastDay && !cursor.isAfterLastId(transaction.getId())) {
+                    continue;
+                }
+                if (cursor.accepts(transaction)) {
+                    page.add(transaction);
+                    if (page.size() == cursor.pageSize) {
+                        cursor.lastDay = day.getKey();
+                        cursor.lastId = transaction.getId();
+                        return page;
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Fill a page in ID order from the ID-sorted list, finding where the
+     * last page stopped with a binary search
+     */
+    private List<Transaction> nextPageById(TransactionCursor cursor) {
+        List<Transaction> page = new ArrayList<>(cursor.pageSize);
+        int step = cursor.descending ? -1 : 1;
+        int index = cursor.descending ? firstIndexWithIdAtLeast(cursor.lastId) - 1
+                                      : firstIndexWithIdAtLeast(cursor.lastId + 1);
+        for (; index >= 0 && index < transactions.size(); index += step) {
+            Transaction transaction = transactions.get(index);
+            if (!deleted.get(index) && cursor.accepts(transaction)) {
+                page.add(transaction);
+                if (page.size() == cursor.pageSize) {
+                    cursor.lastId = transaction.getId();
+                    break;
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Find the first position in the ID-sorted list whose ID is at least a
+     * value. Deleted transactions keep their place in the order, so they
+     * can be searched through too.
+     *
+     * @param id The value
+     * @return Position, or the list size if every ID is smaller
+     */
+    private int firstIndexWithIdAtLeast(int id) {
+        int low = 0;
+        int high = transactions.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (transactions.get(middle).getId() < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Squeeze the deleted transactions out of the list once there are as
+     * many of them as live ones, so deletes cost amortized constant time.
+     * Positions change, IDs and the order do not.
+     */
+    private void maybeCompact() {
+        if (deletedCount < MIN_COMPACTION || deletedCount < size()) {
+            return;
+        }
+        int live = 0;
+        for (int position = 0; position < transactions.size(); position++) {
+            if (!deleted.get(position)) {
+                Transaction transaction = transactions.get(position);
+                transactions.set(live, transaction);
+                positionsById.put(transaction.getId(), live);
+                live++;
+            }
+        }
+        transactions.subList(live, transactions.size()).clear();
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    /**
+     * Note when a transaction added at the end breaks the ID order of the list
+     *
+     * @param transaction The transaction about to be added
+     */
+    private void checkIdOrder(Transaction transaction) {
+        if (!transactions.isEmpty() && transactions.get(transactions.size() - 1).getId() > transaction.getId()) {
+            inIdOrder = false;
+        }
+    }
+
+    /**
+     * Add a transaction to the category or source index
+     *
+     * @param transaction The transaction
+     */
+    private void addToGroupIndex(Transaction transaction) {
+        if (transaction instanceof Expense) {
+            categoryIndex.add(((Expense) transaction).getCategory(), transaction);
+        } else if (transaction instanceof Income) {
+            sourceIndex.add(((Income) transaction).getSource(), transaction);
+        }
+    }
+
+    /**
+     * Remove a transaction from the category or source index
+     *
+     * @param transaction The transaction
+     */
+    private void removeFromGroupIndex(Transaction transaction) {
+        if (transaction instanceof Expense) {
+            categoryIndex.remove(((Expense) transaction).getCategory(), transaction);
+        } else if (transaction instanceof Income) {
+            sourceIndex.remove(((Income) transaction).getSource(), transaction);
+        }
+    }
+
+    /**
+     * Apply an amount change to the category or source totals
+     *
+     * @param transaction The edited transaction
+     * @param deltaCents New amount minus old amount, in cents
+     */
+    private void adjustGroupIndex(Transaction transaction, long deltaCents) {
+        if (transaction instanceof Expense) {
+            categoryIndex.adjust(((Expense) transaction).getCategory(), deltaCents);
+        } else if (transaction instanceof Income) {
+            sourceIndex.adjust(((Income) transaction).getSource(), deltaCents);
+        }
+    }
+
+    /**
+     * Rebuild the category and source indexes from the transaction list
+     */
+    private void rebuildGroupIndexes() {
+        categoryIndex.clear();
+        sourceIndex.clear();
+        for (Transaction transaction : transactions) {
+            addToGroupIndex(transaction);
+        }
+    }
+
+    /**
+     * Rebuild the ID index from the transaction list, which has no deleted
+     * transactions in it
+     */
+    private void rebuildIdIndex() {
+        positionsById.clear();
+        positionsById.ensureCapacity(transactions.size());
+        for (int position = 0; position < transactions.size(); position++) {
+            positionsById.put(transactions.get(position).getId(), position);
+        }
+    }
+
+    /**
+     * Refill the recent transactions buffer from the end of the transaction
+     * list, which has no deleted transactions in it
+     */
+    private void rebuildRecentTransactions() {
+        recentTransactions.clear();
+
+        // Add oldest first so the last transaction ends up newest
+        int start = Math.max(0, transactions.size() - recentTransactions.capacity());
+        for (int i = start; i < transactions.size(); i++) {
+            recentTransactions.add(transactions.get(i));
+        }
+    }
+
+    /**
+     * Repair the recent transactions buffer after a transaction was removed
+     * from the list
+     *
+     * @param transaction The removed transaction
+     */
+    private void removeFromRecentTransactions(Transaction transaction) {
+        if (recentTransactions.remove(transaction)) {
+            // The live transaction just before the buffered ones moves into the buffer
+            List<Transaction> recent = recentTransactions.view();
+            int oldest = recent.isEmpty() ? transactions.size()
+                                           : positionsById.get(recent.get(recent.size() - 1).getId());
+            int refill = deleted.previousClearBit(oldest - 1);
+            if (refill >= 0) {
+                recentTransactions.addOldest(transactions.get(refill));
+            }
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package manager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import model.Expense;
+import model.Income;
+import util.DirectIntIntHashMap;
+import util.Money;
+import util.StringDictionary;
+
+/**
+ * Transaction storage outside the Java heap. Rows are fixed-size records in
+ * direct buffers of CHUNK_ROWS rows each, and descriptions are varint
+ * length-prefixed UTF-8 bytes in direct text chunks. The heap only holds
+ * the buffer handles (one per chunk) and the category and source names,
+ * so heap use and garbage collection work stay flat as the ledger grows.
+ *
+ * Chunks are never copied to grow: a full chunk is followed by a new one.
+ * Chunks are not freed either, but kept for reuse after clear() or after
+ * deleted rows are squeezed out. Like ColumnStore, deleted rows are only
+ * marked until they make up half of the rows.
+ */
+class OffHeapStore implements TransactionStore {
+    // Flag bit of deleted rows, next to INCOME and TAX_FLAG
+    private static final byte DELETED = 4;
+
+    // Record layout: ID, epoch day, cents, description reference, group code, flags
+    private static final int ID = 0;
+    private static final int DAY = 4;
+    private static final int CENTS = 8;
+    private static final int TEXT = 16;
+    private static final int GROUP = 24;
+    private static final int FLAGS = 28;
+    private static final int RECORD_SIZE = 32;
+
+    // 32768 rows, 1 MB of records per chunk
+    private static final int CHUNK_SHIFT = 15;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+    // Descriptions longer than this get a text chunk of their own
+    private static final int TEXT_CHUNK_SIZE = 1 << 20;
+
+    // Beyond any date DateValidator accepts (year 9999 is day 2932896)
+    private static final int MAX_EPOCH_DAY = 1 << 29;
+    // Garbage (deleted rows, replaced descriptions) is never squeezed out below this size
+    private static final int MIN_COMPACTION = 1024;
+
+    private ByteBuffer[] records = new ByteBuffer[16];
+    private int recordChunks;
+
+    // A description reference is the text chunk number above the offset in the chunk
+    private ByteBuffer[] text = new ByteBuffer[16];
+    private int textChunks;
+    private int textPosition;
+    private long textSize;
+    private long deadTextBytes;
+
+    private int rowCount;
+    private int liveCount;
+    // While IDs arrive in ascending order rows are found by binary search;
+    // the hash map is only built once an ID arrives out of order
+    private boolean idsAscending = true;
+    private DirectIntIntHashMap rowsById;
+    private StringDictionary groupNames = new StringDictionary();
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int size() {
+        return liveCount;
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return (getFlags(row) & DELETED) == 0;
+    }
+
+    @Override
+    public int rowOf(int id) {
+        if (!idsAscending) {
+            int row = rowsById.get(id);
+            // Deleted IDs stay in the map until the next compaction
+            return row != DirectIntIntHashMap.NOT_FOUND && isLive(row) ? row : DirectIntIntHashMap.NOT_FOUND;
+        }
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = getId(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return isLive(middle) ? middle : DirectIntIntHashMap.NOT_FOUND;
+            }
+        }
+        return DirectIntIntHashMap.NOT_FOUND;
+    }
+
+    @Override
+    public int add(int id, int epochDay, long amountCents, byte rowFlags, String description, String group) {
+        ensureCapacity(rowCount + 1);
+        if (idsAscending && rowCount > 0 && id <= getId(rowCount - 1)) {
+            buildIdMap();
+        }
+        int row = rowCount++;
+        ByteBuffer chunk = records[row >>> CHUNK_SHIFT];
+        int offset = offset(row);
+        chunk.putInt(offset + ID, id);
+        chunk.putInt(offset + DAY, epochDay);
+        chunk.putLong(offset + CENTS, amountCents);
+        chunk.putInt(offset + GROUP, groupNames.intern(group));
+        chunk.put(offset + FLAGS, rowFlags);
+        storeText(row, description);
+        liveCount++;
+        if (!idsAscending) {
+            rowsById.put(id, row);
+        }
+        return row;
+    }
+
+    @Override
+    public void ensureCapacity(int rows) {
+        int chunks = (int) (((long) rows + CHUNK_ROWS - 1) >>> CHUNK_SHIFT);
+        if (chunks > records.length) {
+            records = Arrays.copyOf(records, Math.max(chunks, records.length * 2));
+        }
+        while (recordChunks < chunks) {
+            if (records[recordChunks] == null) {
+                records[recordChunks] = allocate(CHUNK_ROWS * RECORD_SIZE);
+            }
+            recordChunks++;
+        }
+        if (!idsAscending) {
+            rowsById.ensureCapacity(rows);
+        }
+    }
+
+    @Override
+    public boolean remove(int id) {
+        int row = rowOf(id);
+        if (row == DirectIntIntHashMap.NOT_FOUND) {
+            return false;
+        }
+        setFlags(row, (byte) (getFlags(row) | DELETED));
+        deadTextBytes += storedTextSize(text, getTextReference(row));
+        liveCount--;
+        maybeCompact();
+        return true;
+    }
+
+    @Override
+    public void setEpochDay(int row, int epochDay) {
+        records[row >>> CHUNK_SHIFT].putInt(offset(row) + DAY, epochDay);
+    }
+
+    @Override
+    public void setAmountCents(int row, long amountCents) {
+        records[row >>> CHUNK_SHIFT].putLong(offset(row) + CENTS, amountCents);
+    }
+
+    @Override
+    public void setDescription(int row, String description) {
+        deadTextBytes += storedTextSize(text, getTextReference(row));
+        storeText(row, description);
+        maybeCompact();
+    }
+
+    @Override
+    public int getId(int row) {
+        return records[row >>> CHUNK_SHIFT].getInt(offset(row) + ID);
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        return records[row >>> CHUNK_SHIFT].getInt(offset(row) + DAY);
+    }
+
+    @Override
+    public long getAmountCents(int row) {
+        return records[row >>> CHUNK_SHIFT].getLong(offset(row) + CENTS);
+    }
+
+    @Override
+    public boolean isIncome(int row) {
+        return (getFlags(row) & INCOME) != 0;
+    }
+
+    @Override
+    public boolean hasTaxFlag(int row) {
+        return (getFlags(row) & TAX_FLAG) != 0;
+    }
+
+    @Override
+    public String getDescription(int row) {
+        long reference = getTextReference(row);
+        ByteBuffer chunk = text[(int) (reference >>> 32)];
+        int offset = (int) reference;
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = chunk.get(offset++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        byte[] bytes = new byte[length];
+        chunk.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getGroupCode(int row) {
+        return records[row >>> CHUNK_SHIFT].getInt(offset(row) + GROUP);
+    }
+
+    @Override
+    public String groupName(int code) {
+        return groupNames.get(code);
+    }
+
+    @Override
+    public int groupCode(String name) {
+        return groupNames.lookup(name);
+    }
+
+    @Override
+    public int groupCount() {
+        return groupNames.size();
+    }
+
+    @Override
+    public long[] sumTotals(int fromDay, int toDay) {
+        // Clamped so the range checks below cannot overflow
+        fromDay = Math.max(fromDay, -MAX_EPOCH_DAY);
+        toDay = Math.min(toDay, MAX_EPOCH_DAY);
+        long income = 0;
+        long expenses = 0;
+        long taxDeductions = 0;
+        long incomeTax = 0;
+        for (int first = 0; first < rowCount; first += CHUNK_ROWS) {
+            ByteBuffer chunk = records[first >>> CHUNK_SHIFT];
+            int end = Math.min(rowCount - first, CHUNK_ROWS) * RECORD_SIZE;
+            // Same branch-free row selection as ColumnStore.sumTotals
+            for (int offset = 0; offset < end; offset += RECORD_SIZE) {
+                int day = chunk.getInt(offset + DAY);
+                int rowFlags = chunk.get(offset + FLAGS);
+                long counted = ~((long) ((day - fromDay) | (toDay - day) | -(rowFlags & DELETED)) >> 63);
+                long isIncome = -(long) (rowFlags & INCOME);
+                long taxed = -(long) ((rowFlags & TAX_FLAG) >> 1);
+                long amount = chunk.getLong(offset + CENTS) & counted;
+                income += amount & isIncome;
+                expenses += amount & ~isIncome;
+                int rate = (rowFlags & INCOME) != 0 ? Income.INCOME_TAX_RATE_PERCENT : Expense.TAX_RATE_PERCENT;
+                long tax = Money.percentOf(amount & taxed, rate);
+                incomeTax += tax & isIncome;
+                taxDeductions += tax & ~isIncome;
+            }
+        }
+        long[] totals = new long[4];
+        totals[TransactionManager.INCOME] = income;
+        totals[TransactionManager.EXPENSES] = expenses;
+        totals[TransactionManager.TAX_DEDUCTIONS] = taxDeductions;
+        totals[TransactionManager.INCOME_TAX] = incomeTax;
+        return totals;
+    }
+
+    @Override
+    public void sumGroups(boolean income, long[] sums, int[] counts) {
+        byte wanted = income ? INCOME : 0;
+        for (int first = 0; first < rowCount; first += CHUNK_ROWS) {
+            ByteBuffer chunk = records[first >>> CHUNK_SHIFT];
+            int end = Math.min(rowCount - first, CHUNK_ROWS) * RECORD_SIZE;
+            for (int offset = 0; offset < end; offset += RECORD_SIZE) {
+                if ((chunk.get(offset + FLAGS) & (INCOME | DELETED)) == wanted) {
+                    int group = chunk.getInt(offset + GROUP);
+                    sums[group] += chunk.getLong(offset + CENTS);
+                    counts[group]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove every row. The chunks are kept and reused.
+     */
+    @Override
+    public void clear() {
+        rowCount = 0;
+        liveCount = 0;
+        textChunks = 0;
+        textPosition = 0;
+        textSize = 0;
+        deadTextBytes = 0;
+        idsAscending = true;
+        rowsById = null;
+        groupNames.clear();
+    }
+
+    private static int offset(int row) {
+        return (row & CHUNK_MASK) * RECORD_SIZE;
+    }
+
+    private byte getFlags(int row) {
+        return records[row >>> CHUNK_SHIFT].get(offset(row) + FLAGS);
+    }
+
+    private void setFlags(int row, byte rowFlags) {
+        records[row >>> CHUNK_SHIFT].put(offset(row) + FLAGS, rowFlags);
+    }
+
+    private long getTextReference(int row) {
+        return records[row >>> CHUNK_SHIFT].getLong(offset(row) + TEXT);
+    }
+
+    private void setTextReference(int row, long reference) {
+        records[row >>> CHUNK_SHIFT].putLong(offset(row) + TEXT, reference);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private void storeText(int row, String description) {
+        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        int needed = varintSize(bytes.length) + bytes.length;
+        if (textChunks == 0 || textPosition + needed > text[textChunks - 1].capacity()) {
+            startTextChunk(needed);
+        }
+        ByteBuffer chunk = text[textChunks - 1];
+        setTextReference(row, ((long) (textChunks - 1) << 32) | textPosition);
+        int length = bytes.length;
+        while (length >= 0x80) {
+            chunk.put(textPosition++, (byte) (length | 0x80));
+            length >>>= 7;
+        }
+        chunk.put(textPosition++, (byte) length);
+        chunk.put(textPosition, bytes);
+        textPosition += bytes.length;
+        textSize += needed;
+    }
+
+    /**
+     * Move on to the next text chunk, allocating it unless an earlier
+     * compaction left a large enough one behind
+     *
+     * @param needed Bytes the chunk must hold
+     */
+    private void startTextChunk(int needed) {
+        if (textChunks == text.length) {
+            text = Arrays.copyOf(text, textChunks * 2);
+        }
+        if (text[textChunks] == null || text[textChunks].capacity() < needed) {
+            text[textChunks] = allocate(Math.max(needed, TEXT_CHUNK_SIZE));
+        }
+        textChunks++;
+        textPosition = 0;
+    }
+
+    /**
+     * Get the bytes a description takes in its text chunk, length prefix included
+     */
+    private static int storedTextSize(ByteBuffer[] chunks, long reference) {
+        ByteBuffer chunk = chunks[(int) (reference >>> 32)];
+        int offset = (int) reference;
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = chunk.get(offset++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return offset - (int) reference + length;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Switch from binary search to the hash map for finding rows by ID
+     */
+    private void buildIdMap() {
+        idsAscending = false;
+        rowsById = new DirectIntIntHashMap(Math.max(rowCount, CHUNK_ROWS));
+        for (int row = 0; row < rowCount; row++) {
+            if (isLive(row)) {
+                rowsById.put(getId(row), row);
+            }
+        }
+    }
+
+    /**
+     * Squeeze out deleted rows and replaced descriptions once they take up
+     * as much room as the live data. Records move towards the start in
+     * place; live descriptions are copied into spare text chunks, and the
+     * chunks they came from become the spares for next time. Row numbers
+     * change, IDs do not.
+     */
+    private void maybeCompact() {
+        int deadRows = rowCount - liveCount;
+        boolean rowsWasted = deadRows >= MIN_COMPACTION && deadRows >= liveCount;
+        boolean textWasted = deadTextBytes >= MIN_COMPACTION * 16 && deadTextBytes >= textSize - deadTextBytes;
+        if (!rowsWasted && !textWasted) {
+            return;
+        }
+
+        ByteBuffer[] oldText = text;
+        int oldTextChunks = textChunks;
+        text = Arrays.copyOfRange(oldText, oldTextChunks, Math.max(oldText.length, oldTextChunks + 16));
+        textChunks = 0;
+        textPosition = 0;
+        textSize = 0;
+        if (!idsAscending) {
+            rowsById.clear();
+        }
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!isLive(row)) {
+                continue;
+            }
+            if (live != row) {
+                ByteBuffer from = records[row >>> CHUNK_SHIFT];
+                ByteBuffer to = records[live >>> CHUNK_SHIFT];
+                for (int field = 0; field < RECORD_SIZE; field += Long.BYTES) {
+                    to.putLong(offset(live) + field, from.getLong(offset(row) + field));
+                }
+            }
+            copyText(live, oldText);
+            if (!idsAscending) {
+                rowsById.put(getId(live), live);
+            }
+            live++;
+        }
+        rowCount = live;
+        deadTextBytes = 0;
+
+        // Chunks written above, then unused spares, then the old chunks as spares
+        ByteBuffer[] chunks = new ByteBuffer[text.length + oldTextChunks];
+        int count = 0;
+        for (ByteBuffer chunk : text) {
+            if (chunk != null) {
+                chunks[count++] = chunk;
+            }
+        }
+        System.arraycopy(oldText, 0, chunks, count, oldTextChunks);
+        text = chunks;
+    }
+
+    /**
+     * Append a row's description, still stored in the old text chunks, to the current text
+     */
+    private void copyText(int row, ByteBuffer[] oldText) {
+        long reference = getTextReference(row);
+        int stored = storedTextSize(oldText, reference);
+        if (textChunks == 0 || textPosition + stored > text[textChunks - 1].capacity()) {
+            startTextChunk(stored);
+        }
+        text[textChunks - 1].put(textPosition, oldText[(int) (reference >>> 32)], (int) reference, stored);
+        setTextReference(row, ((long) (textChunks - 1) << 32) | textPosition);
+        textPosition += stored;
+        textSize += stored;
+    }
+}
@@ -0,0 +1,124 @@
+package manager;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import model.Transaction;
+
+/**
+ * Fixed-capacity ring buffer holding the most recent transactions.
+ * Adding is O(1) and never allocates; removing shifts at most
+ * capacity entries.
+ */
+class RecentTransactions {
+    private Transaction[] slots;
+    // Slot the next transaction is written to
+    private int head;
+    private int count;
+    private List<Transaction> view;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Number of recent transactions to keep
+     */
+    RecentTransactions(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Recent transactions capacity must be at least 1");
+        }
+        slots = new Transaction[capacity];
+        view = new AbstractList<Transaction>() {
+            @Override
+            public Transaction get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+                }
+                return slots[slotOf(index)];
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Record a new transaction as the most recent one
+     *
+     * @param transaction The transaction
+     */
+    void add(Transaction transaction) {
+        slots[head] = transaction;
+        head = (head + 1) % slots.length;
+        if (count < slots.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Remove a transaction if it is in the buffer, keeping the order of the rest
+     *
+     * @param transaction The transaction to remove
+     * @return true if it was in the buffer
+     */
+    boolean remove(Transaction transaction) {
+        for (int i = 0; i < count; i++) {
+            if (slots[slotOf(i)] == transaction) {
+                // Move every older entry one step towards the newest end
+                for (int j = i; j < count - 1; j++) {
+                    slots[slotOf(j)] = slots[slotOf(j + 1)];
+                }
+                slots[slotOf(count - 1)] = null;
+                count--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Put a transaction behind the oldest entry, used to refill the
+     * buffer after a removal
+     *
+     * @param transaction The transaction that is now the oldest recent one
+     */
+    void addOldest(Transaction transaction) {
+        if (count < slots.length) {
+            slots[slotOf(count)] = transaction;
+            count++;
+        }
+    }
+
+    /**
+     * Empty the buffer
+     */
+    void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = null;
+        }
+        head = 0;
+        count = 0;
+    }
+
+    /**
+     * Get a read-only view of the buffer, newest first
+     *
+     * @return Live unmodifiable view
+     */
+    List<Transaction> view() {
+        return view;
+    }
+
+    /**
+     * Map a position (0 = newest) to its slot in the array
+     */
+    private int slotOf(int index) {
+        int slot = head - 1 - index;
+        return slot < 0 ? slot + slots.length : slot;
+    }
+}
@@ -0,0 +1,291 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import model.Transaction;
+import util.DateValidator;
+import util.FileHandler;
+import util.IntIntHashMap;
+import util.ParseErrorHandler;
+
+/**
+ * Keeps the transactions as rows of a TransactionStore (a ColumnStore on
+ * the heap or an OffHeapStore in direct memory) instead of one object per
+ * transaction. Uses a fraction of the memory per row, and range sums and
+ * group totals are plain loops over the rows. Transactions handed out are
+ * copies made from the rows. There are no secondary indexes: range and
+ * group queries scan the rows, and cursors page through keys sorted when
+ * their first page is read.
+ */
+class RowStorage implements LedgerStorage {
+    private TransactionStore store;
+    private int recentCapacity;
+
+    /**
+     * Constructor
+     *
+     * @param store Where the rows are kept
+     * @param recentCapacity Number of transactions returned by recent
+     */
+    RowStorage(TransactionStore store, int recentCapacity) {
+        this.store = store;
+        this.recentCapacity = recentCapacity;
+    }
+
+    /**
+     * Streams the file straight into the store, so the whole ledger never
+     * exists as objects
+     */
+    @Override
+    public void load(FileHandler fileHandler) {
+        store.clear();
+        int maxId = 0;
+        try (Stream<Transaction> loaded = fileHandler.streamTransactions(ParseErrorHandler.PRINT)) {
+            for (Transaction transaction : (Iterable<Transaction>) loaded::iterator) {
+                store.add(transaction);
+                maxId = Math.max(maxId, transaction.getId());
+            }
+        }
+        Transaction.reserveIdsThrough(maxId);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public Transaction get(int id) {
+        int row = store.rowOf(id);
+        return row == IntIntHashMap.NOT_FOUND ? null : store.toTransaction(row);
+    }
+
+    @Override
+    public void add(Transaction transaction) {
+        store.add(transaction);
+    }
+
+    @Override
+    public void addAll(List<Transaction> batch) {
+        store.ensureCapacity(store.rowCount() + batch.size());
+        for (Transaction transaction : batch) {
+            store.add(transaction);
+        }
+    }
+
+    @Override
+    public void remove(Transaction transaction) {
+        store.remove(transaction.getId());
+    }
+
+    @Override
+    public void edit(Transaction transaction, Date date, long amountCents, String description) {
+        int row = store.rowOf(transaction.getId());
+        store.setEpochDay(row, DateValidator.toEpochDay(date));
+        store.setAmountCents(row, amountCents);
+        store.setDescription(row, description);
+        transaction.setDate(date);
+        transaction.setAmountCents(amountCents);
+        transaction.setDescription(description);
+    }
+
+    /**
+     * Creates one object per row, so the report methods are cheaper for
+     * large ledgers
+     */
+    @Override
+    public ArrayList<Transaction> list() {
+        ArrayList<Transaction> transactions = new ArrayList<>(store.size());
+        for (int row = 0; row < store.rowCount(); row++) {
+            if (store.isLive(row)) {
+                transactions.add(store.toTransaction(row));
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Creates each copy only when it is reached
+     */
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<Transaction>() {
+            private int row = nextLive(0);
+
+            @Override
+            public boolean hasNext() {
+                return row < store.rowCount();
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Transaction transaction = store.toTransaction(row);
+                row = nextLive(row + 1);
+                return transaction;
+            }
+        };
+    }
+
+    @Override
+    public List<Transaction> between(int fromDay, int toDay) {
+        // Sort keys pack the day above the row number, so equal days keep their order
+        long[] keys = new long[16];
+        int count = 0;
+        for (int row = 0; row < store.rowCount(); row++) {
+            int day = store.getEpochDay(row);
+            if (day >= fromDay && day <= toDay && store.isLive(row)) {
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                }
+                keys[count++] = ((long) day << 32) | row;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        List<Transaction> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(store.toTransaction((int) keys[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachBetween(int fromDay, int toDay, Consumer<Transaction> action) {
+        for (int row = 0; row < store.rowCount(); row++) {
+            int day = store.getEpochDay(row);
+            if (day >= fromDay && day <= toDay && store.isLive(row)) {
+                action.accept(store.toTransaction(row));
+            }
+        }
+    }
+
+    @Override
+    public long[] sumBetween(int fromDay, int toDay) {
+        return store.sumTotals(fromDay, toDay);
+    }
+
+    @Override
+    public List<Transaction> group(boolean income, String name) {
+        List<Transaction> result = new ArrayList<>();
+        forEachInGroup(income, name, result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachInGroup(boolean income, String name, Consumer<Transaction> action) {
+        int code = store.groupCode(name);
+        if (code < 0) {
+            return;
+        }
+        for (int row = 0; row < store.rowCount(); row++) {
+            if (store.getGroupCode(row) == code && store.isIncome(row) == income && store.isLive(row)) {
+                action.accept(store.toTransaction(row));
+            }
+        }
+    }
+
+    @Override
+    public List<GroupTotal> groupTotals(boolean income) {
+        long[] sums = new long[store.groupCount()];
+        int[] counts = new int[store.groupCount()];
+        store.sumGroups(income, sums, counts);
+        List<GroupTotal> totals = new ArrayList<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                totals.add(new GroupTotal(store.groupName(code), sums[code], counts[code]));
+            }
+        }
+        return totals;
+    }
+
+    @Override
+    public List<Transaction> recent() {
+        List<Transaction> recent = new ArrayList<>(recentCapacity);
+        for (int row = store.rowCount() - 1; row >= 0 && recent.size() < recentCapacity; row--) {
+            if (store.isLive(row)) {
+                recent.add(store.toTransaction(row));
+            }
+        }
+        return recent;
+    }
+
+    /**
+     * Every order pages through keys sorted when the first page is read
+     */
+    @Override
+    public List<Transaction> nextPage(TransactionCursor cursor) {
+        if (cursor.sortedKeys == null) {
+            cursor.sortedKeys = cursor.order == TransactionCursor.BY_DATE ? sortedDateKeys() : sortedIdKeys();
+        }
+        return nextPageFromKeys(cursor);
+    }
+
+    @Override
+    public long[] sortedAmountKeys() {
+        long[] keys = new long[store.size()];
+        int count = 0;
+        for (int row = 0; row < store.rowCount(); row++) {
+            if (store.isLive(row)) {
+                if (store.getAmountCents(row) > Integer.MAX_VALUE) {
+                    return LedgerStorage.super.sortedAmountKeys();
+                }
+                keys[count++] = store.getAmountCents(row) << 32 | store.getId(row);
+            }
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    @Override
+    public long[] sortedIdKeys() {
+        long[] keys = new long[store.size()];
+        int count = 0;
+        for (int row = 0; row < store.rowCount(); row++) {
+            if (store.isLive(row)) {
+                keys[count++] = store.getId(row);
+            }
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Sort the transactions by date, then ID
+     *
+     * @return Sorted keys, day in the high and ID in the low 32 bits
+     */
+    private long[] sortedDateKeys() {
+        long[] keys = new long[store.size()];
+        int count = 0;
+        for (int row = 0; row < store.rowCount(); row++) {
+            if (store.isLive(row)) {
+                keys[count++] = (long) store.getEpochDay(row) << 32 | store.getId(row);
+            }
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Find the first live row at or after a row
+     *
+     * @param row Row number
+     * @return Live row number, or rowCount() if there is none
+     */
+    private int nextLive(int row) {
+        while (row < store.rowCount() && !store.isLive(row)) {
+            row++;
+        }
+        return row;
+    }
+}
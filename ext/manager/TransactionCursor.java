@@ -0,0 +1,137 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import model.Transaction;
+
+/**
+ * Reads the transactions of a TransactionManager a page at a time, sorted
+ * by date, amount or ID and optionally filtered. Pages are read as the
+ * user asks for them and the ledger can change in between: deleted
+ * transactions are not returned. Date and ID order only remember where the
+ * last page stopped, so added transactions are returned too if they sort
+ * after that point. Amount order, ID order on a ledger whose file was
+ * not in ID order and every order of column and off-heap storage page
+ * through a sorted copy made when the first page needs it, so they do not
+ * see transactions added later.
+ *
+ * Open a cursor with TransactionManager.openCursor.
+ */
+public class TransactionCursor {
+    // Sort orders
+    public static final int BY_DATE = 0;
+    public static final int BY_AMOUNT = 1;
+    public static final int BY_ID = 2;
+
+    // Page size used unless configured otherwise
+    public static final int DEFAULT_PAGE_SIZE = 10;
+
+    private final TransactionManager manager;
+    final int order;
+    final boolean descending;
+    final int pageSize;
+    private final Predicate<Transaction> filter;
+
+    // Day and ID of the last transaction returned, in date and ID order
+    int lastDay;
+    int lastId;
+    // Sorted copy and the number of keys read from it, for the orders paged
+    // through a copy. The low 32 bits of each key are the ID; descending
+    // cursors read the keys from the end.
+    long[] sortedKeys;
+    int position;
+
+    private int pageNumber;
+    private boolean done;
+
+    /**
+     * Constructor
+     *
+     * @param manager The manager to read from
+     * @param order BY_DATE, BY_AMOUNT or BY_ID
+     * @param descending true for newest, largest or highest ID first
+     * @param filter Transactions to include, or null for all
+     * @param pageSize Transactions per page
+     */
+    TransactionCursor(TransactionManager manager, int order, boolean descending,
+                      Predicate<Transaction> filter, int pageSize) {
+        if (order < BY_DATE || order > BY_ID) {
+            throw new IllegalArgumentException("Unknown sort order: " + order);
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.manager = manager;
+        this.order = order;
+        this.descending = descending;
+        this.filter = filter;
+        this.pageSize = pageSize;
+        // Start before the first day and ID in either direction
+        lastDay = descending ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+        lastId = lastDay;
+    }
+
+    /**
+     * Read the next page
+     *
+     * @return Up to pageSize transactions, empty once there are no more
+     */
+    public List<Transaction> nextPage() {
+        if (done) {
+            return new ArrayList<>();
+        }
+        List<Transaction> page = manager.nextPage(this);
+        if (page.size() < pageSize) {
+            done = true;
+        }
+        if (!page.isEmpty()) {
+            pageNumber++;
+        }
+        return page;
+    }
+
+    /**
+     * Check whether another page may follow. After a full page this is
+     * true even if the next page turns out to be empty.
+     *
+     * @return false once a page came back short
+     */
+    public boolean hasMore() {
+        return !done;
+    }
+
+    /**
+     * Get the number of the last page read
+     *
+     * @return Page number, starting at 1 (0 before the first page)
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Check whether a transaction passes the filter
+     *
+     * @param transaction The transaction
+     * @return true if it belongs on a page
+     */
+    boolean accepts(Transaction transaction) {
+        return filter == null || filter.test(transaction);
+    }
+
+    /**
+     * Check whether an ID comes after the last one returned on the last day
+     *
+     * @param id Transaction ID
+     * @return true if it has not been passed yet
+     */
+    boolean isAfterLastId(int id) {
+        return descending ? id < lastId : id > lastId;
+    }
+}
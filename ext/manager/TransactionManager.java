@@ -1,9 +1,12 @@
 package manager;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 import exceptions.InvalidTransactionException;
 import model.Expense;
@@ -11,14 +14,76 @@ import model.Income;
 import model.Transaction;
 import util.DateValidator;
 import util.FileHandler;
+import util.Metrics;
+import util.Money;
+import util.OperationTimer;
 
 /**
  * Manages transactions and handles business logic
+ * 
+ * The transactions are kept in one of three storages, chosen when the
+ * manager is created. OBJECT_STORAGE keeps one object per transaction
+ * with indexes by ID, date, category and source. COLUMN_STORAGE keeps
+ * them as rows of primitive arrays, using a fraction of the memory, and
+ * OFF_HEAP_STORAGE keeps those rows in direct memory outside the Java
+ * heap, so the heap and garbage collection pauses stay small however
+ * large the ledger grows (direct memory is limited separately, with
+ * -XX:MaxDirectMemorySize). The row storages hand out copies: change
+ * transactions through editTransaction, never with their setters.
+ * Totals, rollups, journaling and saves work the same in every storage.
  */
 public class TransactionManager {
-    private ArrayList<Transaction> transactions;
-    private LinkedList<Transaction> recentTransactions;
+    // Number of recent transactions kept unless configured otherwise
+    public static final int DEFAULT_RECENT_CAPACITY = 10;
+    
+    // Where the transactions are kept, see the class comment
+    public static final int OBJECT_STORAGE = 0;
+    public static final int COLUMN_STORAGE = 1;
+    public static final int OFF_HEAP_STORAGE = 2;
+    // Names of the storages on the command line, indexed by storage
+    private static final String[] STORAGE_NAMES = {"objects", "columns", "off-heap"};
+    
+    // Positions in the array returned by calculateTotalsBetween
+    protected static final int INCOME = 0;
+    protected static final int EXPENSES = 1;
+    protected static final int TAX_DEDUCTIONS = 2;
+    protected static final int INCOME_TAX = 3;
+    
+    // Call counts and sampled latencies of the hot operations
+    private static final OperationTimer ADD_TIMER = Metrics.timer("manager.add");
+    private static final OperationTimer ADD_BATCH_TIMER = Metrics.timer("manager.addBatch", 1);
+    private static final OperationTimer EDIT_TIMER = Metrics.timer("manager.edit");
+    private static final OperationTimer DELETE_TIMER = Metrics.timer("manager.delete", 1);
+    private static final OperationTimer LOOKUP_TIMER = Metrics.timer("manager.lookup");
+    private static final OperationTimer INCOME_TIMER = Metrics.timer("manager.calculateTotalIncome");
+    private static final OperationTimer EXPENSES_TIMER = Metrics.timer("manager.calculateTotalExpenses");
+    private static final OperationTimer BALANCE_TIMER = Metrics.timer("manager.calculateBalance");
+    private static final OperationTimer TAX_DEDUCTIONS_TIMER = Metrics.timer("manager.calculateTaxDeductions");
+    private static final OperationTimer INCOME_TAX_TIMER = Metrics.timer("manager.calculateIncomeTax");
+    private static final OperationTimer RANGE_TIMER = Metrics.timer("manager.calculateBetween");
+    
+    // The transactions and their indexes
+    private LedgerStorage storage;
     private FileHandler fileHandler;
+    // Totals per month and year, saved next to the ledger
+    private MonthlyRollup monthlyRollup;
+    private String rollupPath;
+    // Change count the saved rollup is up to date with, -1 if it is not saved
+    private long rollupSavedAt = -1;
+    
+    // Running totals in cents, updated on every add, edit and delete
+    private long totalIncome;
+    private long totalExpenses;
+    private long totalTaxDeductions;
+    private long totalIncomeTax;
+    private int incomeCount;
+    private int expenseCount;
+    // When true, every total read is checked against a full recomputation
+    private boolean consistencyCheck;
+    // Shared by every add, it holds no state
+    private TransactionValidator validator = new TransactionValidator();
+    // Changes since the last load or save
+    private ChangeTracker changes;
     
     /**
      * Constructor
@@ -26,33 +91,194 @@ public class TransactionManager {
      * @param filePath Path to the transactions file
      */
     public TransactionManager(String filePath) {
-        fileHandler = new FileHandler(filePath);
-        transactions = new ArrayList<>();
-        recentTransactions = new LinkedList<>();
+        this(filePath, false);
+    }
+    
+    /**
+     * Constructor with a storage mode
+     * 
+     * @param filePath Path to the transactions file
+     * @param journaled true to append each change to a journal instead of
+     *                  rewriting the whole file
+     */
+    public TransactionManager(String filePath, boolean journaled) {
+        this(filePath, journaled, DEFAULT_RECENT_CAPACITY);
+    }
+    
+    /**
+     * Constructor with a storage mode and the number of recent transactions to keep
+     * 
+     * @param filePath Path to the transactions file
+     * @param journaled true to append each change to a journal instead of
+     *                  rewriting the whole file
+     * @param recentCapacity Number of transactions returned by getRecentTransactions
+     */
+    public TransactionManager(String filePath, boolean journaled, int recentCapacity) {
+        this(filePath, journaled, recentCapacity, false);
+    }
+    
+    /**
+     * Constructor with a storage mode, the number of recent transactions to
+     * keep and whether changes are written on a background thread
+     * 
+     * @param filePath Path to the transactions file
+     * @param journaled true to append each change to a journal instead of
+     *                  rewriting the whole file
+     * @param recentCapacity Number of transactions returned by getRecentTransactions
+     * @param asynchronous true to write every change to the file on a background
+     *                     thread, so no call waits for the disk (not together with journaled)
+     */
+    public TransactionManager(String filePath, boolean journaled, int recentCapacity, boolean asynchronous) {
+        this(filePath, journaled, recentCapacity, asynchronous, OBJECT_STORAGE);
+    }
+    
+    /**
+     * Constructor with a storage mode, the number of recent transactions to
+     * keep, whether changes are written on a background thread and where
+     * the transactions are kept
+     * 
+     * @param filePath Path to the transactions file
+     * @param journaled true to append each change to a journal instead of
+     *                  rewriting the whole file
+     * @param recentCapacity Number of transactions returned by getRecentTransactions
+     * @param asynchronous true to write every change to the file on a background
+     *                     thread, so no call waits for the disk (not together with journaled)
+     * @param storage OBJECT_STORAGE, COLUMN_STORAGE or OFF_HEAP_STORAGE
+     * @throws IllegalArgumentException If the storage is unknown
+     */
+    public TransactionManager(String filePath, boolean journaled, int recentCapacity, boolean asynchronous,
+                              int storage) {
+        this.storage = newStorage(storage, recentCapacity);
+        fileHandler = new FileHandler(filePath, journaled, asynchronous);
+        monthlyRollup = new MonthlyRollup();
+        rollupPath = filePath + MonthlyRollup.EXTENSION;
+        changes = new ChangeTracker(fileHandler.canSaveChanges(), ChangeTracker.DEFAULT_MAX_DELTA);
         
         // Load existing transactions
-        loadTransactions();
+        loadFromFile();
+    }
+    
+    /**
+     * Look up a storage by its name on the command line
+     * 
+     * @param name "objects", "columns" or "off-heap"
+     * @return OBJECT_STORAGE, COLUMN_STORAGE or OFF_HEAP_STORAGE
+     * @throws IllegalArgumentException If no storage has that name
+     */
+    public static int storageNamed(String name) {
+        for (int storage = 0; storage < STORAGE_NAMES.length; storage++) {
+            if (STORAGE_NAMES[storage].equals(name)) {
+                return storage;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage: " + name + " (use objects, columns or off-heap)");
     }
     
     /**
      * Load transactions from file
      */
     public void loadTransactions() {
-        List<Transaction> loadedTransactions = fileHandler.loadTransactions();
-        transactions.clear();
-        transactions.addAll(loadedTransactions);
-        
-        // Also update recent transactions (keep last 10)
-        updateRecentTransactions();
+        loadFromFile();
+    }
+    
+    /**
+     * Replace the in-memory state with the contents of the file.
+     * Kept separate from loadTransactions so subclasses can wrap the
+     * public method without it being called from this constructor.
+     */
+    private void loadFromFile() {
+        storage.load(fileHandler);
+        recomputeTotals();
+        loadRollup();
+        changes.clear();
     }
     
     /**
-     * Save transactions to file
+     * Save transactions to file. Does nothing if nothing changed since the
+     * last load or save. Plain text files get only the changes, other files
+     * are written whole (journaled and asynchronous files already hold
+     * every change, so they only have to reach the disk). The monthly
+     * rollup is saved alongside whenever it has changed.
      * 
      * @return true if successful, false otherwise
      */
     public boolean saveTransactions() {
-        return fileHandler.saveTransactions(transactions);
+        if (!changes.isDirty()) {
+            saveRollup();
+            return true;
+        }
+        long modCount = changes.getModCount();
+        boolean saved;
+        if (changes.hasDelta()) {
+            saved = fileHandler.saveChanges(changes.getAdded(), changes.getEdited(), changes.getDeleted());
+        } else {
+            saved = fileHandler.saveTransactions(storage.list());
+        }
+        if (saved) {
+            changes.markSaved(modCount);
+            saveRollup();
+        }
+        return saved;
+    }
+    
+    /**
+     * Check whether anything changed since the last load or save
+     * 
+     * @return true if saveTransactions has something to write
+     */
+    public boolean hasUnsavedChanges() {
+        return changes.isDirty();
+    }
+    
+    /**
+     * Get the number of adds, edits and deletes made since the manager was
+     * created. Callers can compare two readings to see whether the ledger
+     * changed in between.
+     * 
+     * @return Modification count
+     */
+    public long getModCount() {
+        return changes.getModCount();
+    }
+    
+    /**
+     * Start saving transactions without waiting for the disk. In asynchronous
+     * mode the changes queued so far are written straight away; in other
+     * modes this saves before returning.
+     * 
+     * @return Future that completes with true once the transactions are saved
+     */
+    public CompletableFuture<Boolean> saveTransactionsAsync() {
+        if (fileHandler.isAsynchronous()) {
+            long modCount = changes.getModCount();
+            return fileHandler.flush().thenApply(saved -> {
+                if (saved) {
+                    changes.markSaved(modCount);
+                }
+                return saved;
+            });
+        }
+        return CompletableFuture.completedFuture(saveTransactions());
+    }
+    
+    /**
+     * Get a future for the changes made so far, without hurrying the
+     * background writer. Already complete unless writing asynchronously.
+     * 
+     * @return Future that completes with true once the changes are on disk
+     */
+    public CompletableFuture<Boolean> whenSaved() {
+        return fileHandler.whenWritten();
+    }
+    
+    /**
+     * Flush pending changes and release file resources. Waits for the
+     * background writer in asynchronous mode. Changes saved since the
+     * last full save are folded into the file, so afterwards it holds
+     * everything saved without its journal.
+     */
+    public void close() {
+        fileHandler.close();
     }
     
     /**
@@ -65,6 +291,8 @@ public class TransactionManager {
      * @param isTaxDeductible Whether expense is tax deductible
      * @return The created expense transaction
      * @throws InvalidTransactionException If transaction data is invalid
+     * @throws UncheckedIOException If the change could not be written to the journal
+     *         (the ledger is left unchanged)
      */
     public Expense addExpense(Date date, double amount, String description, 
                               String category, boolean isTaxDeductible) 
@@ -73,8 +301,7 @@ public class TransactionManager {
         validateTransactionData(amount, description);
         
         Expense expense = new Expense(date, amount, description, category, isTaxDeductible);
-        transactions.add(expense);
-        updateRecentTransactions();
+        addTransaction(expense);
         return expense;
     }
     
@@ -88,6 +315,8 @@ public class TransactionManager {
      * @param isTaxable Whether income is taxable
      * @return The created income transaction
      * @throws InvalidTransactionException If transaction data is invalid
+     * @throws UncheckedIOException If the change could not be written to the journal
+     *         (the ledger is left unchanged)
      */
     public Income addIncome(Date date, double amount, String description,
                            String source, boolean isTaxable)
@@ -96,28 +325,137 @@ public class TransactionManager {
         validateTransactionData(amount, description);
         
         Income income = new Income(date, amount, description, source, isTaxable);
-        transactions.add(income);
-        updateRecentTransactions();
+        addTransaction(income);
         return income;
     }
     
+    /**
+     * Add a batch of transactions. Every row is validated first; rows that
+     * fail are skipped and reported, and the rest get one block of IDs and
+     * are added to the list, indexes and totals together.
+     * 
+     * @param entries Rows to add
+     * @return The added transactions and the error of every rejected row
+     * @throws UncheckedIOException If the change could not be written to the journal
+     *         (the ledger is left unchanged)
+     */
+    public BatchResult addAll(List<BatchEntry> entries) {
+        InvalidTransactionException[] errors = new InvalidTransactionException[entries.size()];
+        int errorCount = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            try {
+                validateTransactionData(entries.get(i).getAmount(), entries.get(i).getDescription());
+            } catch (InvalidTransactionException e) {
+                errors[i] = e;
+                errorCount++;
+            }
+        }
+        
+        List<Transaction> batch = new ArrayList<>(entries.size() - errorCount);
+        int id = Transaction.reserveIds(entries.size() - errorCount);
+        for (int i = 0; i < entries.size(); i++) {
+            if (errors[i] == null) {
+                batch.add(createTransaction(id++, entries.get(i)));
+            }
+        }
+        addTransactions(batch);
+        return new BatchResult(batch, errors, errorCount);
+    }
+    
+    /**
+     * Add already validated transactions to the list, indexes and totals,
+     * growing the storage once and writing the journal once
+     * 
+     * @param batch The new transactions
+     */
+    protected void addTransactions(List<Transaction> batch) {
+        long start = ADD_BATCH_TIMER.start();
+        // Journal first, so a failed write leaves the ledger as it was
+        if (!fileHandler.recordAddAll(batch)) {
+            ADD_BATCH_TIMER.stop(start);
+            throw journalFailure("add " + batch.size() + " transactions");
+        }
+        publishAll(batch);
+        ADD_BATCH_TIMER.stop(start);
+    }
+    
+    /**
+     * Put journaled transactions in the storage, rollup, totals and change
+     * tracker
+     * 
+     * @param batch The new transactions
+     */
+    protected void publishAll(List<Transaction> batch) {
+        storage.addAll(batch);
+        for (Transaction transaction : batch) {
+            monthlyRollup.update(transaction, 1);
+            updateTotals(transaction, 1);
+        }
+        changes.addedAll(batch);
+    }
+    
+    /**
+     * Add an already validated transaction to the list, indexes and totals
+     * 
+     * @param transaction The new transaction
+     */
+    protected void addTransaction(Transaction transaction) {
+        long start = ADD_TIMER.start();
+        // Journal first, so a failed write leaves the ledger as it was
+        if (!fileHandler.recordAdd(transaction)) {
+            ADD_TIMER.stop(start);
+            throw journalFailure("add transaction " + transaction.getId());
+        }
+        publish(transaction);
+        ADD_TIMER.stop(start);
+    }
+    
+    /**
+     * Put a journaled transaction in the storage, rollup, totals and change
+     * tracker
+     * 
+     * @param transaction The new transaction
+     */
+    protected void publish(Transaction transaction) {
+        monthlyRollup.update(transaction, 1);
+        storage.add(transaction);
+        updateTotals(transaction, 1);
+        changes.added(transaction);
+    }
+    
     /**
      * Delete a transaction by ID
      * 
      * @param id ID of transaction to delete
      * @return true if successful, false if not found
+     * @throws UncheckedIOException If the delete could not be written to the journal
+     *         (the ledger is left unchanged)
      */
     public boolean deleteTransaction(int id) {
-        for (int i = 0; i < transactions.size(); i++) {
-            if (transactions.get(i).getId() == id) {
-                transactions.remove(i);
-                updateRecentTransactions();
-                // Save changes to file after deletion
-                boolean saved = saveTransactions();
-                return saved; // Return true only if both removal and saving succeeded
-            }
+        long start = DELETE_TIMER.start();
+        Transaction transaction = storage.get(id);
+        if (transaction == null) {
+            DELETE_TIMER.stop(start);
+            return false;
         }
-        return false;
+        boolean recordsChanges = fileHandler.isJournaled() || fileHandler.isAsynchronous();
+        if (recordsChanges && !fileHandler.recordDelete(id)) {
+            // Not in the journal, so the transaction stays
+            DELETE_TIMER.stop(start);
+            throw journalFailure("delete transaction " + id);
+        }
+        storage.remove(transaction);
+        updateTotals(transaction, -1);
+        monthlyRollup.update(transaction, -1);
+        changes.deleted(id);
+        if (recordsChanges) {
+            DELETE_TIMER.stop(start);
+            return true;
+        }
+        // Save changes to file after deletion (only the delta for text files)
+        boolean saved = saveTransactions();
+        DELETE_TIMER.stop(start);
+        return saved; // Return true only if both removal and saving succeeded
     }
     
     /**
@@ -127,12 +465,10 @@ public class TransactionManager {
      * @return Transaction or null if not found
      */
     public Transaction getTransactionById(int id) {
-        for (Transaction transaction : transactions) {
-            if (transaction.getId() == id) {
-                return transaction;
-            }
-        }
-        return null;
+        long start = LOOKUP_TIMER.start();
+        Transaction transaction = storage.get(id);
+        LOOKUP_TIMER.stop(start);
+        return transaction;
     }
     
     /**
@@ -144,46 +480,144 @@ public class TransactionManager {
      * @param description New description
      * @return true if successful, false if not found
      * @throws InvalidTransactionException If new data is invalid
+     * @throws UncheckedIOException If the change could not be written to the journal
+     *         (the ledger is left unchanged)
      */
     public boolean editTransaction(int id, Date date, double amount, String description) 
             throws InvalidTransactionException {
         // Validate inputs
         validateTransactionData(amount, description);
         
-        Transaction transaction = getTransactionById(id);
-        if (transaction != null) {
-            transaction.setDate(date);
-            transaction.setAmount(amount);
-            transaction.setDescription(description);
-            
-            // For Expense
-            if (transaction instanceof Expense) {
-                return true;
-            }
-            // For Income
-            else if (transaction instanceof Income) {
-                return true;
-            }
+        // Timed from here, so every counted call is also stopped
+        long start = EDIT_TIMER.start();
+        Transaction transaction = storage.get(id);
+        if (transaction == null) {
+            EDIT_TIMER.stop(start);
+            return false;
+        }
+        Date oldDate = transaction.getDate();
+        long oldAmountCents = transaction.getAmountCents();
+        String oldDescription = transaction.getDescription();
+        applyEdit(transaction, date, Money.toCents(amount), description);
+        if (!fileHandler.recordEdit(transaction)) {
+            // The journal needs the edited values, so the edit is undone afterwards
+            applyEdit(transaction, oldDate, oldAmountCents, oldDescription);
+            EDIT_TIMER.stop(start);
+            throw journalFailure("edit transaction " + id);
         }
-        return false;
+        changes.edited(transaction);
+        EDIT_TIMER.stop(start);
+        return true;
     }
     
     /**
-     * Get all transactions
+     * Get all transactions. The row storages create one copy per
+     * transaction, so prefer the cursors and report methods there.
      * 
      * @return List of all transactions
      */
     public ArrayList<Transaction> getAllTransactions() {
-        return transactions;
+        return storage.list();
+    }
+    
+    /**
+     * Get the number of transactions
+     * 
+     * @return Transaction count
+     */
+    public int size() {
+        return storage.size();
+    }
+    
+    /**
+     * Open a cursor that reads transactions a page at a time. With object
+     * storage, date order walks the date index and ID order the ID-sorted
+     * list, each starting where the last page stopped, so a page costs the
+     * same however large the ledger is (plus any rows the filter skips).
+     * Amount order, and every order of the row storages, sorts the keys
+     * once, when the cursor is opened or its first page read.
+     * 
+     * @param order TransactionCursor.BY_DATE, BY_AMOUNT or BY_ID
+     * @param descending true for newest, largest or highest ID first
+     * @param filter Transactions to include, or null for all
+     * @param pageSize Transactions per page
+     * @return Cursor before the first page
+     */
+    public TransactionCursor openCursor(int order, boolean descending, Predicate<Transaction> filter,
+                                        int pageSize) {
+        TransactionCursor cursor = new TransactionCursor(this, order, descending, filter, pageSize);
+        if (order == TransactionCursor.BY_AMOUNT) {
+            cursor.sortedKeys = storage.sortedAmountKeys();
+        }
+        return cursor;
+    }
+    
+    /**
+     * Read the next page of a cursor and move it past that page
+     * 
+     * @param cursor The cursor
+     * @return Up to a page of transactions
+     */
+    protected List<Transaction> nextPage(TransactionCursor cursor) {
+        return storage.nextPage(cursor);
+    }
+    
+    /**
+     * Get the transactions between two dates
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Transactions in range, in date order
+     */
+    public List<Transaction> getTransactionsBetween(Date from, Date to) {
+        return storage.between(DateValidator.toEpochDay(from), DateValidator.toEpochDay(to));
+    }
+    
+    /**
+     * Get the expenses in a category
+     * 
+     * @param category Expense category
+     * @return Expenses in the category, oldest first
+     */
+    public List<Transaction> getTransactionsByCategory(String category) {
+        return storage.group(false, category);
+    }
+    
+    /**
+     * Get the income transactions from a source
+     * 
+     * @param source Income source
+     * @return Income from the source, oldest first
+     */
+    public List<Transaction> getTransactionsBySource(String source) {
+        return storage.group(true, source);
+    }
+    
+    /**
+     * Get total spending and number of expenses per category
+     * 
+     * @return One entry per category, in the order categories first appeared
+     */
+    public List<GroupTotal> getSpendingByCategory() {
+        return storage.groupTotals(false);
+    }
+    
+    /**
+     * Get total income and number of income transactions per source
+     * 
+     * @return One entry per source, in the order sources first appeared
+     */
+    public List<GroupTotal> getIncomeBySource() {
+        return storage.groupTotals(true);
     }
     
     /**
      * Get recent transactions
      * 
-     * @return LinkedList of recent transactions
+     * @return Read-only list of recent transactions, newest first
      */
-    public LinkedList<Transaction> getRecentTransactions() {
-        return recentTransactions;
+    public List<Transaction> getRecentTransactions() {
+        return storage.recent();
     }
     
     /**
@@ -192,12 +626,19 @@ public class TransactionManager {
      * @return Total income amount
      */
     public double calculateTotalIncome() {
-        double total = 0;
-        for (Transaction transaction : transactions) {
-            if (transaction instanceof Income) {
-                total += transaction.getAmount();
-            }
-        }
+        return Money.toDouble(calculateTotalIncomeCents());
+    }
+    
+    /**
+     * Calculate total income in cents
+     * 
+     * @return Exact amount in cents
+     */
+    public long calculateTotalIncomeCents() {
+        long start = INCOME_TIMER.start();
+        checkTotals();
+        long total = totalIncome;
+        INCOME_TIMER.stop(start);
         return total;
     }
     
@@ -207,12 +648,19 @@ public class TransactionManager {
      * @return Total expense amount
      */
     public double calculateTotalExpenses() {
-        double total = 0;
-        for (Transaction transaction : transactions) {
-            if (transaction instanceof Expense) {
-                total += transaction.getAmount();
-            }
-        }
+        return Money.toDouble(calculateTotalExpensesCents());
+    }
+    
+    /**
+     * Calculate total expenses in cents
+     * 
+     * @return Exact amount in cents
+     */
+    public long calculateTotalExpensesCents() {
+        long start = EXPENSES_TIMER.start();
+        checkTotals();
+        long total = totalExpenses;
+        EXPENSES_TIMER.stop(start);
         return total;
     }
     
@@ -222,7 +670,20 @@ public class TransactionManager {
      * @return Current balance (income - expenses)
      */
     public double calculateBalance() {
-        return calculateTotalIncome() - calculateTotalExpenses();
+        return Money.toDouble(calculateBalanceCents());
+    }
+    
+    /**
+     * Calculate current balance in cents
+     * 
+     * @return Exact balance in cents
+     */
+    public long calculateBalanceCents() {
+        long start = BALANCE_TIMER.start();
+        checkTotals();
+        long balance = totalIncome - totalExpenses;
+        BALANCE_TIMER.stop(start);
+        return balance;
     }
     
     /**
@@ -231,12 +692,19 @@ public class TransactionManager {
      * @return Total tax deduction amount
      */
     public double calculateTaxDeductions() {
-        double total = 0;
-        for (Transaction transaction : transactions) {
-            if (transaction instanceof Expense) {
-                total += transaction.calculateTax();
-            }
-        }
+        return Money.toDouble(calculateTaxDeductionsCents());
+    }
+    
+    /**
+     * Calculate total tax deductions in cents
+     * 
+     * @return Exact amount in cents
+     */
+    public long calculateTaxDeductionsCents() {
+        long start = TAX_DEDUCTIONS_TIMER.start();
+        checkTotals();
+        long total = totalTaxDeductions;
+        TAX_DEDUCTIONS_TIMER.stop(start);
         return total;
     }
     
@@ -246,13 +714,245 @@ public class TransactionManager {
      * @return Total income tax amount
      */
     public double calculateIncomeTax() {
-        double total = 0;
-        for (Transaction transaction : transactions) {
+        return Money.toDouble(calculateIncomeTaxCents());
+    }
+    
+    /**
+     * Calculate total income tax in cents
+     * 
+     * @return Exact amount in cents
+     */
+    public long calculateIncomeTaxCents() {
+        long start = INCOME_TAX_TIMER.start();
+        checkTotals();
+        long total = totalIncomeTax;
+        INCOME_TAX_TIMER.stop(start);
+        return total;
+    }
+    
+    /**
+     * Calculate total income between two dates
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Total income amount in range
+     */
+    public double calculateTotalIncome(Date from, Date to) {
+        return Money.toDouble(calculateTotalsBetween(from, to)[INCOME]);
+    }
+    
+    /**
+     * Calculate total expenses between two dates
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Total expense amount in range
+     */
+    public double calculateTotalExpenses(Date from, Date to) {
+        return Money.toDouble(calculateTotalsBetween(from, to)[EXPENSES]);
+    }
+    
+    /**
+     * Calculate the balance of the transactions between two dates
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Income minus expenses in range
+     */
+    public double calculateBalance(Date from, Date to) {
+        long[] totals = calculateTotalsBetween(from, to);
+        return Money.toDouble(totals[INCOME] - totals[EXPENSES]);
+    }
+    
+    /**
+     * Calculate tax deductions from expenses between two dates
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Total tax deduction amount in range
+     */
+    public double calculateTaxDeductions(Date from, Date to) {
+        return Money.toDouble(calculateTotalsBetween(from, to)[TAX_DEDUCTIONS]);
+    }
+    
+    /**
+     * Calculate tax on income between two dates
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Total income tax amount in range
+     */
+    public double calculateIncomeTax(Date from, Date to) {
+        return Money.toDouble(calculateTotalsBetween(from, to)[INCOME_TAX]);
+    }
+    
+    /**
+     * Sum income, expenses, tax deductions and income tax over the days in
+     * range, visiting only the transactions in range
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Totals in cents, indexed by INCOME, EXPENSES, TAX_DEDUCTIONS and INCOME_TAX
+     */
+    protected long[] calculateTotalsBetween(Date from, Date to) {
+        long start = RANGE_TIMER.start();
+        long[] totals = storage.sumBetween(DateValidator.toEpochDay(from), DateValidator.toEpochDay(to));
+        RANGE_TIMER.stop(start);
+        return totals;
+    }
+    
+    /**
+     * Get every total and count of the ledger at once, read from the
+     * running totals
+     * 
+     * @return Summary of all transactions
+     */
+    public FinancialSummary getSummary() {
+        checkTotals();
+        return new FinancialSummary(totalIncome, totalExpenses, totalTaxDeductions, totalIncomeTax,
+                                    incomeCount, expenseCount);
+    }
+    
+    /**
+     * Get every total and count of the transactions between two dates,
+     * gathered in one pass over the days in range
+     * 
+     * @param from First date (inclusive)
+     * @param to Last date (inclusive)
+     * @return Summary of the transactions in range
+     */
+    public FinancialSummary getSummary(Date from, Date to) {
+        FinancialSummary summary = new FinancialSummary();
+        storage.forEachBetween(DateValidator.toEpochDay(from), DateValidator.toEpochDay(to), summary::add);
+        return summary;
+    }
+    
+    /**
+     * Get every total and count of the expenses in a category, gathered
+     * in one pass over the category
+     * 
+     * @param category Expense category
+     * @return Summary of the category (income totals are zero)
+     */
+    public FinancialSummary getCategorySummary(String category) {
+        FinancialSummary summary = new FinancialSummary();
+        storage.forEachInGroup(false, category, summary::add);
+        return summary;
+    }
+    
+    /**
+     * Get every total and count of the income from a source, gathered in
+     * one pass over the source
+     * 
+     * @param source Income source
+     * @return Summary of the source (expense totals are zero)
+     */
+    public FinancialSummary getSourceSummary(String source) {
+        FinancialSummary summary = new FinancialSummary();
+        storage.forEachInGroup(true, source, summary::add);
+        return summary;
+    }
+    
+    /**
+     * Get every total and count of a calendar month, read from the rollup
+     * in one lookup
+     * 
+     * @param year Calendar year
+     * @param month Month, 1 to 12
+     * @return Summary of the month (all zero if it has no transactions)
+     */
+    public FinancialSummary getMonthlySummary(int year, int month) {
+        return monthlyRollup.summary(year, checkMonth(month));
+    }
+    
+    /**
+     * Get every total and count of a calendar year, read from the rollup
+     * in one lookup
+     * 
+     * @param year Calendar year
+     * @return Summary of the year (all zero if it has no transactions)
+     */
+    public FinancialSummary getYearlySummary(int year) {
+        return monthlyRollup.summary(year, 0);
+    }
+    
+    /**
+     * Get the spending of every category in a calendar month
+     * 
+     * @param year Calendar year
+     * @param month Month, 1 to 12
+     * @return One total per category with expenses in the month
+     */
+    public List<GroupTotal> getSpendingByCategory(int year, int month) {
+        return monthlyRollup.categories(year, checkMonth(month));
+    }
+    
+    /**
+     * Get the spending of every category in a calendar year
+     * 
+     * @param year Calendar year
+     * @return One total per category with expenses in the year
+     */
+    public List<GroupTotal> getSpendingByCategory(int year) {
+        return monthlyRollup.categories(year, 0);
+    }
+    
+    /**
+     * Get the income from every source in a calendar month
+     * 
+     * @param year Calendar year
+     * @param month Month, 1 to 12
+     * @return One total per source with income in the month
+     */
+    public List<GroupTotal> getIncomeBySource(int year, int month) {
+        return monthlyRollup.sources(year, checkMonth(month));
+    }
+    
+    /**
+     * Get the income from every source in a calendar year
+     * 
+     * @param year Calendar year
+     * @return One total per source with income in the year
+     */
+    public List<GroupTotal> getIncomeBySource(int year) {
+        return monthlyRollup.sources(year, 0);
+    }
+    
+    /**
+     * Enable or disable the consistency check mode. When enabled, every
+     * calculate method recomputes its total from scratch and compares.
+     * 
+     * @param enabled true to verify running totals on every read
+     */
+    public void setConsistencyCheck(boolean enabled) {
+        consistencyCheck = enabled;
+    }
+    
+    /**
+     * Recompute all totals from the transaction list and compare them
+     * with the running totals
+     * 
+     * @return true if the running totals match
+     */
+    public boolean verifyTotals() {
+        long income = 0;
+        long expenses = 0;
+        long taxDeductions = 0;
+        long incomeTax = 0;
+        int incomes = 0;
+        for (Transaction transaction : storage) {
             if (transaction instanceof Income) {
-                total += transaction.calculateTax();
+                income += transaction.getAmountCents();
+                incomeTax += transaction.calculateTaxCents();
+                incomes++;
+            } else if (transaction instanceof Expense) {
+                expenses += transaction.getAmountCents();
+                taxDeductions += transaction.calculateTaxCents();
             }
         }
-        return total;
+        return income == totalIncome && expenses == totalExpenses
+                && taxDeductions == totalTaxDeductions && incomeTax == totalIncomeTax
+                && incomes == incomeCount && storage.size() == incomeCount + expenseCount;
     }
     
     /**
@@ -260,7 +960,8 @@ public class TransactionManager {
      */
     private class TransactionValidator {
         public void validateAmount(double amount) throws InvalidTransactionException {
-            if (amount <= 0) {
+            // Amounts are stored in cents, so anything that rounds to zero is invalid too
+            if (Money.toCents(amount) <= 0) {
                 throw new InvalidTransactionException(
                     InvalidTransactionException.getInvalidAmountMessage(amount));
             }
@@ -283,24 +984,144 @@ public class TransactionManager {
      */
     private void validateTransactionData(double amount, String description) 
             throws InvalidTransactionException {
-        TransactionValidator validator = new TransactionValidator();
         validator.validateAmount(amount);
         validator.validateDescription(description);
     }
     
     /**
-     * Update the recent transactions list
+     * Create the transaction for a batch row
+     * 
+     * @param id Reserved ID
+     * @param entry The row
+     * @return The transaction
      */
-    private void updateRecentTransactions() {
-        recentTransactions.clear();
-        
-        // Add up to last 10 transactions in reverse order (newest first)
-        int count = 0;
-        int size = transactions.size();
-        
-        for (int i = size - 1; i >= 0 && count < 10; i--) {
-            recentTransactions.add(transactions.get(i));
-            count++;
+    private Transaction createTransaction(int id, BatchEntry entry) {
+        long amountCents = Money.toCents(entry.getAmount());
+        if (entry.isIncome()) {
+            return new Income(id, entry.getDate(), amountCents, entry.getDescription(),
+                              entry.getGroup(), entry.getTaxFlag());
+        }
+        return new Expense(id, entry.getDate(), amountCents, entry.getDescription(),
+                           entry.getGroup(), entry.getTaxFlag());
+    }
+    
+    /**
+     * Add (sign 1) or remove (sign -1) a transaction's contribution to the running totals
+     * 
+     * @param transaction The transaction
+     * @param sign 1 to add, -1 to remove
+     */
+    private void updateTotals(Transaction transaction, int sign) {
+        if (transaction instanceof Income) {
+            totalIncome += sign * transaction.getAmountCents();
+            totalIncomeTax += sign * transaction.calculateTaxCents();
+            incomeCount += sign;
+        } else if (transaction instanceof Expense) {
+            totalExpenses += sign * transaction.getAmountCents();
+            totalTaxDeductions += sign * transaction.calculateTaxCents();
+            expenseCount += sign;
+        }
+    }
+    
+    /**
+     * Change a transaction's date, amount and description, moving it in
+     * the storage, totals and rollup
+     * 
+     * @param transaction The transaction, as returned by the storage
+     * @param date New date
+     * @param amountCents New amount in cents
+     * @param description New description
+     */
+    private void applyEdit(Transaction transaction, Date date, long amountCents, String description) {
+        updateTotals(transaction, -1);
+        monthlyRollup.update(transaction, -1);
+        storage.edit(transaction, date, amountCents, description);
+        updateTotals(transaction, 1);
+        monthlyRollup.update(transaction, 1);
+    }
+    
+    private static UncheckedIOException journalFailure(String change) {
+        return new UncheckedIOException(new IOException("Could not record the change in the journal: " + change));
+    }
+    
+    /**
+     * Recompute the running totals from the stored transactions
+     */
+    private void recomputeTotals() {
+        totalIncome = 0;
+        totalExpenses = 0;
+        totalTaxDeductions = 0;
+        totalIncomeTax = 0;
+        incomeCount = 0;
+        expenseCount = 0;
+        for (Transaction transaction : storage) {
+            updateTotals(transaction, 1);
+        }
+    }
+    
+    /**
+     * Use the saved rollup if it was built from the loaded transactions,
+     * otherwise rebuild it
+     */
+    private void loadRollup() {
+        if (monthlyRollup.load(rollupPath, MonthlyRollup.fingerprintOf(storage))) {
+            rollupSavedAt = changes.getModCount();
+        } else {
+            monthlyRollup.rebuild(storage);
+            rollupSavedAt = -1;
+        }
+    }
+    
+    /**
+     * Save the rollup if it changed since it was last saved or loaded
+     */
+    private void saveRollup() {
+        long modCount = changes.getModCount();
+        if (rollupSavedAt == modCount) {
+            return;
+        }
+        try {
+            monthlyRollup.save(rollupPath);
+            rollupSavedAt = modCount;
+        } catch (IOException e) {
+            // The rollup is rebuilt from the ledger on the next load
+            System.out.println("Error saving rollup: " + e.getMessage());
+        }
+    }
+    
+    private static int checkMonth(int month) {
+        if (month < 1 || month > 12) {
+            throw new IllegalArgumentException("Month must be between 1 and 12: " + month);
+        }
+        return month;
+    }
+    
+    /**
+     * Verify the running totals when the consistency check mode is on
+     */
+    private void checkTotals() {
+        if (consistencyCheck && !verifyTotals()) {
+            throw new IllegalStateException("Running totals do not match a full recomputation");
+        }
+    }
+    
+    /**
+     * Create the storage for a storage constant
+     * 
+     * @param storage OBJECT_STORAGE, COLUMN_STORAGE or OFF_HEAP_STORAGE
+     * @param recentCapacity Number of transactions returned by getRecentTransactions
+     * @return The storage
+     */
+    private static LedgerStorage newStorage(int storage, int recentCapacity) {
+        switch (storage) {
+            case OBJECT_STORAGE:
+                return new ObjectStorage(recentCapacity);
+            case COLUMN_STORAGE:
+                return new RowStorage(new ColumnStore(), recentCapacity);
+            case OFF_HEAP_STORAGE:
+                return new RowStorage(new OffHeapStore(), recentCapacity);
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + storage);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package manager;
+
+import model.Expense;
+import model.Income;
+import model.Transaction;
+import util.DateValidator;
+import util.Money;
+
+/**
+ * Row storage behind RowStorage. Rows are numbered from 0;
+ * deleted rows keep their number until the store squeezes them out, after
+ * which row numbers change but IDs do not.
+ */
+interface TransactionStore {
+    // Bits of the flags passed to add
+    byte INCOME = 1;
+    byte TAX_FLAG = 2;
+
+    /**
+     * Get the number of rows, including deleted rows not yet squeezed out.
+     * Row numbers run from 0 to rowCount() - 1.
+     *
+     * @return Row count
+     */
+    int rowCount();
+
+    /**
+     * Get the number of transactions
+     *
+     * @return Live row count
+     */
+    int size();
+
+    boolean isLive(int row);
+
+    /**
+     * Find the row of a transaction
+     *
+     * @param id Transaction ID
+     * @return Row number or IntIntHashMap.NOT_FOUND
+     */
+    int rowOf(int id);
+
+    /**
+     * Append a row
+     *
+     * @param id Transaction ID
+     * @param epochDay Date as days since 1970-01-01
+     * @param amountCents Amount in cents
+     * @param rowFlags INCOME and TAX_FLAG bits
+     * @param description Description
+     * @param group Category of an expense or source of an income
+     * @return The new row number
+     */
+    int add(int id, int epochDay, long amountCents, byte rowFlags, String description, String group);
+
+    /**
+     * Make room for a number of rows without growing again
+     *
+     * @param rows Total rows expected
+     */
+    void ensureCapacity(int rows);
+
+    /**
+     * Delete a transaction
+     *
+     * @param id Transaction ID
+     * @return true if the transaction existed
+     */
+    boolean remove(int id);
+
+    void setEpochDay(int row, int epochDay);
+
+    void setAmountCents(int row, long amountCents);
+
+    void setDescription(int row, String description);
+
+    int getId(int row);
+
+    int getEpochDay(int row);
+
+    long getAmountCents(int row);
+
+    boolean isIncome(int row);
+
+    boolean hasTaxFlag(int row);
+
+    String getDescription(int row);
+
+    /**
+     * Get the category or source code of a row
+     *
+     * @param row Row number
+     * @return Code, see groupName
+     */
+    int getGroupCode(int row);
+
+    /**
+     * Get the name for a category or source code
+     *
+     * @param code Group code
+     * @return The name
+     */
+    String groupName(int code);
+
+    /**
+     * Get the code of a category or source name
+     *
+     * @param name Group name
+     * @return Code or StringDictionary.NOT_FOUND
+     */
+    int groupCode(String name);
+
+    /**
+     * Get the number of distinct categories and sources seen
+     *
+     * @return Number of group codes
+     */
+    int groupCount();
+
+    /**
+     * Sum income, expenses, tax deductions and income tax over the rows
+     * whose day is in range, in one pass over the rows
+     *
+     * @param fromDay First day (inclusive)
+     * @param toDay Last day (inclusive)
+     * @return Totals in cents, indexed like TransactionManager.calculateTotalsBetween
+     */
+    long[] sumTotals(int fromDay, int toDay);
+
+    /**
+     * Sum the amounts and count the rows of every category or every source
+     *
+     * @param income true for sources of income, false for expense categories
+     * @param sums Receives the sum per group code (length groupCount())
+     * @param counts Receives the row count per group code (length groupCount())
+     */
+    void sumGroups(boolean income, long[] sums, int[] counts);
+
+    /**
+     * Remove every row
+     */
+    void clear();
+
+    /**
+     * Append a transaction object
+     *
+     * @param transaction The transaction
+     * @return The new row number
+     */
+    default int add(Transaction transaction) {
+        byte rowFlags;
+        String group;
+        if (transaction instanceof Income) {
+            rowFlags = INCOME;
+            if (((Income) transaction).isTaxable()) {
+                rowFlags |= TAX_FLAG;
+            }
+            group = ((Income) transaction).getSource();
+        } else {
+            rowFlags = 0;
+            if (((Expense) transaction).isTaxDeductible()) {
+                rowFlags |= TAX_FLAG;
+            }
+            group = ((Expense) transaction).getCategory();
+        }
+        return add(transaction.getId(), DateValidator.toEpochDay(transaction.getDate()),
+                   transaction.getAmountCents(), rowFlags, transaction.getDescription(), group);
+    }
+
+    default String getGroup(int row) {
+        return groupName(getGroupCode(row));
+    }
+
+    /**
+     * Calculate the tax of a row the same way Expense and Income do
+     *
+     * @param row Row number
+     * @return Tax in cents
+     */
+    default long taxCents(int row) {
+        if (!hasTaxFlag(row)) {
+            return 0;
+        }
+        int percent = isIncome(row) ? Income.INCOME_TAX_RATE_PERCENT : Expense.TAX_RATE_PERCENT;
+        return Money.percentOf(getAmountCents(row), percent);
+    }
+
+    /**
+     * Create a Transaction object with the values of a row. Changing the
+     * object does not change the store.
+     *
+     * @param row Row number
+     * @return The transaction
+     */
+    default Transaction toTransaction(int row) {
+        if (isIncome(row)) {
+            return new Income(getId(row), DateValidator.fromEpochDay(getEpochDay(row)), getAmountCents(row),
+                              getDescription(row), getGroup(row), hasTaxFlag(row));
+        }
+        return new Expense(getId(row), DateValidator.fromEpochDay(getEpochDay(row)), getAmountCents(row),
+                           getDescription(row), getGroup(row), hasTaxFlag(row));
+    }
+}
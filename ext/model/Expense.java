@@ -1,7 +1,10 @@
 package model;
 
+import java.io.PrintWriter;
 import java.util.Date;
 
+import util.Money;
+
 /**
  * Represents an expense transaction
  */
@@ -10,7 +13,7 @@ public class Expense extends Transaction {
     private boolean isTaxDeductible;
     
     // Tax rate for deductible expenses (e.g., 15%)
-    private static final double TAX_RATE = 0.15;
+    public static final int TAX_RATE_PERCENT = 15;
     
     /**
      * Constructor for Expense
@@ -21,6 +24,15 @@ public class Expense extends Transaction {
         this.isTaxDeductible = isTaxDeductible;
     }
     
+    /**
+     * Constructor for a stored expense that keeps its ID
+     */
+    public Expense(int id, Date date, long amountCents, String description, String category, boolean isTaxDeductible) {
+        super(id, date, amountCents, description);
+        this.category = category;
+        this.isTaxDeductible = isTaxDeductible;
+    }
+    
     // Getters and setters
     public String getCategory() {
         return category;
@@ -40,11 +52,11 @@ public class Expense extends Transaction {
     
     // Implementing abstract methods from Transaction
     @Override
-    public double calculateTax() {
+    public long calculateTaxCents() {
         if (isTaxDeductible) {
-            return getAmount() * TAX_RATE;
+            return Money.percentOf(getAmountCents(), TAX_RATE_PERCENT);
         } else {
-            return 0.0;
+            return 0;
         }
     }
     
@@ -55,15 +67,15 @@ public class Expense extends Transaction {
     
     // Override printDetails to add expense-specific info
     @Override
-    public void printDetails() {
-        super.printDetails();
-        System.out.println("Type: Expense");
-        System.out.println("Category: " + category);
-        System.out.println("Tax Deductible: " + (isTaxDeductible ? "Yes" : "No"));
+    public void printDetails(PrintWriter out) {
+        super.printDetails(out);
+        out.println("Type: Expense");
+        out.println("Category: " + category);
+        out.println("Tax Deductible: " + (isTaxDeductible ? "Yes" : "No"));
         if (isTaxDeductible) {
-            System.out.println("Tax Deduction: $" + calculateTax());
+            out.println("Tax Deduction: $" + calculateTax());
         }
-        System.out.println("------------------------");
+        out.println("------------------------");
     }
     
     // Override toFileString to include expense-specific fields
@@ -1,7 +1,10 @@
 package model;
 
+import java.io.PrintWriter;
 import java.util.Date;
 
+import util.Money;
+
 /**
  * Represents an income transaction
  */
@@ -10,7 +13,7 @@ public class Income extends Transaction {
     private boolean isTaxable;
     
     // Income tax rate (e.g., 20%)
-    private static final double INCOME_TAX_RATE = 0.20;
+    public static final int INCOME_TAX_RATE_PERCENT = 20;
     
     /**
      * Constructor for Income
@@ -21,6 +24,15 @@ public class Income extends Transaction {
         this.isTaxable = isTaxable;
     }
     
+    /**
+     * Constructor for a stored income that keeps its ID
+     */
+    public Income(int id, Date date, long amountCents, String description, String source, boolean isTaxable) {
+        super(id, date, amountCents, description);
+        this.source = source;
+        this.isTaxable = isTaxable;
+    }
+    
     // Getters and setters
     public String getSource() {
         return source;
@@ -40,11 +52,11 @@ public class Income extends Transaction {
     
     // Implementing abstract methods from Transaction
     @Override
-    public double calculateTax() {
+    public long calculateTaxCents() {
         if (isTaxable) {
-            return getAmount() * INCOME_TAX_RATE;
+            return Money.percentOf(getAmountCents(), INCOME_TAX_RATE_PERCENT);
         } else {
-            return 0.0;
+            return 0;
         }
     }
     
@@ -55,15 +67,15 @@ public class Income extends Transaction {
     
     // Override printDetails to add income-specific info
     @Override
-    public void printDetails() {
-        super.printDetails();
-        System.out.println("Type: Income");
-        System.out.println("Source: " + source);
-        System.out.println("Taxable: " + (isTaxable ? "Yes" : "No"));
+    public void printDetails(PrintWriter out) {
+        super.printDetails(out);
+        out.println("Type: Income");
+        out.println("Source: " + source);
+        out.println("Taxable: " + (isTaxable ? "Yes" : "No"));
         if (isTaxable) {
-            System.out.println("Estimated Tax: $" + calculateTax());
+            out.println("Estimated Tax: $" + calculateTax());
         }
-        System.out.println("------------------------");
+        out.println("------------------------");
     }
     
     // Override toFileString to include income-specific fields
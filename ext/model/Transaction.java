@@ -1,7 +1,11 @@
 package model;
 
-import java.text.SimpleDateFormat;
+import java.io.PrintWriter;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.DateValidator;
+import util.Money;
 
 /**
  * Abstract class that represents a financial transaction
@@ -9,19 +13,32 @@ import java.util.Date;
 public abstract class Transaction {
     // Private fields for encapsulation
     private Date date;
-    private double amount;
+    // Amount in cents, so sums are exact
+    private long amountCents;
     private String description;
     private int id;
     
-    // Static counter to generate unique IDs
-    private static int counter = 1;
+    // Static counter to generate unique IDs, safe to use from several threads
+    private static final AtomicInteger counter = new AtomicInteger(1);
     
     // Constructor
     public Transaction(Date date, double amount, String description) {
         this.date = date;
-        this.amount = amount;
+        this.amountCents = Money.toCents(amount);
         this.description = description;
-        this.id = counter++;
+        this.id = counter.getAndIncrement();
+    }
+    
+    /**
+     * Constructor for a stored transaction that already has an ID.
+     * Leaves the ID counter alone; loaders call reserveIdsThrough once
+     * with the highest ID they read.
+     */
+    protected Transaction(int id, Date date, long amountCents, String description) {
+        this.date = date;
+        this.amountCents = amountCents;
+        this.description = description;
+        this.id = id;
     }
     
     // Getters and setters
@@ -34,11 +51,19 @@ public abstract class Transaction {
     }
     
     public double getAmount() {
-        return amount;
+        return Money.toDouble(amountCents);
     }
     
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amountCents = Money.toCents(amount);
+    }
+    
+    public long getAmountCents() {
+        return amountCents;
+    }
+    
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
     }
     
     public String getDescription() {
@@ -61,20 +86,40 @@ public abstract class Transaction {
     public void setId(int id) {
         this.id = id;
         // Update counter if this ID is higher
-        if (id >= counter) {
-            counter = id + 1;
-        }
+        counter.accumulateAndGet(id + 1, Math::max);
+    }
+    
+    /**
+     * Make sure new transactions get IDs above the given one
+     * 
+     * @param maxId Highest ID in use
+     */
+    public static void reserveIdsThrough(int maxId) {
+        counter.accumulateAndGet(maxId + 1, Math::max);
+    }
+    
+    /**
+     * Reserve a block of consecutive IDs in one step
+     * 
+     * @param count Number of IDs
+     * @return The first reserved ID
+     */
+    public static int reserveIds(int count) {
+        return counter.getAndAdd(count);
     }
     
     // Abstract methods to be implemented by child classes
-    public abstract double calculateTax();
+    public abstract long calculateTaxCents();
     
     public abstract String getTransactionType();
     
     // Common methods for all transactions
+    public double calculateTax() {
+        return Money.toDouble(calculateTaxCents());
+    }
+    
     public String formatDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-        return sdf.format(date);
+        return DateValidator.formatDate(date);
     }
     
     public String toFileString() {
@@ -82,14 +127,21 @@ public abstract class Transaction {
         return getTransactionType() + "," + 
                id + "," + 
                formatDate() + "," + 
-               amount + "," + 
+               Money.format(amountCents) + "," + 
                description;
     }
     
     public void printDetails() {
-        System.out.println("ID: " + id);
-        System.out.println("Date: " + formatDate());
-        System.out.println("Amount: $" + amount);
-        System.out.println("Description: " + description);
+        PrintWriter out = new PrintWriter(System.out);
+        printDetails(out);
+        out.flush();
+    }
+    
+    // Write the details to a writer, so a whole page of rows shares one buffer
+    public void printDetails(PrintWriter out) {
+        out.println("ID: " + id);
+        out.println("Date: " + formatDate());
+        out.println("Amount: $" + Money.format(amountCents));
+        out.println("Description: " + description);
     }
 }
\ No newline at end of file
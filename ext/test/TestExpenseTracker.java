@@ -1,15 +1,57 @@
 package test;
 
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.Date;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
+import javax.management.MBeanServer;
+
+import app.LedgerServer;
 import exceptions.InvalidTransactionException;
+import manager.BatchEntry;
+import manager.BatchResult;
+import manager.ConcurrentTransactionManager;
+import manager.FinancialSummary;
+import manager.GroupTotal;
+import manager.LedgerScanner;
+import manager.TransactionCursor;
 import manager.TransactionManager;
 import model.Expense;
 import model.Income;
 import model.Transaction;
+import util.BinaryLedger;
 import util.DateValidator;
+import util.FileHandler;
+import util.Json;
+import util.LedgerArchive;
+import util.Metrics;
+import util.Money;
+import util.OperationTimer;
+import util.ParseErrorHandler;
+import util.SnapshotFile;
 
 /**
  * Simple test class to verify the functionality of the Expense Tracker
@@ -36,6 +78,81 @@ public class TestExpenseTracker {
             // Test validation
             testValidation();
             
+            // Test fixed-point money
+            testMoney();
+            
+            // Test date range queries
+            testDateRange("range_test.txt");
+            
+            // Test category and source indexes
+            testGroupIndexes("group_test.txt");
+            
+            // Test recent transactions buffer
+            testRecentTransactions("recent_test.txt");
+            
+            // Test concurrent adds
+            testConcurrentManager("concurrent_test.txt", false);
+            
+            // Test concurrent adds that journal outside the write lock
+            testConcurrentManager("concurrent_journal_test.txt", true);
+            
+            // Test saves from several threads at once
+            testConcurrentSaves("concurrent_save_test.ledger");
+            
+            // Test journaled storage
+            testJournal("journal_test.txt");
+            
+            // Test that a failed compaction does not lose or block changes
+            testJournalRecovery("journal_recovery_test.txt");
+            
+            // Test binary ledger format
+            testBinaryLedger("binary_test.ledger");
+            
+            // Test parallel loading of a large text file
+            testChunkedLoad("chunked_test.txt");
+            
+            // Test streaming scans of the file
+            testLedgerScanner("scanner_test.txt");
+            
+            // Test batch inserts
+            testBatchAdd("batch_test.txt");
+            
+            // Test the column storage
+            testColumnStorage("compact_test.txt");
+            
+            // Test the off-heap storage
+            testOffHeapStorage("offheap_test.txt");
+            
+            // Test background saves
+            testAsyncSave("async_test.txt");
+            
+            // Test crash-safe saves and rollback
+            testAtomicSave("atomic_test.txt");
+            
+            // Test that saves only write what changed
+            testChangeTracking("dirty_test.txt");
+            
+            // Test the single-pass financial summary
+            testFinancialSummary("summary_test.txt");
+            
+            // Test paged listings
+            testTransactionCursor("cursor_test.txt");
+            
+            // Test the HTTP service
+            testLedgerServer("server_test.txt", TransactionManager.OBJECT_STORAGE);
+            
+            // Test the HTTP service over off-heap storage
+            testLedgerServer("server_offheap_test.txt", TransactionManager.OFF_HEAP_STORAGE);
+            
+            // Test the metrics and their JMX view
+            testMetrics("metrics_test.txt");
+            
+            // Test the compressed archive format
+            testLedgerArchive("archive_test.archive");
+            
+            // Test the monthly rollup and its saved form
+            testMonthlyRollup("rollup_test.txt");
+            
             System.out.println("\nAll tests completed!");
             
         } catch (Exception e) {
@@ -50,15 +167,13 @@ public class TestExpenseTracker {
      * @param filePath Test file path
      */
     private static void testTransactionManager(String filePath) {
-    File testFile = new File(filePath);
-    if (testFile.exists()) {
-        testFile.delete();
-    }
+    deleteStorageFiles(filePath);
     System.out.println("\n=== Testing TransactionManager ===");
 
     try {
         // Create a new transaction manager
         TransactionManager manager = new TransactionManager(filePath);
+        manager.setConsistencyCheck(true);
 
         // Test adding transactions
         System.out.println("Testing adding transactions...");
@@ -130,6 +245,19 @@ public class TestExpenseTracker {
                                 newManager.getAllTransactions().size());
         }
 
+        if (!newManager.verifyTotals()
+                || Math.abs(newManager.calculateTotalExpenses() - 500.0) > 0.001) {
+            throw new Exception("Running totals were not updated by the delete.");
+        }
+
+        if (newManager.getTransactionById(expense2.getId()) != null) {
+            throw new Exception("Deleted transaction is still returned by ID lookup.");
+        }
+
+        if (newManager.getTransactionById(income1.getId()) == null) {
+            throw new Exception("ID lookup failed for loaded transaction " + income1.getId());
+        }
+
         System.out.println("Transaction deleted successfully.");
 
         System.out.println("\nTransactionManager tests passed successfully!");
@@ -176,6 +304,15 @@ public class TestExpenseTracker {
                 System.out.println("Correctly caught invalid date value.");
             }
             
+            // Leap days are only valid in leap years
+            if (DateValidator.isValidDate("2023-02-29") || !DateValidator.isValidDate("2024-02-29")) {
+                throw new Exception("Leap day validation is wrong");
+            }
+            if (!DateValidator.formatDate(DateValidator.validateAndParse("2024-02-29")).equals("2024-02-29")) {
+                throw new Exception("Date did not survive a parse and format round trip");
+            }
+            System.out.println("Leap days validated correctly.");
+            
         } catch (Exception e) {
             System.out.println("Date validation test failed: " + e.getMessage());
             throw new RuntimeException(e);
@@ -229,4 +366,1794 @@ public class TestExpenseTracker {
         
         System.out.println("\nValidation tests passed successfully!");
     }
+    
+    /**
+     * Test fixed-point money parsing, formatting and exact totals
+     */
+    private static void testMoney() {
+        System.out.println("\n=== Testing Money ===");
+        
+        try {
+            if (Money.parseCents("75.5") != 7550 || Money.parseCents("1.0E7") != 1_000_000_000L
+                    || Money.parseCents("12") != 1200 || Money.parseCents("0.10") != 10) {
+                throw new Exception("Money parsing returned the wrong number of cents.");
+            }
+            if (!Money.format(7550).equals("75.50") || !Money.format(5).equals("0.05")) {
+                throw new Exception("Money formatting is wrong.");
+            }
+            
+            TransactionManager manager = new TransactionManager("money_test.txt");
+            for (int i = 0; i < 10; i++) {
+                manager.addExpense(new Date(), 0.10, "Candy", "Food", true);
+            }
+            if (manager.calculateTotalExpensesCents() != 100 || manager.calculateTaxDeductionsCents() != 20) {
+                throw new Exception("Totals are not exact: " + manager.calculateTotalExpensesCents() + " cents");
+            }
+            
+            System.out.println("Money tests passed successfully.");
+        } catch (Exception e) {
+            System.out.println("Money test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            new File("money_test.txt").delete();
+        }
+    }
+    
+    /**
+     * Test date range queries and range-limited totals
+     * 
+     * @param filePath Test file path
+     */
+    private static void testDateRange(String filePath) {
+        System.out.println("\n=== Testing Date Range Queries ===");
+        new File(filePath).delete();
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath);
+            manager.addIncome(DateValidator.validateAndParse("2024-01-31"), 100.0, "January pay", "Employer", true);
+            manager.addIncome(DateValidator.validateAndParse("2024-03-01"), 200.0, "March pay", "Employer", true);
+            Expense rent = manager.addExpense(DateValidator.validateAndParse("2024-03-31"), 80.0, "Rent", "Housing", false);
+            manager.addExpense(DateValidator.validateAndParse("2024-04-01"), 30.0, "Phone", "Utilities", true);
+            
+            Date marchStart = DateValidator.validateAndParse("2024-03-01");
+            Date marchEnd = DateValidator.validateAndParse("2024-03-31");
+            if (manager.getTransactionsBetween(marchStart, marchEnd).size() != 2
+                    || Math.abs(manager.calculateBalance(marchStart, marchEnd) - 120.0) > 0.001
+                    || Math.abs(manager.calculateIncomeTax(marchStart, marchEnd) - 40.0) > 0.001) {
+                throw new Exception("March range query returned the wrong transactions or totals.");
+            }
+            
+            // Moving a transaction out of the range must update the index
+            manager.editTransaction(rent.getId(), DateValidator.validateAndParse("2024-04-02"), 80.0, "Rent");
+            if (Math.abs(manager.calculateTotalExpenses(marchStart, marchEnd)) > 0.001) {
+                throw new Exception("Date index was not updated by the edit.");
+            }
+            
+            System.out.println("Date range queries passed successfully.");
+        } catch (Exception e) {
+            System.out.println("Date range test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test per-category and per-source totals across adds, edits and deletes
+     * 
+     * @param filePath Test file path
+     */
+    private static void testGroupIndexes(String filePath) {
+        System.out.println("\n=== Testing Category and Source Indexes ===");
+        new File(filePath).delete();
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath);
+            Expense groceries = manager.addExpense(new Date(), 60.0, "Groceries", "Food", false);
+            manager.addExpense(new Date(), 15.0, "Lunch", "Food", false);
+            Expense bus = manager.addExpense(new Date(), 2.5, "Bus", "Transport", false);
+            manager.addIncome(new Date(), 900.0, "Pay", "Employer", true);
+            
+            manager.editTransaction(groceries.getId(), groceries.getDate(), 70.0, "Groceries");
+            manager.deleteTransaction(bus.getId());
+            
+            List<GroupTotal> spending = manager.getSpendingByCategory();
+            if (spending.size() != 1 || !spending.get(0).getName().equals("Food")
+                    || spending.get(0).getTotalCents() != 8500 || spending.get(0).getCount() != 2) {
+                throw new Exception("Spending by category is wrong after edit and delete.");
+            }
+            if (manager.getIncomeBySource().get(0).getTotalCents() != 90000
+                    || manager.getTransactionsBySource("Employer").size() != 1) {
+                throw new Exception("Income by source is wrong.");
+            }
+            
+            System.out.println("Category and source indexes passed successfully.");
+        } catch (Exception e) {
+            System.out.println("Group index test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that the recent transactions view stays correct across adds and deletes
+     * 
+     * @param filePath Test file path
+     */
+    private static void testRecentTransactions(String filePath) {
+        System.out.println("\n=== Testing Recent Transactions ===");
+        new File(filePath).delete();
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath, false, 3);
+            Transaction[] added = new Transaction[5];
+            for (int i = 0; i < added.length; i++) {
+                added[i] = manager.addExpense(new Date(), 10.0 + i, "Item " + i, "Misc", false);
+            }
+            
+            List<Transaction> recent = manager.getRecentTransactions();
+            if (recent.size() != 3 || recent.get(0) != added[4] || recent.get(2) != added[2]) {
+                throw new Exception("Recent transactions should be the last 3, newest first.");
+            }
+            
+            // Deleting a recent transaction pulls the next older one into the view
+            manager.deleteTransaction(added[3].getId());
+            if (recent.size() != 3 || recent.get(1) != added[2] || recent.get(2) != added[1]) {
+                throw new Exception("Recent transactions were not repaired after a delete.");
+            }
+            
+            try {
+                recent.clear();
+                throw new Exception("Recent transactions view should be read-only.");
+            } catch (UnsupportedOperationException e) {
+                System.out.println("Recent transactions view is read-only.");
+            }
+            
+            // Enough deletes, newest ones included, to squeeze the holes out of the list
+            List<Transaction> kept = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                Transaction transaction = manager.addExpense(new Date(), 1.0, "Bulk " + i, "Misc", false);
+                if (i % 3 == 0 && i < 2500) {
+                    kept.add(transaction);
+                } else if (!manager.deleteTransaction(transaction.getId())) {
+                    throw new Exception("Could not delete transaction " + transaction.getId());
+                }
+                if (i % 700 == 0) {
+                    // The first five go too (one of them is already gone)
+                    manager.deleteTransaction(added[i / 700].getId());
+                }
+            }
+            List<Transaction> all = manager.getAllTransactions();
+            TransactionCursor byId = manager.openCursor(TransactionCursor.BY_ID, false, null, 100);
+            int paged = 0;
+            while (byId.hasMore()) {
+                paged += byId.nextPage().size();
+            }
+            if (!all.equals(kept) || manager.size() != kept.size() || paged != kept.size()
+                    || manager.getTransactionById(kept.get(5).getId()) != kept.get(5) || !manager.verifyTotals()) {
+                throw new Exception("Deletes lost track of the transactions left.");
+            }
+            if (recent.size() != 3 || recent.get(0) != kept.get(kept.size() - 1) || recent.get(2) != kept.get(kept.size() - 3)) {
+                throw new Exception("Recent transactions were not repaired after many deletes.");
+            }
+            
+            System.out.println("Recent transactions tests passed successfully.");
+        } catch (Exception e) {
+            System.out.println("Recent transactions test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Stress test the thread-safe manager with several threads adding at
+     * once, while another reads the totals
+     * 
+     * @param filePath Test file path
+     * @param journaled true to journal every add and check the file loads back whole
+     */
+    private static void testConcurrentManager(String filePath, boolean journaled) {
+        System.out.println("\n=== Testing ConcurrentTransactionManager ===");
+        deleteStorageFiles(filePath);
+        
+        final int threadCount = 8;
+        final int addsPerThread = 5000;
+        
+        try {
+            ConcurrentTransactionManager manager = new ConcurrentTransactionManager(filePath, journaled);
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            Thread reader = new Thread(() -> {
+                while (manager.size() < threadCount * addsPerThread && failures.isEmpty()) {
+                    if (!manager.verifyTotals()) {
+                        failures.add(new Exception("Totals did not match the transactions during adds."));
+                    }
+                }
+            });
+            reader.start();
+            Thread[] threads = new Thread[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                final boolean addIncome = t % 2 == 0;
+                threads[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < addsPerThread; i++) {
+                            if (addIncome) {
+                                manager.addIncome(new Date(), 1.25, "Tip", "Customer", true);
+                            } else {
+                                manager.addExpense(new Date(), 0.75, "Snack", "Food", true);
+                            }
+                        }
+                    } catch (InvalidTransactionException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            reader.join();
+            if (!failures.isEmpty()) {
+                throw new Exception(failures.get(0).getMessage());
+            }
+            
+            int expected = threadCount * addsPerThread;
+            Set<Integer> ids = new HashSet<>();
+            for (Transaction transaction : manager.getAllTransactions()) {
+                ids.add(transaction.getId());
+            }
+            if (manager.getAllTransactions().size() != expected || ids.size() != expected) {
+                throw new Exception("Expected " + expected + " transactions with unique IDs, got " +
+                                    manager.getAllTransactions().size() + " with " + ids.size() + " IDs");
+            }
+            long half = expected / 2;
+            if (manager.calculateTotalIncomeCents() != half * 125
+                    || manager.calculateTotalExpensesCents() != half * 75
+                    || !manager.verifyTotals()) {
+                throw new Exception("Totals are wrong after concurrent adds.");
+            }
+            if (journaled) {
+                manager.close();
+                TransactionManager reloaded = new TransactionManager(filePath, true);
+                if (reloaded.size() != expected || reloaded.calculateTotalIncomeCents() != half * 125) {
+                    throw new Exception("Journal loaded back " + reloaded.size() + " of " + expected + " transactions.");
+                }
+                reloaded.close();
+            }
+            
+            System.out.println("Concurrent adds produced " + expected + " unique transactions"
+                               + (journaled ? ", all journaled." : "."));
+        } catch (Exception e) {
+            System.out.println("Concurrent manager test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that saves from several threads, mixed with adds and deletes, all
+     * succeed and leave a file that loads back whole. A binary file is used
+     * because every save writes it whole through the same temporary file.
+     * 
+     * @param filePath Test file path
+     */
+    private static void testConcurrentSaves(String filePath) {
+        System.out.println("\n=== Testing Concurrent Saves ===");
+        deleteStorageFiles(filePath);
+        
+        final int threadCount = 6;
+        final int roundsPerThread = 150;
+        
+        try {
+            ConcurrentTransactionManager manager = new ConcurrentTransactionManager(filePath);
+            Date date = DateValidator.validateAndParse("2024-09-01");
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            Thread[] threads = new Thread[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                final int thread = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < roundsPerThread; i++) {
+                            Transaction added = manager.addExpense(date, 2, "Round " + i, "Food", false);
+                            if (thread % 3 == 0 && i % 10 == 0 && !manager.deleteTransaction(added.getId())) {
+                                throw new Exception("Delete failed to save.");
+                            }
+                            if (!manager.saveTransactions()) {
+                                throw new Exception("Save failed.");
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (!failures.isEmpty()) {
+                throw new Exception("A thread failed: " + failures.get(0));
+            }
+            
+            int expected = manager.getAllTransactions().size();
+            if (!manager.saveTransactions() || expected != threadCount * roundsPerThread - 2 * 15
+                    || new File(filePath + ".tmp").exists() || new File(filePath + ".rollup.tmp").exists()) {
+                throw new Exception("Saves left " + expected + " transactions or a temporary file behind.");
+            }
+            Metrics.reset();
+            TransactionManager reloaded = new TransactionManager(filePath);
+            if (reloaded.getAllTransactions().size() != expected
+                    || reloaded.calculateTotalExpensesCents() != manager.calculateTotalExpensesCents()
+                    || Metrics.counter("rollup.rebuilds").getValue() != 0) {
+                throw new Exception("File saved by several threads did not load back whole.");
+            }
+            
+            System.out.println("Concurrent saves all succeeded and loaded back " + expected + " transactions.");
+        } catch (Exception e) {
+            System.out.println("Concurrent save test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test the journaled storage mode
+     * 
+     * @param filePath Test file path
+     */
+    private static void testJournal(String filePath) {
+        System.out.println("\n=== Testing Journaled Storage ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath, true);
+            Date today = new Date();
+            Income income = manager.addIncome(today, 200.0, "Freelance", "Client", true);
+            Expense expense = manager.addExpense(today, 40.0, "Books", "Education", true);
+            manager.editTransaction(income.getId(), today, 250.0, "Freelance project");
+            manager.deleteTransaction(expense.getId());
+            manager.close();
+            
+            if (new File(filePath).length() != 0) {
+                throw new Exception("Journaled mode should not rewrite the snapshot file.");
+            }
+            
+            TransactionManager reloaded = new TransactionManager(filePath, true);
+            if (reloaded.getAllTransactions().size() != 1) {
+                throw new Exception("Journal replay failed. Expected 1 transaction, got " +
+                                    reloaded.getAllTransactions().size());
+            }
+            Transaction replayed = reloaded.getTransactionById(income.getId());
+            if (replayed == null || Math.abs(replayed.getAmount() - 250.0) > 0.001) {
+                throw new Exception("Journal replay lost the edit of transaction " + income.getId());
+            }
+            reloaded.close();
+            
+            System.out.println("Journal replayed successfully.");
+        } catch (Exception e) {
+            System.out.println("Journal test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that changes keep going to the journal while its compaction fails,
+     * and that compaction picks up again once it can
+     * 
+     * @param filePath Test file path
+     */
+    private static void testJournalRecovery(String filePath) {
+        System.out.println("\n=== Testing Journal Recovery ===");
+        deleteStorageFiles(filePath);
+        // A directory where the journal is rotated to makes compaction fail
+        File blocker = new File(filePath + ".journal.1");
+        File blockerContent = new File(blocker, "keep");
+        
+        try {
+            if (!blocker.mkdir() || !blockerContent.createNewFile()) {
+                throw new Exception("Could not create " + blocker);
+            }
+            TransactionManager manager = new TransactionManager(filePath, true);
+            Date date = DateValidator.validateAndParse("2024-05-01");
+            for (int i = 0; i < 10_050; i++) {
+                manager.addExpense(date, 1.0, "Snack " + i, "Food", false);
+            }
+            if (!blocker.isDirectory() || new File(filePath).length() != 0) {
+                throw new Exception("Compaction should not have run with the segment path taken.");
+            }
+            
+            blockerContent.delete();
+            blocker.delete();
+            for (int i = 0; i < 10_000; i++) {
+                manager.addIncome(date, 2.0, "Tip " + i, "Customers", false);
+            }
+            manager.close();
+            
+            if (new File(filePath).length() == 0 || blocker.exists()) {
+                throw new Exception("Compaction did not resume once the segment path was free.");
+            }
+            TransactionManager reloaded = new TransactionManager(filePath, true);
+            if (reloaded.getAllTransactions().size() != 20_050
+                    || reloaded.calculateTotalExpensesCents() != 1_005_000
+                    || reloaded.calculateTotalIncomeCents() != 2_000_000) {
+                throw new Exception("Expected 20050 transactions after recovery, got " +
+                                    reloaded.getAllTransactions().size());
+            }
+            reloaded.close();
+            
+            System.out.println("Journal recovered from a failed compaction successfully.");
+        } catch (Exception e) {
+            System.out.println("Journal recovery test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            blockerContent.delete();
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test saving and loading the binary ledger format
+     * 
+     * @param filePath Test file path (binary ledger extension)
+     */
+    private static void testBinaryLedger(String filePath) {
+        System.out.println("\n=== Testing Binary Ledger ===");
+        new File(filePath).delete();
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath);
+            Date date = DateValidator.validateAndParse("2024-02-29");
+            manager.addIncome(date, 1234.56, "Bonus", "Employer", true);
+            manager.addExpense(date, 19.99, "Lunch", "Food", false);
+            manager.addExpense(date, 5.01, "Coffee", "Food", false);
+            if (!manager.saveTransactions()) {
+                throw new Exception("Failed to save binary ledger.");
+            }
+            
+            BinaryLedger ledger = BinaryLedger.open(filePath);
+            if (ledger.size() != 3 || ledger.sumAmountCents(BinaryLedger.TYPE_EXPENSE) != 2500) {
+                throw new Exception("Binary ledger records do not match what was saved.");
+            }
+            
+            TransactionManager reloaded = new TransactionManager(filePath);
+            Transaction first = reloaded.getAllTransactions().get(0);
+            if (reloaded.getAllTransactions().size() != 3
+                    || !first.formatDate().equals("2024-02-29")
+                    || Math.abs(first.getAmount() - 1234.56) > 0.001
+                    || !((Income) first).getSource().equals("Employer")) {
+                throw new Exception("Binary ledger did not load back the saved transactions.");
+            }
+            
+            // A missing category or source is stored and read back as null
+            Transaction ungroupedExpense = reloaded.addExpense(date, 2, "Ungrouped expense", null, false);
+            Transaction ungroupedIncome = reloaded.addIncome(date, 3, "Ungrouped income", null, false);
+            if (!reloaded.saveTransactions()) {
+                throw new Exception("Failed to save rows without a category or source.");
+            }
+            TransactionManager ungrouped = new TransactionManager(filePath);
+            Transaction expense = ungrouped.getTransactionById(ungroupedExpense.getId());
+            Transaction income = ungrouped.getTransactionById(ungroupedIncome.getId());
+            if (ungrouped.getAllTransactions().size() != 5 || ((Expense) expense).getCategory() != null
+                    || ((Income) income).getSource() != null
+                    || !((Income) ungrouped.getAllTransactions().get(0)).getSource().equals("Employer")) {
+                throw new Exception("Missing category or source did not load back as null.");
+            }
+            
+            System.out.println("Binary ledger saved and loaded successfully.");
+        } catch (Exception e) {
+            System.out.println("Binary ledger test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test loading a file large enough to be split into several ranges
+     * 
+     * @param filePath Test file path
+     */
+    private static void testChunkedLoad(String filePath) {
+        System.out.println("\n=== Testing Chunked Load ===");
+        int rows = 60_000;
+        int firstId = 5_000_000;
+        
+        try {
+            // Mixed line endings, blank lines and no final line break
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                for (int i = 0; i < rows; i++) {
+                    writer.print("EXPENSE," + (firstId + i) + ",2024-01-15,1.25,Row " + i + ",Food,false");
+                    writer.print(i % 3 == 0 ? "\r\n" : "\n");
+                    if (i % 1000 == 0) {
+                        writer.print("\n");
+                    }
+                }
+                writer.print("INCOME," + (firstId + rows) + ",2024-01-16,10.00,Last,Bank,true");
+            }
+            if (new File(filePath).length() < 2 << 20) {
+                throw new Exception("Test file is too small to be split.");
+            }
+            
+            TransactionManager manager = new TransactionManager(filePath);
+            List<Transaction> transactions = manager.getAllTransactions();
+            if (transactions.size() != rows + 1) {
+                throw new Exception("Expected " + (rows + 1) + " transactions but loaded " + transactions.size());
+            }
+            for (int i = 0; i < transactions.size(); i++) {
+                if (transactions.get(i).getId() != firstId + i) {
+                    throw new Exception("Transactions were not loaded in file order at row " + i);
+                }
+            }
+            if (!transactions.get(1).getDescription().equals("Row 1")
+                    || manager.calculateTotalExpensesCents() != rows * 125L) {
+                throw new Exception("Loaded transactions do not match the file.");
+            }
+            
+            Transaction added = manager.addExpense(new Date(), 1, "New", "Food", false);
+            if (added.getId() <= firstId + rows) {
+                throw new Exception("New transaction reused an ID from the file: " + added.getId());
+            }
+            
+            System.out.println("Chunked load kept file order and IDs.");
+        } catch (Exception e) {
+            System.out.println("Chunked load test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test totals, filters and exports that stream the file
+     * 
+     * @param filePath Test file path
+     */
+    private static void testLedgerScanner(String filePath) {
+        System.out.println("\n=== Testing Ledger Scanner ===");
+        String exportPath = "scanner_export.txt";
+        new File(filePath).delete();
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath);
+            Date date = DateValidator.validateAndParse("2024-03-01");
+            manager.addIncome(date, 2500, "Salary", "Employer", true);
+            manager.addExpense(date, 40.10, "Groceries", "Food", true);
+            manager.addExpense(date, 12.35, "Bus", "Transport", false);
+            manager.saveTransactions();
+            try (PrintWriter writer = new PrintWriter(new FileWriter(filePath, true))) {
+                writer.println("EXPENSE,notanid,2024-03-01,1.00,Bad,Food,false");
+                writer.println("EXPENSE,99,2024-13-01,1.00,Bad,Food,false");
+            }
+            
+            List<String> badLines = new ArrayList<>();
+            LedgerScanner scanner = new LedgerScanner(filePath, (line, error) -> badLines.add(line));
+            if (scanner.calculateBalanceCents() != manager.calculateBalanceCents()
+                    || scanner.calculateTotalIncomeCents() != manager.calculateTotalIncomeCents()
+                    || scanner.calculateTaxDeductionsCents() != manager.calculateTaxDeductionsCents()
+                    || scanner.calculateIncomeTaxCents() != manager.calculateIncomeTaxCents()) {
+                throw new Exception("Streamed totals do not match the manager's totals.");
+            }
+            if (badLines.size() != 8) {
+                throw new Exception("Expected 2 malformed lines per scan but got " + badLines.size() + " in 4 scans");
+            }
+            
+            List<Transaction> food = scanner.filter(t -> t instanceof Expense
+                                                    && ((Expense) t).getCategory().equals("Food"));
+            if (food.size() != 1 || !food.get(0).getDescription().equals("Groceries")) {
+                throw new Exception("Filter returned the wrong transactions.");
+            }
+            if (scanner.exportText(t -> t instanceof Expense, exportPath) != 2
+                    || new LedgerScanner(exportPath).calculateTotalExpensesCents() != 5245) {
+                throw new Exception("Export did not write the expected transactions.");
+            }
+            
+            System.out.println("Ledger scanner totals, filters and exports work.");
+        } catch (Exception e) {
+            System.out.println("Ledger scanner test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+            deleteStorageFiles(exportPath);
+        }
+    }
+    
+    /**
+     * Test adding a batch with valid and invalid rows
+     * 
+     * @param filePath Test file path
+     */
+    private static void testBatchAdd(String filePath) {
+        System.out.println("\n=== Testing Batch Add ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath, true);
+            Date date = DateValidator.validateAndParse("2024-04-10");
+            List<BatchEntry> entries = new ArrayList<>();
+            entries.add(BatchEntry.income(date, 1000, "Salary", "Employer", true));
+            entries.add(BatchEntry.expense(date, -5, "Refund?", "Food", false));
+            entries.add(BatchEntry.expense(date, 20, "Dinner", "Food", true));
+            entries.add(BatchEntry.expense(date, 7.5, "  ", "Food", false));
+            entries.add(BatchEntry.expense(date, 3.25, "Parking", "Transport", false));
+            
+            BatchResult result = manager.addAll(entries);
+            List<Transaction> added = result.getAdded();
+            if (added.size() != 3 || result.getErrorCount() != 2
+                    || result.getError(1) == null || result.getError(3) == null || result.getError(0) != null) {
+                throw new Exception("Batch did not report the invalid rows.");
+            }
+            if (added.get(1).getId() != added.get(0).getId() + 1 || added.get(2).getId() != added.get(0).getId() + 2) {
+                throw new Exception("Batch IDs were not reserved as one block.");
+            }
+            if (manager.getTransactionById(added.get(2).getId()) != added.get(2)
+                    || manager.getRecentTransactions().get(0) != added.get(2)
+                    || manager.calculateTotalExpensesCents() != 2325
+                    || manager.getSpendingByCategory().size() != 2
+                    || !manager.verifyTotals()) {
+                throw new Exception("Batch was not added to the indexes and totals.");
+            }
+            manager.close();
+            
+            TransactionManager reloaded = new TransactionManager(filePath, true);
+            if (reloaded.getAllTransactions().size() != 3 || reloaded.calculateBalanceCents() != 100000 - 2325) {
+                throw new Exception("Batch was not written to the journal.");
+            }
+            reloaded.close();
+            
+            System.out.println("Batch add reported errors and added valid rows.");
+        } catch (Exception e) {
+            System.out.println("Batch add test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that column storage gives the same answers as object storage
+     * 
+     * @param filePath Test file path
+     */
+    private static void testColumnStorage(String filePath) {
+        System.out.println("\n=== Testing Column Storage ===");
+        String objectsPath = "objects_" + filePath;
+        deleteStorageFiles(filePath);
+        deleteStorageFiles(objectsPath);
+        
+        try {
+            // IDs out of order make the store switch from binary search to a hash map
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                writer.println("EXPENSE,900,2024-05-02,12.50,Lunch,Food,true");
+                writer.println("INCOME,700,2024-05-01,3000.00,Salary,Employer,true");
+                writer.println("EXPENSE,800,2024-06-15,80.00,Train,Transport,false");
+            }
+            Files.copy(Paths.get(filePath), Paths.get(objectsPath));
+            TransactionManager compact = new TransactionManager(filePath, true, 10, false,
+                                                                TransactionManager.COLUMN_STORAGE);
+            TransactionManager objects = new TransactionManager(objectsPath, true);
+            
+            Date date = DateValidator.validateAndParse("2024-05-20");
+            for (int i = 0; i < 3000; i++) {
+                compact.addExpense(date, 1 + i % 7, "Item " + i, i % 3 == 0 ? "Food" : "Fun", i % 2 == 0);
+                objects.addExpense(date, 1 + i % 7, "Item " + i, i % 3 == 0 ? "Food" : "Fun", i % 2 == 0);
+            }
+            // Enough deletes to squeeze out deleted rows (more deleted rows than live ones)
+            for (Transaction transaction : objects.getTransactionsByCategory("Fun")) {
+                objects.deleteTransaction(transaction.getId());
+            }
+            for (Transaction transaction : compact.getTransactionsByCategory("Fun")) {
+                compact.deleteTransaction(transaction.getId());
+            }
+            compact.editTransaction(900, date, 20, "Lunch edited");
+            objects.editTransaction(900, date, 20, "Lunch edited");
+            
+            Date may = DateValidator.validateAndParse("2024-05-01");
+            Date june = DateValidator.validateAndParse("2024-05-31");
+            if (compact.size() != objects.size()
+                    || compact.calculateBalanceCents() != objects.calculateBalanceCents()
+                    || compact.calculateTaxDeductionsCents() != objects.calculateTaxDeductionsCents()
+                    || compact.calculateIncomeTaxCents() != objects.calculateIncomeTaxCents()
+                    || compact.calculateBalance(may, june) != objects.calculateBalance(may, june)
+                    || !compact.verifyTotals()) {
+                throw new Exception("Column storage totals differ from object storage.");
+            }
+            if (compact.getSpendingByCategory().size() != 2
+                    || compact.getSpendingByCategory().get(0).getTotalCents()
+                       != objects.getSpendingByCategory().get(0).getTotalCents()
+                    || compact.getTransactionsBetween(may, june).size() != objects.getTransactionsBetween(may, june).size()
+                    || compact.getTransactionsBetween(may, june).get(0).getId() != 700) {
+                throw new Exception("Column storage reports differ from object storage.");
+            }
+            if (compact.getSummary(may, june).getBalanceCents() != objects.getSummary(may, june).getBalanceCents()
+                    || compact.getCategorySummary("Food").getCount() != objects.getCategorySummary("Food").getCount()
+                    || compact.getMonthlySummary(2024, 5).getExpenseCount()
+                       != objects.getMonthlySummary(2024, 5).getExpenseCount()
+                    || compact.getSpendingByCategory(2024).get(0).getTotalCents()
+                       != objects.getSpendingByCategory(2024).get(0).getTotalCents()) {
+                throw new Exception("Column storage summaries differ from object storage.");
+            }
+            for (int order = TransactionCursor.BY_DATE; order <= TransactionCursor.BY_ID; order++) {
+                // The two ledgers took turns drawing IDs, so their rows are matched by description
+                List<String> expectedRows = descriptionsOf(objects.openCursor(order, true, null, 7));
+                if (!descriptionsOf(compact.openCursor(order, true, null, 7)).equals(expectedRows)) {
+                    throw new Exception("Column storage cursor " + order + " differs from object storage.");
+                }
+            }
+            Transaction edited = compact.getTransactionById(900);
+            if (!edited.getDescription().equals("Lunch edited") || edited.getAmountCents() != 2000
+                    || compact.getTransactionById(800) == null
+                    || compact.getRecentTransactions().get(0).getDescription().indexOf("Item 2997") != 0) {
+                throw new Exception("Column storage lookups returned the wrong transactions.");
+            }
+            // Transactions are copies, so changing one does not change the ledger
+            edited.setAmountCents(1);
+            if (compact.getTransactionById(900).getAmountCents() != 2000 || !compact.verifyTotals()) {
+                throw new Exception("Changing a copy changed the column storage.");
+            }
+            
+            compact.close();
+            objects.close();
+            TransactionManager reloaded = new TransactionManager(filePath, true, 10, false,
+                                                                 TransactionManager.COLUMN_STORAGE);
+            if (reloaded.size() != compact.size() || reloaded.calculateBalanceCents() != compact.calculateBalanceCents()) {
+                throw new Exception("Column storage did not save and load back.");
+            }
+            
+            reloaded.close();
+            
+            // IDs added in order are found by binary search. A plain text
+            // file saves only the changes, including an edit of an unsaved add.
+            deleteStorageFiles(filePath);
+            TransactionManager ascending = new TransactionManager(filePath, false, 10, false,
+                                                                  TransactionManager.COLUMN_STORAGE);
+            Transaction first = ascending.addIncome(date, 10, "First", "Bank", false);
+            Transaction second = ascending.addIncome(date, 20, "Second", "Bank", false);
+            ascending.deleteTransaction(first.getId());
+            if (ascending.getTransactionById(first.getId()) != null
+                    || ascending.getTransactionById(second.getId()).getAmountCents() != 2000) {
+                throw new Exception("Column storage lookups by ascending ID failed.");
+            }
+            Transaction third = ascending.addExpense(date, 30, "Third", "Food", false);
+            ascending.editTransaction(third.getId(), date, 35, "Third edited");
+            ascending.saveTransactions();
+            ascending.close();
+            TransactionManager ascendingReloaded = new TransactionManager(filePath, false, 10, false,
+                                                                          TransactionManager.COLUMN_STORAGE);
+            if (ascendingReloaded.size() != 2
+                    || ascendingReloaded.getTransactionById(third.getId()).getAmountCents() != 3500
+                    || !ascendingReloaded.getTransactionById(third.getId()).getDescription().equals("Third edited")) {
+                throw new Exception("Column storage changes were not saved.");
+            }
+            ascendingReloaded.close();
+            
+            System.out.println("Column storage matches object storage.");
+        } catch (Exception e) {
+            System.out.println("Column storage test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+            deleteStorageFiles(objectsPath);
+        }
+    }
+    
+    /**
+     * Test that off-heap storage gives the same results as column storage
+     * 
+     * @param filePath Path to test file
+     */
+    private static void testOffHeapStorage(String filePath) {
+        System.out.println("\n=== Testing Off-Heap Storage ===");
+        String heapPath = "heap_" + filePath;
+        deleteStorageFiles(filePath);
+        deleteStorageFiles(heapPath);
+        
+        try {
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                writer.println("EXPENSE,900,2024-05-02,12.50,Lunch,Food,true");
+                writer.println("INCOME,700,2024-05-01,3000.00,Salary,Employer,true");
+            }
+            Files.copy(Paths.get(filePath), Paths.get(heapPath));
+            TransactionManager offHeap = new TransactionManager(filePath, true, 10, false,
+                                                                TransactionManager.OFF_HEAP_STORAGE);
+            TransactionManager heap = new TransactionManager(heapPath, true, 10, false,
+                                                             TransactionManager.COLUMN_STORAGE);
+            
+            // More rows than one off-heap chunk holds
+            Date date = DateValidator.validateAndParse("2024-05-20");
+            List<BatchEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 40000; i++) {
+                entries.add(BatchEntry.expense(date, 1 + i % 7, "Item " + i, i % 3 == 0 ? "Food" : "Fun", i % 2 == 0));
+            }
+            List<Transaction> added = offHeap.addAll(entries).getAdded();
+            List<Transaction> heapAdded = heap.addAll(entries).getAdded();
+            // Squeeze out deleted rows and replaced descriptions
+            for (int i = 0; i < 30000; i++) {
+                offHeap.deleteTransaction(added.get(i).getId());
+                heap.deleteTransaction(heapAdded.get(i).getId());
+            }
+            for (int i = 30000; i < 40000; i++) {
+                offHeap.editTransaction(added.get(i).getId(), date, 5, "Edited item " + i);
+                heap.editTransaction(heapAdded.get(i).getId(), date, 5, "Edited item " + i);
+            }
+            
+            Date may = DateValidator.validateAndParse("2024-05-01");
+            Date june = DateValidator.validateAndParse("2024-05-31");
+            if (offHeap.size() != heap.size()
+                    || offHeap.calculateBalanceCents() != heap.calculateBalanceCents()
+                    || offHeap.calculateTaxDeductionsCents() != heap.calculateTaxDeductionsCents()
+                    || offHeap.calculateBalance(may, june) != heap.calculateBalance(may, june)
+                    || offHeap.getSpendingByCategory().get(1).getTotalCents()
+                       != heap.getSpendingByCategory().get(1).getTotalCents()
+                    || !offHeap.verifyTotals()) {
+                throw new Exception("Off-heap totals differ from column storage.");
+            }
+            Transaction last = offHeap.getTransactionById(added.get(39999).getId());
+            if (offHeap.getTransactionById(added.get(0).getId()) != null
+                    || !last.getDescription().equals("Edited item 39999")
+                    || offHeap.getTransactionById(900) == null
+                    || !offHeap.getRecentTransactions().get(0).getDescription().equals("Edited item 39999")) {
+                throw new Exception("Off-heap lookups returned the wrong transactions.");
+            }
+            
+            offHeap.close();
+            heap.close();
+            TransactionManager reloaded = new TransactionManager(filePath, true, 10, false,
+                                                                 TransactionManager.OFF_HEAP_STORAGE);
+            if (reloaded.size() != heap.size() || reloaded.calculateBalanceCents() != heap.calculateBalanceCents()
+                    || reloaded.getYearlySummary(2024).getCount() != heap.size()) {
+                throw new Exception("Off-heap storage did not save and load back.");
+            }
+            reloaded.close();
+            
+            // The app and the server take the storage by name
+            if (TransactionManager.storageNamed("off-heap") != TransactionManager.OFF_HEAP_STORAGE
+                    || TransactionManager.storageNamed("columns") != TransactionManager.COLUMN_STORAGE) {
+                throw new Exception("Storage names were not recognized.");
+            }
+            try {
+                TransactionManager.storageNamed("disk");
+                throw new Exception("An unknown storage name was accepted.");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+            
+            System.out.println("Off-heap storage matches column storage.");
+        } catch (Exception e) {
+            System.out.println("Off-heap storage test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+            deleteStorageFiles(heapPath);
+        }
+    }
+    
+    /**
+     * Test that changes are merged into the file on a background thread
+     * 
+     * @param filePath Test file path
+     */
+    private static void testAsyncSave(String filePath) {
+        System.out.println("\n=== Testing Background Saves ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                writer.println("EXPENSE,900,2024-05-02,12.50,Lunch,Food,true");
+                writer.println("INCOME,901,2024-05-01,3000.00,Salary,Employer,true");
+            }
+            TransactionManager manager = new TransactionManager(filePath, false, 10, true);
+            Date date = DateValidator.validateAndParse("2024-05-20");
+            Transaction first = manager.addExpense(date, 10, "Book", "Fun", false);
+            Transaction second = manager.addExpense(date, 20, "Game", "Fun", false);
+            manager.editTransaction(first.getId(), date, 15, "Book edited");
+            manager.editTransaction(900, date, 20, "Lunch edited");
+            if (!manager.deleteTransaction(second.getId())) {
+                throw new Exception("Delete did not succeed in memory.");
+            }
+            if (!manager.whenSaved().get(10, TimeUnit.SECONDS)) {
+                throw new Exception("Background write failed.");
+            }
+            
+            // Edited lines stay in place, deleted ones are dropped, new ones are appended
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(Paths.get(filePath))) {
+                if (SnapshotFile.isContentLine(line)) {
+                    lines.add(line);
+                }
+            }
+            if (lines.size() != 3 || !lines.get(0).startsWith("EXPENSE,900,") || !lines.get(0).contains("Lunch edited")
+                    || !lines.get(1).startsWith("INCOME,901,") || !lines.get(2).contains("Book edited")) {
+                throw new Exception("File does not hold the merged changes: " + lines);
+            }
+            
+            // Enough rows to be written without waiting for the delay, then closed straight away
+            List<BatchEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 1500; i++) {
+                entries.add(BatchEntry.expense(date, 1, "Item " + i, "Food", false));
+            }
+            manager.addAll(entries);
+            manager.close();
+            
+            TransactionManager reloaded = new TransactionManager(filePath);
+            if (reloaded.getAllTransactions().size() != 1503
+                    || reloaded.calculateBalanceCents() != manager.calculateBalanceCents()) {
+                throw new Exception("Closing did not write the last changes.");
+            }
+            reloaded.close();
+            
+            System.out.println("Background saves merged every change into the file.");
+        } catch (Exception e) {
+            System.out.println("Background save test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that saves are checked on load and a damaged file falls back to
+     * the previous version
+     * 
+     * @param filePath Test file path
+     */
+    private static void testAtomicSave(String filePath) {
+        System.out.println("\n=== Testing Crash-Safe Saves ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            // Whole-file saves, as binary files and journal compaction make them
+            FileHandler handler = new FileHandler(filePath);
+            Date date = DateValidator.validateAndParse("2024-06-01");
+            List<Transaction> saved = new ArrayList<>();
+            saved.add(new Expense(date, 10, "Coffee", "Food", false));
+            saved.add(new Income(date, 500, "Salary", "Employer", true));
+            if (!handler.saveTransactions(saved)) {
+                throw new Exception("First save failed.");
+            }
+            List<String> lines = Files.readAllLines(Paths.get(filePath));
+            if (!lines.get(lines.size() - 1).startsWith("#CHECKSUM,")
+                    || SnapshotFile.verify(filePath) != SnapshotFile.VALID) {
+                throw new Exception("Saved file has no valid checksum footer: " + lines);
+            }
+            
+            // The second save keeps the first one as the backup
+            saved.add(new Expense(date, 25, "Taxi", "Transport", false));
+            if (!handler.saveTransactions(saved)) {
+                throw new Exception("Second save failed.");
+            }
+            String backupPath = filePath + SnapshotFile.BACKUP_SUFFIX;
+            if (SnapshotFile.verify(backupPath) != SnapshotFile.VALID
+                    || new TransactionManager(backupPath).getAllTransactions().size() != 2) {
+                throw new Exception("Backup does not hold the previous save.");
+            }
+            handler.close();
+            
+            // A torn write: the file is cut off in the middle of its last line
+            byte[] bytes = Files.readAllBytes(Paths.get(filePath));
+            Files.write(Paths.get(filePath), Arrays.copyOf(bytes, bytes.length - 20));
+            if (SnapshotFile.verify(filePath) != SnapshotFile.DAMAGED) {
+                throw new Exception("Truncated file was not detected.");
+            }
+            TransactionManager rolledBack = new TransactionManager(filePath);
+            if (rolledBack.getAllTransactions().size() != 2) {
+                throw new Exception("Damaged file did not fall back to the backup.");
+            }
+            rolledBack.close();
+            
+            // Files without a footer cannot be checked but still load
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                writer.println("EXPENSE,950,2024-06-02,8.00,Snack,Food,false");
+            }
+            if (SnapshotFile.verify(filePath) != SnapshotFile.UNCHECKED
+                    || new TransactionManager(filePath).getAllTransactions().size() != 1) {
+                throw new Exception("File without a footer did not load as before.");
+            }
+            
+            // Text is saved as UTF-8 whatever the platform charset
+            saved.add(new Expense(date, 3, "Caf\u00e9 \u2615", "Food", false));
+            if (!new FileHandler(filePath).saveTransactions(saved)) {
+                throw new Exception("Save with non-ASCII text failed.");
+            }
+            String text = new String(Files.readAllBytes(Paths.get(filePath)), StandardCharsets.UTF_8);
+            if (!text.startsWith("#SNAPSHOT,2") || !text.contains("Caf\u00e9 \u2615")
+                    || !new TransactionManager(filePath).getAllTransactions().get(3).getDescription()
+                            .equals("Caf\u00e9 \u2615")) {
+                throw new Exception("Non-ASCII description was not saved and loaded as UTF-8.");
+            }
+            
+            // Files saved with the version 1 header are still checked
+            String version1 = "#SNAPSHOT,1\nEXPENSE,951,2024-06-02,8.00,Snack,Food,false\n";
+            CRC32 checksum = new CRC32();
+            checksum.update(version1.getBytes(StandardCharsets.UTF_8));
+            Files.write(Paths.get(filePath), (version1 + "#CHECKSUM," + version1.length() + ","
+                    + Long.toHexString(checksum.getValue()) + "\n").getBytes(StandardCharsets.UTF_8));
+            if (SnapshotFile.verify(filePath) != SnapshotFile.VALID) {
+                throw new Exception("Version 1 file did not check as valid.");
+            }
+            
+            System.out.println("Saves were checked and a torn file rolled back to the previous version.");
+        } catch (Exception e) {
+            System.out.println("Crash-safe save test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that unchanged saves are skipped and small saves write only the changes
+     * 
+     * @param filePath Test file path
+     */
+    private static void testChangeTracking(String filePath) {
+        System.out.println("\n=== Testing Change Tracking ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                writer.println("EXPENSE,960,2024-07-01,30.00,Dinner,Food,false");
+                writer.println("INCOME,961,2024-07-01,1000.00,Salary,Employer,true");
+            }
+            byte[] original = Files.readAllBytes(Paths.get(filePath));
+            File journal = new File(filePath + ".journal");
+            
+            TransactionManager manager = new TransactionManager(filePath);
+            if (manager.hasUnsavedChanges() || !manager.saveTransactions()
+                    || !Arrays.equals(original, Files.readAllBytes(Paths.get(filePath))) || journal.exists()) {
+                throw new Exception("Saving right after loading wrote to disk.");
+            }
+            
+            Date date = DateValidator.validateAndParse("2024-07-02");
+            long before = manager.getModCount();
+            Transaction added = manager.addExpense(date, 5, "Tea", "Food", false);
+            Transaction dropped = manager.addExpense(date, 6, "Cake", "Food", false);
+            manager.editTransaction(added.getId(), date, 7, "Tea edited");
+            manager.editTransaction(960, date, 35, "Dinner edited");
+            manager.deleteTransaction(dropped.getId());
+            manager.deleteTransaction(961);
+            if (manager.getModCount() != before + 6 || manager.hasUnsavedChanges()) {
+                throw new Exception("Changes were not counted, or the deletes did not save them.");
+            }
+            
+            // Only the delta was written: the file is untouched and the
+            // journal holds the added, the edited and the deleted transaction
+            if (!Arrays.equals(original, Files.readAllBytes(Paths.get(filePath)))) {
+                throw new Exception("A small save rewrote the whole file.");
+            }
+            List<String> records = Files.readAllLines(journal.toPath());
+            if (!records.contains("ADD," + added.toFileString()) || !records.contains("DELETE,961")
+                    || !records.contains("EDIT," + manager.getTransactionById(960).toFileString())) {
+                throw new Exception("Journal does not hold the saved changes: " + records);
+            }
+            long journalLength = journal.length();
+            if (!manager.saveTransactions() || journal.length() != journalLength) {
+                throw new Exception("Saving twice wrote the changes again.");
+            }
+            
+            // Opening the file folds the saved changes into it
+            TransactionManager reloaded = new TransactionManager(filePath);
+            if (journal.exists() || reloaded.getAllTransactions().size() != 2
+                    || reloaded.calculateBalanceCents() != manager.calculateBalanceCents()) {
+                throw new Exception("Saved changes were not folded into the file.");
+            }
+            
+            // Closing folds the saved changes in too
+            reloaded.addExpense(date, 4, "Juice", "Food", false);
+            reloaded.saveTransactions();
+            if (!journal.exists()) {
+                throw new Exception("A small save after reloading did not go to the journal.");
+            }
+            reloaded.close();
+            if (journal.exists() || !new String(Files.readAllBytes(Paths.get(filePath))).contains("Juice")) {
+                throw new Exception("Closing did not fold the saved changes into the file.");
+            }
+            
+            // A batch larger than the delta limit is saved whole
+            List<BatchEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 10_001; i++) {
+                entries.add(BatchEntry.expense(date, 1, "Item " + i, "Food", false));
+            }
+            TransactionManager reopened = new TransactionManager(filePath);
+            reopened.addAll(entries);
+            if (!reopened.hasUnsavedChanges() || !reopened.saveTransactions() || journal.exists()
+                    || new TransactionManager(filePath).getAllTransactions().size() != 10_004) {
+                throw new Exception("Large batch was not saved whole.");
+            }
+            
+            System.out.println("Unchanged saves were skipped and small saves wrote only the changes.");
+        } catch (Exception e) {
+            System.out.println("Change tracking test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that a summary matches the separate totals, for the whole
+     * ledger and for each scope
+     * 
+     * @param filePath Test file path
+     */
+    private static void testFinancialSummary(String filePath) {
+        System.out.println("\n=== Testing Financial Summary ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            TransactionManager manager = new ConcurrentTransactionManager(filePath);
+            Date march = DateValidator.validateAndParse("2024-03-10");
+            Date april = DateValidator.validateAndParse("2024-04-10");
+            manager.addIncome(march, 2000, "Salary", "Employer", true);
+            manager.addExpense(march, 120.40, "Groceries", "Food", true);
+            manager.addExpense(april, 30.15, "Lunch", "Food", false);
+            manager.addIncome(april, 150, "Birthday", "Gift", false);
+            Transaction taxi = manager.addExpense(april, 45, "Taxi", "Transport", true);
+            manager.deleteTransaction(taxi.getId());
+            
+            FinancialSummary all = manager.getSummary();
+            if (all.getTotalIncomeCents() != manager.calculateTotalIncomeCents()
+                    || all.getTotalExpensesCents() != manager.calculateTotalExpensesCents()
+                    || all.getBalanceCents() != manager.calculateBalanceCents()
+                    || all.getTaxDeductionsCents() != manager.calculateTaxDeductionsCents()
+                    || all.getIncomeTaxCents() != manager.calculateIncomeTaxCents()
+                    || all.getIncomeCount() != 2 || all.getExpenseCount() != 2 || all.getCount() != 4) {
+                throw new Exception("Summary does not match the separate totals.");
+            }
+            
+            Date from = DateValidator.validateAndParse("2024-04-01");
+            Date to = DateValidator.validateAndParse("2024-04-30");
+            FinancialSummary april2024 = manager.getSummary(from, to);
+            if (april2024.getTotalIncome() != manager.calculateTotalIncome(from, to)
+                    || april2024.getTotalExpenses() != manager.calculateTotalExpenses(from, to)
+                    || april2024.getBalance() != manager.calculateBalance(from, to)
+                    || april2024.getTaxDeductions() != manager.calculateTaxDeductions(from, to)
+                    || april2024.getIncomeTax() != manager.calculateIncomeTax(from, to)
+                    || april2024.getCount() != 2) {
+                throw new Exception("Range summary does not match the range totals.");
+            }
+            
+            FinancialSummary food = manager.getCategorySummary("Food");
+            FinancialSummary gifts = manager.getSourceSummary("Gift");
+            if (food.getTotalExpensesCents() != 15055 || food.getExpenseCount() != 2
+                    || food.getTotalIncomeCents() != 0 || food.getTaxDeductionsCents() != 1806
+                    || gifts.getTotalIncomeCents() != 15000 || gifts.getIncomeTaxCents() != 0
+                    || manager.getCategorySummary("Travel").getCount() != 0) {
+                throw new Exception("Category or source summary is wrong.");
+            }
+            manager.close();
+            
+            System.out.println("Summaries match the separate totals for every scope.");
+        } catch (Exception e) {
+            System.out.println("Financial summary test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that cursors page through every order, filter and change in between
+     * 
+     * @param filePath Test file path
+     */
+    private static void testTransactionCursor(String filePath) {
+        System.out.println("\n=== Testing Transaction Cursor ===");
+        String orderedPath = "cursor_ordered_test.txt";
+        deleteStorageFiles(filePath);
+        deleteStorageFiles(orderedPath);
+        
+        try {
+            // IDs out of order, as in a file put together by hand
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                writer.println("EXPENSE,980,2024-08-03,15.00,Pizza,Food,false");
+                writer.println("EXPENSE,970,2024-08-01,99.00,Shoes,Clothes,false");
+            }
+            TransactionManager manager = new TransactionManager(filePath);
+            List<BatchEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 23; i++) {
+                Date date = DateValidator.fromEpochDay(19_900 + (i * 7) % 10);
+                if (i % 3 == 0) {
+                    entries.add(BatchEntry.income(date, 100 + (i * 37) % 50, "Pay " + i, "Employer", true));
+                } else {
+                    entries.add(BatchEntry.expense(date, 5 + (i * 53) % 40, "Item " + i, "Food", false));
+                }
+            }
+            manager.addAll(entries);
+            
+            Comparator<Transaction> byDate = Comparator.comparing(Transaction::getDate)
+                                                       .thenComparingInt(Transaction::getId);
+            Comparator<Transaction> byId = Comparator.comparingInt(Transaction::getId);
+            List<Transaction> expected = new ArrayList<>(manager.getAllTransactions());
+            expected.sort(byDate);
+            checkPages(manager.openCursor(TransactionCursor.BY_DATE, false, null, 10), expected, 10);
+            expected.sort(byDate.reversed());
+            checkPages(manager.openCursor(TransactionCursor.BY_DATE, true, null, 4), expected, 4);
+            expected.sort(byId);
+            checkPages(manager.openCursor(TransactionCursor.BY_ID, false, null, 5), expected, 5);
+            
+            expected.removeIf(t -> !(t instanceof Expense));
+            expected.sort(Comparator.comparingLong(Transaction::getAmountCents).thenComparingInt(Transaction::getId)
+                                    .reversed());
+            checkPages(manager.openCursor(TransactionCursor.BY_AMOUNT, true, t -> t instanceof Expense, 3),
+                       expected, 3);
+            
+            // Changes between pages: a deleted row is skipped and a new one is reached
+            TransactionCursor cursor = manager.openCursor(TransactionCursor.BY_DATE, false, null, 10);
+            List<Transaction> first = cursor.nextPage();
+            List<Transaction> all = new ArrayList<>(manager.getAllTransactions());
+            all.sort(byDate);
+            Transaction deleted = all.get(15);
+            manager.deleteTransaction(deleted.getId());
+            Transaction added = manager.addExpense(DateValidator.validateAndParse("2024-09-01"), 1, "Late", "Food", false);
+            List<Transaction> rest = new ArrayList<>();
+            for (List<Transaction> page = cursor.nextPage(); !page.isEmpty(); page = cursor.nextPage()) {
+                rest.addAll(page);
+            }
+            if (first.size() != 10 || rest.contains(deleted) || !rest.get(rest.size() - 1).equals(added)
+                    || first.size() + rest.size() != manager.getAllTransactions().size()) {
+                throw new Exception("Cursor did not follow changes made between pages.");
+            }
+            
+            // A ledger in ID order is paged in ID order without a copy, so it sees new rows
+            TransactionManager ordered = new TransactionManager(orderedPath);
+            List<Transaction> orderedRows = ordered.addAll(entries).getAdded();
+            TransactionCursor byIdCursor = ordered.openCursor(TransactionCursor.BY_ID, false, null, 5);
+            List<Transaction> read = new ArrayList<>(byIdCursor.nextPage());
+            ordered.deleteTransaction(orderedRows.get(7).getId());
+            Transaction newest = ordered.addIncome(DateValidator.fromEpochDay(19_900), 10, "Bonus", "Employer", true);
+            for (List<Transaction> page = byIdCursor.nextPage(); !page.isEmpty(); page = byIdCursor.nextPage()) {
+                read.addAll(page);
+            }
+            List<Transaction> expectedIds = new ArrayList<>(ordered.getAllTransactions());
+            expectedIds.sort(byId);
+            if (!read.equals(expectedIds) || !read.get(read.size() - 1).equals(newest)) {
+                throw new Exception("ID order did not follow changes made between pages.");
+            }
+            
+            System.out.println("Cursors paged through every order and filter.");
+        } catch (Exception e) {
+            System.out.println("Transaction cursor test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+            deleteStorageFiles(orderedPath);
+        }
+    }
+    
+    /**
+     * Test every HTTP endpoint against a server on a free local port
+     * 
+     * @param filePath Test file path
+     * @param storage Storage of the served ledger
+     */
+    private static void testLedgerServer(String filePath, int storage) {
+        System.out.println("\n=== Testing Ledger Server ===");
+        deleteStorageFiles(filePath);
+        ConcurrentTransactionManager manager = null;
+        LedgerServer server = null;
+        
+        try {
+            manager = new ConcurrentTransactionManager(filePath, true, TransactionManager.DEFAULT_RECENT_CAPACITY,
+                                                       storage);
+            server = new LedgerServer(manager, 0);
+            server.start();
+            String base = "http://localhost:" + server.getPort();
+            
+            String[] added = request("POST", base + "/transactions", 201,
+                    "{\"type\":\"expense\",\"date\":\"2024-05-02\",\"amount\":12.5,"
+                    + "\"description\":\"Lunch \\\"deluxe\\\"\",\"category\":\"Food\",\"taxDeductible\":true}");
+            Map<String, String> expense = Json.parseObject(added[1]);
+            int id = Integer.parseInt(expense.get("id"));
+            request("POST", base + "/transactions", 201,
+                    "{\"type\":\"income\",\"date\":\"2024-05-01\",\"amount\":900,"
+                    + "\"description\":\"Salary\",\"source\":\"Employer\",\"taxable\":true}");
+            if (!expense.get("description").equals("Lunch \"deluxe\"") || !expense.get("amount").equals("12.50")
+                    || !expense.get("category").equals("Food") || manager.getTransactionById(id) == null) {
+                throw new Exception("Added expense came back wrong: " + added[1]);
+            }
+            
+            request("POST", base + "/transactions", 400,
+                    "{\"type\":\"expense\",\"date\":\"2024-05-02\",\"amount\":-3,"
+                    + "\"description\":\"Refund\",\"category\":\"Food\"}");
+            request("POST", base + "/transactions", 400, "{\"type\":");
+            // Fields that would break the comma and line separated storage, and amounts that are not numbers
+            String[] badBodies = {
+                "\"amount\":5,\"description\":\"line1\\nline2\",\"category\":\"Food\"",
+                "\"amount\":5,\"description\":\"a,b\",\"category\":\"Food\"",
+                "\"amount\":5,\"description\":\"Lunch\",\"category\":\"Food,true\"",
+                "\"amount\":5,\"description\":\"Lunch\",\"category\":\"Food\\r\"",
+                "\"amount\":\"Infinity\",\"description\":\"Lunch\",\"category\":\"Food\"",
+                "\"amount\":\"NaN\",\"description\":\"Lunch\",\"category\":\"Food\"",
+                "\"amount\":1e400,\"description\":\"Lunch\",\"category\":\"Food\"",
+                "\"amount\":1e12,\"description\":\"Lunch\",\"category\":\"Food\"",
+                "\"amount\":0,\"description\":\"Lunch\",\"category\":\"Food\""
+            };
+            for (String badBody : badBodies) {
+                request("POST", base + "/transactions", 400,
+                        "{\"type\":\"expense\",\"date\":\"2024-05-02\"," + badBody + "}");
+            }
+            request("POST", base + "/transactions", 400,
+                    "{\"type\":\"income\",\"date\":\"2024-05-01\",\"amount\":5,"
+                    + "\"description\":\"Gift\",\"source\":\"Aunt,Uncle\"}");
+            request("PUT", base + "/transactions/" + id, 400, "{\"amount\":\"NaN\"}");
+            request("PUT", base + "/transactions/" + id, 400, "{\"description\":\"two\\nlines\"}");
+            if (manager.getAllTransactions().size() != 2 || manager.calculateTotalExpensesCents() != 1250) {
+                throw new Exception("A rejected request changed the ledger.");
+            }
+            request("GET", base + "/transactions/999999", 404, null);
+            
+            Map<String, String> edited = Json.parseObject(
+                    request("PUT", base + "/transactions/" + id, 200, "{\"amount\":20}")[1]);
+            if (!edited.get("amount").equals("20.00") || !edited.get("date").equals("2024-05-02")
+                    || !Json.parseObject(request("GET", base + "/transactions/" + id, 200, null)[1])
+                            .get("amount").equals("20.00")) {
+                throw new Exception("Edit did not change only the amount.");
+            }
+            
+            Map<String, String> summary = Json.parseObject(request("GET", base + "/summary", 200, null)[1]);
+            if (!summary.get("count").equals("2") || !summary.get("balance").equals("880.00")) {
+                throw new Exception("Summary came back wrong: " + summary);
+            }
+            
+            String page = request("GET", base + "/transactions?order=amount&desc=true&size=1&page=2", 200, null)[1];
+            if (!page.contains("\"id\":" + id + ",") || !page.contains("\"hasMore\":true")) {
+                throw new Exception("List page came back wrong: " + page);
+            }
+            String expenses = request("GET", base + "/transactions?type=expense", 200, null)[1];
+            if (expenses.contains("Salary") || !expenses.contains("\"hasMore\":false")) {
+                throw new Exception("Filtered list came back wrong: " + expenses);
+            }
+            // Rows without a category or source, as the manager allows, are filtered out
+            Date may = DateValidator.validateAndParse("2024-05-03");
+            Transaction ungroupedExpense = manager.addExpense(may, 1, "Ungrouped expense", null, false);
+            Transaction ungroupedIncome = manager.addIncome(may, 1, "Ungrouped income", null, false);
+            String food = request("GET", base + "/transactions?category=food", 200, null)[1];
+            String employer = request("GET", base + "/transactions?source=Employer", 200, null)[1];
+            if (food.contains("Ungrouped") || employer.contains("Ungrouped") || !employer.contains("Salary")) {
+                throw new Exception("Filter by group came back wrong: " + food + " " + employer);
+            }
+            manager.deleteTransaction(ungroupedExpense.getId());
+            manager.deleteTransaction(ungroupedIncome.getId());
+            
+            request("DELETE", base + "/transactions/" + id, 204, null);
+            request("DELETE", base + "/transactions/" + id, 404, null);
+            server.stop();
+            server = null;
+            manager.close();
+            
+            // Every change was journaled, so a fresh manager sees the same ledger
+            TransactionManager reloaded = new TransactionManager(filePath, true);
+            if (reloaded.getAllTransactions().size() != 1 || reloaded.calculateBalanceCents() != 90_000) {
+                throw new Exception("Changes made over HTTP were not saved.");
+            }
+            reloaded.close();
+            
+            System.out.println("Every endpoint answered as expected ("
+                               + (LedgerServer.usesVirtualThreads() ? "virtual threads" : "thread pool") + ").");
+        } catch (Exception e) {
+            System.out.println("Ledger server test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            if (server != null) {
+                server.stop();
+                manager.close();
+            }
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test that operations, file loads and saves and date parse failures are
+     * counted, and that the metrics are readable through JMX and the dump
+     * 
+     * @param filePath Test file path
+     */
+    private static void testMetrics(String filePath) {
+        System.out.println("\n=== Testing Metrics ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            try (PrintWriter writer = new PrintWriter(filePath)) {
+                writer.println("EXPENSE,1,2024-02-01,10.00,Coffee,Food,false");
+                writer.println("EXPENSE,2,2024-02-31,12.00,Bad date,Food,false");
+                writer.println("not a transaction");
+            }
+            Metrics.registerMBeans();
+            Metrics.reset();
+            TransactionManager manager = new TransactionManager(filePath);
+            if (Metrics.counter("file.load.rows").getValue() != 1
+                    || Metrics.counter("file.parseErrors").getValue() != 2
+                    || Metrics.counter("date.parseFailures").getValue() < 1
+                    || Metrics.counter("file.load.bytes").getValue() != new File(filePath).length()
+                    || Metrics.timer("file.load", 1).getCount() != 1) {
+                throw new Exception("File load was not counted.");
+            }
+            
+            Date date = DateValidator.validateAndParse("2024-02-02");
+            Transaction lunch = null;
+            for (int i = 0; i < 200; i++) {
+                lunch = manager.addExpense(date, 5, "Lunch " + i, "Food", false);
+            }
+            for (int i = 0; i < 1000; i++) {
+                manager.getTransactionById(lunch.getId());
+                manager.calculateBalance();
+            }
+            manager.editTransaction(lunch.getId(), date, 6, "Lunch");
+            manager.deleteTransaction(lunch.getId());
+            OperationTimer lookups = Metrics.timer("manager.lookup");
+            if (Metrics.timer("manager.add").getCount() != 200 || lookups.getCount() != 1000
+                    || Metrics.timer("manager.calculateBalance").getCount() != 1000
+                    || Metrics.timer("manager.calculateTotalIncome").getCount() != 0
+                    || Metrics.timer("manager.edit").getCount() != 1
+                    || Metrics.timer("manager.delete", 1).getCount() != 1
+                    || Metrics.counter("file.save.rows").getValue() < 1) {
+                throw new Exception("Manager operations were not counted.");
+            }
+            // Calls are picked for timing at random, one in DEFAULT_SAMPLE_EVERY on average
+            if (lookups.getSampledCount() < 1 || lookups.getSampledCount() > 3 * 1000 / Metrics.DEFAULT_SAMPLE_EVERY
+                    || lookups.getP50Nanos() <= 0 || lookups.getP99Nanos() < lookups.getP50Nanos()
+                    || lookups.getMaxNanos() < lookups.getP99Nanos()) {
+                throw new Exception("Lookup latencies were not sampled.");
+            }
+            
+            Metrics.setEnabled(false);
+            manager.getTransactionById(lunch.getId());
+            Metrics.setEnabled(true);
+            if (lookups.getCount() != 1000) {
+                throw new Exception("A call was counted while metrics were disabled.");
+            }
+            
+            // Calls overlapping on several threads are all counted
+            OperationTimer shared = Metrics.timer("test.sharedCalls");
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        shared.stop(shared.start());
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long expectedSamples = 200_000 / Metrics.DEFAULT_SAMPLE_EVERY;
+            if (shared.getCount() != 200_000 || Math.abs(shared.getSampledCount() - expectedSamples) > expectedSamples / 5) {
+                throw new Exception("Concurrent calls were lost: counted " + shared.getCount() + ", sampled "
+                                    + shared.getSampledCount());
+            }
+            
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Object jmxCount = server.getAttribute(Metrics.objectName("Timer", "manager.lookup"), "Count");
+            Object jmxRows = server.getAttribute(Metrics.objectName("Counter", "file.load.rows"), "Value");
+            if (!Long.valueOf(1000).equals(jmxCount) || !Long.valueOf(1).equals(jmxRows)) {
+                throw new Exception("JMX shows different values: " + jmxCount + ", " + jmxRows);
+            }
+            
+            StringWriter dump = new StringWriter();
+            Metrics.dump(new PrintWriter(dump));
+            if (!dump.toString().contains("manager.lookup") || !dump.toString().contains("date.parseFailures")) {
+                throw new Exception("Dump is missing metrics.");
+            }
+            
+            System.out.println("Operations, file access and parse failures were counted.");
+        } catch (Exception e) {
+            System.out.println("Metrics test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            Metrics.setEnabled(true);
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Test the compressed archive: totals from the block index, range reads and round trips
+     * 
+     * @param filePath Test file path
+     */
+    private static void testLedgerArchive(String filePath) {
+        System.out.println("\n=== Testing Ledger Archive ===");
+        String textPath = "archive_source_test.txt";
+        deleteStorageFiles(filePath);
+        deleteStorageFiles(textPath);
+        
+        try {
+            // Three and a half years of rows, added out of date order
+            TransactionManager manager = new TransactionManager(textPath);
+            List<BatchEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 430; i++) {
+                Date date = DateValidator.fromEpochDay(DateValidator.parseEpochDay("2022-01-01") + (i * 37) % 1290);
+                entries.add(i % 5 == 0 ? BatchEntry.income(date, 1000 + i, "Pay " + i, "Employer", i % 2 == 0)
+                                       : BatchEntry.expense(date, 3.75 + i, "Buy \u00e9 " + i, "Food", i % 3 == 0));
+            }
+            manager.addAll(entries);
+            LedgerArchive.write(manager.getAllTransactions(), filePath, 50);
+            
+            LedgerArchive archive = LedgerArchive.open(filePath);
+            if (archive.size() != 430 || archive.getBlockCount() < 10) {
+                throw new Exception("Archive has " + archive.size() + " rows in " + archive.getBlockCount() + " blocks.");
+            }
+            
+            FileHandler handler = new FileHandler(filePath);
+            Date yearStart = DateValidator.validateAndParse("2023-01-01");
+            Date yearEnd = DateValidator.validateAndParse("2023-12-31");
+            Metrics.reset();
+            long[] year = handler.calculateTotals(yearStart, yearEnd, ParseErrorHandler.PRINT);
+            FinancialSummary expectedYear = manager.getSummary(yearStart, yearEnd);
+            if (year[LedgerArchive.INCOME] != expectedYear.getTotalIncomeCents()
+                    || year[LedgerArchive.EXPENSES] != expectedYear.getTotalExpensesCents()
+                    || year[LedgerArchive.TAX_DEDUCTIONS] != expectedYear.getTaxDeductionsCents()
+                    || year[LedgerArchive.INCOME_TAX] != expectedYear.getIncomeTaxCents()
+                    || year[LedgerArchive.INCOME_COUNT] + year[LedgerArchive.EXPENSE_COUNT] != expectedYear.getCount()) {
+                throw new Exception("Whole-year totals do not match the ledger.");
+            }
+            if (Metrics.counter("archive.blocksInflated").getValue() != 0
+                    || Metrics.counter("archive.blocksPartlyInflated").getValue() != 0) {
+                throw new Exception("Whole-year totals decompressed a block.");
+            }
+            
+            Date from = DateValidator.validateAndParse("2023-03-15");
+            Date to = DateValidator.validateAndParse("2023-09-20");
+            LedgerScanner scanner = new LedgerScanner(filePath);
+            FinancialSummary range = scanner.getSummary(from, to);
+            FinancialSummary expectedRange = manager.getSummary(from, to);
+            if (range.getBalanceCents() != expectedRange.getBalanceCents()
+                    || range.getTaxDeductionsCents() != expectedRange.getTaxDeductionsCents()
+                    || range.getIncomeTaxCents() != expectedRange.getIncomeTaxCents()
+                    || range.getCount() != expectedRange.getCount()
+                    || Metrics.counter("archive.blocksPartlyInflated").getValue() < 1
+                    || Metrics.counter("archive.blocksInflated").getValue() != 0) {
+                throw new Exception("Range totals do not match the ledger.");
+            }
+            try (Stream<Transaction> rows = scanner.streamBetween(from, to)) {
+                if (rows.count() != expectedRange.getCount()) {
+                    throw new Exception("Range stream returned the wrong rows.");
+                }
+            }
+            if (scanner.calculateBalanceCents() != manager.calculateBalanceCents()) {
+                throw new Exception("Archive balance does not match the ledger.");
+            }
+            
+            Transaction wanted = manager.getAllTransactions().get(123);
+            Transaction found = archive.find(wanted.getId());
+            if (found == null || !found.getDescription().equals(wanted.getDescription())
+                    || found.getAmountCents() != wanted.getAmountCents()
+                    || !found.formatDate().equals(wanted.formatDate()) || archive.find(-1) != null) {
+                throw new Exception("Lookup by ID returned the wrong transaction.");
+            }
+            
+            TransactionManager reloaded = new TransactionManager(filePath);
+            Transaction added = reloaded.addExpense(yearStart, 8, "New year", "Food", true);
+            if (reloaded.getAllTransactions().size() != 431 || added.getId() <= wanted.getId()
+                    || !reloaded.saveTransactions()
+                    || new TransactionManager(filePath).getSummary().getCount() != 431) {
+                throw new Exception("Archive did not load and save back.");
+            }
+            
+            // A missing category or source survives the round trip
+            Date date = DateValidator.validateAndParse("2024-03-01");
+            List<Transaction> ungrouped = new ArrayList<>();
+            ungrouped.add(new Expense(date, 4, "No category", null, false));
+            ungrouped.add(new Income(date, 9, "No source", null, true));
+            LedgerArchive.write(ungrouped, filePath);
+            List<Transaction> readBack = LedgerArchive.open(filePath).toTransactions();
+            if (readBack.size() != 2 || ((Expense) readBack.get(0)).getCategory() != null
+                    || ((Income) readBack.get(1)).getSource() != null
+                    || !readBack.get(1).getDescription().equals("No source")) {
+                throw new Exception("Missing category or source did not survive the archive.");
+            }
+            
+            System.out.println("Archive totals came from the index and range reads matched the ledger.");
+        } catch (Exception e) {
+            System.out.println("Ledger archive test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+            deleteStorageFiles(textPath);
+        }
+    }
+    
+    /**
+     * Test the per-month and per-year rollup across edits, deletes and reloads
+     * 
+     * @param filePath Test file path
+     */
+    private static void testMonthlyRollup(String filePath) {
+        System.out.println("\n=== Testing Monthly Rollup ===");
+        deleteStorageFiles(filePath);
+        
+        try {
+            TransactionManager manager = new TransactionManager(filePath);
+            String[] days = {"2023-11-30", "2023-12-01", "2023-12-31", "2024-01-01", "2024-01-31", "2024-02-29"};
+            List<BatchEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                Date date = DateValidator.validateAndParse(days[i % days.length]);
+                entries.add(i % 4 == 0 ? BatchEntry.income(date, 500 + i, "Pay", i % 8 == 0 ? "Employer" : "Client", true)
+                                       : BatchEntry.expense(date, 10.25 + i, "Item", i % 3 == 0 ? "Rent" : "Food", i % 2 == 0));
+            }
+            manager.addAll(entries);
+            Transaction moved = manager.addExpense(DateValidator.validateAndParse("2024-01-15"), 99, "Desk", "Office", true);
+            Transaction removed = manager.addIncome(DateValidator.validateAndParse("2023-12-24"), 75, "Gift", "Family", false);
+            manager.editTransaction(moved.getId(), DateValidator.validateAndParse("2024-02-10"), 120, "Desk");
+            manager.deleteTransaction(removed.getId());
+            
+            checkRollup(manager);
+            FinancialSummary february = manager.getMonthlySummary(2024, 2);
+            List<GroupTotal> januarySpending = manager.getSpendingByCategory(2024, 1);
+            if (manager.getSpendingByCategory(2024, 2).stream().noneMatch(group -> group.getName().equals("Office")
+                    && group.getTotalCents() == 12000 && group.getCount() == 1)
+                    || januarySpending.stream().anyMatch(group -> group.getName().equals("Office"))
+                    || manager.getIncomeBySource(2023).stream().anyMatch(group -> group.getName().equals("Family"))
+                    || manager.getMonthlySummary(2022, 6).getCount() != 0) {
+                throw new Exception("Edited or deleted transaction is in the wrong month.");
+            }
+            try {
+                manager.getMonthlySummary(2024, 13);
+                throw new Exception("Month 13 was accepted.");
+            } catch (IllegalArgumentException expected) {
+                // Months run from 1 to 12
+            }
+            
+            if (!manager.saveTransactions() || !new File(filePath + ".rollup").exists()) {
+                throw new Exception("Rollup was not saved.");
+            }
+            Metrics.reset();
+            TransactionManager reloaded = new TransactionManager(filePath);
+            if (Metrics.counter("rollup.rebuilds").getValue() != 0
+                    || reloaded.getMonthlySummary(2024, 2).getBalanceCents() != february.getBalanceCents()) {
+                throw new Exception("Saved rollup was not used on load.");
+            }
+            checkRollup(reloaded);
+            
+            // A change made behind the rollup's back is noticed and rebuilt
+            try (PrintWriter writer = new PrintWriter(new FileWriter(filePath, true))) {
+                writer.println("EXPENSE,990,2024-01-20,40.00,Fuel,Transport,false");
+            }
+            TransactionManager changed = new TransactionManager(filePath);
+            if (Metrics.counter("rollup.rebuilds").getValue() != 1
+                    || changed.getMonthlySummary(2024, 1).getTotalExpensesCents()
+                       != manager.getMonthlySummary(2024, 1).getTotalExpensesCents() + 4000) {
+                throw new Exception("Out-of-date rollup was used.");
+            }
+            checkRollup(changed);
+            
+            // Rows without a category or source are rolled up and saved under null
+            Expense uncategorized = changed.addExpense(DateValidator.validateAndParse("2024-01-05"), 7, "Misc", null, false);
+            changed.addIncome(DateValidator.validateAndParse("2024-02-03"), 30, "Tip", null, true);
+            if (changed.getTransactionById(uncategorized.getId()) == null || !changed.hasUnsavedChanges()
+                    || changed.getSpendingByCategory(2024, 1).stream().noneMatch(group -> group.getName() == null
+                            && group.getTotalCents() == 700)
+                    || changed.getIncomeBySource(2024).stream().noneMatch(group -> group.getName() == null)
+                    || !changed.saveTransactions()) {
+                throw new Exception("Rows without a category or source were not rolled up.");
+            }
+            checkRollup(changed);
+            
+            System.out.println("Monthly and yearly totals followed adds, edits, deletes and reloads.");
+        } catch (Exception e) {
+            System.out.println("Monthly rollup test failed: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            deleteStorageFiles(filePath);
+        }
+    }
+    
+    /**
+     * Compare every month and year of the rollup with a scan of the date index
+     * 
+     * @param manager The manager to check
+     */
+    private static void checkRollup(TransactionManager manager) throws Exception {
+        for (int year = 2023; year <= 2024; year++) {
+            for (int month = 0; month <= 12; month++) {
+                LocalDate first = LocalDate.of(year, Math.max(month, 1), 1);
+                LocalDate last = month == 0 ? LocalDate.of(year, 12, 31)
+                                                      : first.withDayOfMonth(first.lengthOfMonth());
+                FinancialSummary expected = manager.getSummary(DateValidator.fromEpochDay(first.toEpochDay()),
+                                                               DateValidator.fromEpochDay(last.toEpochDay()));
+                FinancialSummary actual = month == 0 ? manager.getYearlySummary(year)
+                                                     : manager.getMonthlySummary(year, month);
+                if (actual.getTotalIncomeCents() != expected.getTotalIncomeCents()
+                        || actual.getTotalExpensesCents() != expected.getTotalExpensesCents()
+                        || actual.getTaxDeductionsCents() != expected.getTaxDeductionsCents()
+                        || actual.getIncomeTaxCents() != expected.getIncomeTaxCents()
+                        || actual.getIncomeCount() != expected.getIncomeCount()
+                        || actual.getExpenseCount() != expected.getExpenseCount()) {
+                    throw new Exception("Rollup of " + year + "-" + month + " does not match the ledger.");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Send one HTTP request and check its status
+     * 
+     * @param method HTTP method
+     * @param url Full URL
+     * @param expectedStatus Status the response must have
+     * @param body JSON body, or null for none
+     * @return The status and the response body
+     */
+    private static String[] request(String method, String url, int expectedStatus, String body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String response = "";
+        if (input != null) {
+            try (InputStream in = input) {
+                response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        if (status != expectedStatus) {
+            throw new Exception(method + " " + url + " returned " + status + " instead of "
+                                + expectedStatus + ": " + response);
+        }
+        return new String[] {String.valueOf(status), response};
+    }
+    
+    /**
+     * Read every page of a cursor and compare the pages with the expected order
+     * 
+     * @param cursor The cursor
+     * @param expected Transactions in the expected order
+     * @param pageSize Page size of the cursor
+     */
+    private static void checkPages(TransactionCursor cursor, List<Transaction> expected, int pageSize)
+            throws Exception {
+        List<Transaction> read = new ArrayList<>();
+        while (cursor.hasMore()) {
+            List<Transaction> page = cursor.nextPage();
+            if (page.size() > pageSize || (cursor.hasMore() && page.size() != pageSize)) {
+                throw new Exception("Page " + cursor.getPageNumber() + " has " + page.size() + " rows.");
+            }
+            read.addAll(page);
+        }
+        if (!read.equals(expected)) {
+            throw new Exception("Pages are not in the expected order.");
+        }
+        if (cursor.getPageNumber() != (expected.size() + pageSize - 1) / pageSize) {
+            throw new Exception("Wrong number of pages: " + cursor.getPageNumber());
+        }
+    }
+    
+    /**
+     * Read every page of a cursor
+     * 
+     * @param cursor The cursor
+     * @return Descriptions of the transactions read, in order
+     */
+    private static List<String> descriptionsOf(TransactionCursor cursor) {
+        List<String> descriptions = new ArrayList<>();
+        while (cursor.hasMore()) {
+            for (Transaction transaction : cursor.nextPage()) {
+                descriptions.add(transaction.getDescription());
+            }
+        }
+        return descriptions;
+    }
+    
+    /**
+     * Delete a transactions file together with its journal files
+     * 
+     * @param filePath Transactions file path
+     */
+    private static void deleteStorageFiles(String filePath) {
+        new File(filePath).delete();
+        new File(filePath + ".journal").delete();
+        new File(filePath + ".journal.1").delete();
+        new File(filePath + SnapshotFile.BACKUP_SUFFIX).delete();
+        new File(filePath + ".rollup").delete();
+    }
 }
\ No newline at end of file
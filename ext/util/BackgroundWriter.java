@@ -0,0 +1,306 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import model.Transaction;
+
+/**
+ * Writes changes to a text transactions file on a single background thread,
+ * so callers never wait for the disk.
+ *
+ * Changes wait in memory merged by transaction ID, so a transaction changed
+ * many times is written once. They are written together a short delay
+ * after the first one, or straight away once enough of them pile up. A
+ * write streams the old file into a new one through SnapshotFile,
+ * replacing, dropping or appending the changed lines, so only the pending
+ * changes are held in memory and the file is never left half written.
+ * Every change returns a future that completes when it is on disk.
+ */
+public class BackgroundWriter {
+    // Time changes may wait before they are written
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 500;
+    // Number of changed transactions that are written without waiting for the delay
+    public static final int DEFAULT_MAX_PENDING = 1000;
+
+    private final String filePath;
+    private final long flushDelayMillis;
+    private final int maxPending;
+    private final ScheduledThreadPoolExecutor executor;
+
+    // Guards the fields below, which are shared with the writer thread
+    private final Object lock = new Object();
+    // New line of each changed transaction, or null if it was deleted,
+    // in the order the transactions were first changed
+    private Map<Integer, String> pending = new LinkedHashMap<>();
+    // Completes when the pending changes are on disk
+    private CompletableFuture<Boolean> pendingWrite = new CompletableFuture<>();
+    // Completes when the changes being written right now are on disk (null when idle)
+    private CompletableFuture<Boolean> runningWrite;
+    private boolean writeScheduled;
+    private boolean writeRequested;
+    private boolean closed;
+
+    /**
+     * Constructor with the default delay and threshold
+     *
+     * @param filePath Path to the text transactions file
+     */
+    public BackgroundWriter(String filePath) {
+        this(filePath, DEFAULT_FLUSH_DELAY_MILLIS, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param filePath Path to the text transactions file
+     * @param flushDelayMillis Time changes may wait before they are written
+     * @param maxPending Number of changed transactions written without waiting
+     */
+    public BackgroundWriter(String filePath, long flushDelayMillis, int maxPending) {
+        this.filePath = filePath;
+        this.flushDelayMillis = flushDelayMillis;
+        this.maxPending = maxPending;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ledger-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // close() writes everything itself, so delayed writes are dropped
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queue an added transaction
+     *
+     * @param transaction The added transaction
+     * @return Future that completes with true once the change is on disk
+     */
+    public CompletableFuture<Boolean> add(Transaction transaction) {
+        return change(transaction.getId(), transaction.toFileString());
+    }
+
+    /**
+     * Queue a batch of added transactions
+     *
+     * @param transactions The added transactions
+     * @return Future that completes with true once the changes are on disk
+     */
+    public CompletableFuture<Boolean> addAll(List<Transaction> transactions) {
+        synchronized (lock) {
+            checkOpen();
+            for (Transaction transaction : transactions) {
+                pending.put(transaction.getId(), transaction.toFileString());
+            }
+            return scheduleWrite();
+        }
+    }
+
+    /**
+     * Queue an edited transaction. Its line is taken now, so later changes
+     * to the object are not written until they are queued too.
+     *
+     * @param transaction The transaction after the edit
+     * @return Future that completes with true once the change is on disk
+     */
+    public CompletableFuture<Boolean> edit(Transaction transaction) {
+        return change(transaction.getId(), transaction.toFileString());
+    }
+
+    /**
+     * Queue a deleted transaction
+     *
+     * @param id ID of the deleted transaction
+     * @return Future that completes with true once the change is on disk
+     */
+    public CompletableFuture<Boolean> delete(int id) {
+        return change(id, null);
+    }
+
+    /**
+     * Get a future for the changes queued so far, without hurrying the writer
+     *
+     * @return Future that completes with true once they are on disk
+     */
+    public CompletableFuture<Boolean> whenWritten() {
+        synchronized (lock) {
+            return currentWrite();
+        }
+    }
+
+    /**
+     * Write the queued changes now instead of after the delay
+     *
+     * @return Future that completes with true once they are on disk
+     */
+    public CompletableFuture<Boolean> flush() {
+        synchronized (lock) {
+            if (!pending.isEmpty() && !closed) {
+                requestWrite();
+            }
+            return currentWrite();
+        }
+    }
+
+    /**
+     * Write the queued changes, wait for them and stop the writer thread.
+     * Later changes are rejected.
+     *
+     * @return true if every change reached the disk
+     */
+    public boolean close() {
+        CompletableFuture<Boolean> last;
+        synchronized (lock) {
+            if (closed) {
+                // The first close already waited; only failed changes can be left
+                return pending.isEmpty();
+            }
+            if (!pending.isEmpty()) {
+                requestWrite();
+            }
+            last = currentWrite();
+            closed = true;
+        }
+        executor.shutdown();
+        boolean written = last.join();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return written;
+    }
+
+    private CompletableFuture<Boolean> change(int id, String line) {
+        synchronized (lock) {
+            checkOpen();
+            pending.put(id, line);
+            return scheduleWrite();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("BackgroundWriter is closed");
+        }
+    }
+
+    /**
+     * Start a write now if enough changes are waiting, otherwise make sure
+     * one is scheduled after the delay. Called holding the lock.
+     */
+    private CompletableFuture<Boolean> scheduleWrite() {
+        if (pending.size() >= maxPending) {
+            requestWrite();
+        } else if (!writeScheduled) {
+            writeScheduled = true;
+            executor.schedule(this::write, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        return pendingWrite;
+    }
+
+    private void requestWrite() {
+        if (!writeRequested) {
+            writeRequested = true;
+            executor.execute(this::write);
+        }
+    }
+
+    private CompletableFuture<Boolean> currentWrite() {
+        if (!pending.isEmpty()) {
+            return pendingWrite;
+        }
+        return runningWrite != null ? runningWrite : CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Take the pending changes and merge them into the file. Runs on the writer thread.
+     */
+    private void write() {
+        Map<Integer, String> changes;
+        CompletableFuture<Boolean> done;
+        synchronized (lock) {
+            writeScheduled = false;
+            writeRequested = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            changes = pending;
+            done = pendingWrite;
+            pending = new LinkedHashMap<>();
+            pendingWrite = new CompletableFuture<>();
+            runningWrite = done;
+        }
+
+        boolean written;
+        try {
+            merge(changes);
+            written = true;
+        } catch (IOException e) {
+            System.out.println("Error writing to file: " + e.getMessage());
+            written = false;
+        }
+
+        synchronized (lock) {
+            runningWrite = null;
+            if (!written) {
+                // Keep the failed changes for the next try, unless a newer change replaced them
+                for (Map.Entry<Integer, String> change : changes.entrySet()) {
+                    pending.putIfAbsent(change.getKey(), change.getValue());
+                }
+                if (!closed) {
+                    scheduleWrite();
+                }
+            }
+        }
+        done.complete(written);
+    }
+
+    /**
+     * Write the file again with the changes applied, replacing it crash-safely
+     */
+    private void merge(Map<Integer, String> changes) throws IOException {
+        Map<Integer, String> remaining = new LinkedHashMap<>(changes);
+        File file = new File(filePath);
+        SnapshotFile.writeText(filePath, writer -> {
+            if (file.exists()) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(SnapshotFile.pathToRead(filePath), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!SnapshotFile.isContentLine(line)) {
+                            continue;
+                        }
+                        try {
+                            int id = TransactionJournal.parseId(line);
+                            if (remaining.containsKey(id)) {
+                                line = remaining.remove(id);
+                            }
+                        } catch (NumberFormatException e) {
+                            // Lines the loader cannot read are kept as they are
+                        }
+                        if (line != null) {
+                            writer.write(line);
+                            writer.newLine();
+                        }
+                    }
+                }
+            }
+            // Whatever is left was added since the last write
+            for (String line : remaining.values()) {
+                if (line != null) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,318 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import model.Expense;
+import model.Income;
+import model.Transaction;
+
+/**
+ * Fixed-width binary ledger file read through a memory mapping.
+ *
+ * Layout (big-endian):
+ *   header  - magic, version, record count, string table size (4 ints)
+ *   records - RECORD_SIZE bytes each: id, epoch day, amount in cents,
+ *             type tag, flags, description offset, category/source offset
+ *   strings - interned strings as (byte length, UTF-8 bytes); a missing
+ *             category or source has offset NO_STRING and no entry
+ *
+ * Records can be walked and summed straight from the mapping; Transaction
+ * objects are only created when they are asked for.
+ */
+public class BinaryLedger {
+    // File extension that selects the binary format in FileHandler
+    public static final String EXTENSION = ".ledger";
+
+    // Type tags stored in each record
+    public static final byte TYPE_EXPENSE = 1;
+    public static final byte TYPE_INCOME = 2;
+
+    private static final int MAGIC = 0x4C444752; // "LDGR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+
+    // Field offsets inside a record
+    private static final int ID_OFFSET = 0;
+    private static final int DAY_OFFSET = 4;
+    private static final int CENTS_OFFSET = 8;
+    private static final int TYPE_OFFSET = 16;
+    private static final int FLAGS_OFFSET = 17;
+    private static final int DESCRIPTION_OFFSET = 20;
+    private static final int GROUP_OFFSET = 24;
+
+    // Flag set for taxable income or tax deductible expenses
+    private static final byte FLAG_TAX = 1;
+    // String offset of a null value
+    private static final int NO_STRING = -1;
+
+    private MappedByteBuffer buffer;
+    private int recordCount;
+    private int stringTableStart;
+    // Decoded strings by table offset, so each distinct string is decoded once
+    private Map<Integer, String> decodedStrings;
+
+    private BinaryLedger(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary ledger file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary ledger version: " + buffer.getInt(4));
+        }
+        this.recordCount = buffer.getInt(8);
+        this.stringTableStart = HEADER_SIZE + recordCount * RECORD_SIZE;
+        if ((long) stringTableStart + buffer.getInt(12) > buffer.capacity()) {
+            throw new IOException("Binary ledger file is truncated");
+        }
+        this.decodedStrings = new HashMap<>();
+    }
+
+    /**
+     * Check whether a path uses the binary ledger format
+     *
+     * @param path File path
+     * @return true if the path has the binary ledger extension
+     */
+    public static boolean isBinaryLedger(String path) {
+        return path.endsWith(EXTENSION);
+    }
+
+    /**
+     * Map a binary ledger file into memory
+     *
+     * @param path Path to the ledger file
+     * @return The mapped ledger
+     * @throws IOException If the file cannot be mapped or is not a ledger
+     */
+    public static BinaryLedger open(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r");
+             FileChannel channel = file.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinaryLedger(buffer);
+        }
+    }
+
+    /**
+     * Write transactions to a binary ledger file
+     *
+     * @param transactions Transactions to write
+     * @param path Path to the ledger file
+     * @throws IOException If writing fails
+     */
+    public static void write(List<Transaction> transactions, String path) throws IOException {
+        // Intern strings and assign their offsets in the string table
+        Map<String, Integer> offsets = new LinkedHashMap<>();
+        int tableSize = 0;
+        for (Transaction transaction : transactions) {
+            for (String value : new String[] {transaction.getDescription(), getGroup(transaction)}) {
+                if (value != null && !offsets.containsKey(value)) {
+                    offsets.put(value, tableSize);
+                    tableSize += 4 + value.getBytes(StandardCharsets.UTF_8).length;
+                }
+            }
+        }
+
+        // Write next to the target and rename, so live mappings of the old file stay
+        // valid and a crash never leaves a half-written ledger
+        File temp = new File(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(transactions.size());
+            out.writeInt(tableSize);
+
+            for (Transaction transaction : transactions) {
+                out.writeInt(transaction.getId());
+                out.writeInt(DateValidator.toEpochDay(transaction.getDate()));
+                out.writeLong(transaction.getAmountCents());
+                out.writeByte(transaction instanceof Income ? TYPE_INCOME : TYPE_EXPENSE);
+                out.writeByte(hasTaxFlag(transaction) ? FLAG_TAX : 0);
+                out.writeShort(0);
+                out.writeInt(offsetOf(offsets, transaction.getDescription()));
+                out.writeInt(offsetOf(offsets, getGroup(transaction)));
+                out.writeInt(0);
+            }
+
+            for (String value : offsets.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        SnapshotFile.commit(temp, path);
+    }
+
+    /**
+     * Get the number of records
+     *
+     * @return Record count
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    public int getId(int index) {
+        return buffer.getInt(recordStart(index) + ID_OFFSET);
+    }
+
+    public int getEpochDay(int index) {
+        return buffer.getInt(recordStart(index) + DAY_OFFSET);
+    }
+
+    public long getAmountCents(int index) {
+        return buffer.getLong(recordStart(index) + CENTS_OFFSET);
+    }
+
+    public byte getType(int index) {
+        return buffer.get(recordStart(index) + TYPE_OFFSET);
+    }
+
+    /**
+     * Check the tax flag of a record (taxable income or tax deductible expense)
+     *
+     * @param index Record index
+     * @return true if the flag is set
+     */
+    public boolean hasTaxFlag(int index) {
+        return (buffer.get(recordStart(index) + FLAGS_OFFSET) & FLAG_TAX) != 0;
+    }
+
+    public String getDescription(int index) {
+        return getString(buffer.getInt(recordStart(index) + DESCRIPTION_OFFSET));
+    }
+
+    /**
+     * Get the category of an expense or the source of an income
+     *
+     * @param index Record index
+     * @return Category or source, or null if it has none
+     */
+    public String getGroup(int index) {
+        return getString(buffer.getInt(recordStart(index) + GROUP_OFFSET));
+    }
+
+    /**
+     * Sum the amounts of all records of one type without creating any objects
+     *
+     * @param type TYPE_EXPENSE or TYPE_INCOME
+     * @return Sum in cents
+     */
+    public long sumAmountCents(byte type) {
+        long total = 0;
+        for (int i = 0; i < recordCount; i++) {
+            int start = recordStart(i);
+            if (buffer.get(start + TYPE_OFFSET) == type) {
+                total += buffer.getLong(start + CENTS_OFFSET);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Create the Transaction object for one record
+     *
+     * @param index Record index
+     * @return The transaction
+     */
+    public Transaction toTransaction(int index) {
+        Transaction transaction = createTransaction(index);
+        Transaction.reserveIdsThrough(transaction.getId());
+        return transaction;
+    }
+
+    /**
+     * Create Transaction objects for all records
+     *
+     * @return List of transactions in file order
+     */
+    public List<Transaction> toTransactions() {
+        List<Transaction> transactions = new ArrayList<>(recordCount);
+        int maxId = 0;
+        for (int i = 0; i < recordCount; i++) {
+            Transaction transaction = createTransaction(i);
+            maxId = Math.max(maxId, transaction.getId());
+            transactions.add(transaction);
+        }
+        Transaction.reserveIdsThrough(maxId);
+        return transactions;
+    }
+
+    /**
+     * Create Transaction objects one record at a time, in file order.
+     * The ID counter is not advanced.
+     *
+     * @return Lazy stream of transactions
+     */
+    public Stream<Transaction> stream() {
+        return IntStream.range(0, recordCount).mapToObj(this::createTransaction);
+    }
+
+    private Transaction createTransaction(int index) {
+        Date date = DateValidator.fromEpochDay(getEpochDay(index));
+        if (getType(index) == TYPE_INCOME) {
+            return new Income(getId(index), date, getAmountCents(index), getDescription(index),
+                              getGroup(index), hasTaxFlag(index));
+        }
+        return new Expense(getId(index), date, getAmountCents(index), getDescription(index),
+                           getGroup(index), hasTaxFlag(index));
+    }
+
+    private int recordStart(int index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private static int offsetOf(Map<String, Integer> offsets, String value) {
+        return value == null ? NO_STRING : offsets.get(value);
+    }
+
+    private String getString(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        String value = decodedStrings.get(offset);
+        if (value == null) {
+            int start = stringTableStart + offset;
+            byte[] bytes = new byte[buffer.getInt(start)];
+            buffer.get(start + 4, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            decodedStrings.put(offset, value);
+        }
+        return value;
+    }
+
+    private static String getGroup(Transaction transaction) {
+        if (transaction instanceof Income) {
+            return ((Income) transaction).getSource();
+        }
+        return ((Expense) transaction).getCategory();
+    }
+
+    private static boolean hasTaxFlag(Transaction transaction) {
+        if (transaction instanceof Income) {
+            return ((Income) transaction).isTaxable();
+        }
+        return ((Expense) transaction).isTaxDeductible();
+    }
+}
@@ -0,0 +1,264 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import exceptions.InvalidTransactionException;
+import model.Transaction;
+
+/**
+ * Loads a text transactions file in parallel. The file is split into byte
+ * ranges that start and end on line boundaries, each range is parsed on the
+ * fork-join pool, and the parts are joined back in file order.
+ */
+class ChunkedTextLoader {
+    // Files below this size are parsed as a single range on the calling thread
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    // Ranges per pool thread, so uneven ranges still keep every core busy
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    // Same charset SnapshotFile writes with
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private final FileChannel channel;
+    private final long[] boundaries;
+    // One list per range, created up front so each task only fills its own
+    private final List<List<Transaction>> parts;
+    private final int[] maxIds;
+    // Malformed lines and their errors per range, reported in file order after the join
+    private final List<List<String>> badLines;
+    private final List<List<InvalidTransactionException>> errors;
+
+    /**
+     * Read and parse a transactions file
+     *
+     * @param path Path to the text file
+     * @param onError Receives malformed lines, in file order, on the calling thread
+     * @return List of transactions in file order
+     * @throws IOException If reading fails
+     */
+    static List<Transaction> load(String path, ParseErrorHandler onError) throws IOException {
+        return load(path, onError, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Read and parse a transactions file on the given pool
+     *
+     * @param path Path to the text file
+     * @param onError Receives malformed lines, in file order, on the calling thread
+     * @param pool Pool the ranges are parsed on
+     * @return List of transactions in file order
+     * @throws IOException If reading fails
+     */
+    static List<Transaction> load(String path, ParseErrorHandler onError, ForkJoinPool pool)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunks = Math.min(size / MIN_CHUNK_SIZE, (long) pool.getParallelism() * CHUNKS_PER_THREAD);
+            ChunkedTextLoader loader = new ChunkedTextLoader(channel, (int) Math.max(chunks, 1));
+            return loader.run(pool, onError);
+        }
+    }
+
+    private ChunkedTextLoader(FileChannel channel, int chunks) throws IOException {
+        this.channel = channel;
+        this.boundaries = findBoundaries(channel, chunks);
+        int ranges = boundaries.length - 1;
+        this.parts = newLists(ranges);
+        this.maxIds = new int[ranges];
+        this.badLines = newLists(ranges);
+        this.errors = newLists(ranges);
+    }
+
+    private static <T> List<List<T>> newLists(int count) {
+        List<List<T>> lists = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lists.add(new ArrayList<>());
+        }
+        return lists;
+    }
+
+    private List<Transaction> run(ForkJoinPool pool, ParseErrorHandler onError) throws IOException {
+        ParseTask task = new ParseTask(0, parts.size());
+        if (parts.size() == 1) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        if (task.failure != null) {
+            throw task.failure;
+        }
+
+        int total = 0;
+        int maxId = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            total += parts.get(i).size();
+            maxId = Math.max(maxId, maxIds[i]);
+            for (int j = 0; j < badLines.get(i).size(); j++) {
+                onError.onError(badLines.get(i).get(j), errors.get(i).get(j));
+            }
+        }
+        List<Transaction> transactions = new ArrayList<>(total);
+        for (List<Transaction> part : parts) {
+            transactions.addAll(part);
+        }
+        // Reconciled once here instead of on every parsed transaction
+        Transaction.reserveIdsThrough(maxId);
+        return transactions;
+    }
+
+    /**
+     * Split the file into roughly equal ranges, moving every split point
+     * forward to just after the next line break
+     *
+     * @return Start offsets of the ranges followed by the file size
+     */
+    private static long[] findBoundaries(FileChannel channel, int chunks) throws IOException {
+        long size = channel.size();
+        long[] boundaries = new long[chunks + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        int count = 1;
+        for (int i = 1; i < chunks; i++) {
+            long boundary = nextLineStart(channel, Math.max(size * i / chunks, boundaries[count - 1]), buffer);
+            if (boundary > boundaries[count - 1] && boundary < size) {
+                boundaries[count++] = boundary;
+            }
+        }
+        boundaries[count++] = size;
+        long[] result = new long[count];
+        System.arraycopy(boundaries, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Find the start of the first line at or after a position
+     */
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        // Start one byte back so a position right after a line break stays put
+        long offset = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Parses the ranges between two indexes, splitting in half until one is left
+     */
+    private class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private IOException failure;
+
+        ParseTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    parseRange(from);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ParseTask left = new ParseTask(from, middle);
+            ParseTask right = new ParseTask(middle, to);
+            invokeAll(left, right);
+            failure = left.failure != null ? left.failure : right.failure;
+        }
+    }
+
+    /**
+     * Parse the lines of one range with positional reads, so ranges do not
+     * share any state besides the channel
+     */
+    private void parseRange(int index) throws IOException {
+        long position = boundaries[index];
+        long end = boundaries[index + 1];
+        List<Transaction> transactions = parts.get(index);
+        int maxId = 0;
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, Math.max(end - position, 1)));
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    maxId = parseLine(line, lineLength, index, transactions, maxId);
+                    lineLength = 0;
+                } else {
+                    if (lineLength == line.length) {
+                        byte[] grown = new byte[line.length * 2];
+                        System.arraycopy(line, 0, grown, 0, lineLength);
+                        line = grown;
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        // Last line of the file may have no line break
+        maxId = parseLine(line, lineLength, index, transactions, maxId);
+
+        maxIds[index] = maxId;
+    }
+
+    /**
+     * Parse one line and add it to the list, or record it as malformed
+     *
+     * @return The highest ID seen so far
+     */
+    private int parseLine(byte[] bytes, int length, int index, List<Transaction> transactions, int maxId) {
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        String line = new String(bytes, 0, length, CHARSET);
+        if (!SnapshotFile.isContentLine(line)) {
+            return maxId;
+        }
+        try {
+            Transaction transaction = FileHandler.parseTransaction(line);
+            transactions.add(transaction);
+            return Math.max(maxId, transaction.getId());
+        } catch (InvalidTransactionException e) {
+            badLines.get(index).add(line);
+            errors.get(index).add(e);
+            return maxId;
+        }
+    }
+}
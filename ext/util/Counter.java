@@ -0,0 +1,57 @@
+package util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named count (rows, bytes, errors) that many threads can add to without
+ * contending. Adds are dropped while metrics are disabled.
+ *
+ * Create counters through Metrics.counter so they are dumped and published.
+ */
+public class Counter implements CounterMBean {
+    private final String name;
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param name Name the counter is dumped and published under
+     */
+    Counter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add one
+     */
+    public void increment() {
+        if (Metrics.enabled) {
+            value.increment();
+        }
+    }
+
+    /**
+     * Add an amount
+     *
+     * @param amount Amount to add
+     */
+    public void add(long amount) {
+        if (Metrics.enabled) {
+            value.add(amount);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getValue() {
+        return value.sum();
+    }
+
+    @Override
+    public void reset() {
+        value.reset();
+    }
+}
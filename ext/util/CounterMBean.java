@@ -0,0 +1,19 @@
+package util;
+
+/**
+ * JMX view of a Counter
+ */
+public interface CounterMBean {
+
+    /**
+     * Get the count
+     *
+     * @return Sum of everything added since the last reset
+     */
+    long getValue();
+
+    /**
+     * Set the count back to zero
+     */
+    void reset();
+}
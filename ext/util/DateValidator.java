@@ -1,86 +1,279 @@
 package util;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.Date;
+import java.util.TimeZone;
 
 import exceptions.InvalidTransactionException;
 
 /**
- * Utility class for validating and parsing dates
+ * Utility class for validating and parsing dates.
+ * Dates use the fixed yyyy-MM-dd shape, so they are parsed and formatted by
+ * hand instead of through a shared SimpleDateFormat. All methods are
+ * thread-safe and the epoch-day methods do not allocate.
  */
 public class DateValidator {
-    
+
     // The expected date format
     private static final String DATE_FORMAT = "yyyy-MM-dd";
-    private static final SimpleDateFormat formatter = new SimpleDateFormat(DATE_FORMAT);
-    
+    private static final int DATE_LENGTH = DATE_FORMAT.length();
+
+    // Returned by tryParseEpochDay for invalid input (not a reachable epoch day)
+    private static final int INVALID = Integer.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    // Days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    // Time zone dates are interpreted in, captured once like the old shared formatter
+    private static final TimeZone zone = TimeZone.getDefault();
+
+    // Strings rejected by parseEpochDay (and the parse methods built on it) or isValidDate
+    private static final Counter PARSE_FAILURES = Metrics.counter("date.parseFailures");
+
     /**
      * Private constructor to prevent instantiation
      */
     private DateValidator() {
         // Utility class should not be instantiated
     }
-    
+
     /**
      * Validates and parses a date string
-     * 
+     *
      * @param dateStr The date string to validate and parse
-     * @return The parsed Date object
+     * @return The parsed Date object (local midnight)
      * @throws InvalidTransactionException If the date format is invalid
      */
     public static Date validateAndParse(String dateStr) throws InvalidTransactionException {
-        try {
-            // Set lenient to false for strict date validation
-            formatter.setLenient(false);
-            return formatter.parse(dateStr);
-        } catch (ParseException e) {
+        return fromEpochDay(parseEpochDay(dateStr));
+    }
+
+    /**
+     * Validates and parses a date string to a LocalDate
+     *
+     * @param dateStr The date string to validate and parse
+     * @return The parsed LocalDate
+     * @throws InvalidTransactionException If the date format is invalid
+     */
+    public static LocalDate parseLocalDate(CharSequence dateStr) throws InvalidTransactionException {
+        return LocalDate.ofEpochDay(parseEpochDay(dateStr));
+    }
+
+    /**
+     * Validates and parses a date string to days since 1970-01-01
+     *
+     * @param dateStr The date string to validate and parse
+     * @return Epoch day
+     * @throws InvalidTransactionException If the date format is invalid
+     */
+    public static int parseEpochDay(CharSequence dateStr) throws InvalidTransactionException {
+        int epochDay = tryParseEpochDay(dateStr);
+        if (epochDay == INVALID) {
+            PARSE_FAILURES.increment();
             throw new InvalidTransactionException(
-                InvalidTransactionException.getInvalidDateMessage(dateStr), e);
+                InvalidTransactionException.getInvalidDateMessage(String.valueOf(dateStr)));
         }
+        return epochDay;
     }
-    
+
     /**
      * Checks if a date string has valid format
-     * 
+     *
      * @param dateStr The date string to check
      * @return true if valid, false otherwise
      */
     public static boolean isValidDate(String dateStr) {
-        try {
-            formatter.setLenient(false);
-            formatter.parse(dateStr);
-            return true;
-        } catch (ParseException e) {
+        if (tryParseEpochDay(dateStr) == INVALID) {
+            PARSE_FAILURES.increment();
             return false;
         }
+        return true;
     }
-    
+
     /**
      * Formats a Date object to string
-     * 
+     *
      * @param date The Date object to format
      * @return Formatted date string
      */
     public static String formatDate(Date date) {
-        return formatter.format(date);
+        return formatEpochDay(toEpochDay(date));
+    }
+
+    /**
+     * Formats an epoch day as yyyy-MM-dd
+     *
+     * @param epochDay Days since 1970-01-01
+     * @return Formatted date string
+     */
+    public static String formatEpochDay(int epochDay) {
+        StringBuilder builder = new StringBuilder(DATE_LENGTH);
+        appendEpochDay(builder, epochDay);
+        return builder.toString();
+    }
+
+    /**
+     * Appends a Date as yyyy-MM-dd without creating intermediate strings
+     *
+     * @param builder The builder to append to
+     * @param date The Date object to format
+     */
+    public static void appendDate(StringBuilder builder, Date date) {
+        appendEpochDay(builder, toEpochDay(date));
     }
-    
+
+    /**
+     * Appends an epoch day as yyyy-MM-dd
+     *
+     * @param builder The builder to append to
+     * @param epochDay Days since 1970-01-01
+     */
+    public static void appendEpochDay(StringBuilder builder, int epochDay) {
+        int yearMonthDay = toYearMonthDay(epochDay);
+        appendDigits(builder, yearMonthDay / 10000, 4);
+        builder.append('-');
+        appendDigits(builder, yearMonthDay / 100 % 100, 2);
+        builder.append('-');
+        appendDigits(builder, yearMonthDay % 100, 2);
+    }
+
     /**
      * Gets today's date as a Date object
-     * 
+     *
      * @return Today's date
      */
     public static Date getToday() {
         return new Date();
     }
-    
+
     /**
      * Gets today's date as a formatted string
-     * 
+     *
      * @return Today's date as string
      */
     public static String getTodayString() {
         return formatDate(new Date());
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts a Date to the number of days since 1970-01-01 in the local time zone
+     *
+     * @param date The Date object to convert
+     * @return Epoch day
+     */
+    public static int toEpochDay(Date date) {
+        long millis = date.getTime();
+        return (int) Math.floorDiv(millis + zone.getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Converts an epoch day to a Date at local midnight, the same value
+     * validateAndParse returns for that day
+     *
+     * @param epochDay Days since 1970-01-01
+     * @return The Date object
+     */
+    public static Date fromEpochDay(long epochDay) {
+        long localMillis = epochDay * MILLIS_PER_DAY;
+        long estimate = localMillis - zone.getOffset(localMillis);
+        int before = zone.getOffset(estimate - MILLIS_PER_DAY / 4);
+        int after = zone.getOffset(estimate + MILLIS_PER_DAY / 4);
+        // Like Calendar: when midnight happens twice take the later instant, and
+        // when it is skipped by a daylight saving gap land just after the gap.
+        // Both come down to using the smaller offset.
+        int offset = Math.min(before, after);
+        if (zone.getOffset(localMillis - offset) != offset
+                && zone.getOffset(localMillis - Math.max(before, after)) == Math.max(before, after)) {
+            offset = Math.max(before, after);
+        }
+        return new Date(localMillis - offset);
+    }
+
+    /**
+     * Parses yyyy-MM-dd to an epoch day
+     *
+     * @param text The text to parse
+     * @return Epoch day or INVALID
+     */
+    private static int tryParseEpochDay(CharSequence text) {
+        if (text == null || text.length() != DATE_LENGTH
+                || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Reads a fixed number of decimal digits
+     *
+     * @return The value or -1 if a character is not a digit
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Converts a civil date to an epoch day (years counted from March so
+     * the leap day falls at the end)
+     */
+    private static int toEpochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Converts an epoch day to a civil date packed as yyyyMMdd
+     */
+    private static int toYearMonthDay(int epochDay) {
+        int z = epochDay + DAYS_0000_TO_1970;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    private static void appendDigits(StringBuilder builder, int value, int count) {
+        for (int divisor = count == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            builder.append((char) ('0' + value / divisor % 10));
+        }
+    }
+}
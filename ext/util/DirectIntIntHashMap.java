@@ -0,0 +1,170 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Open-addressing hash map from int keys to non-negative int values, like
+ * IntIntHashMap, but with its table in direct memory outside the Java heap.
+ * Each slot is a key followed by its value. There is no remove; callers
+ * that delete keys check the value they get back, or clear and refill the
+ * map. A table that is replaced by a larger one is freed when the garbage
+ * collector reclaims its buffer.
+ */
+public class DirectIntIntHashMap {
+    // Returned by get for absent keys; also marks empty slots
+    public static final int NOT_FOUND = IntIntHashMap.NOT_FOUND;
+
+    // Capacity is always a power of two so the hash can be masked
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+    // Two ints per slot, and a direct buffer holds at most 2 GB
+    private static final int MAX_CAPACITY = 1 << 28;
+
+    private IntBuffer table;
+    private int capacity;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    /**
+     * Constructor with default capacity
+     */
+    public DirectIntIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor with an expected number of entries
+     *
+     * @param expectedSize Number of entries the map should hold without resizing
+     */
+    public DirectIntIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Get the value mapped to a key
+     *
+     * @param key The key
+     * @return The mapped value or NOT_FOUND if absent
+     */
+    public int get(int key) {
+        int slot = hash(key) & mask;
+        while (table.get(2 * slot + 1) != NOT_FOUND) {
+            if (table.get(2 * slot) == key) {
+                return table.get(2 * slot + 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Map a key to a value, replacing any previous mapping
+     *
+     * @param key The key
+     * @param value The value (must not be negative)
+     * @return The previous value or NOT_FOUND if there was none
+     */
+    public int put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("DirectIntIntHashMap does not accept negative values");
+        }
+        int slot = hash(key) & mask;
+        while (table.get(2 * slot + 1) != NOT_FOUND) {
+            if (table.get(2 * slot) == key) {
+                int previous = table.get(2 * slot + 1);
+                table.put(2 * slot + 1, value);
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= resizeThreshold && capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("DirectIntIntHashMap is full");
+        }
+        table.put(2 * slot, key);
+        table.put(2 * slot + 1, value);
+        if (++size > resizeThreshold) {
+            rehash(capacity << 1);
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Remove all mappings, keeping the table
+     */
+    public void clear() {
+        for (int slot = 0; slot < capacity; slot++) {
+            table.put(2 * slot + 1, NOT_FOUND);
+        }
+        size = 0;
+    }
+
+    /**
+     * Make sure the map can hold the given number of entries without resizing
+     *
+     * @param expectedSize Number of entries expected
+     */
+    public void ensureCapacity(int expectedSize) {
+        int newCapacity = tableSizeFor(expectedSize);
+        if (newCapacity > capacity) {
+            rehash(newCapacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void rehash(int newCapacity) {
+        IntBuffer oldTable = table;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        for (int i = 0; i < oldCapacity; i++) {
+            int value = oldTable.get(2 * i + 1);
+            if (value != NOT_FOUND) {
+                int key = oldTable.get(2 * i);
+                int slot = hash(key) & mask;
+                while (table.get(2 * slot + 1) != NOT_FOUND) {
+                    slot = (slot + 1) & mask;
+                }
+                table.put(2 * slot, key);
+                table.put(2 * slot + 1, value);
+            }
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        table = ByteBuffer.allocateDirect(newCapacity * 2 * Integer.BYTES)
+                          .order(ByteOrder.nativeOrder()).asIntBuffer();
+        capacity = newCapacity;
+        for (int slot = 0; slot < capacity; slot++) {
+            table.put(2 * slot + 1, NOT_FOUND);
+        }
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR);
+        int tableSize = DEFAULT_CAPACITY;
+        while (tableSize < needed && tableSize < MAX_CAPACITY) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * Spread the key bits so sequential IDs do not cluster
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,14 +1,24 @@
 package util;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import exceptions.InvalidTransactionException;
 import model.Expense;
@@ -17,17 +27,78 @@ import model.Transaction;
 
 /**
  * Handles reading from and writing to the transactions file
+ *
+ * A text file may have a journal next to it, named after the file with
+ * ".journal" appended. In journaled mode every change is recorded there as
+ * it is made. In plain mode saveChanges appends each save's changes there,
+ * so the text file alone is behind until they are folded in. That happens
+ * on close, when the journal grows large, on a full save and when the file
+ * is next opened. Loads always read the file and its journal together.
+ * The methods that load, save or record changes are synchronized, so
+ * changes can be recorded from several threads.
  */
 public class FileHandler {
+    // Journal records written between two fsyncs
+    private static final int JOURNAL_SYNC_BATCH = 64;
+    // Journal size at which it is rolled into a fresh snapshot
+    private static final int COMPACTION_THRESHOLD = 10_000;
+    
+    // Every load and save is timed; rows and bytes are what they read or wrote
+    private static final OperationTimer LOAD_TIMER = Metrics.timer("file.load", 1);
+    private static final Counter LOAD_ROWS = Metrics.counter("file.load.rows");
+    private static final Counter LOAD_BYTES = Metrics.counter("file.load.bytes");
+    private static final Counter PARSE_ERRORS = Metrics.counter("file.parseErrors");
+    private static final OperationTimer SAVE_TIMER = Metrics.timer("file.save", 1);
+    private static final Counter SAVE_ROWS = Metrics.counter("file.save.rows");
+    private static final Counter SAVE_BYTES = Metrics.counter("file.save.bytes");
+    
     // File path for storing transactions
     private String filePath;
     
+    // Journal of changes on top of the snapshot file (null when journaling is off)
+    private TransactionJournal journal;
+    private ExecutorService compactor;
+    private Future<?> pendingCompaction;
+    // Journal records at which the next compaction starts
+    private int nextCompactionAt = COMPACTION_THRESHOLD;
+    
+    // Writes changes in the background (null unless writing asynchronously)
+    private BackgroundWriter backgroundWriter;
+    
     /**
      * Constructor that takes a file path
      * 
      * @param filePath Path to the transactions file
      */
     public FileHandler(String filePath) {
+        this(filePath, false);
+    }
+    
+    /**
+     * Constructor that takes a file path and a storage mode
+     * 
+     * @param filePath Path to the transactions file
+     * @param journaled true to log changes to an append-only journal instead of
+     *                  rewriting the whole file on every save
+     */
+    public FileHandler(String filePath, boolean journaled) {
+        this(filePath, journaled, false);
+    }
+    
+    /**
+     * Constructor that takes a file path, a storage mode and whether changes
+     * are written on a background thread
+     * 
+     * @param filePath Path to the transactions file
+     * @param journaled true to log changes to an append-only journal instead of
+     *                  rewriting the whole file on every save
+     * @param asynchronous true to merge changes into the file on a background
+     *                     thread, see BackgroundWriter (not together with journaled)
+     */
+    public FileHandler(String filePath, boolean journaled, boolean asynchronous) {
+        if (journaled && asynchronous) {
+            throw new IllegalArgumentException("A file cannot be both journaled and written asynchronously");
+        }
         this.filePath = filePath;
         
         // Create file if it doesn't exist
@@ -39,6 +110,98 @@ public class FileHandler {
         } catch (IOException e) {
             System.out.println("Error creating file: " + e.getMessage());
         }
+        
+        if (journaled && !isText()) {
+            System.out.println("Journaling is only supported for text files; saving the whole file instead.");
+        } else if (journaled) {
+            openJournal();
+        }
+        if (asynchronous && !isText()) {
+            System.out.println("Background writes are only supported for text files; saving the whole file instead.");
+        } else if (asynchronous) {
+            backgroundWriter = new BackgroundWriter(filePath);
+        }
+        if (hasSavedChanges()) {
+            // Changes saved by an earlier session with saveChanges
+            try {
+                foldIntoSnapshot(getJournalPath());
+            } catch (IOException e) {
+                System.out.println("Error folding saved changes into the file: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Check whether the file uses the binary ledger format
+     * 
+     * @return true if the file has the binary ledger extension
+     */
+    public boolean isBinary() {
+        return BinaryLedger.isBinaryLedger(filePath);
+    }
+    
+    /**
+     * Check whether the file uses the compressed archive format
+     * 
+     * @return true if the file has the archive extension
+     */
+    public boolean isArchive() {
+        return LedgerArchive.isArchive(filePath);
+    }
+    
+    /**
+     * Check whether changes are written to the journal
+     * 
+     * @return true in journaled mode
+     */
+    public boolean isJournaled() {
+        return journal != null;
+    }
+    
+    /**
+     * Check whether saveChanges can be used. Only plain text files take a
+     * delta; journaled and asynchronous files already write every change
+     * as it is made, and binary files are always written whole.
+     * 
+     * @return true for plain text files
+     */
+    public boolean canSaveChanges() {
+        return journal == null && backgroundWriter == null && isText();
+    }
+    
+    /**
+     * Check whether changes are written on a background thread
+     * 
+     * @return true in asynchronous mode
+     */
+    public boolean isAsynchronous() {
+        return backgroundWriter != null;
+    }
+    
+    /**
+     * Get a future for the changes recorded so far. Only asynchronous mode
+     * has changes that are not on disk yet; in other modes it is already complete.
+     * 
+     * @return Future that completes with true once the changes are written
+     */
+    public CompletableFuture<Boolean> whenWritten() {
+        if (backgroundWriter == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return backgroundWriter.whenWritten();
+    }
+    
+    /**
+     * Write the changes recorded so far without waiting for them. Only
+     * asynchronous mode returns before they are on disk.
+     * 
+     * @return Future that completes with true once the changes are written
+     */
+    public synchronized CompletableFuture<Boolean> flush() {
+        if (backgroundWriter != null) {
+            return backgroundWriter.flush();
+        }
+        return CompletableFuture.completedFuture(journal == null || syncJournal());
     }
     
     /**
@@ -47,20 +210,561 @@ public class FileHandler {
      * @return List of transactions
      */
     public List<Transaction> loadTransactions() {
+        return loadTransactions(ParseErrorHandler.PRINT);
+    }
+    
+    /**
+     * Loads transactions from the file
+     * 
+     * @param onError Receives lines that could not be parsed
+     * @return List of transactions
+     */
+    public synchronized List<Transaction> loadTransactions(ParseErrorHandler onError) {
+        awaitBackgroundWrites();
+        long start = System.nanoTime();
+        List<Transaction> loaded;
+        if (journal != null || hasSavedChanges()) {
+            loaded = loadJournaledTransactions(countingErrors(onError));
+        } else if (isBinary()) {
+            loaded = loadBinaryTransactions();
+        } else if (isArchive()) {
+            loaded = loadArchivedTransactions();
+        } else {
+            loaded = importText(SnapshotFile.pathToRead(filePath), countingErrors(onError));
+        }
+        LOAD_TIMER.record(System.nanoTime() - start);
+        LOAD_ROWS.add(loaded.size());
+        LOAD_BYTES.add(new File(filePath).length() + new File(getSegmentPath()).length()
+                       + new File(getJournalPath()).length());
+        return loaded;
+    }
+    
+    /**
+     * Reads transactions from a file in text format
+     * 
+     * @param textPath Path to the text file
+     * @return List of transactions
+     */
+    public List<Transaction> importText(String textPath) {
+        return importText(textPath, ParseErrorHandler.PRINT);
+    }
+    
+    /**
+     * Reads transactions from a file in text format
+     * 
+     * @param textPath Path to the text file
+     * @param onError Receives lines that could not be parsed
+     * @return List of transactions
+     */
+    public List<Transaction> importText(String textPath, ParseErrorHandler onError) {
+        try {
+            return ChunkedTextLoader.load(textPath, onError);
+        } catch (IOException e) {
+            System.out.println("Error reading file: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Streams transactions from the file, parsing one line at a time so the
+     * whole ledger never has to fit in memory. The stream holds the file
+     * open and must be closed. Journaled files keep the replayed raw lines
+     * in memory and parse them lazily. The ID counter is not advanced.
+     * 
+     * @param onError Receives lines that could not be parsed
+     * @return Lazy stream of transactions in file order
+     */
+    public Stream<Transaction> streamTransactions(ParseErrorHandler onError) {
+        awaitBackgroundWrites();
+        onError = countingErrors(onError);
+        try {
+            if (journal != null || hasSavedChanges()) {
+                awaitCompaction();
+                Map<Integer, String> lines = readSnapshotLines();
+                TransactionJournal.replay(getSegmentPath(), lines);
+                TransactionJournal.replay(getJournalPath(), lines);
+                return parseLines(lines.values().stream(), onError);
+            }
+            if (isBinary()) {
+                if (new File(filePath).length() == 0) {
+                    return Stream.empty();
+                }
+                return BinaryLedger.open(filePath).stream();
+            }
+            if (isArchive()) {
+                if (new File(filePath).length() == 0) {
+                    return Stream.empty();
+                }
+                return LedgerArchive.open(filePath).stream();
+            }
+            BufferedReader reader = new BufferedReader(new FileReader(SnapshotFile.pathToRead(filePath), StandardCharsets.UTF_8));
+            return parseLines(reader.lines(), onError).onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    System.out.println("Error closing file: " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Error reading file: " + e.getMessage());
+            return Stream.empty();
+        }
+    }
+    
+    /**
+     * Streams the transactions dated between two days. An archive only
+     * inflates the blocks that overlap the range; other formats read every
+     * row and drop the ones outside it. The stream must be closed.
+     * 
+     * @param from First date (inclusive), or null for no lower bound
+     * @param to Last date (inclusive), or null for no upper bound
+     * @param onError Receives lines that could not be parsed
+     * @return Lazy stream of transactions
+     */
+    public Stream<Transaction> streamTransactions(Date from, Date to, ParseErrorHandler onError) {
+        int fromDay = from == null ? Integer.MIN_VALUE : DateValidator.toEpochDay(from);
+        int toDay = to == null ? Integer.MAX_VALUE : DateValidator.toEpochDay(to);
+        if (isArchive()) {
+            if (new File(filePath).length() == 0) {
+                return Stream.empty();
+            }
+            try {
+                return LedgerArchive.open(filePath).streamBetween(fromDay, toDay);
+            } catch (IOException e) {
+                System.out.println("Error reading file: " + e.getMessage());
+                return Stream.empty();
+            }
+        }
+        return streamTransactions(onError).filter(transaction -> {
+            int day = DateValidator.toEpochDay(transaction.getDate());
+            return day >= fromDay && day <= toDay;
+        });
+    }
+    
+    /**
+     * Sums the transactions dated between two days. An archive answers from
+     * its block index and only inflates blocks the range cuts through; other
+     * formats make one pass over the file.
+     * 
+     * @param from First date (inclusive), or null for no lower bound
+     * @param to Last date (inclusive), or null for no upper bound
+     * @param onError Receives lines that could not be parsed
+     * @return Totals in cents and counts, indexed by LedgerArchive.INCOME,
+     *         EXPENSES, TAX_DEDUCTIONS, INCOME_TAX, INCOME_COUNT and EXPENSE_COUNT
+     */
+    public long[] calculateTotals(Date from, Date to, ParseErrorHandler onError) {
+        long[] totals = new long[LedgerArchive.TOTALS_SIZE];
+        if (isArchive()) {
+            if (new File(filePath).length() == 0) {
+                return totals;
+            }
+            try {
+                return LedgerArchive.open(filePath).calculateTotals(
+                        from == null ? Integer.MIN_VALUE : DateValidator.toEpochDay(from),
+                        to == null ? Integer.MAX_VALUE : DateValidator.toEpochDay(to));
+            } catch (IOException e) {
+                System.out.println("Error reading file: " + e.getMessage());
+                return totals;
+            }
+        }
+        try (Stream<Transaction> transactions = streamTransactions(from, to, onError)) {
+            transactions.forEach(transaction -> {
+                if (transaction instanceof Income) {
+                    totals[LedgerArchive.INCOME] += transaction.getAmountCents();
+                    totals[LedgerArchive.INCOME_TAX] += transaction.calculateTaxCents();
+                    totals[LedgerArchive.INCOME_COUNT]++;
+                } else {
+                    totals[LedgerArchive.EXPENSES] += transaction.getAmountCents();
+                    totals[LedgerArchive.TAX_DEDUCTIONS] += transaction.calculateTaxCents();
+                    totals[LedgerArchive.EXPENSE_COUNT]++;
+                }
+            });
+        }
+        return totals;
+    }
+    
+    /**
+     * Saves transactions to the file
+     * 
+     * @param transactions List of transactions to save
+     * @return true if successful, false otherwise
+     */
+    public synchronized boolean saveTransactions(List<Transaction> transactions) {
+        long start = System.nanoTime();
+        boolean saved = save(transactions);
+        SAVE_TIMER.record(System.nanoTime() - start);
+        if (saved && journal == null && backgroundWriter == null) {
+            // The whole file was written
+            SAVE_ROWS.add(transactions.size());
+            SAVE_BYTES.add(new File(filePath).length());
+        }
+        return saved;
+    }
+    
+    /**
+     * Save in whichever way the storage mode needs
+     */
+    private boolean save(List<Transaction> transactions) {
+        if (journal != null) {
+            // Every change is already in the journal, it only has to reach the disk
+            return syncJournal();
+        }
+        if (backgroundWriter != null) {
+            // Every change is already queued, it only has to be written
+            return backgroundWriter.flush().join();
+        }
+        if (isBinary()) {
+            try {
+                BinaryLedger.write(transactions, filePath);
+                return true;
+            } catch (IOException e) {
+                System.out.println("Error writing to file: " + e.getMessage());
+                return false;
+            }
+        }
+        if (isArchive()) {
+            try {
+                LedgerArchive.write(transactions, filePath);
+                return true;
+            } catch (IOException e) {
+                System.out.println("Error writing to file: " + e.getMessage());
+                return false;
+            }
+        }
+        if (hasSavedChanges()) {
+            // Fold the saved changes in first: deleting the journal after the
+            // rewrite would let a crash in between replay them over newer data
+            try {
+                foldIntoSnapshot(getJournalPath());
+            } catch (IOException e) {
+                System.out.println("Error writing to file: " + e.getMessage());
+                return false;
+            }
+        }
+        return exportText(transactions, filePath);
+    }
+    
+    /**
+     * Saves only the changes made since the last save by appending them to
+     * the journal, so a save costs time in proportion to the changes rather
+     * than the whole file. The journal is folded into the file once it is
+     * large enough, on close, and when the file is next opened.
+     * 
+     * @param added Transactions added since the last save
+     * @param edited Transactions edited since the last save
+     * @param deleted IDs deleted since the last save
+     * @return true if successful, false otherwise
+     * @throws IllegalStateException If canSaveChanges is false
+     */
+    public synchronized boolean saveChanges(List<Transaction> added, List<Transaction> edited, List<Integer> deleted) {
+        if (!canSaveChanges()) {
+            throw new IllegalStateException("Changes can only be saved to plain text files");
+        }
+        long start = System.nanoTime();
+        long journalBytes = new File(getJournalPath()).length();
+        try {
+            // Synced once when closed rather than in batches
+            TransactionJournal changes = new TransactionJournal(getJournalPath(), Integer.MAX_VALUE);
+            try {
+                changes.appendAdds(added);
+                for (Transaction transaction : edited) {
+                    changes.appendEdit(transaction);
+                }
+                for (int id : deleted) {
+                    changes.appendDelete(id);
+                }
+            } finally {
+                changes.close();
+            }
+            SAVE_TIMER.record(System.nanoTime() - start);
+            SAVE_ROWS.add(added.size() + edited.size() + deleted.size());
+            SAVE_BYTES.add(new File(getJournalPath()).length() - journalBytes);
+            if (changes.getRecordCount() >= COMPACTION_THRESHOLD) {
+                foldIntoSnapshot(getJournalPath());
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error writing to journal: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Writes transactions to a file in text format as they are produced
+     * 
+     * @param transactions Stream of transactions to write
+     * @param textPath Path to the text file
+     * @return Number of transactions written, or -1 if writing failed
+     */
+    public long exportText(Stream<Transaction> transactions, String textPath) {
+        long[] written = new long[1];
+        try {
+            SnapshotFile.writeText(textPath, writer -> {
+                Iterator<Transaction> iterator = transactions.iterator();
+                while (iterator.hasNext()) {
+                    writer.write(iterator.next().toFileString());
+                    writer.newLine();
+                    written[0]++;
+                }
+            });
+            return written[0];
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error writing to file: " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * Writes transactions to a file in text format
+     * 
+     * @param transactions List of transactions to write
+     * @param textPath Path to the text file
+     * @return true if successful, false otherwise
+     */
+    public boolean exportText(List<Transaction> transactions, String textPath) {
+        try {
+            SnapshotFile.writeText(textPath, writer -> {
+                for (Transaction transaction : transactions) {
+                    writer.write(transaction.toFileString());
+                    writer.newLine();
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error writing to file: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Records an added transaction in the journal, or queues it
+     * for the background writer
+     * 
+     * @param transaction The added transaction
+     * @return true if successful (always true when journaling is off;
+     *         see whenWritten for background writes)
+     */
+    public synchronized boolean recordAdd(Transaction transaction) {
+        if (backgroundWriter != null) {
+            backgroundWriter.add(transaction);
+            return true;
+        }
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.appendAdd(transaction);
+        } catch (IOException e) {
+            System.out.println("Error writing to journal: " + e.getMessage());
+            return false;
+        }
+        // The record is in the journal even if compacting fails
+        maybeCompact();
+        return true;
+    }
+    
+    /**
+     * Records a batch of added transactions in the journal, or queues it
+     * for the background writer
+     * 
+     * @param transactions The added transactions
+     * @return true if successful (always true when journaling is off;
+     *         see whenWritten for background writes)
+     */
+    public synchronized boolean recordAddAll(List<Transaction> transactions) {
+        if (backgroundWriter != null) {
+            backgroundWriter.addAll(transactions);
+            return true;
+        }
+        if (journal == null || transactions.isEmpty()) {
+            return true;
+        }
+        try {
+            journal.appendAdds(transactions);
+        } catch (IOException e) {
+            System.out.println("Error writing to journal: " + e.getMessage());
+            return false;
+        }
+        // The record is in the journal even if compacting fails
+        maybeCompact();
+        return true;
+    }
+    
+    /**
+     * Records an edited transaction in the journal, or queues it
+     * for the background writer
+     * 
+     * @param transaction The transaction after the edit
+     * @return true if successful (always true when journaling is off;
+     *         see whenWritten for background writes)
+     */
+    public synchronized boolean recordEdit(Transaction transaction) {
+        if (backgroundWriter != null) {
+            backgroundWriter.edit(transaction);
+            return true;
+        }
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.appendEdit(transaction);
+        } catch (IOException e) {
+            System.out.println("Error writing to journal: " + e.getMessage());
+            return false;
+        }
+        // The record is in the journal even if compacting fails
+        maybeCompact();
+        return true;
+    }
+    
+    /**
+     * Records a deleted transaction in the journal, or queues it
+     * for the background writer
+     * 
+     * @param id ID of the deleted transaction
+     * @return true if successful (always true when journaling is off;
+     *         see whenWritten for background writes)
+     */
+    public synchronized boolean recordDelete(int id) {
+        if (backgroundWriter != null) {
+            backgroundWriter.delete(id);
+            return true;
+        }
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.appendDelete(id);
+        } catch (IOException e) {
+            System.out.println("Error writing to journal: " + e.getMessage());
+            return false;
+        }
+        // The record is in the journal even if compacting fails
+        maybeCompact();
+        return true;
+    }
+    
+    /**
+     * Flushes the journal or writes the queued background changes, waits
+     * for them and releases the background thread. In plain mode, folds the
+     * changes saved with saveChanges into the file, so it is complete on
+     * its own once this returns.
+     */
+    public synchronized void close() {
+        if (backgroundWriter != null) {
+            if (!backgroundWriter.close()) {
+                System.out.println("Some changes could not be written to " + filePath);
+            }
+            return;
+        }
+        if (journal == null) {
+            if (hasSavedChanges()) {
+                try {
+                    foldIntoSnapshot(getJournalPath());
+                } catch (IOException e) {
+                    // Folded in when the file is next opened instead
+                    System.out.println("Error folding saved changes into the file: " + e.getMessage());
+                }
+            }
+            return;
+        }
+        syncJournal();
+        awaitCompaction();
+        compactor.shutdown();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("Error closing journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Opens the journal, folding in a segment left behind by an
+     * interrupted compaction first. A segment that cannot be folded yet is
+     * left in place; loads replay it and the next compaction retries it.
+     */
+    private void openJournal() {
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        if (new File(getSegmentPath()).exists()) {
+            try {
+                foldIntoSnapshot(getSegmentPath());
+            } catch (IOException e) {
+                System.out.println("Error compacting journal: " + e.getMessage());
+            }
+        }
+        try {
+            journal = new TransactionJournal(getJournalPath(), JOURNAL_SYNC_BATCH);
+        } catch (IOException e) {
+            System.out.println("Error opening journal: " + e.getMessage());
+            compactor.shutdown();
+            compactor = null;
+        }
+    }
+    
+    /**
+     * Loads transactions from a binary ledger file
+     * 
+     * @return List of transactions
+     */
+    private List<Transaction> loadBinaryTransactions() {
+        if (new File(filePath).length() == 0) {
+            return new ArrayList<>();
+        }
+        try {
+            return BinaryLedger.open(filePath).toTransactions();
+        } catch (IOException e) {
+            System.out.println("Error reading file: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Loads transactions from a compressed archive
+     * 
+     * @return List of transactions
+     */
+    private List<Transaction> loadArchivedTransactions() {
+        if (new File(filePath).length() == 0) {
+            return new ArrayList<>();
+        }
+        try {
+            return LedgerArchive.open(filePath).toTransactions();
+        } catch (IOException e) {
+            System.out.println("Error reading file: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Loads the snapshot and replays the journal on top of it
+     * 
+     * @return List of transactions
+     */
+    private List<Transaction> loadJournaledTransactions(ParseErrorHandler onError) {
         List<Transaction> transactions = new ArrayList<>();
+        awaitCompaction();
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.trim().isEmpty()) {
-                    try {
-                        Transaction transaction = parseTransaction(line);
-                        transactions.add(transaction);
-                    } catch (InvalidTransactionException e) {
-                        System.out.println("Error parsing transaction: " + e.getMessage());
-                    }
+        try {
+            Map<Integer, String> lines = readSnapshotLines();
+            TransactionJournal.replay(getSegmentPath(), lines);
+            TransactionJournal.replay(getJournalPath(), lines);
+            
+            int maxId = 0;
+            for (String line : lines.values()) {
+                try {
+                    Transaction transaction = parseTransaction(line);
+                    maxId = Math.max(maxId, transaction.getId());
+                    transactions.add(transaction);
+                } catch (InvalidTransactionException e) {
+                    onError.onError(line, e);
                 }
             }
+            Transaction.reserveIdsThrough(maxId);
         } catch (IOException e) {
             System.out.println("Error reading file: " + e.getMessage());
         }
@@ -69,32 +773,176 @@ public class FileHandler {
     }
     
     /**
-     * Saves transactions to the file
+     * Starts a background compaction once the journal is large enough
+     * and no other compaction is running. A segment left behind by a
+     * compaction that failed is folded in first. If that fails too, the
+     * journal keeps growing and compaction is tried again after another
+     * COMPACTION_THRESHOLD records.
+     */
+    private void maybeCompact() {
+        if (journal.getRecordCount() < nextCompactionAt) {
+            return;
+        }
+        if (pendingCompaction != null && !pendingCompaction.isDone()) {
+            return;
+        }
+        try {
+            if (new File(getSegmentPath()).exists()) {
+                foldIntoSnapshot(getSegmentPath());
+            }
+            journal.rotate(getSegmentPath());
+        } catch (IOException e) {
+            System.out.println("Error compacting journal: " + e.getMessage());
+            nextCompactionAt = journal.getRecordCount() + COMPACTION_THRESHOLD;
+            return;
+        }
+        nextCompactionAt = COMPACTION_THRESHOLD;
+        pendingCompaction = compactor.submit(() -> {
+            try {
+                foldIntoSnapshot(getSegmentPath());
+            } catch (IOException e) {
+                System.out.println("Error compacting journal: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Rolls a journal file (the rotated segment, or changes saved with
+     * saveChanges) into a fresh snapshot and deletes it.
+     * Works on raw lines only, so it never touches live Transaction objects.
      * 
-     * @param transactions List of transactions to save
-     * @return true if successful, false otherwise
+     * @param logPath Path to the journal file
      */
-    public boolean saveTransactions(List<Transaction> transactions) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (Transaction transaction : transactions) {
-                writer.write(transaction.toFileString());
+    private void foldIntoSnapshot(String logPath) throws IOException {
+        Map<Integer, String> lines = readSnapshotLines();
+        TransactionJournal.replay(logPath, lines);
+        
+        SnapshotFile.writeText(filePath, writer -> {
+            for (String line : lines.values()) {
+                writer.write(line);
                 writer.newLine();
             }
+        });
+        new File(logPath).delete();
+    }
+    
+    /**
+     * Reads the snapshot file as lines keyed by transaction ID
+     * 
+     * @return Lines in file order
+     */
+    private Map<Integer, String> readSnapshotLines() throws IOException {
+        Map<Integer, String> lines = new LinkedHashMap<>();
+        // Lines without a readable ID get negative keys, which no journal
+        // record touches, so they are kept for the loader to report
+        int unreadable = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(SnapshotFile.pathToRead(filePath), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (SnapshotFile.isContentLine(line)) {
+                    try {
+                        lines.put(TransactionJournal.parseId(line), line);
+                    } catch (NumberFormatException e) {
+                        lines.put(--unreadable, line);
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+    
+    private boolean syncJournal() {
+        try {
+            journal.sync();
             return true;
         } catch (IOException e) {
-            System.out.println("Error writing to file: " + e.getMessage());
+            System.out.println("Error writing to journal: " + e.getMessage());
             return false;
         }
     }
     
     /**
-     * Parses a line from the file into a Transaction object
+     * Lets queued background changes reach the file before it is read
+     */
+    private void awaitBackgroundWrites() {
+        if (backgroundWriter != null) {
+            backgroundWriter.flush().join();
+        }
+    }
+    
+    private void awaitCompaction() {
+        if (pendingCompaction == null) {
+            return;
+        }
+        try {
+            pendingCompaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Error compacting journal: " + e.getCause().getMessage());
+        }
+    }
+    
+    /**
+     * Check whether a plain or asynchronous text file has changes saved in
+     * its journal that are not in the file yet
+     */
+    private boolean hasSavedChanges() {
+        return journal == null && isText() && new File(getJournalPath()).exists();
+    }
+    
+    // Text is the only format with journals and background writes
+    private boolean isText() {
+        return !isBinary() && !isArchive();
+    }
+    
+    private String getJournalPath() {
+        return filePath + ".journal";
+    }
+    
+    private String getSegmentPath() {
+        return filePath + ".journal.1";
+    }
+    
+    /**
+     * Wrap an error handler so every malformed line is counted
+     */
+    private static ParseErrorHandler countingErrors(ParseErrorHandler onError) {
+        return (line, error) -> {
+            PARSE_ERRORS.increment();
+            onError.onError(line, error);
+        };
+    }
+    
+    /**
+     * Lazily parses lines, skipping blank and '#' ones and reporting malformed ones
+     * 
+     * @param lines Lines from the file
+     * @param onError Receives lines that could not be parsed
+     * @return Stream of parsed transactions
+     */
+    private static Stream<Transaction> parseLines(Stream<String> lines, ParseErrorHandler onError) {
+        return lines.filter(SnapshotFile::isContentLine)
+                    .map(line -> {
+                        try {
+                            return parseTransaction(line);
+                        } catch (InvalidTransactionException e) {
+                            onError.onError(line, e);
+                            return null;
+                        }
+                    })
+                    .filter(Objects::nonNull);
+    }
+    
+    /**
+     * Parses a line from the file into a Transaction object. The ID counter
+     * is not touched; callers reserve the highest ID they read.
      * 
      * @param line Line from the file
      * @return Transaction object
      * @throws InvalidTransactionException If parsing fails
      */
-    private Transaction parseTransaction(String line) throws InvalidTransactionException {
+    static Transaction parseTransaction(String line) throws InvalidTransactionException {
         String[] parts = line.split(",");
         
         if (parts.length < 5) {
@@ -102,9 +950,15 @@ public class FileHandler {
         }
         
         String type = parts[0];
-        int id = Integer.parseInt(parts[1]);
+        int id;
+        long amountCents;
+        try {
+            id = Integer.parseInt(parts[1]);
+            amountCents = Money.parseCents(parts[3]);
+        } catch (NumberFormatException e) {
+            throw new InvalidTransactionException("Invalid transaction format: " + line, e);
+        }
         Date date = DateValidator.validateAndParse(parts[2]);
-        double amount = Double.parseDouble(parts[3]);
         String description = parts[4];
         
         Transaction transaction = null;
@@ -112,13 +966,11 @@ public class FileHandler {
         if (type.equals("EXPENSE") && parts.length >= 7) {
             String category = parts[5];
             boolean isTaxDeductible = Boolean.parseBoolean(parts[6]);
-            transaction = new Expense(date, amount, description, category, isTaxDeductible);
-            transaction.setId(id);  // Set the ID from the file
+            transaction = new Expense(id, date, amountCents, description, category, isTaxDeductible);
         } else if (type.equals("INCOME") && parts.length >= 7) {
             String source = parts[5];
             boolean isTaxable = Boolean.parseBoolean(parts[6]);
-            transaction = new Income(date, amount, description, source, isTaxable);
-            transaction.setId(id);  // Set the ID from the file
+            transaction = new Income(id, date, amountCents, description, source, isTaxable);
         } else {
             throw new InvalidTransactionException("Unknown transaction type: " + type);
         }
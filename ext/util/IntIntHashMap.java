@@ -0,0 +1,197 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int keys to non-negative int values,
+ * such as transaction IDs to row numbers. Like IntHashMap but without
+ * boxing the values, so an entry costs two ints.
+ */
+public class IntIntHashMap {
+    // Returned by get for absent keys; also marks empty slots
+    public static final int NOT_FOUND = -1;
+
+    // Capacity is always a power of two so the hash can be masked
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    /**
+     * Constructor with default capacity
+     */
+    public IntIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor with an expected number of entries
+     *
+     * @param expectedSize Number of entries the map should hold without resizing
+     */
+    public IntIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Get the value mapped to a key
+     *
+     * @param key The key
+     * @return The mapped value or NOT_FOUND if absent
+     */
+    public int get(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != NOT_FOUND) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Map a key to a value, replacing any previous mapping
+     *
+     * @param key The key
+     * @param value The value (must not be negative)
+     * @return The previous value or NOT_FOUND if there was none
+     */
+    public int put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("IntIntHashMap does not accept negative values");
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != NOT_FOUND) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Remove the mapping for a key
+     *
+     * @param key The key
+     * @return The removed value or NOT_FOUND if the key was absent
+     */
+    public int remove(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != NOT_FOUND) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Remove all mappings
+     */
+    public void clear() {
+        Arrays.fill(values, NOT_FOUND);
+        size = 0;
+    }
+
+    /**
+     * Make sure the map can hold the given number of entries without resizing
+     *
+     * @param expectedSize Number of entries expected
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Close the gap left by a removed entry so that probe chains stay intact
+     * (backward-shift deletion, no tombstones needed)
+     *
+     * @param gap The slot that was just emptied
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == NOT_FOUND) {
+                break;
+            }
+            int home = hash(keys[slot]) & mask;
+            // Move the entry if its home slot is not between the gap and its current slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = NOT_FOUND;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != NOT_FOUND) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != NOT_FOUND) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NOT_FOUND);
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR);
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < needed && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spread the key bits so sequential IDs do not cluster
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
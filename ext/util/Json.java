@@ -0,0 +1,208 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the HTTP service: reading one flat object (string,
+ * number, boolean and null values, no nesting) and escaping strings for
+ * output. Numbers and booleans are returned as their text, so callers
+ * parse them the same way as form input.
+ */
+public class Json {
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private Json() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Parses a flat JSON object
+     *
+     * @param text The JSON text
+     * @return Field values by name, as text (null for JSON null), in the order given
+     * @throws IllegalArgumentException If the text is not a flat JSON object
+     */
+    public static Map<String, String> parseObject(String text) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        int[] pos = {skipSpace(text, 0)};
+        expect(text, pos, '{');
+        if (peek(text, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                String name = readString(text, pos);
+                expect(text, pos, ':');
+                fields.put(name, readValue(text, pos));
+                char next = peek(text, pos);
+                pos[0]++;
+                if (next == '}') {
+                    break;
+                }
+                if (next != ',') {
+                    throw error("Expected ',' or '}'", pos[0] - 1);
+                }
+            }
+        }
+        if (skipSpace(text, pos[0]) != text.length()) {
+            throw error("Unexpected text after the object", pos[0]);
+        }
+        return fields;
+    }
+
+    /**
+     * Appends a string as a quoted JSON string
+     *
+     * @param builder The builder to append to
+     * @param value The string, or null for JSON null
+     */
+    public static void appendString(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    private static String readValue(String text, int[] pos) {
+        char c = peek(text, pos);
+        if (c == '"') {
+            return readString(text, pos);
+        }
+        if (c == '{' || c == '[') {
+            throw error("Nested values are not supported", pos[0]);
+        }
+        int start = pos[0];
+        int end = start;
+        while (end < text.length() && ",}] \t\r\n".indexOf(text.charAt(end)) < 0) {
+            end++;
+        }
+        String literal = text.substring(start, end);
+        pos[0] = end;
+        if (literal.equals("null")) {
+            return null;
+        }
+        if (literal.equals("true") || literal.equals("false")) {
+            return literal;
+        }
+        try {
+            Double.parseDouble(literal);
+        } catch (NumberFormatException e) {
+            throw error("Invalid value '" + literal + "'", start);
+        }
+        return literal;
+    }
+
+    private static String readString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder builder = new StringBuilder();
+        int i = pos[0];
+        while (true) {
+            if (i >= text.length()) {
+                throw error("Unterminated string", i);
+            }
+            char c = text.charAt(i++);
+            if (c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (i >= text.length()) {
+                throw error("Unterminated string", i);
+            }
+            char escaped = text.charAt(i++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append(escaped);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 > text.length()) {
+                        throw error("Invalid escape", i);
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid escape", i);
+                    }
+                    i += 4;
+                    break;
+                default:
+                    throw error("Invalid escape", i - 1);
+            }
+        }
+        pos[0] = i;
+        return builder.toString();
+    }
+
+    private static void expect(String text, int[] pos, char expected) {
+        if (peek(text, pos) != expected) {
+            throw error("Expected '" + expected + "'", pos[0]);
+        }
+        pos[0]++;
+    }
+
+    // Skips white space and returns the next character, or 0 at the end
+    private static char peek(String text, int[] pos) {
+        pos[0] = skipSpace(text, pos[0]);
+        return pos[0] < text.length() ? text.charAt(pos[0]) : 0;
+    }
+
+    private static int skipSpace(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static IllegalArgumentException error(String message, int pos) {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
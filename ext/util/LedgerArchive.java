@@ -0,0 +1,544 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import model.Expense;
+import model.Income;
+import model.Transaction;
+
+/**
+ * Compressed ledger archive for long histories, read a block at a time.
+ *
+ * Transactions are sorted by date and cut into blocks of at most
+ * rowsPerBlock rows that never span two calendar years. Each block is
+ * compressed on its own with Deflater. Inside a block the columns follow
+ * each other (days, amounts, flags, IDs, then the strings), so the columns
+ * totals need come first. An index at the end of the file holds, for every
+ * block, where it is, its ID and date range and the totals of its rows.
+ *
+ * Layout (big-endian):
+ *   header  - magic, version, block count, row count (4 ints)
+ *   blocks  - deflated column data, back to back
+ *   index   - INDEX_ENTRY_SIZE bytes per block
+ *   trailer - index position (long), magic
+ *
+ * Reads use the index to skip every block outside a date range or ID.
+ * Totals over blocks a range covers whole come straight from the index, so
+ * whole-year sums decompress nothing; a block a range covers only in part
+ * is inflated only as far as its amount and flag columns.
+ */
+public class LedgerArchive {
+    // File extension that selects the archive format in FileHandler
+    public static final String EXTENSION = ".archive";
+    public static final int DEFAULT_ROWS_PER_BLOCK = 65_536;
+
+    // Positions in the array returned by calculateTotals
+    public static final int INCOME = 0;
+    public static final int EXPENSES = 1;
+    public static final int TAX_DEDUCTIONS = 2;
+    public static final int INCOME_TAX = 3;
+    public static final int INCOME_COUNT = 4;
+    public static final int EXPENSE_COUNT = 5;
+    // Length of that array
+    public static final int TOTALS_SIZE = 6;
+
+    private static final int MAGIC = 0x4C44475A; // "LDGZ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 12;
+    // Position, lengths, row count, CRC, ID and day range, four totals, two counts
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 * 4 + 4 * 4 + 4 * 8 + 2 * 4;
+    // Bytes per row of the day, amount and flag columns
+    private static final int TOTALS_COLUMNS_SIZE = 4 + 8 + 1;
+
+    // Bits of the flag column
+    private static final byte FLAG_INCOME = 1;
+    private static final byte FLAG_TAX = 2;
+
+    // Blocks inflated whole, and only as far as the totals columns
+    private static final Counter BLOCKS_INFLATED = Metrics.counter("archive.blocksInflated");
+    private static final Counter BLOCKS_PARTLY_INFLATED = Metrics.counter("archive.blocksPartlyInflated");
+
+    /**
+     * Index entry of one block
+     */
+    private static final class Block {
+        long offset;
+        int compressedLength;
+        int uncompressedLength;
+        int rowCount;
+        int crc;
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        long[] totals = new long[TOTALS_SIZE];
+    }
+
+    private MappedByteBuffer buffer;
+    private Block[] blocks;
+    private int rowCount;
+
+    private LedgerArchive(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(buffer.capacity() - 4) != MAGIC) {
+            throw new IOException("Not a ledger archive, or the archive is truncated");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported ledger archive version: " + buffer.getInt(4));
+        }
+        int blockCount = buffer.getInt(8);
+        this.rowCount = buffer.getInt(12);
+        long indexOffset = buffer.getLong(buffer.capacity() - TRAILER_SIZE);
+        if (blockCount < 0 || indexOffset + (long) blockCount * INDEX_ENTRY_SIZE
+                             != buffer.capacity() - TRAILER_SIZE) {
+            throw new IOException("Ledger archive index is damaged");
+        }
+
+        this.blocks = new Block[blockCount];
+        int position = (int) indexOffset;
+        for (int i = 0; i < blockCount; i++) {
+            Block block = new Block();
+            block.offset = buffer.getLong(position);
+            block.compressedLength = buffer.getInt(position + 8);
+            block.uncompressedLength = buffer.getInt(position + 12);
+            block.rowCount = buffer.getInt(position + 16);
+            block.crc = buffer.getInt(position + 20);
+            block.minId = buffer.getInt(position + 24);
+            block.maxId = buffer.getInt(position + 28);
+            block.minDay = buffer.getInt(position + 32);
+            block.maxDay = buffer.getInt(position + 36);
+            for (int t = 0; t < 4; t++) {
+                block.totals[t] = buffer.getLong(position + 40 + t * 8);
+            }
+            block.totals[INCOME_COUNT] = buffer.getInt(position + 72);
+            block.totals[EXPENSE_COUNT] = buffer.getInt(position + 76);
+            if (block.offset < HEADER_SIZE || block.offset + block.compressedLength > indexOffset) {
+                throw new IOException("Ledger archive index is damaged");
+            }
+            blocks[i] = block;
+            position += INDEX_ENTRY_SIZE;
+        }
+    }
+
+    /**
+     * Check whether a path uses the archive format
+     *
+     * @param path File path
+     * @return true if the path has the archive extension
+     */
+    public static boolean isArchive(String path) {
+        return path.endsWith(EXTENSION);
+    }
+
+    /**
+     * Map an archive into memory and read its index. Blocks are only
+     * decompressed when a read needs them.
+     *
+     * @param path Path to the archive
+     * @return The open archive
+     * @throws IOException If the file cannot be mapped or is not an archive
+     */
+    public static LedgerArchive open(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r");
+             FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Ledger archive is too large to map: " + channel.size() + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            return new LedgerArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write transactions to an archive with the default block size
+     *
+     * @param transactions Transactions to write, in any order
+     * @param path Path to the archive
+     * @throws IOException If writing fails
+     */
+    public static void write(List<Transaction> transactions, String path) throws IOException {
+        write(transactions, path, DEFAULT_ROWS_PER_BLOCK);
+    }
+
+    /**
+     * Write transactions to an archive, sorted by date and then ID
+     *
+     * @param transactions Transactions to write, in any order
+     * @param path Path to the archive
+     * @param rowsPerBlock Most rows in one block
+     * @throws IOException If writing fails
+     */
+    public static void write(List<Transaction> transactions, String path, int rowsPerBlock) throws IOException {
+        if (rowsPerBlock < 1) {
+            throw new IllegalArgumentException("Rows per block must be positive: " + rowsPerBlock);
+        }
+        List<Transaction> sorted = new ArrayList<>(transactions);
+        sorted.sort(Comparator.comparing(Transaction::getDate).thenComparingInt(Transaction::getId));
+        int[] days = new int[sorted.size()];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = DateValidator.toEpochDay(sorted.get(i).getDate());
+        }
+        List<Integer> starts = splitIntoBlocks(days, rowsPerBlock);
+
+        // Written next to the target and renamed, like every other save
+        File temp = new File(path + ".tmp");
+        List<Block> written = new ArrayList<>(starts.size());
+        Deflater deflater = new Deflater();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(starts.size());
+            out.writeInt(sorted.size());
+
+            long position = HEADER_SIZE;
+            byte[] chunk = new byte[1 << 16];
+            for (int b = 0; b < starts.size(); b++) {
+                int end = b + 1 < starts.size() ? starts.get(b + 1) : sorted.size();
+                Block block = new Block();
+                byte[] raw = encodeBlock(sorted, days, starts.get(b), end, block);
+                CRC32 crc = new CRC32();
+                crc.update(raw);
+                block.crc = (int) crc.getValue();
+                block.uncompressedLength = raw.length;
+                block.offset = position;
+
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(chunk);
+                    out.write(chunk, 0, length);
+                    block.compressedLength += length;
+                }
+                position += block.compressedLength;
+                written.add(block);
+            }
+
+            for (Block block : written) {
+                out.writeLong(block.offset);
+                out.writeInt(block.compressedLength);
+                out.writeInt(block.uncompressedLength);
+                out.writeInt(block.rowCount);
+                out.writeInt(block.crc);
+                out.writeInt(block.minId);
+                out.writeInt(block.maxId);
+                out.writeInt(block.minDay);
+                out.writeInt(block.maxDay);
+                for (int t = 0; t < 4; t++) {
+                    out.writeLong(block.totals[t]);
+                }
+                out.writeInt((int) block.totals[INCOME_COUNT]);
+                out.writeInt((int) block.totals[EXPENSE_COUNT]);
+            }
+            out.writeLong(position);
+            out.writeInt(MAGIC);
+        } finally {
+            deflater.end();
+        }
+        SnapshotFile.commit(temp, path);
+    }
+
+    /**
+     * Get the number of transactions
+     *
+     * @return Row count
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    public int getBlockCount() {
+        return blocks.length;
+    }
+
+    /**
+     * Sum the transactions between two days. Blocks outside the range are
+     * skipped, blocks inside it are read from the index, and only blocks
+     * the range cuts through are inflated (as far as the totals columns).
+     *
+     * @param fromDay First epoch day (inclusive)
+     * @param toDay Last epoch day (inclusive)
+     * @return Totals in cents and counts, indexed by INCOME, EXPENSES,
+     *         TAX_DEDUCTIONS, INCOME_TAX, INCOME_COUNT and EXPENSE_COUNT
+     * @throws IOException If a block is damaged
+     */
+    public long[] calculateTotals(int fromDay, int toDay) throws IOException {
+        long[] totals = new long[TOTALS_SIZE];
+        for (Block block : blocks) {
+            if (block.maxDay < fromDay || block.minDay > toDay) {
+                continue;
+            }
+            if (block.minDay >= fromDay && block.maxDay <= toDay) {
+                for (int t = 0; t < TOTALS_SIZE; t++) {
+                    totals[t] += block.totals[t];
+                }
+                continue;
+            }
+            int rows = block.rowCount;
+            ByteBuffer data = inflate(block, rows * TOTALS_COLUMNS_SIZE);
+            BLOCKS_PARTLY_INFLATED.increment();
+            for (int i = 0; i < rows; i++) {
+                int day = data.getInt(i * 4);
+                if (day >= fromDay && day <= toDay) {
+                    addRow(totals, data.getLong(rows * 4 + i * 8), data.get(rows * 12 + i));
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Find a transaction by ID, inflating only the blocks whose ID range holds it.
+     * The ID counter is not advanced.
+     *
+     * @param id Transaction ID
+     * @return The transaction, or null if it is not in the archive
+     * @throws IOException If a block is damaged
+     */
+    public Transaction find(int id) throws IOException {
+        for (Block block : blocks) {
+            if (id < block.minId || id > block.maxId) {
+                continue;
+            }
+            for (Transaction transaction : readBlock(block, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                if (transaction.getId() == id) {
+                    return transaction;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create Transaction objects for all rows
+     *
+     * @return List of transactions, in date order
+     * @throws IOException If a block is damaged
+     */
+    public List<Transaction> toTransactions() throws IOException {
+        List<Transaction> transactions = new ArrayList<>(rowCount);
+        int maxId = 0;
+        for (Block block : blocks) {
+            transactions.addAll(readBlock(block, Integer.MIN_VALUE, Integer.MAX_VALUE));
+            maxId = Math.max(maxId, block.maxId);
+        }
+        Transaction.reserveIdsThrough(maxId);
+        return transactions;
+    }
+
+    /**
+     * Create Transaction objects one block at a time, in date order.
+     * The ID counter is not advanced.
+     *
+     * @return Lazy stream of transactions
+     */
+    public Stream<Transaction> stream() {
+        return streamBetween(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create Transaction objects for the rows between two days, inflating
+     * only the blocks that overlap the range. The ID counter is not advanced.
+     *
+     * @param fromDay First epoch day (inclusive)
+     * @param toDay Last epoch day (inclusive)
+     * @return Lazy stream of transactions, in date order
+     */
+    public Stream<Transaction> streamBetween(int fromDay, int toDay) {
+        return IntStream.range(0, blocks.length)
+                        .mapToObj(i -> blocks[i])
+                        .filter(block -> block.maxDay >= fromDay && block.minDay <= toDay)
+                        .flatMap(block -> {
+                            try {
+                                return readBlock(block, fromDay, toDay).stream();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+    }
+
+    /**
+     * Find where blocks start: a new one every rowsPerBlock rows and at the
+     * first row of every calendar year
+     */
+    private static List<Integer> splitIntoBlocks(int[] days, int rowsPerBlock) {
+        List<Integer> starts = new ArrayList<>();
+        long nextYear = Long.MIN_VALUE;
+        int blockStart = 0;
+        for (int i = 0; i < days.length; i++) {
+            if (i == 0 || i - blockStart == rowsPerBlock || days[i] >= nextYear) {
+                starts.add(i);
+                blockStart = i;
+                nextYear = LocalDate.of(LocalDate.ofEpochDay(days[i]).getYear() + 1, 1, 1).toEpochDay();
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * Lay out the columns of one block and fill in its index entry
+     */
+    private static byte[] encodeBlock(List<Transaction> sorted, int[] days, int start, int end, Block block)
+            throws IOException {
+        int rows = end - start;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows * 48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = start; i < end; i++) {
+            out.writeInt(days[i]);
+        }
+        for (int i = start; i < end; i++) {
+            out.writeLong(sorted.get(i).getAmountCents());
+        }
+        for (int i = start; i < end; i++) {
+            Transaction transaction = sorted.get(i);
+            boolean taxFlag = transaction instanceof Income ? ((Income) transaction).isTaxable()
+                                                            : ((Expense) transaction).isTaxDeductible();
+            byte flags = (byte) ((transaction instanceof Income ? FLAG_INCOME : 0) | (taxFlag ? FLAG_TAX : 0));
+            out.writeByte(flags);
+            addRow(block.totals, transaction.getAmountCents(), flags);
+        }
+        for (int i = start; i < end; i++) {
+            int id = sorted.get(i).getId();
+            out.writeInt(id);
+            block.minId = Math.min(block.minId, id);
+            block.maxId = Math.max(block.maxId, id);
+        }
+        for (int i = start; i < end; i++) {
+            Transaction transaction = sorted.get(i);
+            writeString(out, transaction.getDescription());
+            writeString(out, transaction instanceof Income ? ((Income) transaction).getSource()
+                                                           : ((Expense) transaction).getCategory());
+        }
+        block.rowCount = rows;
+        block.minDay = days[start];
+        block.maxDay = days[end - 1];
+        return bytes.toByteArray();
+    }
+
+    // A missing category or source is written with length -1
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Adds one row to a totals array, with the tax worked out as the model classes do
+    private static void addRow(long[] totals, long cents, byte flags) {
+        boolean taxFlag = (flags & FLAG_TAX) != 0;
+        if ((flags & FLAG_INCOME) != 0) {
+            totals[INCOME] += cents;
+            totals[INCOME_TAX] += taxFlag ? Money.percentOf(cents, Income.INCOME_TAX_RATE_PERCENT) : 0;
+            totals[INCOME_COUNT]++;
+        } else {
+            totals[EXPENSES] += cents;
+            totals[TAX_DEDUCTIONS] += taxFlag ? Money.percentOf(cents, Expense.TAX_RATE_PERCENT) : 0;
+            totals[EXPENSE_COUNT]++;
+        }
+    }
+
+    /**
+     * Inflate a block and create the transactions between two days
+     */
+    private List<Transaction> readBlock(Block block, int fromDay, int toDay) throws IOException {
+        ByteBuffer data = inflate(block, block.uncompressedLength);
+        BLOCKS_INFLATED.increment();
+        int rows = block.rowCount;
+        List<Transaction> transactions = new ArrayList<>(rows);
+        data.position(rows * (TOTALS_COLUMNS_SIZE + 4));
+        for (int i = 0; i < rows; i++) {
+            // Strings are read for every row to reach the next one
+            String description = readString(data);
+            String group = readString(data);
+            int day = data.getInt(i * 4);
+            if (day < fromDay || day > toDay) {
+                continue;
+            }
+            long cents = data.getLong(rows * 4 + i * 8);
+            byte flags = data.get(rows * 12 + i);
+            int id = data.getInt(rows * TOTALS_COLUMNS_SIZE + i * 4);
+            Date date = DateValidator.fromEpochDay(day);
+            boolean taxFlag = (flags & FLAG_TAX) != 0;
+            if ((flags & FLAG_INCOME) != 0) {
+                transactions.add(new Income(id, date, cents, description, group, taxFlag));
+            } else {
+                transactions.add(new Expense(id, date, cents, description, group, taxFlag));
+            }
+        }
+        return transactions;
+    }
+
+    private static String readString(ByteBuffer data) {
+        int length = data.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Inflate the first bytes of a block. A whole block is checked against its CRC.
+     *
+     * @param block The block
+     * @param length Bytes to inflate
+     * @return The inflated bytes
+     * @throws IOException If the block is damaged
+     */
+    private ByteBuffer inflate(Block block, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice((int) block.offset, block.compressedLength));
+            byte[] data = new byte[length];
+            int filled = 0;
+            while (filled < length) {
+                int read = inflater.inflate(data, filled, length - filled);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Ledger archive block at " + block.offset + " is truncated");
+                }
+                filled += read;
+            }
+            if (length == block.uncompressedLength) {
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() != block.crc) {
+                    throw new IOException("Ledger archive block at " + block.offset + " is damaged");
+                }
+            }
+            return ByteBuffer.wrap(data);
+        } catch (DataFormatException e) {
+            throw new IOException("Ledger archive block at " + block.offset + " is damaged", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
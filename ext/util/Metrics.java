@@ -0,0 +1,188 @@
+package util;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the process-wide counters and operation timers. Classes take
+ * their metrics once into static final fields, for example
+ *
+ *   private static final OperationTimer ADD_TIMER = Metrics.timer("manager.add");
+ *
+ * so recording never looks anything up. Metrics are enabled unless the JVM
+ * is started with -Dexpensetracker.metrics=false, and can be switched at
+ * run time. They are read through dump, or through JMX once registerMBeans
+ * has been called, as expensetracker:type=Timer,name=... and
+ * expensetracker:type=Counter,name=...
+ */
+public class Metrics {
+    // JMX domain of the published MBeans
+    public static final String DOMAIN = "expensetracker";
+    // Calls between two timed calls of an operation that is called often
+    public static final int DEFAULT_SAMPLE_EVERY = 64;
+
+    // Read on every recorded call, so a plain volatile flag
+    static volatile boolean enabled = !"false".equals(System.getProperty("expensetracker.metrics"));
+
+    private static final Map<String, OperationTimer> timers = new LinkedHashMap<>();
+    private static final Map<String, Counter> counters = new LinkedHashMap<>();
+    private static MBeanServer mbeanServer;
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private Metrics() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Get or create a timer that times one call in DEFAULT_SAMPLE_EVERY
+     *
+     * @param name Timer name, such as "manager.add"
+     * @return The timer
+     */
+    public static OperationTimer timer(String name) {
+        return timer(name, DEFAULT_SAMPLE_EVERY);
+    }
+
+    /**
+     * Get or create a timer
+     *
+     * @param name Timer name, such as "file.load"
+     * @param sampleEvery Time one call in this many (a power of two; 1 for every call)
+     * @return The timer
+     */
+    public static synchronized OperationTimer timer(String name, int sampleEvery) {
+        OperationTimer timer = timers.get(name);
+        if (timer == null) {
+            timer = new OperationTimer(name, sampleEvery);
+            timers.put(name, timer);
+            register("Timer", name, timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Get or create a counter
+     *
+     * @param name Counter name, such as "file.load.rows"
+     * @return The counter
+     */
+    public static synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+            register("Counter", name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Check whether metrics are recorded
+     *
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start or stop recording. Values recorded so far are kept.
+     *
+     * @param enabled true to record
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Set every counter and timer back to zero
+     */
+    public static synchronized void reset() {
+        for (OperationTimer timer : timers.values()) {
+            timer.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Publish every metric, including ones created later, on the platform
+     * MBean server
+     */
+    public static synchronized void registerMBeans() {
+        if (mbeanServer != null) {
+            return;
+        }
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (OperationTimer timer : timers.values()) {
+            register("Timer", timer.getName(), timer);
+        }
+        for (Counter counter : counters.values()) {
+            register("Counter", counter.getName(), counter);
+        }
+    }
+
+    /**
+     * Get the JMX name a metric is published under
+     *
+     * @param type "Timer" or "Counter"
+     * @param name Metric name
+     * @return The object name
+     * @throws JMException If the name is not a valid object name
+     */
+    public static ObjectName objectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Write every metric as plain text, timers first
+     *
+     * @param out Where to write
+     */
+    public static void dump(PrintWriter out) {
+        List<OperationTimer> timerList;
+        List<Counter> counterList;
+        synchronized (Metrics.class) {
+            timerList = new ArrayList<>(timers.values());
+            counterList = new ArrayList<>(counters.values());
+        }
+        out.printf("%-32s %12s %9s %10s %10s %10s %12s%n",
+                   "operation", "calls", "timed", "mean ns", "p50 ns", "p99 ns", "max ns");
+        for (OperationTimer timer : timerList) {
+            out.printf("%-32s %12d %9d %10.0f %10d %10d %12d%n", timer.getName(), timer.getCount(),
+                       timer.getSampledCount(), timer.getMeanNanos(), timer.getP50Nanos(),
+                       timer.getP99Nanos(), timer.getMaxNanos());
+        }
+        out.printf("%n%-32s %12s%n", "counter", "value");
+        for (Counter counter : counterList) {
+            out.printf("%-32s %12d%n", counter.getName(), counter.getValue());
+        }
+        if (!enabled) {
+            out.println("\n(metrics are disabled)");
+        }
+        out.flush();
+    }
+
+    // Called holding the lock
+    private static void register(String type, String name, Object mbean) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            mbeanServer.registerMBean(mbean, objectName(type, name));
+        } catch (JMException e) {
+            System.out.println("Error publishing metric " + name + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Utility class for fixed-point money amounts stored as a long number of cents
+ */
+public class Money {
+
+    private static final int CENTS_PER_UNIT = 100;
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private Money() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Converts a decimal amount to cents, rounding to the nearest cent
+     *
+     * @param amount Amount in currency units
+     * @return Amount in cents
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * Converts cents to a decimal amount
+     *
+     * @param cents Amount in cents
+     * @return Amount in currency units
+     */
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Applies a percentage to an amount, rounding half up to the nearest cent
+     *
+     * @param cents Amount in cents
+     * @param percent Percentage to apply (e.g., 15 for 15%)
+     * @return The percentage of the amount in cents
+     */
+    public static long percentOf(long cents, int percent) {
+        long scaled = cents * percent;
+        return scaled >= 0 ? (scaled + 50) / 100 : -((-scaled + 50) / 100);
+    }
+
+    /**
+     * Parses a decimal amount such as "12.5" or "1000.00" into cents without
+     * going through double. Anything other than plain digits with an optional
+     * fraction (e.g., "1.0E7" written by older versions) falls back to BigDecimal.
+     *
+     * @param text The amount text
+     * @return Amount in cents
+     * @throws NumberFormatException If the text is not a number
+     */
+    public static long parseCents(String text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        while (i < length && Character.isDigit(text.charAt(i)) && digits < 16) {
+            units = units * 10 + (text.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(text.charAt(i)) && fractionDigits < 2) {
+                fraction = fraction * 10 + (text.charAt(i) - '0');
+                fractionDigits++;
+                i++;
+            }
+            // Digits past the cents are only accepted if they are zeros
+            while (i < length && text.charAt(i) == '0') {
+                i++;
+            }
+        }
+
+        if (i != length || (digits == 0 && fractionDigits == 0)) {
+            return parseCentsSlow(text);
+        }
+
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long cents = units * CENTS_PER_UNIT + fraction;
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Formats cents as a plain decimal with two fraction digits (e.g., "1234.50")
+     *
+     * @param cents Amount in cents
+     * @return Formatted amount
+     */
+    public static String format(long cents) {
+        StringBuilder builder = new StringBuilder(24);
+        appendTo(builder, cents);
+        return builder.toString();
+    }
+
+    /**
+     * Appends cents as a plain decimal with two fraction digits
+     *
+     * @param builder The builder to append to
+     * @param cents Amount in cents
+     */
+    public static void appendTo(StringBuilder builder, long cents) {
+        if (cents < 0) {
+            builder.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % CENTS_PER_UNIT;
+        builder.append(cents / CENTS_PER_UNIT).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
+
+    private static long parseCentsSlow(String text) {
+        return new BigDecimal(text.trim()).movePointRight(2)
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+}
@@ -0,0 +1,203 @@
+package util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls of one operation and keeps a latency histogram of a
+ * sample of them. Wrap the operation as
+ *
+ *   long start = TIMER.start();
+ *   ... the operation ...
+ *   TIMER.stop(start);
+ *
+ * Every call is counted, but only one call in sampleEvery reads the clock:
+ * reading it twice costs more than the cheapest operations themselves, so
+ * timing every call would be the overhead the metrics are meant to find.
+ * For the same reason nothing every call writes is shared between
+ * threads: calls are counted in a LongAdder, and a call is picked for
+ * timing at random with probability 1/sampleEvery rather than by a shared
+ * sequence number. Calls overlapping on several cores (the read-locked
+ * calls of a ConcurrentTransactionManager) then neither contend for one
+ * cache line nor go uncounted. The histogram has four buckets per power of
+ * two, so percentiles are within 25% of the real latency.
+ *
+ * Create timers through Metrics.timer so they are dumped and published.
+ */
+public class OperationTimer implements OperationTimerMBean {
+    // Four buckets per power of two up to 2^63 ns
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final String name;
+    private final int sampleMask;
+    private final LongAdder sampledCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder calls = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param name Name the timer is dumped and published under
+     * @param sampleEvery Time one call in this many on average (a power of two)
+     */
+    OperationTimer(String name, int sampleEvery) {
+        if (sampleEvery < 1 || Integer.bitCount(sampleEvery) != 1) {
+            throw new IllegalArgumentException("sampleEvery must be a power of two: " + sampleEvery);
+        }
+        this.name = name;
+        this.sampleMask = sampleEvery - 1;
+    }
+
+    /**
+     * Count a call and start timing it if it is sampled
+     *
+     * @return Start time to pass to stop, or 0 if the call is not timed
+     */
+    public long start() {
+        if (!Metrics.enabled) {
+            return 0;
+        }
+        calls.increment();
+        if ((ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish timing a call
+     *
+     * @param start The value start returned
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            addSample(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Count a call and record its latency, for operations that are always
+     * timed by the caller (such as loading a file)
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (Metrics.enabled) {
+            calls.increment();
+            addSample(nanos);
+        }
+    }
+
+    private void addSample(long nanos) {
+        nanos = Math.max(0, nanos);
+        sampledCount.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getSampledCount() {
+        return sampledCount.sum();
+    }
+
+    @Override
+    public int getSampleEvery() {
+        return sampleMask + 1;
+    }
+
+    @Override
+    public double getMeanNanos() {
+        long sampled = sampledCount.sum();
+        return sampled == 0 ? 0 : totalNanos.sum() / (double) sampled;
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return percentile(50);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return percentile(99);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        sampledCount.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /**
+     * Get a percentile of the timed calls
+     *
+     * @param percent Percentile, 1 to 100
+     * @return Upper bound of the bucket holding it (capped at the maximum), 0 if nothing was timed
+     */
+    public long percentile(int percent) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    // Values below 2 * SUB_BUCKETS get a bucket each; above that each power
+    // of two is split into SUB_BUCKETS equal parts
+    static int bucketOf(long nanos) {
+        if (nanos < 2 * SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (log - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int log = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (log - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (log - SUB_BUCKET_BITS);
+        return lower + width - 1;
+    }
+}
@@ -0,0 +1,61 @@
+package util;
+
+/**
+ * JMX view of an OperationTimer. Latencies come from the sampled calls.
+ */
+public interface OperationTimerMBean {
+
+    /**
+     * Get the number of calls
+     *
+     * @return Calls since the last reset
+     */
+    long getCount();
+
+    /**
+     * Get the number of calls that were timed
+     *
+     * @return Timed calls since the last reset
+     */
+    long getSampledCount();
+
+    /**
+     * Get how often calls are timed
+     *
+     * @return One call in this many is timed
+     */
+    int getSampleEvery();
+
+    /**
+     * Get the mean latency of the timed calls
+     *
+     * @return Mean in nanoseconds, 0 before the first timed call
+     */
+    double getMeanNanos();
+
+    /**
+     * Get the median latency of the timed calls
+     *
+     * @return Upper bound of the median's histogram bucket, in nanoseconds
+     */
+    long getP50Nanos();
+
+    /**
+     * Get the 99th percentile latency of the timed calls
+     *
+     * @return Upper bound of the percentile's histogram bucket, in nanoseconds
+     */
+    long getP99Nanos();
+
+    /**
+     * Get the longest timed call
+     *
+     * @return Longest latency in nanoseconds
+     */
+    long getMaxNanos();
+
+    /**
+     * Set the count and the histogram back to zero
+     */
+    void reset();
+}
@@ -0,0 +1,22 @@
+package util;
+
+import exceptions.InvalidTransactionException;
+
+/**
+ * Receives the lines of a transactions file that could not be parsed
+ */
+@FunctionalInterface
+public interface ParseErrorHandler {
+    
+    // Prints the error and moves on, as loading always did
+    ParseErrorHandler PRINT = (line, error) ->
+        System.out.println("Error parsing transaction: " + error.getMessage());
+    
+    /**
+     * Called once for every malformed line
+     * 
+     * @param line The line as read from the file
+     * @param error Why it could not be parsed
+     */
+    void onError(String line, InvalidTransactionException error);
+}
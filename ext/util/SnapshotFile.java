@@ -0,0 +1,282 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe writing and checked reading of whole transaction files.
+ *
+ * A file is written to a temporary file next to it, forced to disk and
+ * renamed over the old file, so a crash leaves either the old or the new
+ * file, never a mix of both. The old file is kept as the backup
+ * (path + BACKUP_SUFFIX) for rolling back one generation.
+ *
+ * Text files are UTF-8. They start with the header line
+ * "#SNAPSHOT,version" and end with a footer line "#CHECKSUM,length,crc"
+ * holding the byte length (decimal) and CRC-32 (hex) of everything before
+ * it, header included, so a file cut off anywhere, even before its footer,
+ * is detected. Readers skip lines that start with '#'.
+ *
+ * Version 2 files are always UTF-8. Version 1 files were written in the
+ * platform charset; they are still checked, and read as UTF-8, which is
+ * what they hold on most systems. Files without a header (written by hand
+ * or by older versions) cannot be checked and are read as they are, and
+ * so are files with lines added by hand after an intact footer.
+ */
+public class SnapshotFile {
+    // Suffix of the previous generation of a file
+    public static final String BACKUP_SUFFIX = ".bak";
+
+    // Version of the text layout written by writeText
+    private static final int VERSION = 2;
+    private static final String HEADER_PREFIX = "#SNAPSHOT,";
+    private static final String HEADER = HEADER_PREFIX + VERSION;
+    private static final String FOOTER_PREFIX = "#CHECKSUM,";
+    // Longer than any footer line
+    private static final int FOOTER_SEARCH_SIZE = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Results of verify
+    public static final int VALID = 0;
+    public static final int UNCHECKED = 1;
+    public static final int DAMAGED = 2;
+
+    /**
+     * Writes the body of a text file
+     */
+    @FunctionalInterface
+    public interface Body {
+        void write(BufferedWriter writer) throws IOException;
+    }
+
+    /**
+     * Check whether a line of a text file holds data, rather than being
+     * blank or a '#' line such as the checksum footer
+     *
+     * @param line The line
+     * @return true if the line should be parsed
+     */
+    public static boolean isContentLine(String line) {
+        return !line.trim().isEmpty() && !line.startsWith("#");
+    }
+
+    /**
+     * Write a text file crash-safely and end it with a checksum footer
+     *
+     * @param path Path to the file
+     * @param body Writes the lines of the file
+     * @throws IOException If writing fails; the old file is then left untouched
+     */
+    public static void writeText(String path, Body body) throws IOException {
+        File temp = new File(path + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (FileOutputStream output = new FileOutputStream(temp);
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(new CheckedOutputStream(output, checksum), StandardCharsets.UTF_8),
+                     BUFFER_SIZE)) {
+            writer.write(HEADER);
+            writer.newLine();
+            body.write(writer);
+            writer.flush();
+            long length = output.getChannel().position();
+            writer.write(FOOTER_PREFIX + length + "," + Long.toHexString(checksum.getValue()));
+            writer.newLine();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        commit(temp, path);
+    }
+
+    /**
+     * Replace a file with a finished temporary file. The temporary file is
+     * forced to disk, the old file is kept as the backup, and the rename is
+     * atomic.
+     *
+     * @param temp The new contents, in the same directory as the file
+     * @param path Path to the file
+     * @throws IOException If the file cannot be replaced
+     */
+    public static void commit(File temp, String path) throws IOException {
+        Path target = Paths.get(path);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        if (Files.exists(target)) {
+            Path backup = Paths.get(path + BACKUP_SUFFIX);
+            Files.deleteIfExists(backup);
+            try {
+                // A second name for the old file costs nothing to create
+                Files.createLink(backup, target);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(target, backup);
+            }
+        }
+        Files.move(temp.toPath(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target);
+    }
+
+    /**
+     * Check a text file against its checksum footer
+     *
+     * @param path Path to the file
+     * @return VALID, UNCHECKED if it has no header, or DAMAGED if it has a
+     *         header but no matching footer
+     * @throws IOException If the file cannot be read
+     */
+    public static int verify(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, HEADER.length()));
+            while (head.hasRemaining() && channel.read(head, head.position()) >= 0) {
+                // Read until the head is full
+            }
+            if (!isHeader(new String(head.array(), StandardCharsets.ISO_8859_1))) {
+                return UNCHECKED;
+            }
+            int tailSize = (int) Math.min(size, FOOTER_SEARCH_SIZE);
+            ByteBuffer tail = ByteBuffer.allocate(tailSize);
+            while (tail.hasRemaining() && channel.read(tail, size - tailSize + tail.position()) >= 0) {
+                // Read until the tail is full
+            }
+            String tailText = new String(tail.array(), StandardCharsets.ISO_8859_1);
+            int footerStart = tailText.lastIndexOf(FOOTER_PREFIX);
+            if (footerStart < 0) {
+                return verifyEdited(channel);
+            }
+            String[] parts = tailText.substring(footerStart + FOOTER_PREFIX.length()).trim().split(",");
+            long length;
+            long expected;
+            try {
+                length = Long.parseLong(parts[0]);
+                expected = Long.parseLong(parts[1], 16);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                return DAMAGED;
+            }
+            if (length != size - tailSize + footerStart) {
+                return DAMAGED;
+            }
+
+            CRC32 checksum = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long position = 0;
+            while (position < length) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, length - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return DAMAGED;
+                }
+                buffer.flip();
+                checksum.update(buffer);
+                position += read;
+            }
+            return checksum.getValue() == expected ? VALID : DAMAGED;
+        }
+    }
+
+    /**
+     * Check whether the start of a file is the header of a version this
+     * class can check. Every version so far has a one-digit number, so the
+     * header of any of them is as long as the current one.
+     */
+    private static boolean isHeader(String head) {
+        if (!head.startsWith(HEADER_PREFIX) || head.length() != HEADER.length()) {
+            return false;
+        }
+        int version = head.charAt(HEADER_PREFIX.length()) - '0';
+        return version >= 1 && version <= VERSION;
+    }
+
+    /**
+     * Check a file whose footer is not at the end. If an intact footer is
+     * followed by more lines, the file was saved whole and added to by hand
+     * later; a write that was cut off never leaves lines after its footer.
+     */
+    private static int verifyEdited(FileChannel channel) throws IOException {
+        CRC32 checksum = new CRC32();
+        byte[] prefix = FOOTER_PREFIX.getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long position = 0;
+        InputStream input = new BufferedInputStream(Channels.newInputStream(channel.position(0)), BUFFER_SIZE);
+        int next;
+        while ((next = input.read()) >= 0) {
+            line.write(next);
+            if (next != '\n') {
+                continue;
+            }
+            byte[] bytes = line.toByteArray();
+            if (bytes.length > prefix.length
+                    && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length)) {
+                String[] parts = new String(bytes, prefix.length, bytes.length - prefix.length,
+                                            StandardCharsets.ISO_8859_1).trim().split(",");
+                try {
+                    boolean intact = Long.parseLong(parts[0]) == position
+                            && Long.parseLong(parts[1], 16) == checksum.getValue();
+                    return intact ? UNCHECKED : DAMAGED;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    return DAMAGED;
+                }
+            }
+            checksum.update(bytes);
+            position += bytes.length;
+            line.reset();
+        }
+        return DAMAGED;
+    }
+
+    /**
+     * Choose the file to read: the file itself, or its backup if the file
+     * is damaged and the backup is not
+     *
+     * @param path Path to the file
+     * @return Path to read
+     */
+    public static String pathToRead(String path) {
+        try {
+            if (!new File(path).exists() || verify(path) != DAMAGED) {
+                return path;
+            }
+            String backup = path + BACKUP_SUFFIX;
+            if (new File(backup).exists() && verify(backup) == VALID) {
+                System.out.println("Warning: " + path + " is damaged; reading the previous version from " + backup);
+                return backup;
+            }
+            System.out.println("Warning: " + path + " is damaged and has no usable backup; reading what is left");
+        } catch (IOException e) {
+            System.out.println("Error checking file: " + e.getMessage());
+        }
+        return path;
+    }
+
+    /**
+     * Make a rename durable by forcing the directory entry to disk. Not all
+     * platforms can open a directory; there the rename is left to the OS.
+     */
+    private static void syncDirectory(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on this platform
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary that encodes strings as small dense int IDs.
+ * Each distinct string is stored once and gets the next free ID.
+ */
+public class StringDictionary {
+    // Returned by lookup for strings that were never interned
+    public static final int NOT_FOUND = -1;
+
+    private Map<String, Integer> idsByString;
+    private List<String> stringsById;
+
+    /**
+     * Constructor
+     */
+    public StringDictionary() {
+        idsByString = new HashMap<>();
+        stringsById = new ArrayList<>();
+    }
+
+    /**
+     * Get the ID of a string, adding it if it is new
+     *
+     * @param value The string
+     * @return Its ID
+     */
+    public int intern(String value) {
+        Integer id = idsByString.get(value);
+        if (id == null) {
+            id = stringsById.size();
+            idsByString.put(value, id);
+            stringsById.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Get the ID of a string without adding it
+     *
+     * @param value The string
+     * @return Its ID or NOT_FOUND
+     */
+    public int lookup(String value) {
+        Integer id = idsByString.get(value);
+        return id == null ? NOT_FOUND : id;
+    }
+
+    /**
+     * Get the string for an ID
+     *
+     * @param id The ID
+     * @return The string
+     */
+    public String get(int id) {
+        return stringsById.get(id);
+    }
+
+    /**
+     * Get the number of distinct strings
+     *
+     * @return Dictionary size
+     */
+    public int size() {
+        return stringsById.size();
+    }
+
+    /**
+     * Remove all strings
+     */
+    public void clear() {
+        idsByString.clear();
+        stringsById.clear();
+    }
+}
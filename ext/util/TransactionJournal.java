@@ -0,0 +1,242 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import model.Transaction;
+
+/**
+ * Append-only log of changes made on top of a transactions snapshot.
+ * Each add, edit or delete becomes one line, and the file is forced
+ * to disk once per batch of records rather than once per record.
+ */
+public class TransactionJournal {
+    // Record tags, written as the first field of each line
+    private static final String ADD = "ADD";
+    private static final String EDIT = "EDIT";
+    private static final String DELETE = "DELETE";
+
+    private String journalPath;
+    private int syncBatchSize;
+    private FileOutputStream output;
+    private BufferedWriter writer;
+    private int unsyncedRecords;
+    private int recordCount;
+
+    /**
+     * Constructor that opens (or creates) the journal for appending
+     *
+     * @param journalPath Path to the journal file
+     * @param syncBatchSize Number of records written between two fsyncs
+     * @throws IOException If the journal cannot be opened
+     */
+    public TransactionJournal(String journalPath, int syncBatchSize) throws IOException {
+        this.journalPath = journalPath;
+        this.syncBatchSize = Math.max(1, syncBatchSize);
+        this.recordCount = countRecords(journalPath);
+        open();
+    }
+
+    /**
+     * Append a record for a newly added transaction
+     *
+     * @param transaction The added transaction
+     * @throws IOException If writing fails
+     */
+    public void appendAdd(Transaction transaction) throws IOException {
+        append(ADD + "," + transaction.toFileString());
+    }
+
+    /**
+     * Append records for a batch of added transactions, handing them to
+     * the OS in one write
+     *
+     * @param transactions The added transactions
+     * @throws IOException If writing fails
+     */
+    public void appendAdds(List<Transaction> transactions) throws IOException {
+        for (Transaction transaction : transactions) {
+            writer.write(ADD + "," + transaction.toFileString());
+            writer.newLine();
+        }
+        writer.flush();
+        recordCount += transactions.size();
+        unsyncedRecords += transactions.size();
+        if (unsyncedRecords >= syncBatchSize) {
+            sync();
+        }
+    }
+
+    /**
+     * Append a record for an edited transaction
+     *
+     * @param transaction The transaction after the edit
+     * @throws IOException If writing fails
+     */
+    public void appendEdit(Transaction transaction) throws IOException {
+        append(EDIT + "," + transaction.toFileString());
+    }
+
+    /**
+     * Append a record for a deleted transaction
+     *
+     * @param id ID of the deleted transaction
+     * @throws IOException If writing fails
+     */
+    public void appendDelete(int id) throws IOException {
+        append(DELETE + "," + id);
+    }
+
+    /**
+     * Force all written records to disk
+     *
+     * @throws IOException If syncing fails
+     */
+    public void sync() throws IOException {
+        writer.flush();
+        if (unsyncedRecords > 0) {
+            output.getFD().sync();
+            unsyncedRecords = 0;
+        }
+    }
+
+    /**
+     * Get the number of records in the active journal
+     *
+     * @return Record count
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Close the active journal and move it aside so it can be compacted,
+     * then start a new empty journal. If it cannot be moved, it stays open
+     * and records keep going to it.
+     *
+     * @param segmentPath Path the active journal is moved to
+     * @throws IOException If the journal cannot be rotated
+     */
+    public void rotate(String segmentPath) throws IOException {
+        File segment = new File(segmentPath);
+        if (segment.exists()) {
+            throw new IOException("Journal segment " + segmentPath + " has not been compacted yet");
+        }
+        close();
+        boolean moved = new File(journalPath).renameTo(segment);
+        open();
+        if (!moved) {
+            throw new IOException("Could not rotate journal to " + segmentPath);
+        }
+        recordCount = 0;
+    }
+
+    /**
+     * Sync and close the journal
+     *
+     * @throws IOException If closing fails
+     */
+    public void close() throws IOException {
+        if (writer != null) {
+            sync();
+            writer.close();
+            writer = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Apply the records of a journal file to snapshot lines keyed by transaction ID.
+     * Replaying is idempotent, so a segment that was already folded into the
+     * snapshot can safely be replayed again after a crash.
+     *
+     * @param journalPath Path to the journal file
+     * @param lines Snapshot lines keyed by ID, in file order
+     * @throws IOException If reading fails
+     */
+    public static void replay(String journalPath, Map<Integer, String> lines) throws IOException {
+        File file = new File(journalPath);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String record;
+            while ((record = reader.readLine()) != null) {
+                if (record.trim().isEmpty()) {
+                    continue;
+                }
+                int comma = record.indexOf(',');
+                try {
+                    String tag = comma < 0 ? record : record.substring(0, comma);
+                    String body = record.substring(comma + 1);
+                    if (tag.equals(ADD) || tag.equals(EDIT)) {
+                        lines.put(parseId(body), body);
+                    } else if (tag.equals(DELETE)) {
+                        lines.remove(Integer.parseInt(body.trim()));
+                    } else {
+                        System.out.println("Skipping unknown journal record: " + record);
+                    }
+                } catch (NumberFormatException e) {
+                    // A torn final record is expected after a crash
+                    System.out.println("Skipping malformed journal record: " + record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract the transaction ID from a line in file format without
+     * parsing the rest of the line
+     *
+     * @param line Line in file format (type,id,...)
+     * @return The transaction ID
+     */
+    static int parseId(String line) {
+        int first = line.indexOf(',');
+        int second = line.indexOf(',', first + 1);
+        if (first < 0 || second < 0) {
+            throw new NumberFormatException("Missing ID in line: " + line);
+        }
+        return Integer.parseInt(line.substring(first + 1, second));
+    }
+
+    private void append(String record) throws IOException {
+        writer.write(record);
+        writer.newLine();
+        // Hand the record to the OS right away; only the fsync is batched
+        writer.flush();
+        recordCount++;
+        if (++unsyncedRecords >= syncBatchSize) {
+            sync();
+        }
+    }
+
+    private void open() throws IOException {
+        output = new FileOutputStream(journalPath, true);
+        writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        unsyncedRecords = 0;
+    }
+
+    private static int countRecords(String path) throws IOException {
+        File file = new File(path);
+        if (!file.exists()) {
+            return 0;
+        }
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}